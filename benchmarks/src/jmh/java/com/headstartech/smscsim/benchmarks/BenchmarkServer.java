@@ -0,0 +1,87 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.smpp.SmppServerConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppServer;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.MessageIdGenerator;
+import com.headstartech.smscsim.server.ServerContext;
+import com.headstartech.smscsim.server.SessionRegistry;
+import com.headstartech.smscsim.server.SmppServerHandlerImpl;
+import com.headstartech.smscsim.server.admin.Drainer;
+import com.headstartech.smscsim.server.bind.BindAdmission;
+import com.headstartech.smscsim.server.concat.ReassemblyTracker;
+import com.headstartech.smscsim.server.metrics.SmppMetrics;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import com.headstartech.smscsim.server.throttle.Throttles;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The simulator wired like {@code Config} does, without Spring, for benchmarks that run it
+ * in-process.
+ */
+public class BenchmarkServer {
+
+    private final ServerContext context;
+    private final AsyncResponder asyncResponder;
+    private final ReassemblyTracker reassemblyTracker;
+    private DefaultSmppServer smppServer;
+    private ExecutorService ioExecutor;
+    private ScheduledExecutorService monitorExecutor;
+
+    public BenchmarkServer(SmppServerProperties properties) {
+        this.asyncResponder = new AsyncResponder(properties.getResponder().getThreads(), properties.getResponder().getTickDuration());
+        SessionRegistry sessionRegistry = new SessionRegistry();
+        context = new ServerContext();
+        context.setProperties(properties);
+        context.setMessageIdGenerator(new MessageIdGenerator(properties.getNodeId()));
+        context.setResponseProfiles(new ResponseProfiles(properties));
+        context.setAsyncResponder(asyncResponder);
+        context.setThrottles(new Throttles(properties.getThrottle()));
+        context.setSessionRegistry(sessionRegistry);
+        context.setMetrics(new SmppMetrics(sessionRegistry));
+        context.setMessageStateIndex(new MessageStateIndex(properties.getMessageState().getCapacity()));
+        this.reassemblyTracker = properties.getReassembly().isEnabled() ? new ReassemblyTracker(properties.getReassembly()) : null;
+        context.setReassemblyTracker(reassemblyTracker);
+        context.setDrainer(new Drainer(sessionRegistry, null, asyncResponder, null, properties.getAdmin().getUnbindTimeout()));
+        context.setBindAdmission(new BindAdmission(properties.getBind()));
+    }
+
+    public ServerContext getContext() {
+        return context;
+    }
+
+    /**
+     * Starts listening on {@code smppserver.port}.
+     */
+    public void start() throws Exception {
+        SmppServerProperties properties = context.getProperties();
+        SmppServerConfiguration configuration = new SmppServerConfiguration();
+        configuration.setPort(properties.getPort());
+        configuration.setMaxConnectionSize(properties.getMaxConnections());
+        configuration.setNonBlockingSocketsEnabled(true);
+        configuration.setDefaultSessionCountersEnabled(true);
+        configuration.setJmxEnabled(false);
+
+        ioExecutor = Executors.newFixedThreadPool(configuration.getMaxConnectionSize());
+        monitorExecutor = Executors.newScheduledThreadPool(1);
+        smppServer = new DefaultSmppServer(configuration, new SmppServerHandlerImpl(context, 0), ioExecutor, monitorExecutor);
+        smppServer.start();
+    }
+
+    public void stop() {
+        if (smppServer != null) {
+            smppServer.destroy();
+            ioExecutor.shutdownNow();
+            monitorExecutor.shutdownNow();
+        }
+        asyncResponder.destroy();
+        if (reassemblyTracker != null) {
+            reassemblyTracker.destroy();
+        }
+    }
+}
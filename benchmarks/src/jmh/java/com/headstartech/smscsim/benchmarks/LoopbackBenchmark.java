@@ -0,0 +1,110 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.EnquireLink;
+import com.cloudhopper.smpp.pdu.EnquireLinkResp;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.client.NoDelaySmppClient;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous round trips to an in-process simulator over loopback, through the Netty
+ * pipelines of both ends. Each benchmark thread binds its own session, so {@code -t} sets the
+ * number of sessions.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoopbackBenchmark {
+
+    // not the simulator's default port, so a running simulator doesn't get in the way
+    static final int PORT = 2777;
+    static final long TIMEOUT_MILLIS = 10000;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        BenchmarkServer server;
+        DefaultSmppClient client;
+        ScheduledExecutorService monitorExecutor;
+
+        @Setup
+        public void setup() throws Exception {
+            SmppServerProperties properties = new SmppServerProperties();
+            properties.setPort(PORT);
+            properties.setMaxConnections(64);
+            server = new BenchmarkServer(properties);
+            server.start();
+            monitorExecutor = Executors.newScheduledThreadPool(1);
+            client = new NoDelaySmppClient(Executors.newCachedThreadPool(), 64, monitorExecutor);
+        }
+
+        @TearDown
+        public void tearDown() {
+            client.destroy();
+            monitorExecutor.shutdownNow();
+            server.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+
+        SmppSession session;
+        SubmitSm submitSm;
+
+        @Setup(Level.Trial)
+        public void setup(Server server) throws Exception {
+            SmppSessionConfiguration config = new SmppSessionConfiguration();
+            config.setType(SmppBindType.TRANSCEIVER);
+            config.setHost("127.0.0.1");
+            config.setPort(PORT);
+            config.setSystemId("bench");
+            config.setPassword("bench");
+            config.setRequestExpiryTimeout(TIMEOUT_MILLIS);
+            session = server.client.bind(config, new DefaultSmppSessionHandler());
+
+            submitSm = new SubmitSm();
+            submitSm.setSourceAddress(new Address((byte) 0x03, (byte) 0x00, "40404"));
+            submitSm.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "44555519205"));
+            submitSm.setShortMessage(CharsetUtil.encode(PduCodecBenchmark.TEXT_160, CharsetUtil.CHARSET_GSM));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            session.unbind(5000);
+            session.destroy();
+        }
+    }
+
+    @Benchmark
+    public SubmitSmResp submitSm(Session session) throws Exception {
+        // the session assigns a new sequence number only if there is none
+        session.submitSm.removeSequenceNumber();
+        return session.session.submit(session.submitSm, TIMEOUT_MILLIS);
+    }
+
+    @Benchmark
+    public EnquireLinkResp enquireLink(Session session) throws Exception {
+        return session.session.enquireLink(new EnquireLink(), TIMEOUT_MILLIS);
+    }
+}
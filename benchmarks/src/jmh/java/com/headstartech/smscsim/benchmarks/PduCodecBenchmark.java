@@ -0,0 +1,101 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.client.PduTemplate;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a client does per submit and the server per request and response: GSM encoding of the
+ * text, building the submit_sm, and encoding and decoding submit_sm and submit_sm_resp. The
+ * client's template mode ({@link PduTemplate}) for comparison with building and encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PduCodecBenchmark {
+
+    // the text the client sends
+    static final String TEXT_160 = "\u20AC Lorem [ipsum] dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, nibh diam ornare est, vitae accumsan risus lacus sed sem metus.";
+
+    private PduTranscoder transcoder;
+    private byte[] textBytes;
+    private SubmitSm submitSm;
+    private ChannelBuffer submitSmBuffer;
+    private SubmitSmResp submitSmResp;
+    private ChannelBuffer submitSmRespBuffer;
+    private PduTemplate template;
+    private ChannelBuffer templateBuffer;
+    private int sequenceNumber;
+
+    @Setup
+    public void setup() throws Exception {
+        transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+        textBytes = CharsetUtil.encode(TEXT_160, CharsetUtil.CHARSET_GSM);
+        submitSm = buildSubmitSm();
+        submitSmBuffer = transcoder.encode(submitSm);
+        submitSmResp = submitSm.createResponse();
+        submitSmResp.setMessageId("4e2a1b0c00100");
+        submitSmRespBuffer = transcoder.encode(submitSmResp);
+        template = new PduTemplate(buildSubmitSm(), 4);
+        templateBuffer = ChannelBuffers.buffer(template.getLength());
+    }
+
+    @Benchmark
+    public byte[] encodeGsm() {
+        return CharsetUtil.encode(TEXT_160, CharsetUtil.CHARSET_GSM);
+    }
+
+    @Benchmark
+    public SubmitSm buildSubmitSm() throws Exception {
+        SubmitSm submit = new SubmitSm();
+        submit.setSourceAddress(new Address((byte) 0x03, (byte) 0x00, "40404"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "44555519205"));
+        submit.setShortMessage(textBytes);
+        submit.setSequenceNumber(1);
+        return submit;
+    }
+
+    @Benchmark
+    public ChannelBuffer encodeSubmitSm() throws Exception {
+        return transcoder.encode(submitSm);
+    }
+
+    @Benchmark
+    public ChannelBuffer writeSubmitSmTemplate() {
+        sequenceNumber++;
+        template.writeTo(templateBuffer, sequenceNumber, sequenceNumber, 0);
+        return templateBuffer;
+    }
+
+    @Benchmark
+    public Pdu decodeSubmitSm() throws Exception {
+        return transcoder.decode(submitSmBuffer.duplicate());
+    }
+
+    @Benchmark
+    public ChannelBuffer encodeSubmitSmResp() throws Exception {
+        return transcoder.encode(submitSmResp);
+    }
+
+    @Benchmark
+    public Pdu decodeSubmitSmResp() throws Exception {
+        return transcoder.decode(submitSmRespBuffer.duplicate());
+    }
+}
@@ -0,0 +1,342 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.commons.util.DecimalUtil;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.headstartech.smscsim.client.ClientProperties;
+import com.headstartech.smscsim.client.LatencyReporter;
+import com.headstartech.smscsim.client.LoadGenerator;
+import com.headstartech.smscsim.client.NoDelaySmppClient;
+import com.headstartech.smscsim.client.PerfSessionTask;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Perf regression suite: the client's PERF sessions against an in-process simulator over
+ * loopback for each session count and window size, compared against {@code perf.baseline} if
+ * set. Run with {@code ./gradlew :benchmarks:perfSuite}.
+ */
+public class PerfSuite {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfSuite.class);
+
+    private final int port = Integer.getInteger("perf.port", LoopbackBenchmark.PORT);
+    private final int[] sessionCounts = ints(System.getProperty("perf.sessions", "1,4,16"));
+    private final int[] windowSizes = ints(System.getProperty("perf.windows", "1,10,50"));
+    private final int messages = Integer.getInteger("perf.messages", 20000);
+    private final int warmups = Integer.getInteger("perf.warmups", 1);
+    private final int runs = Math.max(Integer.getInteger("perf.runs", 3), 1);
+    // a run taking longer than this fails, e.g. when responses are lost
+    private final long runTimeoutMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("perf.runTimeout", 300));
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new PerfSuite().run() ? 0 : 1);
+    }
+
+    /**
+     * @return <code>false</code> if a cell failed or regressed
+     */
+    public boolean run() throws Exception {
+        List<Result> results = new ArrayList<Result>();
+        SmppServerProperties properties = new SmppServerProperties();
+        properties.setPort(port);
+        properties.setMaxConnections(max(sessionCounts));
+        BenchmarkServer server = new BenchmarkServer(properties);
+        ScheduledExecutorService monitorExecutor = Executors.newScheduledThreadPool(1);
+        server.start();
+        try {
+            for (int sessions : sessionCounts) {
+                for (int windowSize : windowSizes) {
+                    results.add(runCell(sessions, windowSize, monitorExecutor));
+                }
+            }
+        } finally {
+            monitorExecutor.shutdownNow();
+            server.stop();
+        }
+
+        File output = new File(System.getProperty("perf.output", "perf-results.json"));
+        if (output.getParentFile() != null) {
+            output.getParentFile().mkdirs();
+        }
+        mapper.writeValue(output, results);
+        logger.info("Results written to " + output);
+
+        String baseline = System.getProperty("perf.baseline");
+        double threshold = Double.parseDouble(System.getProperty("perf.threshold", "0.1"));
+        List<String> regressions = compare(results, baseline != null && !baseline.isEmpty() ?
+                Arrays.asList(mapper.readValue(new File(baseline), Result[].class)) : Collections.<Result>emptyList(), threshold);
+        for (String regression : regressions) {
+            logger.error(regression);
+        }
+        return regressions.isEmpty();
+    }
+
+    /**
+     * @return what failed or regressed by more than {@code threshold}; cells not in the
+     * baseline are only checked for failures
+     */
+    static List<String> compare(List<Result> results, List<Result> baseline, double threshold) {
+        Map<String, Result> baselineByCell = new HashMap<String, Result>();
+        for (Result result : baseline) {
+            baselineByCell.put(result.cell(), result);
+        }
+        List<String> regressions = new ArrayList<String>();
+        for (Result result : results) {
+            if (result.getFailures() > 0) {
+                regressions.add(result.cell() + ": " + result.getFailures() + " sessions failed");
+                continue;
+            }
+            Result base = baselineByCell.get(result.cell());
+            if (base == null) {
+                continue;
+            }
+            if (result.getThroughput() < base.getThroughput() * (1 - threshold)) {
+                regressions.add(result.cell() + ": throughput " + DecimalUtil.toString(result.getThroughput(), 1) + "/s, baseline " +
+                        DecimalUtil.toString(base.getThroughput(), 1) + "/s");
+            }
+            if (result.getP99Micros() > base.getP99Micros() * (1 + threshold)) {
+                regressions.add(result.cell() + ": p99 " + result.getP99Micros() + " us, baseline " + base.getP99Micros() + " us");
+            }
+        }
+        return regressions;
+    }
+
+    private Result runCell(int sessions, int windowSize, ScheduledExecutorService monitorExecutor) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            runOnce(sessions, windowSize, monitorExecutor);
+        }
+        List<Result> measured = new ArrayList<Result>();
+        for (int i = 0; i < runs; i++) {
+            measured.add(runOnce(sessions, windowSize, monitorExecutor));
+        }
+        Collections.sort(measured, new Comparator<Result>() {
+            @Override
+            public int compare(Result a, Result b) {
+                return Double.compare(a.getThroughput(), b.getThroughput());
+            }
+        });
+        Result result = measured.get(measured.size() / 2);
+        logger.info("Cell " + result.cell() + ": " + DecimalUtil.toString(result.getThroughput(), 1) + " per sec, p50=" +
+                result.getP50Micros() + " p99=" + result.getP99Micros() + " p99.9=" + result.getP999Micros() + " max=" +
+                result.getMaxMicros() + " us");
+        return result;
+    }
+
+    private Result runOnce(int sessions, int windowSize, ScheduledExecutorService monitorExecutor) throws Exception {
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), sessions, monitorExecutor);
+        ExecutorService taskExecutor = Executors.newFixedThreadPool(sessions);
+        ClientProperties.Latency latency = new ClientProperties.Latency();
+        // no interval reports while measuring
+        latency.setReportInterval(Integer.MAX_VALUE);
+        LatencyReporter latencyReporter = new LatencyReporter(latency);
+        CountDownLatch allSessionsBoundSignal = new CountDownLatch(sessions);
+        CountDownLatch startSendingSignal = new CountDownLatch(1);
+        try {
+            PerfSessionTask[] tasks = new PerfSessionTask[sessions];
+            for (int i = 0; i < sessions; i++) {
+                tasks[i] = new PerfSessionTask(allSessionsBoundSignal, startSendingSignal, clientBootstrap,
+                        sessionConfig(i, windowSize), LoadGenerator.quota(messages, sessions, i), latencyReporter.createRecorder(windowSize), null);
+                taskExecutor.submit(tasks[i]);
+            }
+            if (!allSessionsBoundSignal.await(10, TimeUnit.SECONDS)) {
+                Exception cause = null;
+                for (PerfSessionTask task : tasks) {
+                    if (task != null && task.getCause() != null) {
+                        cause = task.getCause();
+                    }
+                }
+                throw new Exception("One or more sessions were unable to bind", cause);
+            }
+
+            latencyReporter.start();
+            long startNanos = System.nanoTime();
+            startSendingSignal.countDown();
+            taskExecutor.shutdown();
+            boolean finished = taskExecutor.awaitTermination(runTimeoutMillis, TimeUnit.MILLISECONDS);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            latencyReporter.stop();
+
+            Result result = new Result();
+            result.setSessions(sessions);
+            result.setWindowSize(windowSize);
+            int sent = 0;
+            for (PerfSessionTask task : tasks) {
+                if (task.getCause() != null || !finished) {
+                    result.setFailures(result.getFailures() + 1);
+                } else {
+                    sent += task.getSubmitRequestSent();
+                }
+            }
+            result.setMessages(sent);
+            result.setThroughput(sent / ((double) elapsedNanos / TimeUnit.SECONDS.toNanos(1)));
+            Histogram histogram = latencyReporter.getTotal();
+            result.setP50Micros(histogram.getValueAtPercentile(50.0));
+            result.setP90Micros(histogram.getValueAtPercentile(90.0));
+            result.setP99Micros(histogram.getValueAtPercentile(99.0));
+            result.setP999Micros(histogram.getValueAtPercentile(99.9));
+            result.setMaxMicros(histogram.getMaxValue());
+            return result;
+        } finally {
+            // also releases sessions still waiting for responses
+            clientBootstrap.destroy();
+            taskExecutor.shutdownNow();
+        }
+    }
+
+    private SmppSessionConfiguration sessionConfig(int index, int windowSize) {
+        SmppSessionConfiguration config = new SmppSessionConfiguration();
+        config.setWindowSize(windowSize);
+        config.setName("Perf.Session." + index);
+        config.setType(SmppBindType.TRANSCEIVER);
+        config.setHost("127.0.0.1");
+        config.setPort(port);
+        config.setConnectTimeout(10000);
+        config.setSystemId("perf");
+        config.setPassword("perf");
+        config.getLoggingOptions().setLogBytes(false);
+        config.setRequestExpiryTimeout(30000);
+        config.setWindowMonitorInterval(15000);
+        return config;
+    }
+
+    private static int[] ints(String list) {
+        String[] values = list.split(",");
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = Integer.parseInt(values[i].trim());
+        }
+        return ints;
+    }
+
+    private static int max(int[] values) {
+        int max = 1;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Result of one cell of the matrix; latencies are submit to submit_sm_resp.
+     */
+    public static class Result {
+
+        private int sessions;
+        private int windowSize;
+        private int failures;
+        private long messages;
+        // submit_sm per second
+        private double throughput;
+        private long p50Micros;
+        private long p90Micros;
+        private long p99Micros;
+        private long p999Micros;
+        private long maxMicros;
+
+        String cell() {
+            return "sessions=" + sessions + ",window=" + windowSize;
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public void setFailures(int failures) {
+            this.failures = failures;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public void setMessages(long messages) {
+            this.messages = messages;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public void setThroughput(double throughput) {
+            this.throughput = throughput;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public void setP50Micros(long p50Micros) {
+            this.p50Micros = p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public void setP90Micros(long p90Micros) {
+            this.p90Micros = p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public void setP99Micros(long p99Micros) {
+            this.p99Micros = p99Micros;
+        }
+
+        public long getP999Micros() {
+            return p999Micros;
+        }
+
+        public void setP999Micros(long p999Micros) {
+            this.p999Micros = p999Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public void setMaxMicros(long maxMicros) {
+            this.maxMicros = maxMicros;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.concat.ReassemblyTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReassemblyTracker} with several threads feeding it parts of 3-part messages, each
+ * thread from its own source address as sessions of different clients would. Compare
+ * {@code stripes=1} (one lock) with the default to see the effect of striping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class ReassemblyBenchmark {
+
+    private static final int PARTS = 3;
+
+    // 0 for the default, 4 per processor
+    @Param({"1", "0"})
+    public int stripes;
+
+    private ReassemblyTracker tracker;
+
+    @State(Scope.Thread)
+    public static class Source {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        // one prototype per part number, the reference is set per message
+        SubmitSm[] parts = new SubmitSm[PARTS];
+        int next;
+
+        @Setup
+        public void setup() throws Exception {
+            String address = "4670" + threads.incrementAndGet();
+            for (int i = 0; i < PARTS; i++) {
+                SubmitSm sm = new SubmitSm();
+                sm.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, address));
+                sm.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "44555519205"));
+                sm.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+                sm.setShortMessage(new byte[]{0x05, 0x00, 0x03, 0x00, PARTS, (byte) (i + 1), 'x'});
+                parts[i] = sm;
+            }
+        }
+    }
+
+    @Setup
+    public void setup() {
+        SmppServerProperties.Reassembly properties = new SmppServerProperties.Reassembly();
+        properties.setStripes(stripes);
+        tracker = new ReassemblyTracker(properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracker.destroy();
+    }
+
+    @Benchmark
+    public void partReceived(Source source) {
+        int n = source.next++;
+        SubmitSm part = source.parts[n % PARTS];
+        part.getShortMessage()[3] = (byte) (n / PARTS);
+        tracker.partReceived("bench", part);
+    }
+}
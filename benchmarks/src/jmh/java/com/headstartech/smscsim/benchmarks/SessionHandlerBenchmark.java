@@ -0,0 +1,74 @@
+package com.headstartech.smscsim.benchmarks;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppSession;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.QuerySm;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.SmppServerSessionImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SmppServerSessionImpl#firePduRequestReceived} called directly, as the I/O thread does
+ * in the default handler mode: message id, state index and response metrics, without the
+ * network. The session has no channel, so only paths that answer synchronously are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionHandlerBenchmark {
+
+    private BenchmarkServer server;
+    private SmppServerSessionImpl handler;
+    private SubmitSm submitSm;
+    private QuerySm querySm;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new BenchmarkServer(new SmppServerProperties());
+
+        SmppSessionConfiguration configuration = new SmppSessionConfiguration();
+        configuration.setSystemId("bench");
+        SmppSession session = new DefaultSmppSession(SmppSession.Type.SERVER, configuration, null, new DefaultSmppSessionHandler());
+        handler = new SmppServerSessionImpl(session, server.getContext());
+
+        submitSm = new SubmitSm();
+        submitSm.setSourceAddress(new Address((byte) 0x03, (byte) 0x00, "40404"));
+        submitSm.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "44555519205"));
+        submitSm.setShortMessage(CharsetUtil.encode(PduCodecBenchmark.TEXT_160, CharsetUtil.CHARSET_GSM));
+
+        PduResponse response = handler.firePduRequestReceived(submitSm);
+        querySm = new QuerySm();
+        querySm.setMessageId(((SubmitSmResp) response).getMessageId());
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public PduResponse submitSm() {
+        return handler.firePduRequestReceived(submitSm);
+    }
+
+    @Benchmark
+    public PduResponse querySm() {
+        return handler.firePduRequestReceived(querySm);
+    }
+}
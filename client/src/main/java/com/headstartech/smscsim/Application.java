@@ -3,7 +3,6 @@ package com.headstartech.smscsim;
 import com.cloudhopper.commons.charset.CharsetUtil;
 import com.cloudhopper.commons.util.DecimalUtil;
 import com.cloudhopper.commons.util.windowing.WindowFuture;
-import com.cloudhopper.smpp.PduAsyncResponse;
 import com.cloudhopper.smpp.SmppBindType;
 import com.cloudhopper.smpp.SmppSession;
 import com.cloudhopper.smpp.SmppSessionConfiguration;
@@ -11,14 +10,32 @@ import com.cloudhopper.smpp.impl.DefaultSmppClient;
 import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
 import com.cloudhopper.smpp.pdu.*;
 import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.client.CaptureReplayer;
+import com.headstartech.smscsim.client.ClientProperties;
+import com.headstartech.smscsim.client.ClusterCoordinator;
+import com.headstartech.smscsim.client.ClusterWorker;
+import com.headstartech.smscsim.client.FleetDriver;
+import com.headstartech.smscsim.client.LatencyReporter;
+import com.headstartech.smscsim.client.LoadGenerator;
+import com.headstartech.smscsim.client.MessageMix;
+import com.headstartech.smscsim.client.NoDelaySmppClient;
+import com.headstartech.smscsim.client.PerfSessionTask;
+import com.headstartech.smscsim.client.PduTemplate;
+import com.headstartech.smscsim.client.RateProfile;
+import com.headstartech.smscsim.client.Scenario;
+import com.headstartech.smscsim.client.TraceEndpoint;
+import com.headstartech.smscsim.trace.WireTracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -29,19 +46,15 @@ public class Application implements CommandLineRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(Application.class);
 
-    //
-    // performance testing options (just for this sample)
-    //
-    // total number of sessions (conns) to create
-    static public final int SESSION_COUNT = 10;
-    // size of window per session
-    static public final int WINDOW_SIZE = 50;
-    // total number of submit to send total across all sessions
-    static public final int SUBMIT_TO_SEND = 20000;
-    // total number of submit sent
-    static public final AtomicInteger SUBMIT_SENT = new AtomicInteger(0);
+    @Autowired
+    ClientProperties clientProperties;
+
+    // traces the PDUs of all client bootstraps, null if disabled
+    private WireTracer wireTracer;
 
     private void runPerf() throws Exception {
+        ClientProperties.Perf perf = clientProperties.getPerf();
+
         //
         // setup 3 things required for any session we plan on creating
         //
@@ -56,15 +69,7 @@ public class Application implements CommandLineRunner {
         // to enable automatic expiration of requests, a second scheduled executor
         // is required which is what a monitor task will be executed with - this
         // is probably a thread pool that can be shared with between all client bootstraps
-        ScheduledThreadPoolExecutor monitorExecutor = (ScheduledThreadPoolExecutor)Executors.newScheduledThreadPool(1, new ThreadFactory() {
-            private AtomicInteger sequence = new AtomicInteger(0);
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setName("SmppClientSessionWindowMonitorPool-" + sequence.getAndIncrement());
-                return t;
-            }
-        });
+        ScheduledThreadPoolExecutor monitorExecutor = newMonitorExecutor();
 
         // a single instance of a client bootstrap can technically be shared
         // between any sessions that are created (a session can go to any different
@@ -76,33 +81,27 @@ public class Application implements CommandLineRunner {
         // used for NIO sockets essentially uses this value as the max number of
         // threads it will ever use, despite the "max pool size", etc. set on
         // the executor passed in here
-        DefaultSmppClient clientBootstrap = new DefaultSmppClient(Executors.newCachedThreadPool(), SESSION_COUNT, monitorExecutor);
-
-        // same configuration for each client runner
-        SmppSessionConfiguration config = new SmppSessionConfiguration();
-        config.setWindowSize(WINDOW_SIZE);
-        config.setName("Tester.Session.0");
-        config.setType(SmppBindType.TRANSCEIVER);
-        config.setHost("127.0.0.1");
-        config.setPort(2776);
-        config.setConnectTimeout(10000);
-        config.setSystemId("1234567890");
-        config.setPassword("password");
-        config.getLoggingOptions().setLogBytes(false);
-        // to enable monitoring (request expiration)
-        config.setRequestExpiryTimeout(30000);
-        config.setWindowMonitorInterval(15000);
-        config.setCountersEnabled(true);
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), perf.getSessions(), monitorExecutor, wireTracer);
 
         // various latches used to signal when things are ready
-        CountDownLatch allSessionsBoundSignal = new CountDownLatch(SESSION_COUNT);
+        CountDownLatch allSessionsBoundSignal = new CountDownLatch(perf.getSessions());
         CountDownLatch startSendingSignal = new CountDownLatch(1);
 
+        // per session latency recorders, merged by the reporter
+        LatencyReporter latencyReporter = new LatencyReporter(clientProperties.getLatency());
+
+        // pre-encoded submit, if enabled
+        PduTemplate template = submitSmTemplate();
+
         // create all session runners and executors to run them
         ThreadPoolExecutor taskExecutor = (ThreadPoolExecutor)Executors.newCachedThreadPool();
-        ClientSessionTask[] tasks = new ClientSessionTask[SESSION_COUNT];
-        for (int i = 0; i < SESSION_COUNT; i++) {
-            tasks[i] = new ClientSessionTask(allSessionsBoundSignal, startSendingSignal, clientBootstrap, config);
+        PerfSessionTask[] tasks = new PerfSessionTask[perf.getSessions()];
+        for (int i = 0; i < perf.getSessions(); i++) {
+            // same configuration for each client runner, but for the listener it connects to
+            SmppSessionConfiguration config = loadSessionConfig(i, SmppBindType.TRANSCEIVER, perf.getWindowSize(), clientProperties.getSystemId(),
+                    clientProperties.getPassword());
+            tasks[i] = new PerfSessionTask(allSessionsBoundSignal, startSendingSignal, clientBootstrap, config,
+                    LoadGenerator.quota(perf.getSubmits(), perf.getSessions(), i), latencyReporter.createRecorder(perf.getWindowSize()), template);
             taskExecutor.submit(tasks[i]);
         }
 
@@ -113,6 +112,7 @@ public class Application implements CommandLineRunner {
         }
 
         logger.info("Sending signal to start test...");
+        latencyReporter.start();
         long startTimeMillis = System.currentTimeMillis();
         startSendingSignal.countDown();
 
@@ -120,11 +120,12 @@ public class Application implements CommandLineRunner {
         taskExecutor.shutdown();
         taskExecutor.awaitTermination(3, TimeUnit.DAYS);
         long stopTimeMillis = System.currentTimeMillis();
+        latencyReporter.stop();
 
         // did everything succeed?
         int actualSubmitSent = 0;
         int sessionFailures = 0;
-        for (int i = 0; i < SESSION_COUNT; i++) {
+        for (int i = 0; i < perf.getSessions(); i++) {
             if (tasks[i].getCause() != null) {
                 sessionFailures++;
                 logger.error("Task #" + i + " failed with exception: " + tasks[i].getCause());
@@ -134,18 +135,18 @@ public class Application implements CommandLineRunner {
         }
 
         logger.info("Performance client finished:");
-        logger.info("       Sessions: " + SESSION_COUNT);
-        logger.info("    Window Size: " + WINDOW_SIZE);
+        logger.info("       Sessions: " + perf.getSessions());
+        logger.info("    Window Size: " + perf.getWindowSize());
         logger.info("Sessions Failed: " + sessionFailures);
         logger.info("           Time: " + (stopTimeMillis - startTimeMillis) + " ms");
-        logger.info("  Target Submit: " + SUBMIT_TO_SEND);
+        logger.info("  Target Submit: " + perf.getSubmits());
         logger.info("  Actual Submit: " + actualSubmitSent);
         double throughput = (double)actualSubmitSent/((double)(stopTimeMillis - startTimeMillis)/(double)1000);
         logger.info("     Throughput: " + DecimalUtil.toString(throughput, 3) + " per sec");
 
-        for (int i = 0; i < SESSION_COUNT; i++) {
-            if (tasks[i].session != null && tasks[i].session.hasCounters()) {
-                logger.info(" Session " + i + ": submitSM {}", tasks[i].session.getCounters().getTxSubmitSM());
+        for (int i = 0; i < perf.getSessions(); i++) {
+            if (tasks[i].getSession() != null && tasks[i].getSession().hasCounters()) {
+                logger.info(" Session " + i + ": submitSM {}", tasks[i].getSession().getCounters().getTxSubmitSM());
             }
         }
 
@@ -160,113 +161,6 @@ public class Application implements CommandLineRunner {
     }
 
 
-    public static class ClientSessionTask implements Runnable {
-
-        private SmppSession session;
-        private CountDownLatch allSessionsBoundSignal;
-        private CountDownLatch startSendingSignal;
-        private DefaultSmppClient clientBootstrap;
-        private SmppSessionConfiguration config;
-        private int submitRequestSent;
-        private int submitResponseReceived;
-        private AtomicBoolean sendingDone;
-        private Exception cause;
-
-        public ClientSessionTask(CountDownLatch allSessionsBoundSignal, CountDownLatch startSendingSignal, DefaultSmppClient clientBootstrap, SmppSessionConfiguration config) {
-            this.allSessionsBoundSignal = allSessionsBoundSignal;
-            this.startSendingSignal = startSendingSignal;
-            this.clientBootstrap = clientBootstrap;
-            this.config = config;
-            this.submitRequestSent = 0;
-            this.submitResponseReceived = 0;
-            this.sendingDone = new AtomicBoolean(false);
-        }
-
-        public Exception getCause() {
-            return this.cause;
-        }
-
-        public int getSubmitRequestSent() {
-            return this.submitRequestSent;
-        }
-
-        @Override
-        public void run() {
-            // a countdownlatch will be used to eventually wait for all responses
-            // to be received by this thread since we don't want to exit too early
-            CountDownLatch allSubmitResponseReceivedSignal = new CountDownLatch(1);
-
-            DefaultSmppSessionHandler sessionHandler = new ClientSmppSessionHandler(allSubmitResponseReceivedSignal);
-            String text160 = "\u20AC Lorem [ipsum] dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, nibh diam ornare est, vitae accumsan risus lacus sed sem metus.";
-            byte[] textBytes = CharsetUtil.encode(text160, CharsetUtil.CHARSET_GSM);
-
-            try {
-                // create session a session by having the bootstrap connect a
-                // socket, send the bind request, and wait for a bind response
-                session = clientBootstrap.bind(config, sessionHandler);
-
-                // don't start sending until signalled
-                allSessionsBoundSignal.countDown();
-                startSendingSignal.await();
-
-                // all threads compete for processing
-                while (SUBMIT_SENT.getAndIncrement() < SUBMIT_TO_SEND) {
-                    SubmitSm submit = new SubmitSm();
-                    submit.setSourceAddress(new Address((byte)0x03, (byte)0x00, "40404"));
-                    submit.setDestAddress(new Address((byte)0x01, (byte)0x01, "44555519205"));
-                    submit.setShortMessage(textBytes);
-                    // asynchronous send
-                    this.submitRequestSent++;
-                    sendingDone.set(true);
-                    session.sendRequestPdu(submit, 30000, false);
-                }
-
-                // all threads have sent all submit, we do need to wait for
-                // an acknowledgement for all "inflight" though (synchronize
-                // against the window)
-                logger.info("before waiting sendWindow.size: {}", session.getSendWindow().getSize());
-
-                allSubmitResponseReceivedSignal.await();
-
-                logger.info("after waiting sendWindow.size: {}", session.getSendWindow().getSize());
-
-                session.unbind(5000);
-            } catch (Exception e) {
-                logger.error("", e);
-                this.cause = e;
-            }
-        }
-
-        class ClientSmppSessionHandler extends DefaultSmppSessionHandler {
-
-            private CountDownLatch allSubmitResponseReceivedSignal;
-
-            public ClientSmppSessionHandler(CountDownLatch allSubmitResponseReceivedSignal) {
-                super(logger);
-                this.allSubmitResponseReceivedSignal = allSubmitResponseReceivedSignal;
-            }
-
-            @Override
-            public void fireChannelUnexpectedlyClosed() {
-                // this is an error we didn't really expect for perf testing
-                // its best to at least countDown the latch so we're not waiting forever
-                logger.error("Unexpected close occurred...");
-                this.allSubmitResponseReceivedSignal.countDown();
-            }
-
-            @Override
-            public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
-                submitResponseReceived++;
-                // if the sending thread is finished, check if we're done
-                if (sendingDone.get()) {
-                    if (submitResponseReceived >= submitRequestSent) {
-                        this.allSubmitResponseReceivedSignal.countDown();
-                    }
-                }
-            }
-        }
-    }
-
     private void runSimple() {
         //
         // setup 3 things required for any session we plan on creating
@@ -282,16 +176,7 @@ public class Application implements CommandLineRunner {
         // to enable automatic expiration of requests, a second scheduled executor
         // is required which is what a monitor task will be executed with - this
         // is probably a thread pool that can be shared with between all client bootstraps
-        ScheduledThreadPoolExecutor monitorExecutor = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, new ThreadFactory() {
-            private AtomicInteger sequence = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setName("SmppClientSessionWindowMonitorPool-" + sequence.getAndIncrement());
-                return t;
-            }
-        });
+        ScheduledThreadPoolExecutor monitorExecutor = newMonitorExecutor();
 
         // a single instance of a client bootstrap can technically be shared
         // between any sessions that are created (a session can go to any different
@@ -303,7 +188,7 @@ public class Application implements CommandLineRunner {
         // used for NIO sockets essentially uses this value as the max number of
         // threads it will ever use, despite the "max pool size", etc. set on
         // the executor passed in here
-        DefaultSmppClient clientBootstrap = new DefaultSmppClient(Executors.newCachedThreadPool(), 1, monitorExecutor);
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), 1, monitorExecutor, wireTracer);
 
         //
         // setup configuration for a client session
@@ -314,11 +199,11 @@ public class Application implements CommandLineRunner {
         config0.setWindowSize(1);
         config0.setName("Tester.Session.0");
         config0.setType(SmppBindType.TRANSCEIVER);
-        config0.setHost("127.0.0.1");
-        config0.setPort(2776);
+        config0.setHost(clientProperties.getHost());
+        config0.setPort(clientProperties.getPort());
         config0.setConnectTimeout(10000);
-        config0.setSystemId("1234567890");
-        config0.setPassword("password");
+        config0.setSystemId(clientProperties.getSystemId());
+        config0.setPassword(clientProperties.getPassword());
         config0.getLoggingOptions().setLogBytes(true);
         // to enable monitoring (request expiration)
         config0.setRequestExpiryTimeout(30000);
@@ -360,8 +245,7 @@ public class Application implements CommandLineRunner {
             System.out.println("Press any key to send submit #1");
             System.in.read();
 
-            String text160 = "\u20AC Lorem [ipsum] dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, nibh diam ornare est, vitae accumsan risus lacus sed sem metus.";
-            byte[] textBytes = CharsetUtil.encode(text160, CharsetUtil.CHARSET_GSM);
+            byte[] textBytes = CharsetUtil.encode(LoadGenerator.TEXT_160, CharsetUtil.CHARSET_GSM);
 
             SubmitSm submit0 = new SubmitSm();
 
@@ -440,9 +324,236 @@ public class Application implements CommandLineRunner {
 
     }
 
+    private void runLoad(ClusterWorker worker) throws Exception {
+        ClientProperties.Load load = clientProperties.getLoad();
+        Scenario scenario = scenario();
+
+        // sessions, messages and rate profile are all set up before binding, nothing is built per send
+        List<SmppSessionConfiguration> configs = new ArrayList<SmppSessionConfiguration>();
+        RateProfile rateProfile;
+        MessageMix messageMix;
+        int maxMessages;
+        if (scenario != null) {
+            for (Scenario.SessionGroup group : scenario.getSessions()) {
+                for (int i = 0; i < group.getCount(); i++) {
+                    configs.add(loadSessionConfig(configs.size(), group.getBindType(), group.getWindowSize(),
+                            group.getSystemId() != null ? group.getSystemId() : clientProperties.getSystemId(),
+                            group.getPassword() != null ? group.getPassword() : clientProperties.getPassword()));
+                }
+            }
+            rateProfile = RateProfile.phases(scenario.getPhases());
+            messageMix = MessageMix.of(scenario);
+            maxMessages = scenario.getMaxMessages();
+            logger.info("Scenario " + scenario.getName() + ": " + configs.size() + " sessions, " + scenario.getMessages().size() +
+                    " kinds of message in a schedule of " + messageMix.size());
+        } else {
+            for (int i = 0; i < load.getSessions(); i++) {
+                configs.add(loadSessionConfig(i, SmppBindType.TRANSCEIVER, load.getWindowSize(),
+                        clientProperties.getSystemId(), clientProperties.getPassword()));
+            }
+            rateProfile = RateProfile.of(load);
+            PduTemplate template = submitSmTemplate();
+            messageMix = template != null ? MessageMix.of(template) : null;
+            maxMessages = load.getMaxMessages();
+        }
+
+        ScheduledThreadPoolExecutor monitorExecutor = newMonitorExecutor();
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), configs.size(), monitorExecutor, wireTracer);
+
+        LatencyReporter latencyReporter = new LatencyReporter(clientProperties.getLatency());
+        LoadGenerator loadGenerator = new LoadGenerator(clientBootstrap, configs, rateProfile, maxMessages, latencyReporter, messageMix);
+        if (clientProperties.getAdaptive().isEnabled()) {
+            loadGenerator.setAdaptive(clientProperties.getAdaptive());
+        }
+        try {
+            if (worker != null) {
+                worker.run(loadGenerator, latencyReporter);
+            } else {
+                loadGenerator.run();
+            }
+        } finally {
+            logger.info("Shutting down client bootstrap and executors...");
+            clientBootstrap.destroy();
+            monitorExecutor.shutdownNow();
+        }
+
+        logger.info("Done. Exiting");
+    }
+
+    private void runReplay() throws Exception {
+        ClientProperties.Replay replay = clientProperties.getReplay();
+        if (replay.getCapture() == null || replay.getCapture().isEmpty()) {
+            throw new IllegalArgumentException("No capture to replay (smppclient.replay.capture)");
+        }
+        List<SmppSessionConfiguration> configs = new ArrayList<SmppSessionConfiguration>();
+        for (int i = 0; i < replay.getSessions(); i++) {
+            configs.add(loadSessionConfig(i, SmppBindType.TRANSCEIVER, replay.getWindowSize(),
+                    clientProperties.getSystemId(), clientProperties.getPassword()));
+        }
+
+        ScheduledThreadPoolExecutor monitorExecutor = newMonitorExecutor();
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), configs.size(), monitorExecutor, wireTracer);
+        try {
+            new CaptureReplayer(clientBootstrap, configs, new File(replay.getCapture()), replay.getSpeed(),
+                    new LatencyReporter(clientProperties.getLatency())).run();
+        } finally {
+            logger.info("Shutting down client bootstrap and executors...");
+            clientBootstrap.destroy();
+            monitorExecutor.shutdownNow();
+        }
+
+        logger.info("Done. Exiting");
+    }
+
+    private void runFleet() throws Exception {
+        ClientProperties.Fleet fleet = clientProperties.getFleet();
+        List<SmppSessionConfiguration> configs = new ArrayList<SmppSessionConfiguration>();
+        for (int i = 0; i < fleet.getSessions(); i++) {
+            SmppSessionConfiguration config = loadSessionConfig(i, fleet.getBindType(), fleet.getWindowSize(),
+                    clientProperties.getSystemId(), clientProperties.getPassword());
+            // requests are sent from the shared scheduler threads, which must not wait for a full window
+            config.setWindowWaitTimeout(1);
+            // the driver counts for the fleet, per session counters only take memory
+            config.setCountersEnabled(false);
+            configs.add(config);
+        }
+
+        ScheduledThreadPoolExecutor monitorExecutor = newMonitorExecutor();
+        // expected sessions sets the number of Netty I/O threads, shared by the whole fleet
+        int ioThreads = fleet.getIoThreads() > 0 ? fleet.getIoThreads() : 2 * Runtime.getRuntime().availableProcessors();
+        DefaultSmppClient clientBootstrap = new NoDelaySmppClient(Executors.newCachedThreadPool(), ioThreads, monitorExecutor, wireTracer);
+        try {
+            new FleetDriver(clientBootstrap, configs, fleet, clientProperties.getLatency().getReportInterval()).run();
+        } finally {
+            logger.info("Shutting down client bootstrap and executors...");
+            clientBootstrap.destroy();
+            monitorExecutor.shutdownNow();
+        }
+
+        logger.info("Done. Exiting");
+    }
+
+    /**
+     * @return executor for the window monitor of the sessions, can be shared by all sessions of a client bootstrap
+     */
+    private static ScheduledThreadPoolExecutor newMonitorExecutor() {
+        return (ScheduledThreadPoolExecutor)Executors.newScheduledThreadPool(1, new ThreadFactory() {
+            private AtomicInteger sequence = new AtomicInteger(0);
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setName("SmppClientSessionWindowMonitorPool-" + sequence.getAndIncrement());
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @param index number of the session, also picks the listener it connects to
+     */
+    private SmppSessionConfiguration loadSessionConfig(int index, SmppBindType bindType, int windowSize, String systemId, String password) {
+        SmppSessionConfiguration config = new SmppSessionConfiguration();
+        config.setWindowSize(windowSize);
+        config.setName("Tester.Session." + index);
+        config.setType(bindType);
+        config.setHost(clientProperties.getHost());
+        config.setPort(clientProperties.getPort() + index % Math.max(clientProperties.getListeners(), 1));
+        config.setConnectTimeout(10000);
+        config.setSystemId(systemId);
+        config.setPassword(password);
+        config.getLoggingOptions().setLogBytes(false);
+        // to enable monitoring (request expiration)
+        config.setRequestExpiryTimeout(30000);
+        config.setWindowMonitorInterval(15000);
+        config.setCountersEnabled(true);
+        return config;
+    }
+
+    private void runCoordinator() throws Exception {
+        // the workers run the test, the profile is only for the result
+        Scenario scenario = scenario();
+        RateProfile rateProfile = scenario != null ? RateProfile.phases(scenario.getPhases()) : RateProfile.of(clientProperties.getLoad());
+        new ClusterCoordinator(clientProperties.getCluster(), new LatencyReporter(clientProperties.getLatency()))
+                .run(rateProfile.getDescription());
+        logger.info("Done. Exiting");
+    }
+
+    /**
+     * @return the scenario of the load test, or <code>null</code> if none is set
+     */
+    private Scenario scenario() throws Exception {
+        String file = clientProperties.getLoad().getScenario();
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        return Scenario.load(new File(file));
+    }
+
+    /**
+     * @return the submit the perf and load sessions send, encoded once, or <code>null</code>
+     * if templates aren't enabled
+     */
+    private PduTemplate submitSmTemplate() throws Exception {
+        ClientProperties.Template properties = clientProperties.getTemplate();
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        SubmitSm submit = new SubmitSm();
+        submit.setSourceAddress(new Address((byte)0x03, (byte)0x00, "40404"));
+        submit.setDestAddress(new Address((byte)0x01, (byte)0x01, "44555519205"));
+        submit.setShortMessage(CharsetUtil.encode(LoadGenerator.TEXT_160, CharsetUtil.CHARSET_GSM));
+        return new PduTemplate(submit, properties.getVariableDigits());
+    }
+
     @Override
     public void run(String... args) throws Exception {
-        runPerf();
+        ClientProperties.Trace trace = clientProperties.getTrace();
+        TraceEndpoint traceEndpoint = null;
+        if (trace.isEnabled()) {
+            wireTracer = new WireTracer(trace.getCapacity(), trace.getBodyBytes(), trace.getSampleEvery(), trace.getSystemIds());
+            if (trace.getFile() != null && !trace.getFile().isEmpty()) {
+                wireTracer.startWriter(new File(trace.getFile()), trace.getDrainInterval());
+            }
+            if (trace.getHttpPort() > 0) {
+                traceEndpoint = new TraceEndpoint(wireTracer, trace.getHttpPort());
+            }
+        }
+        try {
+            runMode();
+        } finally {
+            if (traceEndpoint != null) {
+                traceEndpoint.stop();
+            }
+            if (wireTracer != null) {
+                wireTracer.close();
+            }
+        }
+    }
+
+    private void runMode() throws Exception {
+        switch (clientProperties.getMode()) {
+            case PERF:
+                runPerf();
+                break;
+            case LOAD:
+                runLoad(null);
+                break;
+            case WORKER:
+                runLoad(new ClusterWorker(clientProperties.getCluster()));
+                break;
+            case COORDINATOR:
+                runCoordinator();
+                break;
+            case SIMPLE:
+                runSimple();
+                break;
+            case REPLAY:
+                runReplay();
+                break;
+            case FLEET:
+                runFleet();
+                break;
+        }
     }
 
     public static void main(String[] args) throws Exception {
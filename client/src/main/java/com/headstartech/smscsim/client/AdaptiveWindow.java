@@ -0,0 +1,153 @@
+package com.headstartech.smscsim.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Congestion control of one session: limits the requests in flight to a window that grows
+ * while the SMSC keeps up and shrinks on throttling, expiries or rising latency, AIMD style.
+ */
+public class AdaptiveWindow {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double increase;
+    private final double decrease;
+    private final double latencyFactor;
+    private final long latencyToleranceNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long holdUntilNanos;
+    private long decreases;
+
+    /**
+     * @param maxLimit the session's window size
+     */
+    public AdaptiveWindow(ClientProperties.Adaptive properties, int maxLimit) {
+        if (properties.getMinWindow() < 1 || properties.getDecrease() <= 0 || properties.getDecrease() >= 1 || properties.getIncrease() <= 0) {
+            throw new IllegalArgumentException("Invalid adaptive window settings");
+        }
+        this.maxLimit = Math.max(maxLimit, 1);
+        this.minLimit = Math.min(properties.getMinWindow(), this.maxLimit);
+        this.increase = properties.getIncrease();
+        this.decrease = properties.getDecrease();
+        this.latencyFactor = properties.getLatencyFactor();
+        this.latencyToleranceNanos = TimeUnit.MILLISECONDS.toNanos(properties.getLatencyTolerance());
+        this.limit = Math.max(minLimit, Math.min(properties.getInitialWindow(), this.maxLimit));
+        this.holdUntilNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits for the number of requests in flight to drop below the limit and takes a slot.
+     *
+     * @return <code>false</code> if no slot was free within {@code timeoutMillis}
+     */
+    public boolean acquire(long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the slot of a request that got a response.
+     *
+     * @param latencyNanos request to response time
+     * @param congested the response was a throttling error
+     */
+    public void responseReceived(long latencyNanos, boolean congested) {
+        lock.lock();
+        try {
+            if (latencyNanos < minLatencyNanos) {
+                minLatencyNanos = latencyNanos;
+            }
+            if (!congested && latencyFactor > 0) {
+                congested = latencyNanos > minLatencyNanos * latencyFactor + latencyToleranceNanos;
+            }
+            release(congested, latencyNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the slot of a request that expired, which counts as congestion.
+     */
+    public void requestExpired() {
+        lock.lock();
+        try {
+            release(true, minLatencyNanos != Long.MAX_VALUE ? minLatencyNanos : 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a slot without a signal, e.g. when the send failed.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            inFlight--;
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return current limit of requests in flight
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times the limit was decreased
+     */
+    public long getDecreases() {
+        lock.lock();
+        try {
+            return decreases;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(boolean congested, long roundTripNanos) {
+        inFlight--;
+        if (congested) {
+            long now = System.nanoTime();
+            if (now - holdUntilNanos >= 0) {
+                limit = Math.max(minLimit, limit * decrease);
+                holdUntilNanos = now + roundTripNanos;
+                decreases++;
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + increase / limit);
+        }
+        if (inFlight < (int) limit) {
+            notFull.signalAll();
+        }
+    }
+}
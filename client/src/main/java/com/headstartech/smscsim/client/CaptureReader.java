@@ -0,0 +1,139 @@
+package com.headstartech.smscsim.client;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a capture written by the server's {@code TrafficCapture}, one
+ * memory-mapped segment at a time, so a capture of any size replays without loading it.
+ */
+public class CaptureReader implements Closeable {
+
+    private static final int MAGIC = 0x534D4350; // "SMCP"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final File[] segments;
+    private int segment = -1;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long startMillis;
+
+    private long offsetNanos;
+    private int stream;
+    private ByteBuffer pdu;
+
+    /**
+     * @throws IOException if {@code directory} has no capture segments
+     */
+    public CaptureReader(File directory) throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().startsWith("capture-") && file.getName().endsWith(".cap");
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new IOException("No capture segments in " + directory);
+        }
+        // zero-padded numbers, so the names sort in segment order
+        Arrays.sort(files);
+        this.segments = files;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return <code>false</code> at the end of the capture
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.remaining() >= 4) {
+                int length = buffer.getInt();
+                if (length >= 12 && length <= buffer.remaining()) {
+                    offsetNanos = buffer.getLong();
+                    stream = buffer.getInt();
+                    int pduLength = length - 12;
+                    pdu = buffer.slice();
+                    pdu.limit(pduLength);
+                    buffer.position(buffer.position() + pduLength);
+                    return true;
+                }
+                // 0, or a record cut short by a crash of the server
+            }
+            if (segment + 1 == segments.length) {
+                closeSegment();
+                return false;
+            }
+            openSegment(segment + 1);
+        }
+    }
+
+    /**
+     * @return arrival time of the current record, nanos since the start of the capture
+     */
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public int getStream() {
+        return stream;
+    }
+
+    /**
+     * @return the PDU of the current record, from its command_length; a view into the mapped
+     * segment, valid until the next call to {@link #next()}
+     */
+    public ByteBuffer getPdu() {
+        return pdu;
+    }
+
+    /**
+     * @return start of the capture, epoch millis; set once the first record is read
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    @Override
+    public void close() {
+        closeSegment();
+    }
+
+    private void openSegment(int index) throws IOException {
+        closeSegment();
+        segment = index;
+        RandomAccessFile file = new RandomAccessFile(segments[index], "r");
+        channel = file.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a capture segment: " + segments[index]);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported capture version " + version + ": " + segments[index]);
+        }
+        buffer.getShort();
+        startMillis = buffer.getLong();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // read-only, nothing lost
+        }
+        channel = null;
+        buffer = null;
+    }
+}
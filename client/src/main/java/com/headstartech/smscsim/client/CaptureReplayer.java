@@ -0,0 +1,279 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.CancelSm;
+import com.cloudhopper.smpp.pdu.DataSm;
+import com.cloudhopper.smpp.pdu.EnquireLink;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.QuerySm;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the requests of a server capture (see {@link CaptureReader}) with their recorded
+ * timing scaled by a speed factor, each recorded session in order on one session.
+ */
+public class CaptureReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureReplayer.class);
+
+    // sends starting later than this after their intended time count as late
+    private static final long LATE_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int COMMAND_ID_OFFSET = 4;
+
+    private final DefaultSmppClient clientBootstrap;
+    private final List<SmppSessionConfiguration> configs;
+    private final File capture;
+    private final double speed;
+    private final LatencyReporter latencyReporter;
+
+    // put in the send window for the replayed PDUs, by command id
+    private final PduRequest submitSm = new SubmitSm();
+    private final PduRequest dataSm = new DataSm();
+    private final PduRequest enquireLink = new EnquireLink();
+    private final PduRequest querySm = new QuerySm();
+    private final PduRequest cancelSm = new CancelSm();
+
+    /**
+     * @param configs one per session
+     * @param capture directory of the segments of one capture run
+     * @param speed 1 for the recorded timing, 2 for twice as fast, ...
+     */
+    public CaptureReplayer(DefaultSmppClient clientBootstrap, List<SmppSessionConfiguration> configs, File capture, double speed,
+                           LatencyReporter latencyReporter) {
+        if (configs.isEmpty() || !(speed > 0)) {
+            throw new IllegalArgumentException("Replay needs at least one session and a speed > 0");
+        }
+        this.clientBootstrap = clientBootstrap;
+        this.configs = configs;
+        this.capture = capture;
+        this.speed = speed;
+        this.latencyReporter = latencyReporter;
+    }
+
+    public LoadResult run() throws Exception {
+        int sessionCount = configs.size();
+        CaptureReader reader = new CaptureReader(capture);
+        ReplaySession[] sessions = new ReplaySession[sessionCount];
+        try {
+            for (int i = 0; i < sessionCount; i++) {
+                sessions[i] = new ReplaySession(configs.get(i), latencyReporter.createRecorder(configs.get(i).getWindowSize()));
+            }
+            logger.info("Binding " + sessionCount + " sessions...");
+            for (ReplaySession session : sessions) {
+                session.bind();
+            }
+
+            String description = "capture " + capture + " at " + speed + "x";
+            logger.info("Starting replay of " + description);
+            latencyReporter.start();
+            long startNanos = System.nanoTime();
+            long firstOffset = -1;
+            long intended = startNanos;
+            long skipped = 0;
+            while (reader.next()) {
+                ByteBuffer pdu = reader.getPdu();
+                PduRequest request = placeholder(pdu.getInt(pdu.position() + COMMAND_ID_OFFSET));
+                if (request == null) {
+                    skipped++;
+                    continue;
+                }
+                if (firstOffset < 0) {
+                    firstOffset = reader.getOffsetNanos();
+                }
+                intended = startNanos + (long) ((reader.getOffsetNanos() - firstOffset) / speed);
+                long now = System.nanoTime();
+                while (now < intended) {
+                    LockSupport.parkNanos(intended - now);
+                    now = System.nanoTime();
+                }
+                sessions[(reader.getStream() & Integer.MAX_VALUE) % sessionCount].send(pdu, request, intended, now - intended);
+            }
+            long scheduledNanos = intended - startNanos;
+
+            for (ReplaySession session : sessions) {
+                session.finish();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            latencyReporter.stop();
+
+            if (skipped > 0) {
+                logger.info("Skipped " + skipped + " captured requests of types that aren't replayed");
+            }
+            LoadResult result = new LoadResult(sessionCount, scheduledNanos, elapsedNanos);
+            for (int i = 0; i < sessionCount; i++) {
+                if (sessions[i].cause != null) {
+                    logger.error("Session #" + i + " failed with exception: " + sessions[i].cause);
+                }
+                sessions[i].addTo(result);
+            }
+            result.log(logger, "Replay finished", description);
+            return result;
+        } finally {
+            reader.close();
+            for (ReplaySession session : sessions) {
+                if (session != null) {
+                    session.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return what to put in the send window for a PDU with {@code commandId}, or
+     * <code>null</code> if it isn't replayed
+     */
+    private PduRequest placeholder(int commandId) {
+        switch (commandId) {
+            case SmppConstants.CMD_ID_SUBMIT_SM:
+                return submitSm;
+            case SmppConstants.CMD_ID_DATA_SM:
+                return dataSm;
+            case SmppConstants.CMD_ID_ENQUIRE_LINK:
+                return enquireLink;
+            case SmppConstants.CMD_ID_QUERY_SM:
+                return querySm;
+            case SmppConstants.CMD_ID_CANCEL_SM:
+                return cancelSm;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * One replay session; sends from the reader thread only.
+     */
+    private class ReplaySession {
+
+        final SmppSessionConfiguration config;
+        final LatencyRecorder latencyRecorder;
+        final long requestTimeout;
+        SmppSession session;
+        TemplateSender sender;
+        Exception cause;
+
+        long sent;
+        long lateCount;
+        long totalLagNanos;
+        long maxLagNanos;
+        long finalLagNanos;
+        final AtomicInteger responses = new AtomicInteger();
+        final AtomicInteger expired = new AtomicInteger();
+        volatile long expectedResponses = -1;
+        final CountDownLatch allResponsesReceivedSignal = new CountDownLatch(1);
+
+        ReplaySession(SmppSessionConfiguration config, LatencyRecorder latencyRecorder) {
+            this.config = config;
+            this.latencyRecorder = latencyRecorder;
+            this.requestTimeout = config.getRequestExpiryTimeout();
+        }
+
+        void bind() throws Exception {
+            session = clientBootstrap.bind(config, new ReplaySessionHandler());
+            // PDUs longer than a typical submit_sm get a buffer of their own
+            sender = new TemplateSender(session, 512);
+        }
+
+        void send(ByteBuffer pdu, PduRequest request, long intended, long lagNanos) {
+            if (cause != null) {
+                return;
+            }
+            finalLagNanos = lagNanos;
+            totalLagNanos += lagNanos;
+            if (lagNanos > maxLagNanos) {
+                maxLagNanos = lagNanos;
+            }
+            if (lagNanos > LATE_THRESHOLD_NANOS) {
+                lateCount++;
+            }
+            try {
+                // measured from the intended send time, so time spent behind schedule counts
+                sender.send(pdu, request, latencyRecorder.requestSent(session, intended), requestTimeout);
+                sent++;
+            } catch (Exception e) {
+                logger.error("", e);
+                cause = e;
+            }
+        }
+
+        /**
+         * Waits for the responses to what was sent and unbinds.
+         */
+        void finish() throws InterruptedException {
+            if (session == null) {
+                return;
+            }
+            expectedResponses = sent;
+            checkDone(responses.get() + expired.get());
+            if (!allResponsesReceivedSignal.await(requestTimeout * 2, TimeUnit.MILLISECONDS)) {
+                logger.warn("Session " + config.getName() + " timed out waiting for responses, window size: " +
+                        session.getSendWindow().getSize());
+            }
+            session.unbind(5000);
+        }
+
+        void destroy() {
+            if (session != null) {
+                session.destroy();
+            }
+        }
+
+        void addTo(LoadResult result) {
+            // each PDU is a message of its own, parts of a concatenated message aren't told apart
+            result.add(cause != null, sent, sent, responses.get(), expired.get(), lateCount, totalLagNanos, maxLagNanos, finalLagNanos);
+        }
+
+        void checkDone(int completed) {
+            long expected = expectedResponses;
+            if (expected >= 0 && completed >= expected) {
+                allResponsesReceivedSignal.countDown();
+            }
+        }
+
+        class ReplaySessionHandler extends DefaultSmppSessionHandler {
+
+            ReplaySessionHandler() {
+                super(logger);
+            }
+
+            @Override
+            public void fireChannelUnexpectedlyClosed() {
+                logger.error("Unexpected close occurred...");
+                allResponsesReceivedSignal.countDown();
+            }
+
+            @Override
+            public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
+                latencyRecorder.responseReceived(pduAsyncResponse.getResponse().getSequenceNumber());
+                checkDone(responses.incrementAndGet() + expired.get());
+            }
+
+            @Override
+            public void firePduRequestExpired(PduRequest pduRequest) {
+                checkDone(expired.incrementAndGet() + responses.get());
+            }
+
+            @Override
+            public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+                // deliver_sm (receipts, MO) and enquire_link from the SMSC
+                return pduRequest.createResponse();
+            }
+        }
+    }
+}
@@ -0,0 +1,789 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppBindType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the perf client.
+ */
+@Component
+@ConfigurationProperties(prefix = "smppclient")
+public class ClientProperties {
+
+    public enum Mode {
+        // fixed number of submits, each session sends as fast as its window allows
+        PERF,
+        // open-loop load generator, see Load
+        LOAD,
+        // interactive single session
+        SIMPLE,
+        // LOAD split across several client processes, see Cluster
+        COORDINATOR,
+        // runs a share of the coordinator's LOAD test
+        WORKER,
+        // sends the requests of a server capture with their recorded timing, see Replay
+        REPLAY,
+        // many mostly idle sessions on a few threads, see Fleet
+        FLEET
+    }
+
+    private Mode mode = Mode.PERF;
+
+    // SMSC to connect to
+    private String host = "127.0.0.1";
+    private int port = 2776;
+    private String systemId = "1234567890";
+    private String password = "password";
+
+    // session i connects to port + i % listeners, for a server with several listeners
+    private int listeners = 1;
+
+    private final Perf perf = new Perf();
+
+    private final Load load = new Load();
+
+    private final Latency latency = new Latency();
+
+    private final Template template = new Template();
+
+    private final Cluster cluster = new Cluster();
+
+    private final Replay replay = new Replay();
+
+    private final Adaptive adaptive = new Adaptive();
+
+    private final Trace trace = new Trace();
+
+    private final Fleet fleet = new Fleet();
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(String systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getListeners() {
+        return listeners;
+    }
+
+    public void setListeners(int listeners) {
+        this.listeners = listeners;
+    }
+
+    public Perf getPerf() {
+        return perf;
+    }
+
+    public Load getLoad() {
+        return load;
+    }
+
+    public Latency getLatency() {
+        return latency;
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Replay getReplay() {
+        return replay;
+    }
+
+    public Adaptive getAdaptive() {
+        return adaptive;
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    public Fleet getFleet() {
+        return fleet;
+    }
+
+    /**
+     * PERF mode settings.
+     */
+    public static class Perf {
+
+        private int sessions = 10;
+        private int windowSize = 50;
+
+        // submits across all sessions
+        private int submits = 20000;
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getSubmits() {
+            return submits;
+        }
+
+        public void setSubmits(int submits) {
+            this.submits = submits;
+        }
+    }
+
+    /**
+     * Open-loop load generator settings. Rates are messages per second across all sessions,
+     * durations are in seconds.
+     */
+    public static class Load {
+
+        // sessions of this process (LOAD and WORKER)
+        private int sessions = 10;
+        private int windowSize = 50;
+
+        private RateProfile.Type profile = RateProfile.Type.STEADY;
+
+        // target rate (STEADY, end of RAMP)
+        private double rate = 1000;
+
+        // rate at the start of RAMP and STEP
+        private double startRate;
+
+        // RAMP
+        private int rampDuration = 10;
+
+        // STEADY, and the steady phase after RAMP
+        private int duration = 30;
+
+        // STEP
+        private double stepRate = 100;
+        private int stepDuration = 10;
+        private int steps = 5;
+
+        // max number of submits across all sessions, 0 for no limit
+        private int maxMessages;
+        // scenario file (YAML), replaces the settings above, see Scenario
+        private String scenario;
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public RateProfile.Type getProfile() {
+            return profile;
+        }
+
+        public void setProfile(RateProfile.Type profile) {
+            this.profile = profile;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public double getStartRate() {
+            return startRate;
+        }
+
+        public void setStartRate(double startRate) {
+            this.startRate = startRate;
+        }
+
+        public int getRampDuration() {
+            return rampDuration;
+        }
+
+        public void setRampDuration(int rampDuration) {
+            this.rampDuration = rampDuration;
+        }
+
+        public int getDuration() {
+            return duration;
+        }
+
+        public void setDuration(int duration) {
+            this.duration = duration;
+        }
+
+        public double getStepRate() {
+            return stepRate;
+        }
+
+        public void setStepRate(double stepRate) {
+            this.stepRate = stepRate;
+        }
+
+        public int getStepDuration() {
+            return stepDuration;
+        }
+
+        public void setStepDuration(int stepDuration) {
+            this.stepDuration = stepDuration;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public void setSteps(int steps) {
+            this.steps = steps;
+        }
+
+        public int getMaxMessages() {
+            return maxMessages;
+        }
+
+        public void setMaxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+        }
+
+        public String getScenario() {
+            return scenario;
+        }
+
+        public void setScenario(String scenario) {
+            this.scenario = scenario;
+        }
+    }
+
+    /**
+     * Latency recording (submit to submit_sm_resp).
+     */
+    public static class Latency {
+
+        // seconds between interval reports
+        private int reportInterval = 5;
+
+        // HdrHistogram log with one histogram per interval, not written if empty
+        private String hlogFile;
+
+        private int significantDigits = 3;
+
+        public int getReportInterval() {
+            return reportInterval;
+        }
+
+        public void setReportInterval(int reportInterval) {
+            this.reportInterval = reportInterval;
+        }
+
+        public String getHlogFile() {
+            return hlogFile;
+        }
+
+        public void setHlogFile(String hlogFile) {
+            this.hlogFile = hlogFile;
+        }
+
+        public int getSignificantDigits() {
+            return significantDigits;
+        }
+
+        public void setSignificantDigits(int significantDigits) {
+            this.significantDigits = significantDigits;
+        }
+    }
+
+    /**
+     * Sending pre-encoded submits (modes PERF and LOAD), see {@link PduTemplate}.
+     */
+    public static class Template {
+
+        // encode the submit once instead of per send
+        private boolean enabled;
+
+        // trailing destination digits that change per send
+        private int variableDigits = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getVariableDigits() {
+            return variableDigits;
+        }
+
+        public void setVariableDigits(int variableDigits) {
+            this.variableDigits = variableDigits;
+        }
+    }
+
+    /**
+     * Load test across several processes (modes COORDINATOR and WORKER). The load settings
+     * of the workers must be the same, except the number of sessions.
+     */
+    public static class Cluster {
+
+        // where the coordinator listens and workers connect to
+        private String coordinatorHost = "127.0.0.1";
+        private int coordinatorPort = 7776;
+
+        // coordinator waits for this many workers
+        private int workers = 2;
+
+        // seconds to wait for the workers to join, and for a worker to reach the coordinator
+        private int joinTimeout = 300;
+
+        // ms between all workers being bound and the start, must cover sending the start signal
+        private long startDelay = 1000;
+
+        public String getCoordinatorHost() {
+            return coordinatorHost;
+        }
+
+        public void setCoordinatorHost(String coordinatorHost) {
+            this.coordinatorHost = coordinatorHost;
+        }
+
+        public int getCoordinatorPort() {
+            return coordinatorPort;
+        }
+
+        public void setCoordinatorPort(int coordinatorPort) {
+            this.coordinatorPort = coordinatorPort;
+        }
+
+        public int getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        public int getJoinTimeout() {
+            return joinTimeout;
+        }
+
+        public void setJoinTimeout(int joinTimeout) {
+            this.joinTimeout = joinTimeout;
+        }
+
+        public long getStartDelay() {
+            return startDelay;
+        }
+
+        public void setStartDelay(long startDelay) {
+            this.startDelay = startDelay;
+        }
+    }
+
+    /**
+     * Replay of a capture recorded by the server (smppserver.capture.*).
+     */
+    public static class Replay {
+
+        // directory of the capture-*.cap files of one capture run
+        private String capture;
+
+        // 1 keeps the recorded timing, 2 sends twice as fast, ...
+        private double speed = 1.0;
+
+        // the recorded sessions are spread over this many TRANSCEIVER sessions
+        private int sessions = 4;
+        private int windowSize = 50;
+
+        public String getCapture() {
+            return capture;
+        }
+
+        public void setCapture(String capture) {
+            this.capture = capture;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        public void setSpeed(double speed) {
+            this.speed = speed;
+        }
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+    }
+
+    /**
+     * Adaptive in-flight limit and retry of throttled requests (modes LOAD and WORKER), see
+     * {@link AdaptiveWindow}. The session window size is the upper bound of the limit.
+     */
+    public static class Adaptive {
+
+        private boolean enabled;
+
+        private int initialWindow = 4;
+        private int minWindow = 1;
+
+        // added to the limit per window of responses
+        private double increase = 1.0;
+        // the limit is multiplied by this on congestion
+        private double decrease = 0.5;
+
+        // a response slower than latencyFactor * lowest latency + latencyTolerance (ms) counts as
+        // congestion, 0 to only go by throttling errors and expiries
+        private double latencyFactor = 2.0;
+        private long latencyTolerance = 5;
+
+        // resends of a request answered with ESME_RTHROTTLED or ESME_RMSGQFUL, 0 for none
+        private int maxRetries = 3;
+        // ms before the first resend, doubled per resend up to maxRetryDelay, with random jitter
+        private long retryDelay = 50;
+        private long maxRetryDelay = 2000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getInitialWindow() {
+            return initialWindow;
+        }
+
+        public void setInitialWindow(int initialWindow) {
+            this.initialWindow = initialWindow;
+        }
+
+        public int getMinWindow() {
+            return minWindow;
+        }
+
+        public void setMinWindow(int minWindow) {
+            this.minWindow = minWindow;
+        }
+
+        public double getIncrease() {
+            return increase;
+        }
+
+        public void setIncrease(double increase) {
+            this.increase = increase;
+        }
+
+        public double getDecrease() {
+            return decrease;
+        }
+
+        public void setDecrease(double decrease) {
+            this.decrease = decrease;
+        }
+
+        public double getLatencyFactor() {
+            return latencyFactor;
+        }
+
+        public void setLatencyFactor(double latencyFactor) {
+            this.latencyFactor = latencyFactor;
+        }
+
+        public long getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(long latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public long getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public long getMaxRetryDelay() {
+            return maxRetryDelay;
+        }
+
+        public void setMaxRetryDelay(long maxRetryDelay) {
+            this.maxRetryDelay = maxRetryDelay;
+        }
+    }
+
+    /**
+     * A fleet of mostly idle ESMEs, see {@code FleetDriver}. Intervals are in milliseconds.
+     */
+    public static class Fleet {
+
+        private int sessions = 1000;
+
+        private SmppBindType bindType = SmppBindType.TRANSCEIVER;
+
+        private int windowSize = 10;
+
+        // binds waiting for their bind response at once
+        private int bindConcurrency = 100;
+
+        // Netty I/O threads shared by all sessions, 0 for 2 per core
+        private int ioThreads;
+
+        // threads sending the enquire_link and submit_sm of all sessions
+        private int schedulerThreads = 2;
+
+        private long enquireLinkInterval = 30000;
+
+        // per session, 0 for no submit_sm
+        private long submitInterval;
+
+        // seconds the fleet stays bound once all sessions bound
+        private int duration = 60;
+
+        public int getSessions() {
+            return sessions;
+        }
+
+        public void setSessions(int sessions) {
+            this.sessions = sessions;
+        }
+
+        public SmppBindType getBindType() {
+            return bindType;
+        }
+
+        public void setBindType(SmppBindType bindType) {
+            this.bindType = bindType;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getBindConcurrency() {
+            return bindConcurrency;
+        }
+
+        public void setBindConcurrency(int bindConcurrency) {
+            this.bindConcurrency = bindConcurrency;
+        }
+
+        public int getIoThreads() {
+            return ioThreads;
+        }
+
+        public void setIoThreads(int ioThreads) {
+            this.ioThreads = ioThreads;
+        }
+
+        public int getSchedulerThreads() {
+            return schedulerThreads;
+        }
+
+        public void setSchedulerThreads(int schedulerThreads) {
+            this.schedulerThreads = schedulerThreads;
+        }
+
+        public long getEnquireLinkInterval() {
+            return enquireLinkInterval;
+        }
+
+        public void setEnquireLinkInterval(long enquireLinkInterval) {
+            this.enquireLinkInterval = enquireLinkInterval;
+        }
+
+        public long getSubmitInterval() {
+            return submitInterval;
+        }
+
+        public void setSubmitInterval(long submitInterval) {
+            this.submitInterval = submitInterval;
+        }
+
+        public int getDuration() {
+            return duration;
+        }
+
+        public void setDuration(int duration) {
+            this.duration = duration;
+        }
+    }
+
+    /**
+     * Sampled tracing of the PDUs on the wire, as on the server (smppserver.trace).
+     */
+    public static class Trace {
+
+        private boolean enabled;
+
+        // trace the PDUs with a sequence number that is a multiple of this, so requests with their responses; 0 for none
+        private int sampleEvery = 1000;
+
+        // systemIds of which every PDU is traced
+        private List<String> systemIds = new ArrayList<String>();
+
+        // records kept in memory, for GET /trace
+        private int capacity = 65536;
+
+        // bytes of the body kept per PDU, after the header
+        private int bodyBytes = 48;
+
+        // file the records are written to, none if empty
+        private String file;
+
+        // ms between writes to the file
+        private long drainInterval = 100;
+
+        // port of the HTTP endpoint GET /trace?seconds=N, none if 0
+        private int httpPort;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSampleEvery() {
+            return sampleEvery;
+        }
+
+        public void setSampleEvery(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+        }
+
+        public List<String> getSystemIds() {
+            return systemIds;
+        }
+
+        public void setSystemIds(List<String> systemIds) {
+            this.systemIds = systemIds;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBodyBytes() {
+            return bodyBytes;
+        }
+
+        public void setBodyBytes(int bodyBytes) {
+            this.bodyBytes = bodyBytes;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public long getDrainInterval() {
+            return drainInterval;
+        }
+
+        public void setDrainInterval(long drainInterval) {
+            this.drainInterval = drainInterval;
+        }
+
+        public int getHttpPort() {
+            return httpPort;
+        }
+
+        public void setHttpPort(int httpPort) {
+            this.httpPort = httpPort;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.headstartech.smscsim.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a load test on several {@link ClusterWorker}s, e.g. client processes on different
+ * hosts, starts them together and reports the merged result.
+ */
+public class ClusterCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    private final ClientProperties.Cluster properties;
+    private final LatencyReporter latencyReporter;
+
+    public ClusterCoordinator(ClientProperties.Cluster properties, LatencyReporter latencyReporter) {
+        this.properties = properties;
+        this.latencyReporter = latencyReporter;
+    }
+
+    /**
+     * @param profile description of the workers' rate profile, for the result
+     */
+    public LoadResult run(String profile) throws Exception {
+        List<Worker> workers = join();
+        try {
+            int totalSessions = 0;
+            for (Worker worker : workers) {
+                totalSessions += worker.sessions;
+            }
+            int sessionOffset = 0;
+            for (int i = 0; i < workers.size(); i++) {
+                Worker worker = workers.get(i);
+                worker.out.writeByte(ClusterProtocol.ASSIGN);
+                worker.out.writeInt(i);
+                worker.out.writeInt(sessionOffset);
+                worker.out.writeInt(totalSessions);
+                worker.out.flush();
+                sessionOffset += worker.sessions;
+            }
+
+            logger.info("Waiting for " + totalSessions + " sessions to bind...");
+            for (int i = 0; i < workers.size(); i++) {
+                byte message = workers.get(i).in.readByte();
+                if (message == ClusterProtocol.FAILED) {
+                    String cause = workers.get(i).in.readUTF();
+                    abort(workers);
+                    throw new Exception("Worker " + i + " failed: " + cause);
+                }
+                ClusterProtocol.expect(ClusterProtocol.READY, message);
+            }
+
+            long startTimeMillis = System.currentTimeMillis() + properties.getStartDelay();
+            for (Worker worker : workers) {
+                worker.socket.setSoTimeout(0);
+                worker.out.writeByte(ClusterProtocol.START);
+                worker.out.writeLong(startTimeMillis);
+                worker.out.flush();
+            }
+            logger.info("All workers ready, starting in " + properties.getStartDelay() + " ms");
+            latencyReporter.start();
+
+            ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+            List<Future<LoadResult>> results = new ArrayList<Future<LoadResult>>();
+            for (final Worker worker : workers) {
+                results.add(executor.submit(new Callable<LoadResult>() {
+                    @Override
+                    public LoadResult call() throws Exception {
+                        return collect(worker);
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            LoadResult merged = new LoadResult();
+            int failedWorkers = 0;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    merged.add(results.get(i).get());
+                } catch (ExecutionException e) {
+                    failedWorkers++;
+                    logger.error("Worker " + i + " failed: " + e.getCause());
+                }
+            }
+            latencyReporter.stop();
+            merged.log(logger, "Cluster load finished (" + workers.size() + " workers, " + failedWorkers + " failed)", profile);
+            return merged;
+        } finally {
+            for (Worker worker : workers) {
+                worker.socket.close();
+            }
+        }
+    }
+
+    private List<Worker> join() throws IOException {
+        List<Worker> workers = new ArrayList<Worker>();
+        ServerSocket serverSocket = new ServerSocket(properties.getCoordinatorPort());
+        try {
+            int joinTimeout = (int) TimeUnit.SECONDS.toMillis(properties.getJoinTimeout());
+            serverSocket.setSoTimeout(joinTimeout);
+            logger.info("Waiting for " + properties.getWorkers() + " workers on port " + properties.getCoordinatorPort() + "...");
+            while (workers.size() < properties.getWorkers()) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(joinTimeout);
+                Worker worker = new Worker(socket);
+                ClusterProtocol.expect(ClusterProtocol.HELLO, worker.in.readByte());
+                worker.sessions = worker.in.readInt();
+                workers.add(worker);
+                logger.info("Worker " + (workers.size() - 1) + " joined from " + socket.getRemoteSocketAddress() + " with " +
+                        worker.sessions + " sessions");
+            }
+        } catch (IOException e) {
+            for (Worker worker : workers) {
+                worker.socket.close();
+            }
+            throw e;
+        } finally {
+            serverSocket.close();
+        }
+        return workers;
+    }
+
+    private LoadResult collect(Worker worker) throws Exception {
+        while (true) {
+            byte message = worker.in.readByte();
+            switch (message) {
+                case ClusterProtocol.INTERVAL:
+                    latencyReporter.add(ClusterProtocol.readHistogram(worker.in));
+                    break;
+                case ClusterProtocol.RESULT:
+                    return LoadResult.readFrom(worker.in);
+                case ClusterProtocol.FAILED:
+                    throw new Exception(worker.in.readUTF());
+                default:
+                    throw new IOException("Unexpected message " + message);
+            }
+        }
+    }
+
+    private static void abort(List<Worker> workers) {
+        for (Worker worker : workers) {
+            try {
+                worker.out.writeByte(ClusterProtocol.ABORT);
+                worker.out.flush();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    private static class Worker {
+
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        int sessions;
+
+        Worker(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.headstartech.smscsim.client;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages between {@link ClusterCoordinator} and {@link ClusterWorker}, over one TCP
+ * connection per worker: a type byte followed by its fields.
+ */
+final class ClusterProtocol {
+
+    // worker -> coordinator: int sending sessions
+    static final byte HELLO = 1;
+    // coordinator -> worker: int workerIndex, int sessionOffset, int totalSessions
+    static final byte ASSIGN = 2;
+    // worker -> coordinator: all sessions bound
+    static final byte READY = 3;
+    // worker -> coordinator: UTF message
+    static final byte FAILED = 4;
+    // coordinator -> worker: long start time, wall clock millis
+    static final byte START = 5;
+    // coordinator -> worker
+    static final byte ABORT = 6;
+    // worker -> coordinator: long start, long end, int length, compressed histogram
+    static final byte INTERVAL = 7;
+    // worker -> coordinator: LoadResult
+    static final byte RESULT = 8;
+
+    private ClusterProtocol() {
+    }
+
+    static void writeHistogram(DataOutput out, Histogram histogram) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        out.writeLong(histogram.getStartTimeStamp());
+        out.writeLong(histogram.getEndTimeStamp());
+        out.writeInt(length);
+        out.write(buffer.array(), 0, length);
+    }
+
+    static Histogram readHistogram(DataInput in) throws IOException {
+        long start = in.readLong();
+        long end = in.readLong();
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        Histogram histogram;
+        try {
+            histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), LatencyRecorder.HIGHEST_TRACKABLE_VALUE);
+        } catch (Exception e) {
+            throw new IOException("Invalid histogram", e);
+        }
+        histogram.setStartTimeStamp(start);
+        histogram.setEndTimeStamp(end);
+        return histogram;
+    }
+
+    static void expect(byte expected, byte actual) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected message " + actual + ", expected " + expected);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.headstartech.smscsim.client;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a share of a load test for a {@link ClusterCoordinator}. The start time is wall clock,
+ * so workers on different hosts need synchronized clocks.
+ */
+public class ClusterWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterWorker.class);
+
+    private final ClientProperties.Cluster properties;
+
+    public ClusterWorker(ClientProperties.Cluster properties) {
+        this.properties = properties;
+    }
+
+    public LoadResult run(LoadGenerator loadGenerator, LatencyReporter latencyReporter) throws Exception {
+        Socket socket = connect();
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            int sessionCount = loadGenerator.getSendingSessions();
+            out.writeByte(ClusterProtocol.HELLO);
+            out.writeInt(sessionCount);
+            out.flush();
+            ClusterProtocol.expect(ClusterProtocol.ASSIGN, in.readByte());
+            int workerIndex = in.readInt();
+            int sessionOffset = in.readInt();
+            int totalSessions = in.readInt();
+            logger.info("Joined as worker " + workerIndex + ", sessions " + sessionOffset + "-" + (sessionOffset + sessionCount - 1) +
+                    " of " + totalSessions);
+            loadGenerator.setShare(sessionOffset, totalSessions);
+
+            latencyReporter.setIntervalListener(new LatencyReporter.IntervalListener() {
+                @Override
+                public void intervalReported(Histogram interval) {
+                    try {
+                        synchronized (out) {
+                            out.writeByte(ClusterProtocol.INTERVAL);
+                            ClusterProtocol.writeHistogram(out, interval);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Failed to send latency interval to coordinator: " + e);
+                    }
+                }
+            });
+
+            LoadResult result;
+            try {
+                result = loadGenerator.run(new LoadGenerator.StartBarrier() {
+                    @Override
+                    public long awaitStart() throws Exception {
+                        synchronized (out) {
+                            out.writeByte(ClusterProtocol.READY);
+                            out.flush();
+                        }
+                        byte message = in.readByte();
+                        if (message == ClusterProtocol.ABORT) {
+                            throw new Exception("Test aborted by coordinator");
+                        }
+                        ClusterProtocol.expect(ClusterProtocol.START, message);
+                        long startTimeMillis = in.readLong();
+                        logger.info("Start in " + (startTimeMillis - System.currentTimeMillis()) + " ms");
+                        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(startTimeMillis - System.currentTimeMillis());
+                    }
+                });
+            } catch (Exception e) {
+                synchronized (out) {
+                    out.writeByte(ClusterProtocol.FAILED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                    out.flush();
+                }
+                throw e;
+            }
+
+            synchronized (out) {
+                out.writeByte(ClusterProtocol.RESULT);
+                result.writeTo(out);
+                out.flush();
+            }
+            return result;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect() throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(properties.getJoinTimeout());
+        logger.info("Joining coordinator " + properties.getCoordinatorHost() + ":" + properties.getCoordinatorPort());
+        while (true) {
+            try {
+                Socket socket = new Socket(properties.getCoordinatorHost(), properties.getCoordinatorPort());
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.commons.util.DecimalUtil;
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.EnquireLink;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binds a fleet of mostly idle sessions, each sending an enquire_link and optionally a
+ * submit_sm every interval from a few shared scheduler threads, and reports bind and request
+ * latency and the memory the sessions take.
+ */
+public class FleetDriver {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetDriver.class);
+
+    // bind failures logged one by one, the rest are only counted
+    private static final int LOGGED_FAILURES = 10;
+
+    private static final Address SOURCE = new Address((byte) 0x03, (byte) 0x00, "40404");
+    private static final Address DESTINATION = new Address((byte) 0x01, (byte) 0x01, "44555519205");
+    private static final byte[] TEXT = CharsetUtil.encode("Fleet status report", CharsetUtil.CHARSET_GSM);
+
+    private final DefaultSmppClient clientBootstrap;
+    private final List<SmppSessionConfiguration> configs;
+    private final ClientProperties.Fleet properties;
+    private final int reportInterval;
+
+    private final ConcurrentHistogram bindLatency = new ConcurrentHistogram(LatencyRecorder.HIGHEST_TRACKABLE_VALUE, 3);
+    private final Traffic enquireLinks = new Traffic();
+    private final Traffic submits = new Traffic();
+    private final AtomicInteger bound = new AtomicInteger();
+    private final AtomicInteger bindFailures = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    /**
+     * @param configs one per session
+     * @param reportInterval seconds between progress reports
+     */
+    public FleetDriver(DefaultSmppClient clientBootstrap, List<SmppSessionConfiguration> configs, ClientProperties.Fleet properties,
+                       int reportInterval) {
+        this.clientBootstrap = clientBootstrap;
+        this.configs = configs;
+        this.properties = properties;
+        this.reportInterval = reportInterval;
+    }
+
+    public void run() throws InterruptedException {
+        ExecutorService binder = Executors.newFixedThreadPool(Math.max(properties.getBindConcurrency(), 1),
+                new ThreadFactoryBuilder().setNameFormat("FleetBinder-%d").build());
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(Math.max(properties.getSchedulerThreads(), 1),
+                new ThreadFactoryBuilder().setNameFormat("FleetScheduler-%d").build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        FleetSession[] sessions = new FleetSession[configs.size()];
+        try {
+            long heapBefore = usedHeap();
+            logger.info("Binding " + sessions.length + " sessions, " + properties.getBindConcurrency() + " at a time...");
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    logger.info("Fleet: " + progress());
+                }
+            }, reportInterval, reportInterval, TimeUnit.SECONDS);
+
+            long bindStartNanos = System.nanoTime();
+            for (int i = 0; i < sessions.length; i++) {
+                final FleetSession session = new FleetSession(configs.get(i), scheduler);
+                sessions[i] = session;
+                binder.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        session.bind();
+                    }
+                });
+            }
+            binder.shutdown();
+            binder.awaitTermination(1, TimeUnit.DAYS);
+            long bindNanos = System.nanoTime() - bindStartNanos;
+            long heapPerSession = bound.get() > 0 ? (usedHeap() - heapBefore) / bound.get() : 0;
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            logger.info("Fleet bound in " + TimeUnit.NANOSECONDS.toMillis(bindNanos) + " ms: " + progress());
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(properties.getDuration()));
+
+            logger.info("Unbinding...");
+            ExecutorService unbinder = Executors.newFixedThreadPool(Math.max(properties.getBindConcurrency(), 1),
+                    new ThreadFactoryBuilder().setNameFormat("FleetUnbinder-%d").build());
+            for (final FleetSession session : sessions) {
+                session.stop();
+                unbinder.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        session.unbind();
+                    }
+                });
+            }
+            unbinder.shutdown();
+            unbinder.awaitTermination(1, TimeUnit.DAYS);
+
+            double bindSeconds = (double) bindNanos / TimeUnit.SECONDS.toNanos(1);
+            logger.info("Fleet finished:");
+            logger.info("          Sessions: " + sessions.length);
+            logger.info("             Bound: " + bindLatency.getTotalCount() + " in " + TimeUnit.NANOSECONDS.toMillis(bindNanos) + " ms (" +
+                    DecimalUtil.toString(bindSeconds > 0 ? bindLatency.getTotalCount() / bindSeconds : 0, 1) + " per sec)");
+            logger.info("     Bind Failures: " + bindFailures.get());
+            logger.info("   Closed by SMSC: " + closed.get());
+            logger.info("      Bind Latency: " + format(bindLatency));
+            logger.info("      Enquire Link: " + enquireLinks);
+            logger.info("         Submit SM: " + submits);
+            logger.info("  Heap per Session: " + DecimalUtil.toString(heapPerSession / 1024.0, 1) + " KB");
+            logger.info("   Threads (bound): " + threads + " (peak " + ManagementFactory.getThreadMXBean().getPeakThreadCount() + ")");
+        } finally {
+            binder.shutdownNow();
+            scheduler.shutdownNow();
+            for (FleetSession session : sessions) {
+                if (session != null) {
+                    session.destroy();
+                }
+            }
+        }
+    }
+
+    private String progress() {
+        return "bound=" + bound.get() + " bindFailures=" + bindFailures.get() + " closed=" + closed.get() +
+                " bindLatency(" + format(bindLatency) + ") enquireLink(" + enquireLinks + ") submitSm(" + submits + ")";
+    }
+
+    /**
+     * @return bytes of heap in use after a full GC, as far as {@link System#gc()} gets there
+     */
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String format(Histogram histogram) {
+        return "count=" + histogram.getTotalCount() +
+                " p50=" + millis(histogram.getValueAtPercentile(50.0)) +
+                " p99=" + millis(histogram.getValueAtPercentile(99.0)) +
+                " p99.9=" + millis(histogram.getValueAtPercentile(99.9)) +
+                " max=" + millis(histogram.getMaxValue()) + " ms";
+    }
+
+    private static String millis(long micros) {
+        return DecimalUtil.toString(micros / 1000.0, 3);
+    }
+
+    /**
+     * Counters and latency of one request type, across the fleet.
+     */
+    private static class Traffic {
+
+        final LongAdder sent = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder responses = new LongAdder();
+        final LongAdder expired = new LongAdder();
+        final ConcurrentHistogram latency = new ConcurrentHistogram(LatencyRecorder.HIGHEST_TRACKABLE_VALUE, 3);
+
+        @Override
+        public String toString() {
+            return "sent=" + sent.sum() + " failed=" + failed.sum() + " responses=" + responses.sum() + " expired=" + expired.sum() +
+                    " " + format(latency);
+        }
+    }
+
+    /**
+     * One session: its handler, and its requests scheduled on the shared scheduler.
+     */
+    private class FleetSession extends DefaultSmppSessionHandler {
+
+        final SmppSessionConfiguration config;
+        final ScheduledThreadPoolExecutor scheduler;
+        volatile SmppSession session;
+        volatile ScheduledFuture<?> enquireLinkTask;
+        volatile ScheduledFuture<?> submitTask;
+
+        FleetSession(SmppSessionConfiguration config, ScheduledThreadPoolExecutor scheduler) {
+            super(logger);
+            this.config = config;
+            this.scheduler = scheduler;
+        }
+
+        void bind() {
+            long startNanos = System.nanoTime();
+            try {
+                session = clientBootstrap.bind(config, this);
+            } catch (Exception e) {
+                if (bindFailures.incrementAndGet() <= LOGGED_FAILURES) {
+                    logger.warn("Bind of " + config.getName() + " failed: " + e);
+                }
+                return;
+            }
+            bindLatency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), LatencyRecorder.HIGHEST_TRACKABLE_VALUE));
+            bound.incrementAndGet();
+
+            long interval = properties.getEnquireLinkInterval();
+            if (interval > 0) {
+                enquireLinkTask = scheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(new EnquireLink(), enquireLinks);
+                    }
+                }, ThreadLocalRandom.current().nextLong(interval), interval, TimeUnit.MILLISECONDS);
+            }
+            interval = properties.getSubmitInterval();
+            if (interval > 0 && config.getType() != SmppBindType.RECEIVER) {
+                submitTask = scheduler.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        SubmitSm submit = new SubmitSm();
+                        submit.setSourceAddress(SOURCE);
+                        submit.setDestAddress(DESTINATION);
+                        try {
+                            submit.setShortMessage(TEXT);
+                        } catch (Exception e) {
+                            submits.failed.increment();
+                            return;
+                        }
+                        send(submit, submits);
+                    }
+                }, ThreadLocalRandom.current().nextLong(interval), interval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void send(PduRequest request, Traffic traffic) {
+            SmppSession current = session;
+            if (current == null || !current.isBound()) {
+                return;
+            }
+            request.setReferenceObject(System.nanoTime());
+            try {
+                current.sendRequestPdu(request, config.getRequestExpiryTimeout(), false);
+                traffic.sent.increment();
+            } catch (Exception e) {
+                traffic.failed.increment();
+            }
+        }
+
+        void stop() {
+            ScheduledFuture<?> task = enquireLinkTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+            task = submitTask;
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+
+        void unbind() {
+            SmppSession current = session;
+            if (current != null && current.isBound()) {
+                current.unbind(5000);
+            }
+        }
+
+        void destroy() {
+            SmppSession current = session;
+            if (current != null) {
+                current.destroy();
+            }
+        }
+
+        @Override
+        public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
+            PduRequest request = pduAsyncResponse.getRequest();
+            Traffic traffic = request.getCommandId() == SmppConstants.CMD_ID_ENQUIRE_LINK ? enquireLinks : submits;
+            traffic.responses.increment();
+            if (request.getReferenceObject() instanceof Long) {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - (Long) request.getReferenceObject());
+                traffic.latency.recordValue(Math.min(micros, LatencyRecorder.HIGHEST_TRACKABLE_VALUE));
+            }
+        }
+
+        @Override
+        public void firePduRequestExpired(PduRequest pduRequest) {
+            (pduRequest.getCommandId() == SmppConstants.CMD_ID_ENQUIRE_LINK ? enquireLinks : submits).expired.increment();
+        }
+
+        @Override
+        public void fireChannelUnexpectedlyClosed() {
+            closed.incrementAndGet();
+            stop();
+        }
+
+        @Override
+        public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+            // deliver_sm (receipts, MO) and enquire_link from the SMSC
+            return pduRequest.createResponse();
+        }
+    }
+}
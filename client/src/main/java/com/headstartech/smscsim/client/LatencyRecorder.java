@@ -0,0 +1,73 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.impl.DefaultSmppSession;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records request to response latency of one session into an HdrHistogram {@link Recorder},
+ * with the start times in a ring indexed by sequence number.
+ */
+public class LatencyRecorder {
+
+    // latencies are recorded in microseconds
+    public static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toMicros(10);
+
+    private final Recorder recorder;
+    private final long[] startTimes;
+    private final int mask;
+    private Histogram recycled;
+
+    /**
+     * @param maxInFlight max number of outstanding requests (i.e. the window size)
+     */
+    public LatencyRecorder(int maxInFlight, int significantDigits) {
+        int size = Integer.highestOneBit(Math.max(maxInFlight * 4, 1024) - 1) << 1;
+        this.startTimes = new long[size];
+        this.mask = size - 1;
+        this.recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, significantDigits);
+    }
+
+    /**
+     * Assigns the next sequence number of {@code session} to {@code request} and remembers
+     * {@code startNanos} for it. Must be called before the request is sent.
+     *
+     * @param startNanos {@link System#nanoTime()} the latency is measured from
+     */
+    public void requestSent(SmppSession session, PduRequest request, long startNanos) {
+        request.setSequenceNumber(requestSent(session, startNanos));
+    }
+
+    /**
+     * Like {@link #requestSent(SmppSession, PduRequest, long)}, for requests sent without a
+     * {@link PduRequest} (see {@link TemplateSender}).
+     *
+     * @return the sequence number to send the request with
+     */
+    public int requestSent(SmppSession session, long startNanos) {
+        int sequenceNumber = ((DefaultSmppSession) session).getSequenceNumber().next();
+        startTimes[sequenceNumber & mask] = startNanos;
+        return sequenceNumber;
+    }
+
+    /**
+     * @return the latency recorded, in nanos
+     */
+    public long responseReceived(int sequenceNumber) {
+        long latencyNanos = System.nanoTime() - startTimes[sequenceNumber & mask];
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_VALUE));
+        return latencyNanos;
+    }
+
+    /**
+     * @return latencies recorded since the previous call; only valid until the next call
+     */
+    public synchronized Histogram getIntervalHistogram() {
+        recycled = recorder.getIntervalHistogram(recycled);
+        return recycled;
+    }
+}
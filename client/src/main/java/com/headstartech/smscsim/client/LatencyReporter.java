@@ -0,0 +1,169 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.util.DecimalUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically merges the {@link LatencyRecorder}s of all sessions, logs the interval and
+ * optionally writes it to an HdrHistogram log (.hlog).
+ */
+public class LatencyReporter {
+
+    /**
+     * Gets every interval histogram, on the reporting thread. The histogram is only valid
+     * during the call.
+     */
+    public interface IntervalListener {
+
+        void intervalReported(Histogram interval);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(LatencyReporter.class);
+
+    private final ClientProperties.Latency properties;
+    private final List<LatencyRecorder> recorders = new CopyOnWriteArrayList<LatencyRecorder>();
+    private final Histogram interval;
+    private final Histogram total;
+    private Histogram received;
+    private IntervalListener intervalListener;
+    private ScheduledExecutorService executor;
+    private PrintStream logStream;
+    private HistogramLogWriter logWriter;
+
+    public LatencyReporter(ClientProperties.Latency properties) {
+        this.properties = properties;
+        this.interval = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_VALUE, properties.getSignificantDigits());
+        this.total = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_VALUE, properties.getSignificantDigits());
+    }
+
+    public LatencyRecorder createRecorder(int maxInFlight) {
+        LatencyRecorder recorder = new LatencyRecorder(maxInFlight, properties.getSignificantDigits());
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    public void setIntervalListener(IntervalListener intervalListener) {
+        this.intervalListener = intervalListener;
+    }
+
+    /**
+     * Adds {@code histogram} to the current interval.
+     */
+    public synchronized void add(Histogram histogram) {
+        if (received == null) {
+            received = new Histogram(LatencyRecorder.HIGHEST_TRACKABLE_VALUE, properties.getSignificantDigits());
+            received.setStartTimeStamp(Long.MAX_VALUE);
+        }
+        received.add(histogram);
+        received.setStartTimeStamp(Math.min(received.getStartTimeStamp(), histogram.getStartTimeStamp()));
+        received.setEndTimeStamp(Math.max(received.getEndTimeStamp(), histogram.getEndTimeStamp()));
+    }
+
+    public synchronized void start() throws FileNotFoundException {
+        // discard anything recorded before the start
+        for (LatencyRecorder recorder : recorders) {
+            recorder.getIntervalHistogram();
+        }
+        long now = System.currentTimeMillis();
+        total.reset();
+        total.setStartTimeStamp(now);
+        if (properties.getHlogFile() != null && !properties.getHlogFile().isEmpty()) {
+            logStream = new PrintStream(properties.getHlogFile());
+            logWriter = new HistogramLogWriter(logStream);
+            logWriter.outputLogFormatVersion();
+            logWriter.outputStartTime(now);
+            logWriter.setBaseTime(now);
+            logWriter.outputLegend();
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("LatencyReporter-%d").setDaemon(true).build());
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, properties.getReportInterval(), properties.getReportInterval(), TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        report();
+        if (logStream != null) {
+            logStream.close();
+            logStream = null;
+            logWriter = null;
+        }
+        total.setEndTimeStamp(System.currentTimeMillis());
+        logger.info("Latency (submit -> submit_sm_resp) total: " + format(total));
+    }
+
+    /**
+     * @return copy of everything recorded between {@link #start()} and {@link #stop()}, in
+     * microseconds
+     */
+    public synchronized Histogram getTotal() {
+        return total.copy();
+    }
+
+    private synchronized void report() {
+        if (recorders.isEmpty() && received == null) {
+            return;
+        }
+        interval.reset();
+        long start = Long.MAX_VALUE;
+        long end = 0;
+        for (LatencyRecorder recorder : recorders) {
+            Histogram histogram = recorder.getIntervalHistogram();
+            interval.add(histogram);
+            start = Math.min(start, histogram.getStartTimeStamp());
+            end = Math.max(end, histogram.getEndTimeStamp());
+        }
+        if (received != null && received.getTotalCount() > 0) {
+            interval.add(received);
+            start = Math.min(start, received.getStartTimeStamp());
+            end = Math.max(end, received.getEndTimeStamp());
+            received.reset();
+            received.setStartTimeStamp(Long.MAX_VALUE);
+            received.setEndTimeStamp(0);
+        }
+        if (start == Long.MAX_VALUE) {
+            start = end = System.currentTimeMillis();
+        }
+        interval.setStartTimeStamp(start);
+        interval.setEndTimeStamp(end);
+        total.add(interval);
+        if (intervalListener != null) {
+            intervalListener.intervalReported(interval);
+        }
+        if (logWriter != null) {
+            logWriter.outputIntervalHistogram(interval);
+        }
+        logger.info("Latency (submit -> submit_sm_resp) interval: " + format(interval));
+    }
+
+    private static String format(Histogram histogram) {
+        return "count=" + histogram.getTotalCount() +
+                " p50=" + millis(histogram.getValueAtPercentile(50.0)) +
+                " p99=" + millis(histogram.getValueAtPercentile(99.0)) +
+                " p99.9=" + millis(histogram.getValueAtPercentile(99.9)) +
+                " max=" + millis(histogram.getMaxValue()) + " ms";
+    }
+
+    private static String millis(long micros) {
+        return DecimalUtil.toString(micros / 1000.0, 3);
+    }
+}
@@ -0,0 +1,168 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open-loop load generator: binds the sessions, sends according to a {@link RateProfile}
+ * and reports how well the target schedule was kept.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    // text of the submit_sm the perf, load and simple modes send, 160 GSM characters
+    public static final String TEXT_160 = "\u20AC Lorem [ipsum] dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, nibh diam ornare est, vitae accumsan risus lacus sed sem metus.";
+
+    /**
+     * Decides when the sessions start sending, once they are all bound.
+     */
+    public interface StartBarrier {
+
+        /**
+         * @return the start time, {@link System#nanoTime()}; may be in the future
+         */
+        long awaitStart() throws Exception;
+    }
+
+    private static final StartBarrier START_NOW = new StartBarrier() {
+        @Override
+        public long awaitStart() {
+            return System.nanoTime();
+        }
+    };
+
+    private final DefaultSmppClient clientBootstrap;
+    private final List<SmppSessionConfiguration> configs;
+    private final RateProfile rateProfile;
+    private final int maxMessages;
+    private final LatencyReporter latencyReporter;
+    private final MessageMix messageMix;
+    private final int sendingSessions;
+    private int sessionOffset;
+    private int totalSessions;
+    private ClientProperties.Adaptive adaptive;
+
+    /**
+     * @param configs one per session
+     * @param maxMessages max number of PDUs across all sessions of the test, 0 for no limit
+     * @param messageMix pre-encoded messages to send, or <code>null</code> to build a submit
+     *                   per send
+     */
+    public LoadGenerator(DefaultSmppClient clientBootstrap, List<SmppSessionConfiguration> configs, RateProfile rateProfile, int maxMessages,
+                         LatencyReporter latencyReporter, MessageMix messageMix) {
+        this.clientBootstrap = clientBootstrap;
+        this.configs = configs;
+        this.rateProfile = rateProfile;
+        this.maxMessages = maxMessages;
+        this.latencyReporter = latencyReporter;
+        this.messageMix = messageMix;
+        int sending = 0;
+        for (SmppSessionConfiguration config : configs) {
+            if (config.getType() != SmppBindType.RECEIVER) {
+                sending++;
+            }
+        }
+        this.sendingSessions = sending;
+        this.totalSessions = sending;
+    }
+
+    /**
+     * Runs only part of the sessions of a test.
+     */
+    public void setShare(int sessionOffset, int totalSessions) {
+        this.sessionOffset = sessionOffset;
+        this.totalSessions = totalSessions;
+    }
+
+    /**
+     * Sends through an {@link AdaptiveWindow} per session instead of up to the session window.
+     */
+    public void setAdaptive(ClientProperties.Adaptive adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return number of sessions of this generator that send, all but RECEIVER
+     */
+    public int getSendingSessions() {
+        return sendingSessions;
+    }
+
+    public LoadResult run() throws Exception {
+        return run(START_NOW);
+    }
+
+    public LoadResult run(StartBarrier startBarrier) throws Exception {
+        int sessionCount = configs.size();
+        CountDownLatch allSessionsBoundSignal = new CountDownLatch(sessionCount);
+        CountDownLatch startSendingSignal = new CountDownLatch(1);
+
+        ExecutorService taskExecutor = Executors.newFixedThreadPool(sessionCount);
+        LoadSessionTask[] tasks = new LoadSessionTask[sessionCount];
+        int sessionIndex = sessionOffset;
+        for (int i = 0; i < sessionCount; i++) {
+            SmppSessionConfiguration config = configs.get(i);
+            int quota = 0;
+            if (config.getType() != SmppBindType.RECEIVER) {
+                quota = quota(maxMessages, totalSessions, sessionIndex);
+            }
+            tasks[i] = new LoadSessionTask(allSessionsBoundSignal, startSendingSignal, clientBootstrap, config, rateProfile,
+                    totalSessions, sessionIndex, quota, latencyReporter.createRecorder(config.getWindowSize()), messageMix, adaptive);
+            if (config.getType() != SmppBindType.RECEIVER) {
+                sessionIndex++;
+            }
+            taskExecutor.submit(tasks[i]);
+        }
+
+        logger.info("Waiting up to 7 seconds for all sessions to bind...");
+        if (!allSessionsBoundSignal.await(7000, TimeUnit.MILLISECONDS)) {
+            taskExecutor.shutdownNow();
+            throw new Exception("One or more sessions were unable to bind, cancelling test");
+        }
+
+        long startNanos = startBarrier.awaitStart();
+        logger.info("Sending signal to start load: profile " + rateProfile.getDescription() + ", " +
+                TimeUnit.NANOSECONDS.toSeconds(rateProfile.getDurationNanos()) + " s");
+        latencyReporter.start();
+        for (LoadSessionTask task : tasks) {
+            task.setStartNanos(startNanos);
+        }
+        startSendingSignal.countDown();
+
+        taskExecutor.shutdown();
+        taskExecutor.awaitTermination(3, TimeUnit.DAYS);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        latencyReporter.stop();
+
+        LoadResult result = new LoadResult(sessionCount, rateProfile.getDurationNanos(), elapsedNanos);
+        for (int i = 0; i < tasks.length; i++) {
+            if (tasks[i].getCause() != null) {
+                logger.error("Task #" + i + " failed with exception: " + tasks[i].getCause());
+            }
+            result.add(tasks[i]);
+        }
+        result.log(logger, "Load generator finished", rateProfile.getDescription());
+        return result;
+    }
+
+    /**
+     * @return share of {@code total} for session {@code index}, {@link Integer#MAX_VALUE} if
+     * {@code total} is 0 (no limit)
+     */
+    public static int quota(int total, int sessionCount, int index) {
+        if (total == 0) {
+            return Integer.MAX_VALUE;
+        }
+        return total / sessionCount + (index < total % sessionCount ? 1 : 0);
+    }
+}
@@ -0,0 +1,149 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.util.DecimalUtil;
+import org.slf4j.Logger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters of a load generator run; results of several workers are merged with
+ * {@link #add(LoadResult)}.
+ */
+public class LoadResult {
+
+    private int sessions;
+    private int sessionFailures;
+    private long sent;
+    private long messages;
+    private long responses;
+    private long expired;
+    private long throttled;
+    private long retried;
+    private long late;
+    private long totalLagNanos;
+    private long maxLagNanos;
+    private long maxFinalLagNanos;
+    private long elapsedNanos;
+    private long scheduledNanos;
+
+    public LoadResult() {
+    }
+
+    public LoadResult(int sessions, long scheduledNanos, long elapsedNanos) {
+        this.sessions = sessions;
+        this.scheduledNanos = scheduledNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public void add(LoadSessionTask task) {
+        add(task.getCause() != null, task.getSent(), task.getMessages(), task.getResponses(), task.getExpired(), task.getLateCount(),
+                task.getTotalLagNanos(), task.getMaxLagNanos(), task.getFinalLagNanos());
+        throttled += task.getThrottled();
+        retried += task.getRetried();
+    }
+
+    /**
+     * Adds the counters of one session.
+     */
+    public void add(boolean failed, long sent, long messages, long responses, long expired, long late, long totalLagNanos, long maxLagNanos,
+                    long finalLagNanos) {
+        if (failed) {
+            sessionFailures++;
+        }
+        this.sent += sent;
+        this.messages += messages;
+        this.responses += responses;
+        this.expired += expired;
+        this.late += late;
+        this.totalLagNanos += totalLagNanos;
+        this.maxLagNanos = Math.max(this.maxLagNanos, maxLagNanos);
+        this.maxFinalLagNanos = Math.max(this.maxFinalLagNanos, finalLagNanos);
+    }
+
+    public void add(LoadResult other) {
+        sessions += other.sessions;
+        sessionFailures += other.sessionFailures;
+        sent += other.sent;
+        messages += other.messages;
+        responses += other.responses;
+        expired += other.expired;
+        throttled += other.throttled;
+        retried += other.retried;
+        late += other.late;
+        totalLagNanos += other.totalLagNanos;
+        maxLagNanos = Math.max(maxLagNanos, other.maxLagNanos);
+        maxFinalLagNanos = Math.max(maxFinalLagNanos, other.maxFinalLagNanos);
+        // the workers ran at the same time
+        elapsedNanos = Math.max(elapsedNanos, other.elapsedNanos);
+        scheduledNanos = Math.max(scheduledNanos, other.scheduledNanos);
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public int getSessionFailures() {
+        return sessionFailures;
+    }
+
+    public void log(Logger logger, String title, String profile) {
+        double seconds = (double) elapsedNanos / TimeUnit.SECONDS.toNanos(1);
+        logger.info(title + ":");
+        logger.info("        Sessions: " + sessions);
+        logger.info(" Sessions Failed: " + sessionFailures);
+        logger.info("         Profile: " + profile);
+        logger.info("            Time: " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms (scheduled " +
+                TimeUnit.NANOSECONDS.toMillis(scheduledNanos) + " ms)");
+        logger.info("       PDUs Sent: " + sent);
+        logger.info("        Messages: " + messages);
+        logger.info("       Responses: " + responses);
+        logger.info("         Expired: " + expired);
+        if (throttled > 0 || retried > 0) {
+            logger.info("       Throttled: " + throttled + " (" + retried + " resent)");
+        }
+        logger.info("      Throughput: " + DecimalUtil.toString(seconds > 0 ? sent / seconds : 0, 3) + " per sec");
+        logger.info("       Late Sent: " + late + " (" + DecimalUtil.toString(sent > 0 ? 100.0 * late / sent : 0, 2) + "%)");
+        logger.info("        Mean Lag: " + DecimalUtil.toString(sent > 0 ? (double) totalLagNanos / sent / 1000000 : 0, 3) + " ms");
+        logger.info("         Max Lag: " + DecimalUtil.toString((double) maxLagNanos / 1000000, 3) + " ms");
+        logger.info("Behind at finish: " + DecimalUtil.toString((double) maxFinalLagNanos / 1000000, 3) + " ms");
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(sessions);
+        out.writeInt(sessionFailures);
+        out.writeLong(sent);
+        out.writeLong(messages);
+        out.writeLong(responses);
+        out.writeLong(expired);
+        out.writeLong(throttled);
+        out.writeLong(retried);
+        out.writeLong(late);
+        out.writeLong(totalLagNanos);
+        out.writeLong(maxLagNanos);
+        out.writeLong(maxFinalLagNanos);
+        out.writeLong(elapsedNanos);
+        out.writeLong(scheduledNanos);
+    }
+
+    public static LoadResult readFrom(DataInput in) throws IOException {
+        LoadResult result = new LoadResult();
+        result.sessions = in.readInt();
+        result.sessionFailures = in.readInt();
+        result.sent = in.readLong();
+        result.messages = in.readLong();
+        result.responses = in.readLong();
+        result.expired = in.readLong();
+        result.throttled = in.readLong();
+        result.retried = in.readLong();
+        result.late = in.readLong();
+        result.totalLagNanos = in.readLong();
+        result.maxLagNanos = in.readLong();
+        result.maxFinalLagNanos = in.readLong();
+        result.elapsedNanos = in.readLong();
+        result.scheduledNanos = in.readLong();
+        return result;
+    }
+}
@@ -0,0 +1,490 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.cloudhopper.smpp.type.SmppTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One session of the open-loop load generator. Each PDU has an intended send time; a late
+ * session sends its backlog as fast as it can and records how far behind it was.
+ */
+public class LoadSessionTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSessionTask.class);
+
+    // sends starting later than this after their intended time count as late
+    private static final long LATE_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // resolution at which changes of the profile rate are followed
+    private static final long MAX_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final CountDownLatch allSessionsBoundSignal;
+    private final CountDownLatch startSendingSignal;
+    private final DefaultSmppClient clientBootstrap;
+    private final SmppSessionConfiguration config;
+    private final RateProfile rateProfile;
+    private final int sessionCount;
+    private final int sessionIndex;
+    private final int quota;
+    private final long requestTimeout;
+    private final LatencyRecorder latencyRecorder;
+    private final MessageMix messageMix;
+    private final ClientProperties.Adaptive adaptive;
+    private final AdaptiveWindow window;
+
+    // what the request with a sequence number was sent from, for resending it (adaptive only)
+    private final PduTemplate[] sentTemplates;
+    private final long[] sentVariables;
+    private final int[] sentReferences;
+    private final int[] sentAttempts;
+    private final int sentMask;
+    private final DelayQueue<Retry> retries = new DelayQueue<Retry>();
+
+    private volatile long startNanos;
+    private SmppSession session;
+    private Exception cause;
+
+    private int sent;
+    private int messages;
+    private long lateCount;
+    private long maxLagNanos;
+    private long totalLagNanos;
+    private long finalLagNanos;
+    private final AtomicInteger responses = new AtomicInteger();
+    private final AtomicInteger expired = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private int retried;
+    private volatile int expectedResponses = -1;
+    private final CountDownLatch allResponsesReceivedSignal = new CountDownLatch(1);
+
+    /**
+     * @param sessionCount number of sending sessions across the test
+     * @param sessionIndex index of this session among them, used to stagger the schedules of
+     *                     the sessions and number the messages
+     * @param quota max number of PDUs for this session
+     * @param messageMix pre-encoded messages to send, or <code>null</code> to build a submit
+     *                   per send
+     * @param adaptive adaptive window settings, or <code>null</code> to send as far as the
+     *                 session window allows
+     */
+    public LoadSessionTask(CountDownLatch allSessionsBoundSignal, CountDownLatch startSendingSignal, DefaultSmppClient clientBootstrap,
+                           SmppSessionConfiguration config, RateProfile rateProfile, int sessionCount, int sessionIndex, int quota,
+                           LatencyRecorder latencyRecorder, MessageMix messageMix, ClientProperties.Adaptive adaptive) {
+        this.allSessionsBoundSignal = allSessionsBoundSignal;
+        this.startSendingSignal = startSendingSignal;
+        this.clientBootstrap = clientBootstrap;
+        this.config = config;
+        this.rateProfile = rateProfile;
+        this.sessionCount = sessionCount;
+        this.sessionIndex = sessionIndex;
+        this.quota = quota;
+        this.requestTimeout = config.getRequestExpiryTimeout();
+        this.latencyRecorder = latencyRecorder;
+        this.messageMix = messageMix;
+        this.adaptive = adaptive;
+        this.window = adaptive != null ? new AdaptiveWindow(adaptive, config.getWindowSize()) : null;
+        int ringSize = adaptive != null ? Integer.highestOneBit(Math.max(config.getWindowSize() * 4, 1024) - 1) << 1 : 0;
+        this.sentTemplates = new PduTemplate[ringSize];
+        this.sentVariables = new long[ringSize];
+        this.sentReferences = new int[ringSize];
+        this.sentAttempts = new int[ringSize];
+        this.sentMask = ringSize - 1;
+    }
+
+    /**
+     * Must be called before counting down the start signal.
+     */
+    public void setStartNanos(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    @Override
+    public void run() {
+        byte[] textBytes = CharsetUtil.encode(LoadGenerator.TEXT_160, CharsetUtil.CHARSET_GSM);
+
+        try {
+            session = clientBootstrap.bind(config, new LoadSessionHandler());
+            TemplateSender templateSender = messageMix != null ? new TemplateSender(session, messageMix.getMaxLength()) : null;
+
+            allSessionsBoundSignal.countDown();
+            startSendingSignal.await();
+
+            long end = startNanos + rateProfile.getDurationNanos();
+            if (config.getType() == SmppBindType.RECEIVER) {
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    LockSupport.parkNanos(end - now);
+                }
+                session.unbind(5000);
+                return;
+            }
+
+            MessageMix.Entry entry = null;
+            int part = 0;
+            long messageNumber = 0;
+            // stagger the first send so the sessions don't send in lockstep
+            long intended = advance(startNanos, (sessionIndex + 1.0) / sessionCount, end);
+            while (intended < end && sent < quota) {
+                long now = System.nanoTime();
+                while (now < intended) {
+                    if (window != null) {
+                        // wakes up often enough to resend on time
+                        sendRetries(templateSender);
+                        LockSupport.parkNanos(Math.min(intended - now, MAX_STEP_NANOS));
+                    } else {
+                        LockSupport.parkNanos(intended - now);
+                    }
+                    now = System.nanoTime();
+                }
+                if (window != null) {
+                    sendRetries(templateSender);
+                }
+                recordLag(now - intended);
+
+                // measured from the intended send time, so time spent behind schedule counts
+                if (templateSender != null) {
+                    if (entry == null || part == entry.getParts().length) {
+                        // numbered across all sessions so that the mix and destinations are spread over the test
+                        messageNumber = (long) messages * sessionCount + sessionIndex;
+                        entry = messageMix.entry(messageNumber);
+                        part = 0;
+                        messages++;
+                    }
+                    send(templateSender, entry.getParts()[part++], entry.destination(messageNumber), (int) messageNumber, 0, intended);
+                } else {
+                    SubmitSm submit = new SubmitSm();
+                    submit.setSourceAddress(new Address((byte) 0x03, (byte) 0x00, "40404"));
+                    submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "44555519205"));
+                    submit.setShortMessage(textBytes);
+                    send(submit, 0, intended);
+                    messages++;
+                }
+                sent++;
+
+                intended = advance(intended, 1, end);
+            }
+
+            if (window != null) {
+                drainRetries(templateSender);
+                logger.info("Session " + sessionIndex + " adaptive window: limit " + window.getLimit() + ", decreased " +
+                        window.getDecreases() + " times, " + throttled.get() + " throttled, " + retried + " resent");
+            }
+            int total = sent + retried;
+            expectedResponses = total;
+            if (responses.get() + expired.get() >= total) {
+                allResponsesReceivedSignal.countDown();
+            }
+            if (!allResponsesReceivedSignal.await(requestTimeout * 2, TimeUnit.MILLISECONDS)) {
+                logger.warn("Session " + sessionIndex + " timed out waiting for responses, window size: " + session.getSendWindow().getSize());
+            }
+
+            session.unbind(5000);
+        } catch (Exception e) {
+            logger.error("", e);
+            this.cause = e;
+        }
+    }
+
+    private void send(TemplateSender templateSender, PduTemplate template, long variable, int reference, int attempts, long startNanos)
+            throws Exception {
+        acquire();
+        int sequenceNumber = latencyRecorder.requestSent(session, startNanos);
+        if (window != null) {
+            int i = sequenceNumber & sentMask;
+            sentTemplates[i] = template;
+            sentVariables[i] = variable;
+            sentReferences[i] = reference;
+            sentAttempts[i] = attempts;
+        }
+        try {
+            templateSender.send(template, sequenceNumber, variable, reference, requestTimeout);
+        } catch (Exception e) {
+            if (window != null) {
+                window.cancel();
+            }
+            throw e;
+        }
+    }
+
+    private void send(PduRequest request, int attempts, long startNanos) throws Exception {
+        acquire();
+        latencyRecorder.requestSent(session, request, startNanos);
+        if (window != null) {
+            int i = request.getSequenceNumber() & sentMask;
+            sentTemplates[i] = null;
+            sentAttempts[i] = attempts;
+        }
+        try {
+            session.sendRequestPdu(request, requestTimeout, false);
+        } catch (Exception e) {
+            if (window != null) {
+                window.cancel();
+            }
+            throw e;
+        }
+    }
+
+    private void acquire() throws Exception {
+        if (window != null && !window.acquire(requestTimeout)) {
+            throw new SmppTimeoutException("No free slot in the adaptive window within " + requestTimeout + " ms");
+        }
+    }
+
+    /**
+     * Resends the throttled requests that are due.
+     */
+    private void sendRetries(TemplateSender templateSender) throws Exception {
+        Retry retry;
+        while ((retry = retries.poll()) != null) {
+            resend(templateSender, retry);
+        }
+    }
+
+    /**
+     * Resends throttled requests until all responses are in, since responses still
+     * outstanding can be throttled too.
+     */
+    private void drainRetries(TemplateSender templateSender) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout * 2);
+        while (System.nanoTime() < deadline && session.isBound()) {
+            // counted before checking the queue: a throttled response queues its resend before it is counted
+            int completed = responses.get() + expired.get();
+            if (completed >= sent + retried && retries.isEmpty()) {
+                return;
+            }
+            Retry retry = retries.poll(1, TimeUnit.MILLISECONDS);
+            if (retry != null) {
+                resend(templateSender, retry);
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeout * 2);
+            }
+        }
+    }
+
+    private void resend(TemplateSender templateSender, Retry retry) throws Exception {
+        // latency of the resend only, the delay before it is the client's choice
+        if (retry.template != null) {
+            send(templateSender, retry.template, retry.variable, retry.reference, retry.attempts, System.nanoTime());
+        } else {
+            send(retry.request, retry.attempts, System.nanoTime());
+        }
+        retried++;
+    }
+
+    /**
+     * Queues a resend of the request with {@code sequenceNumber} if it has resends left. The
+     * delay doubles per resend, half of it random so that throttled sessions don't all come
+     * back at once.
+     */
+    private void retryLater(int sequenceNumber, PduRequest request) {
+        int i = sequenceNumber & sentMask;
+        int attempts = sentAttempts[i] + 1;
+        if (attempts > adaptive.getMaxRetries()) {
+            return;
+        }
+        long delay = Math.min(adaptive.getMaxRetryDelay(), adaptive.getRetryDelay() << Math.min(attempts - 1, 20));
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        PduTemplate template = sentTemplates[i];
+        retries.add(new Retry(System.nanoTime() + delayNanos, template, sentVariables[i], sentReferences[i],
+                template == null ? request : null, attempts));
+    }
+
+    /**
+     * @return the time at which {@code messages} more messages are due, following this
+     * session's share of the rate profile from {@code from}; at least {@code end} if they are
+     * not due before the end of the test
+     */
+    private long advance(long from, double messages, long end) {
+        long t = from;
+        while (messages > 0 && t < end) {
+            double ratePerNano = rateProfile.rateAt(t - startNanos) / sessionCount / TimeUnit.SECONDS.toNanos(1);
+            if (ratePerNano <= 0) {
+                t += MAX_STEP_NANOS;
+                continue;
+            }
+            long step = Math.min((long) Math.ceil(messages / ratePerNano), MAX_STEP_NANOS);
+            t += step;
+            messages -= step * ratePerNano;
+        }
+        return t;
+    }
+
+    private void recordLag(long lagNanos) {
+        finalLagNanos = lagNanos;
+        totalLagNanos += lagNanos;
+        if (lagNanos > maxLagNanos) {
+            maxLagNanos = lagNanos;
+        }
+        if (lagNanos > LATE_THRESHOLD_NANOS) {
+            lateCount++;
+        }
+    }
+
+    public SmppSession getSession() {
+        return session;
+    }
+
+    public Exception getCause() {
+        return cause;
+    }
+
+    /**
+     * @return number of PDUs sent
+     */
+    public int getSent() {
+        return sent;
+    }
+
+    /**
+     * @return number of messages started, a concatenated message is sent as several PDUs
+     */
+    public int getMessages() {
+        return messages;
+    }
+
+    public int getResponses() {
+        return responses.get();
+    }
+
+    public int getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * @return number of responses with ESME_RTHROTTLED or ESME_RMSGQFUL, counted with an
+     * adaptive window only
+     */
+    public int getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return number of throttled requests resent, not included in {@link #getSent()}
+     */
+    public int getRetried() {
+        return retried;
+    }
+
+    /**
+     * @return number of PDUs sent more than 1 ms after their intended send time
+     */
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    public long getTotalLagNanos() {
+        return totalLagNanos;
+    }
+
+    /**
+     * @return how far behind the schedule the last PDU of the session was sent
+     */
+    public long getFinalLagNanos() {
+        return finalLagNanos;
+    }
+
+    private void checkDone(int completed) {
+        int expected = expectedResponses;
+        if (expected >= 0 && completed >= expected) {
+            allResponsesReceivedSignal.countDown();
+        }
+    }
+
+    class LoadSessionHandler extends DefaultSmppSessionHandler {
+
+        LoadSessionHandler() {
+            super(logger);
+        }
+
+        @Override
+        public void fireChannelUnexpectedlyClosed() {
+            logger.error("Unexpected close occurred...");
+            allResponsesReceivedSignal.countDown();
+        }
+
+        @Override
+        public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
+            PduResponse response = pduAsyncResponse.getResponse();
+            long latencyNanos = latencyRecorder.responseReceived(response.getSequenceNumber());
+            if (window != null) {
+                int status = response.getCommandStatus();
+                boolean congested = status == SmppConstants.STATUS_THROTTLED || status == SmppConstants.STATUS_MSGQFUL;
+                if (congested) {
+                    throttled.incrementAndGet();
+                    retryLater(response.getSequenceNumber(), pduAsyncResponse.getRequest());
+                }
+                window.responseReceived(latencyNanos, congested);
+            }
+            checkDone(responses.incrementAndGet() + expired.get());
+        }
+
+        @Override
+        public void firePduRequestExpired(PduRequest pduRequest) {
+            if (window != null) {
+                window.requestExpired();
+            }
+            checkDone(expired.incrementAndGet() + responses.get());
+        }
+
+        @Override
+        public PduResponse firePduRequestReceived(PduRequest pduRequest) {
+            // deliver_sm (receipts, MO) and enquire_link from the SMSC
+            return pduRequest.createResponse();
+        }
+    }
+
+    /**
+     * A throttled request waiting to be resent.
+     */
+    private static final class Retry implements Delayed {
+
+        final long dueNanos;
+        final PduTemplate template;
+        final long variable;
+        final int reference;
+        final PduRequest request;
+        final int attempts;
+
+        Retry(long dueNanos, PduTemplate template, long variable, int reference, PduRequest request, int attempts) {
+            this.dueNanos = dueNanos;
+            this.template = template;
+            this.variable = variable;
+            this.reference = reference;
+            this.request = request;
+            this.attempts = attempts;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
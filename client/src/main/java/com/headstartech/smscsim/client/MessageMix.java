@@ -0,0 +1,263 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.charset.Charset;
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.pdu.DataSm;
+import com.cloudhopper.smpp.pdu.EnquireLink;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.Address;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages of a {@link Scenario}, encoded into {@link PduTemplate}s before the test
+ * starts so that sending only copies bytes.
+ */
+public class MessageMix {
+
+    private static final String FILLER = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, " +
+            "nibh diam ornare est, vitae accumsan risus lacus sed sem metus. ";
+
+    /**
+     * The PDUs of one message, more than one for a concatenated message.
+     */
+    public static class Entry {
+
+        private final PduTemplate[] parts;
+        private final long from;
+        private final long count;
+
+        Entry(PduTemplate[] parts, long from, long count) {
+            this.parts = parts;
+            this.from = from;
+            this.count = count;
+        }
+
+        public PduTemplate[] getParts() {
+            return parts;
+        }
+
+        /**
+         * @return the destination number of message {@code messageNumber}
+         */
+        public long destination(long messageNumber) {
+            return from + messageNumber % count;
+        }
+    }
+
+    private final Entry[] schedule;
+    private final int maxLength;
+
+    private MessageMix(Entry[] schedule) {
+        this.schedule = schedule;
+        int max = 0;
+        for (Entry entry : schedule) {
+            for (PduTemplate part : entry.parts) {
+                max = Math.max(max, part.getLength());
+            }
+        }
+        this.maxLength = max;
+    }
+
+    /**
+     * @return a mix of just {@code template}, with destination variable {@code n}
+     */
+    public static MessageMix of(PduTemplate template) {
+        return new MessageMix(new Entry[]{new Entry(new PduTemplate[]{template}, 0, Long.MAX_VALUE)});
+    }
+
+    public static MessageMix of(Scenario scenario) throws Exception {
+        List<Scenario.Message> messages = scenario.getMessages();
+        Entry[] entries = new Entry[messages.size()];
+        int[] weights = new int[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            entries[i] = entry(messages.get(i));
+            weights[i] = messages.get(i).getWeight();
+        }
+        return new MessageMix(schedule(entries, weights));
+    }
+
+    public Entry entry(long messageNumber) {
+        return schedule[(int) (messageNumber % schedule.length)];
+    }
+
+    public int size() {
+        return schedule.length;
+    }
+
+    /**
+     * @return length of the longest PDU
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    private static Entry entry(Scenario.Message message) throws Exception {
+        if (message.getType() == Scenario.MessageType.ENQUIRE_LINK) {
+            return new Entry(new PduTemplate[]{new PduTemplate(new EnquireLink(), 0)}, 0, 1);
+        }
+
+        Scenario.Destination destination = message.getDestination();
+        int digits = Long.toString(destination.getFrom() + destination.getCount() - 1).length();
+        String first = Long.toString(destination.getFrom());
+        StringBuilder address = new StringBuilder(destination.getPrefix() != null ? destination.getPrefix() : "");
+        for (int i = first.length(); i < digits; i++) {
+            address.append('0');
+        }
+        address.append(first);
+
+        String text = text(message.getLength());
+        Charset charset = charset(message.getEncoding());
+        List<byte[]> texts = new ArrayList<byte[]>();
+        if (message.getType() == Scenario.MessageType.DATA_SM || text.length() <= singleLength(message.getEncoding())) {
+            texts.add(CharsetUtil.encode(text, charset));
+        } else {
+            int partLength = partLength(message.getEncoding());
+            for (int i = 0; i < text.length(); i += partLength) {
+                texts.add(CharsetUtil.encode(text.substring(i, Math.min(text.length(), i + partLength)), charset));
+            }
+            if (texts.size() > 255) {
+                throw new IllegalArgumentException("Message too long to concatenate: " + message);
+            }
+        }
+
+        int total = texts.size();
+        boolean sar = message.getConcatenation() == Scenario.Concatenation.SAR;
+        PduTemplate[] parts = new PduTemplate[total];
+        for (int i = 0; i < total; i++) {
+            BaseSm sm;
+            if (message.getType() == Scenario.MessageType.DATA_SM) {
+                sm = new DataSm();
+                sm.setOptionalParameter(new Tlv(SmppConstants.TAG_MESSAGE_PAYLOAD, texts.get(i)));
+            } else {
+                sm = new SubmitSm();
+                sm.setShortMessage(total > 1 && !sar ? withConcatenationHeader(texts.get(i), total, i + 1) : texts.get(i));
+            }
+            sm.setSourceAddress(new Address((byte) 0x03, (byte) 0x00, message.getSource()));
+            sm.setDestAddress(new Address((byte) 0x01, (byte) 0x01, address.toString()));
+            sm.setDataCoding(dataCoding(message.getEncoding()));
+            if (total > 1 && sar) {
+                sm.setOptionalParameter(new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[]{(byte) total}));
+                sm.setOptionalParameter(new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[]{(byte) (i + 1)}));
+                // last, so the template can set the reference per send
+                sm.setOptionalParameter(new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, new byte[2]));
+            } else if (total > 1) {
+                sm.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+            }
+            if (message.isRegisteredDelivery()) {
+                sm.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
+            }
+            parts[i] = new PduTemplate(sm, digits);
+        }
+        return new Entry(parts, destination.getFrom(), destination.getCount());
+    }
+
+    /**
+     * @return {@code text} after a concatenated short message header with an 8-bit reference
+     * number, which is set per send
+     */
+    private static byte[] withConcatenationHeader(byte[] text, int total, int number) {
+        byte[] shortMessage = new byte[6 + text.length];
+        shortMessage[0] = 0x05;
+        shortMessage[1] = 0x00;
+        shortMessage[2] = 0x03;
+        shortMessage[4] = (byte) total;
+        shortMessage[5] = (byte) number;
+        System.arraycopy(text, 0, shortMessage, 6, text.length);
+        return shortMessage;
+    }
+
+    /**
+     * Smooth weighted round-robin: each entry appears {@code weight / gcd} times, as evenly
+     * spread as possible.
+     */
+    private static Entry[] schedule(Entry[] entries, int[] weights) {
+        int gcd = 0;
+        for (int weight : weights) {
+            gcd = gcd(gcd, weight);
+        }
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= gcd;
+            total += weights[i];
+        }
+        Entry[] schedule = new Entry[total];
+        int[] current = new int[weights.length];
+        for (int slot = 0; slot < total; slot++) {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[slot] = entries[best];
+        }
+        return schedule;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static String text(int length) {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = FILLER.charAt(i % FILLER.length());
+        }
+        return new String(text);
+    }
+
+    private static int singleLength(Scenario.Encoding encoding) {
+        switch (encoding) {
+            case UCS2:
+                return 70;
+            case LATIN1:
+                return 140;
+            default:
+                return 160;
+        }
+    }
+
+    /**
+     * @return characters per part of a concatenated message, the rest of the 140 octets after
+     * the 6-octet header
+     */
+    private static int partLength(Scenario.Encoding encoding) {
+        switch (encoding) {
+            case UCS2:
+                return 67;
+            case LATIN1:
+                return 134;
+            default:
+                return 153;
+        }
+    }
+
+    private static Charset charset(Scenario.Encoding encoding) {
+        switch (encoding) {
+            case UCS2:
+                return CharsetUtil.CHARSET_UCS_2;
+            case LATIN1:
+                return CharsetUtil.CHARSET_ISO_8859_1;
+            default:
+                return CharsetUtil.CHARSET_GSM;
+        }
+    }
+
+    private static byte dataCoding(Scenario.Encoding encoding) {
+        switch (encoding) {
+            case UCS2:
+                return SmppConstants.DATA_CODING_UCS2;
+            case LATIN1:
+                return SmppConstants.DATA_CODING_LATIN1;
+            default:
+                return SmppConstants.DATA_CODING_DEFAULT;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.SmppSessionHandler;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSession;
+import com.cloudhopper.smpp.type.SmppChannelException;
+import com.cloudhopper.smpp.type.SmppTimeoutException;
+import com.headstartech.smscsim.trace.WireTracer;
+import org.jboss.netty.channel.Channel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * {@link DefaultSmppClient} with Nagle's algorithm disabled on its connections, and the PDUs of its
+ * sessions traced with a {@link WireTracer} if set.
+ */
+public class NoDelaySmppClient extends DefaultSmppClient {
+
+    private final WireTracer wireTracer;
+
+    public NoDelaySmppClient(ExecutorService executors, int expectedSessions, ScheduledExecutorService monitorExecutor) {
+        this(executors, expectedSessions, monitorExecutor, null);
+    }
+
+    /**
+     * @param wireTracer <code>null</code> to not trace
+     */
+    public NoDelaySmppClient(ExecutorService executors, int expectedSessions, ScheduledExecutorService monitorExecutor, WireTracer wireTracer) {
+        super(executors, expectedSessions, monitorExecutor);
+        this.wireTracer = wireTracer;
+    }
+
+    @Override
+    protected Channel createConnectedChannel(String host, int port, long connectTimeoutMillis)
+            throws SmppTimeoutException, SmppChannelException, InterruptedException {
+        Channel channel = super.createConnectedChannel(host, port, connectTimeoutMillis);
+        channel.getConfig().setOption("tcpNoDelay", true);
+        return channel;
+    }
+
+    @Override
+    protected DefaultSmppSession createSession(Channel channel, SmppSessionConfiguration config, SmppSessionHandler sessionHandler)
+            throws SmppTimeoutException, SmppChannelException, InterruptedException {
+        DefaultSmppSession session = super.createSession(channel, config, sessionHandler);
+        if (wireTracer != null) {
+            wireTracer.attach(channel.getPipeline(), wireTracer.newSession(), config.getSystemId());
+        }
+        return session;
+    }
+}
@@ -0,0 +1,142 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.type.Address;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A request PDU encoded once; {@link #writeTo} patches the sequence number, the last
+ * {@code variableDigits} of the destination and the reference of a concatenated part.
+ */
+public class PduTemplate {
+
+    private static final int SEQUENCE_NUMBER_OFFSET = 12;
+
+    private final PduRequest prototype;
+    private final byte[] encoded;
+    private final int variableOffset;
+    private final int variableDigits;
+    private final long variableModulus;
+    private final int referenceOffset;
+    private final boolean shortReference;
+
+    /**
+     * @param prototype the message; if {@code variableDigits} &gt; 0 it must be a submit_sm or
+     *                  data_sm with at least that many characters of destination address
+     * @param variableDigits number of trailing destination digits replaced per send, 0 to
+     *                       always send to the prototype's destination
+     */
+    public PduTemplate(PduRequest prototype, int variableDigits) throws Exception {
+        BaseSm sm = prototype instanceof BaseSm ? (BaseSm) prototype : null;
+        String destination = sm != null ? address(sm.getDestAddress()) : null;
+        int destinationLength = destination != null ? destination.length() : 0;
+        if (variableDigits < 0 || variableDigits > destinationLength || variableDigits > 18) {
+            throw new IllegalArgumentException("Can't vary " + variableDigits + " digits of destination address '" + destination + "'");
+        }
+        this.prototype = prototype;
+        this.variableDigits = variableDigits;
+        long modulus = 1;
+        for (int i = 0; i < variableDigits; i++) {
+            modulus *= 10;
+        }
+        this.variableModulus = modulus;
+
+        prototype.setSequenceNumber(0);
+        ChannelBuffer buffer = new DefaultPduTranscoder(new DefaultPduTranscoderContext()).encode(prototype);
+        this.encoded = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), encoded);
+
+        if (sm == null) {
+            this.variableOffset = 0;
+            this.referenceOffset = -1;
+            this.shortReference = false;
+            return;
+        }
+        // header, service_type, source ton, npi and addr, dest ton and npi
+        int destinationOffset = SmppConstants.PDU_HEADER_LENGTH + cStringLength(sm.getServiceType())
+                + 2 + cStringLength(address(sm.getSourceAddress())) + 2;
+        this.variableOffset = destinationOffset + destinationLength - variableDigits;
+        if (hasSarReferenceLast(sm)) {
+            this.referenceOffset = encoded.length - 2;
+            this.shortReference = true;
+        } else if (sm instanceof SubmitSm && isConcatenated(sm)) {
+            // dest addr, esm_class, protocol_id, priority_flag, schedule_delivery_time, validity_period,
+            // registered_delivery, replace_if_present, data_coding, sm_default_msg_id, sm_length, UDH
+            int shortMessageOffset = destinationOffset + cStringLength(destination) + 3 + cStringLength(sm.getScheduleDeliveryTime())
+                    + cStringLength(sm.getValidityPeriod()) + 5;
+            this.referenceOffset = shortMessageOffset + 3;
+            this.shortReference = false;
+        } else {
+            this.referenceOffset = -1;
+            this.shortReference = false;
+        }
+    }
+
+    /**
+     * @return the message the template was made from; it is what's put in the send window, so
+     * it is also the request of every response
+     */
+    public PduRequest getPrototype() {
+        return prototype;
+    }
+
+    public int getCommandId() {
+        return prototype.getCommandId();
+    }
+
+    public int getLength() {
+        return encoded.length;
+    }
+
+    /**
+     * Writes the PDU into {@code buffer}, which is cleared first.
+     *
+     * @param variable the number put in the variable destination digits, modulo
+     *                 10<sup>variableDigits</sup>
+     * @param reference reference number of a concatenated message, the low 8 bits are used
+     *                  (16 for sar_msg_ref_num)
+     */
+    public void writeTo(ChannelBuffer buffer, int sequenceNumber, long variable, int reference) {
+        buffer.clear();
+        buffer.writeBytes(encoded);
+        buffer.setInt(SEQUENCE_NUMBER_OFFSET, sequenceNumber);
+        long value = (variable & Long.MAX_VALUE) % variableModulus;
+        for (int i = variableOffset + variableDigits - 1; i >= variableOffset; i--) {
+            buffer.setByte(i, '0' + (int) (value % 10));
+            value /= 10;
+        }
+        if (shortReference) {
+            buffer.setShort(referenceOffset, reference);
+        } else if (referenceOffset >= 0) {
+            buffer.setByte(referenceOffset, reference);
+        }
+    }
+
+    private static boolean isConcatenated(BaseSm sm) {
+        byte[] shortMessage = sm.getShortMessage();
+        return (sm.getEsmClass() & SmppConstants.ESM_CLASS_UDHI_MASK) != 0 && shortMessage != null && shortMessage.length >= 6 &&
+                shortMessage[0] == 0x05 && shortMessage[1] == 0x00 && shortMessage[2] == 0x03;
+    }
+
+    private static boolean hasSarReferenceLast(BaseSm sm) {
+        if (sm.getOptionalParameterCount() == 0) {
+            return false;
+        }
+        Tlv last = sm.getOptionalParameters().get(sm.getOptionalParameterCount() - 1);
+        return last.getTag() == SmppConstants.TAG_SAR_MSG_REF_NUM && last.getLength() == 2;
+    }
+
+    private static String address(Address address) {
+        return address != null ? address.getAddress() : null;
+    }
+
+    private static int cStringLength(String s) {
+        return (s != null ? s.length() : 0) + 1;
+    }
+}
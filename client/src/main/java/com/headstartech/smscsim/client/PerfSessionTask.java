@@ -0,0 +1,148 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session of the PERF mode: binds, waits for the start signal, sends its quota of submit_sm as
+ * fast as the window allows and waits for all responses.
+ */
+public class PerfSessionTask implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfSessionTask.class);
+
+    private SmppSession session;
+    private CountDownLatch allSessionsBoundSignal;
+    private CountDownLatch startSendingSignal;
+    private DefaultSmppClient clientBootstrap;
+    private SmppSessionConfiguration config;
+    private int quota;
+    private LatencyRecorder latencyRecorder;
+    private PduTemplate template;
+    private int submitRequestSent;
+    private int submitResponseReceived;
+    private AtomicBoolean sendingDone;
+    private Exception cause;
+
+    public PerfSessionTask(CountDownLatch allSessionsBoundSignal, CountDownLatch startSendingSignal, DefaultSmppClient clientBootstrap, SmppSessionConfiguration config, int quota, LatencyRecorder latencyRecorder,
+                           PduTemplate template) {
+        this.allSessionsBoundSignal = allSessionsBoundSignal;
+        this.startSendingSignal = startSendingSignal;
+        this.clientBootstrap = clientBootstrap;
+        this.config = config;
+        this.quota = quota;
+        this.latencyRecorder = latencyRecorder;
+        this.template = template;
+        this.submitRequestSent = 0;
+        this.submitResponseReceived = 0;
+        this.sendingDone = new AtomicBoolean(false);
+    }
+
+    public Exception getCause() {
+        return this.cause;
+    }
+
+    public int getSubmitRequestSent() {
+        return this.submitRequestSent;
+    }
+
+    public SmppSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void run() {
+        // a countdownlatch will be used to eventually wait for all responses
+        // to be received by this thread since we don't want to exit too early
+        CountDownLatch allSubmitResponseReceivedSignal = new CountDownLatch(1);
+
+        DefaultSmppSessionHandler sessionHandler = new ClientSmppSessionHandler(allSubmitResponseReceivedSignal);
+        byte[] textBytes = CharsetUtil.encode(LoadGenerator.TEXT_160, CharsetUtil.CHARSET_GSM);
+
+        try {
+            // create session a session by having the bootstrap connect a
+            // socket, send the bind request, and wait for a bind response
+            session = clientBootstrap.bind(config, sessionHandler);
+
+            // don't start sending until signalled
+            allSessionsBoundSignal.countDown();
+            startSendingSignal.await();
+
+            // each session sends its own share
+            TemplateSender templateSender = template != null ? new TemplateSender(session, template.getLength()) : null;
+            while (this.submitRequestSent < quota) {
+                if (templateSender != null) {
+                    int sequenceNumber = latencyRecorder.requestSent(session, System.nanoTime());
+                    this.submitRequestSent++;
+                    sendingDone.set(true);
+                    templateSender.send(template, sequenceNumber, this.submitRequestSent, 0, 30000);
+                    continue;
+                }
+                SubmitSm submit = new SubmitSm();
+                submit.setSourceAddress(new Address((byte)0x03, (byte)0x00, "40404"));
+                submit.setDestAddress(new Address((byte)0x01, (byte)0x01, "44555519205"));
+                submit.setShortMessage(textBytes);
+                latencyRecorder.requestSent(session, submit, System.nanoTime());
+                // asynchronous send
+                this.submitRequestSent++;
+                sendingDone.set(true);
+                session.sendRequestPdu(submit, 30000, false);
+            }
+
+            // all threads have sent all submit, we do need to wait for
+            // an acknowledgement for all "inflight" though (synchronize
+            // against the window)
+            logger.info("before waiting sendWindow.size: {}", session.getSendWindow().getSize());
+
+            allSubmitResponseReceivedSignal.await();
+
+            logger.info("after waiting sendWindow.size: {}", session.getSendWindow().getSize());
+
+            session.unbind(5000);
+        } catch (Exception e) {
+            logger.error("", e);
+            this.cause = e;
+        }
+    }
+
+    class ClientSmppSessionHandler extends DefaultSmppSessionHandler {
+
+        private CountDownLatch allSubmitResponseReceivedSignal;
+
+        public ClientSmppSessionHandler(CountDownLatch allSubmitResponseReceivedSignal) {
+            super(logger);
+            this.allSubmitResponseReceivedSignal = allSubmitResponseReceivedSignal;
+        }
+
+        @Override
+        public void fireChannelUnexpectedlyClosed() {
+            // this is an error we didn't really expect for perf testing
+            // its best to at least countDown the latch so we're not waiting forever
+            logger.error("Unexpected close occurred...");
+            this.allSubmitResponseReceivedSignal.countDown();
+        }
+
+        @Override
+        public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
+            latencyRecorder.responseReceived(pduAsyncResponse.getResponse().getSequenceNumber());
+            submitResponseReceived++;
+            // if the sending thread is finished, check if we're done
+            if (sendingDone.get()) {
+                if (submitResponseReceived >= submitRequestSent) {
+                    this.allSubmitResponseReceivedSignal.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.headstartech.smscsim.client;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target send rate over the duration of a load test.
+ */
+public abstract class RateProfile {
+
+    public enum Type {
+        STEADY, RAMP, STEP
+    }
+
+    private final long durationNanos;
+    private final String description;
+
+    protected RateProfile(long durationNanos, String description) {
+        this.durationNanos = durationNanos;
+        this.description = description;
+    }
+
+    /**
+     * @param elapsedNanos time since the start of the test
+     * @return target rate in messages per second
+     */
+    public abstract double rateAt(long elapsedNanos);
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public static RateProfile of(ClientProperties.Load load) {
+        switch (load.getProfile()) {
+            case STEADY:
+                return steady(load.getRate(), load.getDuration());
+            case RAMP:
+                return ramp(load.getStartRate(), load.getRate(), load.getRampDuration(), load.getDuration());
+            case STEP:
+                return step(load.getStartRate(), load.getStepRate(), load.getStepDuration(), load.getSteps());
+            default:
+                throw new IllegalArgumentException("Unknown rate profile: " + load.getProfile());
+        }
+    }
+
+    /**
+     * Constant {@code rate} for {@code durationSeconds}.
+     */
+    public static RateProfile steady(final double rate, int durationSeconds) {
+        return new RateProfile(TimeUnit.SECONDS.toNanos(durationSeconds), Type.STEADY.name()) {
+            @Override
+            public double rateAt(long elapsedNanos) {
+                return rate;
+            }
+        };
+    }
+
+    /**
+     * Linear ramp from {@code startRate} to {@code rate} over {@code rampSeconds}, then
+     * {@code rate} for {@code steadySeconds}.
+     */
+    public static RateProfile ramp(final double startRate, final double rate, int rampSeconds, int steadySeconds) {
+        final long rampNanos = TimeUnit.SECONDS.toNanos(rampSeconds);
+        return new RateProfile(rampNanos + TimeUnit.SECONDS.toNanos(steadySeconds), Type.RAMP.name()) {
+            @Override
+            public double rateAt(long elapsedNanos) {
+                if (elapsedNanos >= rampNanos) {
+                    return rate;
+                }
+                return startRate + (rate - startRate) * ((double) elapsedNanos / rampNanos);
+            }
+        };
+    }
+
+    /**
+     * {@code steps} steps of {@code stepSeconds} each, starting at {@code startRate} and
+     * increasing by {@code stepRate} per step.
+     */
+    public static RateProfile step(final double startRate, final double stepRate, int stepSeconds, final int steps) {
+        if (stepSeconds < 1 || steps < 1) {
+            throw new IllegalArgumentException("STEP profile needs step duration >= 1 and steps >= 1, got " + stepSeconds + " and " + steps);
+        }
+        final long stepNanos = TimeUnit.SECONDS.toNanos(stepSeconds);
+        return new RateProfile(stepNanos * steps, Type.STEP.name()) {
+            @Override
+            public double rateAt(long elapsedNanos) {
+                long step = Math.min(elapsedNanos / stepNanos, steps - 1);
+                return startRate + stepRate * step;
+            }
+        };
+    }
+
+    /**
+     * The phases one after the other, each at a constant rate or ramping linearly from its
+     * start rate.
+     */
+    public static RateProfile phases(List<Scenario.Phase> phases) {
+        final long[] endNanos = new long[phases.size()];
+        final double[] startRates = new double[phases.size()];
+        final double[] rates = new double[phases.size()];
+        StringBuilder description = new StringBuilder("PHASES");
+        long end = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            Scenario.Phase phase = phases.get(i);
+            end += TimeUnit.SECONDS.toNanos(phase.getDuration());
+            endNanos[i] = end;
+            rates[i] = phase.getRate();
+            startRates[i] = phase.getStartRate() != null ? phase.getStartRate() : phase.getRate();
+            description.append(i == 0 ? " " : ", ").append(phase.getName() != null ? phase.getName() : "#" + i);
+        }
+        return new RateProfile(end, description.toString()) {
+            @Override
+            public double rateAt(long elapsedNanos) {
+                for (int i = 0; i < endNanos.length; i++) {
+                    if (elapsedNanos < endNanos[i]) {
+                        long startNanos = i > 0 ? endNanos[i - 1] : 0;
+                        return startRates[i] + (rates[i] - startRates[i]) * ((double) (elapsedNanos - startNanos) / (endNanos[i] - startNanos));
+                    }
+                }
+                return rates[rates.length - 1];
+            }
+        };
+    }
+}
@@ -0,0 +1,401 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.SmppBindType;
+import org.yaml.snakeyaml.TypeDescription;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A load test read from a YAML file, see {@code scenarios/example.yml}: the sessions to bind,
+ * the messages to send and the phases of the send rate, in PDUs per second.
+ */
+public class Scenario {
+
+    public enum MessageType {
+        SUBMIT_SM, DATA_SM, ENQUIRE_LINK
+    }
+
+    public enum Encoding {
+        GSM, LATIN1, UCS2
+    }
+
+    /**
+     * How the parts of a long submit_sm are linked: a user data header in the short message,
+     * or the sar_* TLVs.
+     */
+    public enum Concatenation {
+        UDH, SAR
+    }
+
+    private String name = "scenario";
+    private List<SessionGroup> sessions = new ArrayList<SessionGroup>();
+    private List<Message> messages = new ArrayList<Message>();
+    private List<Phase> phases = new ArrayList<Phase>();
+    // max number of PDUs across all sessions, 0 for no limit
+    private int maxMessages;
+
+    public static Scenario load(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+
+    public static Scenario load(Reader reader) {
+        TypeDescription scenarioDescription = new TypeDescription(Scenario.class);
+        scenarioDescription.putListPropertyType("sessions", SessionGroup.class);
+        scenarioDescription.putListPropertyType("messages", Message.class);
+        scenarioDescription.putListPropertyType("phases", Phase.class);
+        Constructor constructor = new Constructor(Scenario.class);
+        constructor.addTypeDescription(scenarioDescription);
+        Scenario scenario = new Yaml(constructor).loadAs(reader, Scenario.class);
+        if (scenario == null) {
+            throw new IllegalArgumentException("Empty scenario");
+        }
+        scenario.validate();
+        return scenario;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the scenario can't be run
+     */
+    public void validate() {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no sessions");
+        }
+        for (SessionGroup group : sessions) {
+            if (group.getBindType() == null || group.getCount() < 0 || group.getWindowSize() < 1) {
+                throw new IllegalArgumentException("Scenario " + name + ": invalid session group " + group);
+            }
+        }
+        if (getTransmittingSessions() == 0) {
+            throw new IllegalArgumentException("Scenario " + name + " has no TRANSMITTER or TRANSCEIVER sessions");
+        }
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no messages");
+        }
+        for (Message message : messages) {
+            Destination destination = message.getDestination();
+            if (message.getType() == null || message.getEncoding() == null || message.getConcatenation() == null ||
+                    message.getWeight() < 1 || message.getLength() < 0 || destination == null || destination.getCount() < 1 || destination.getFrom() < 0 ||
+                    Long.toString(destination.getFrom() + destination.getCount() - 1).length() > 18) {
+                throw new IllegalArgumentException("Scenario " + name + ": invalid message " + message);
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("Scenario " + name + " has no phases");
+        }
+        for (Phase phase : phases) {
+            if (phase.getDuration() < 1 || phase.getRate() < 0 || (phase.getStartRate() != null && phase.getStartRate() < 0)) {
+                throw new IllegalArgumentException("Scenario " + name + ": invalid phase " + phase);
+            }
+        }
+    }
+
+    /**
+     * @return number of sessions that send, all but RECEIVER
+     */
+    public int getTransmittingSessions() {
+        int count = 0;
+        for (SessionGroup group : sessions) {
+            if (group.getBindType() != SmppBindType.RECEIVER) {
+                count += group.getCount();
+            }
+        }
+        return count;
+    }
+
+    public int getTotalSessions() {
+        int count = 0;
+        for (SessionGroup group : sessions) {
+            count += group.getCount();
+        }
+        return count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<SessionGroup> getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(List<SessionGroup> sessions) {
+        this.sessions = sessions;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    public void setPhases(List<Phase> phases) {
+        this.phases = phases;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Sessions bound with the same settings; systemId and password default to the client's.
+     */
+    public static class SessionGroup {
+
+        private SmppBindType bindType = SmppBindType.TRANSCEIVER;
+        private int count = 1;
+        private int windowSize = 50;
+        private String systemId;
+        private String password;
+
+        public SmppBindType getBindType() {
+            return bindType;
+        }
+
+        public void setBindType(SmppBindType bindType) {
+            this.bindType = bindType;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
+
+        public void setSystemId(String systemId) {
+            this.systemId = systemId;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        @Override
+        public String toString() {
+            return "{bindType=" + bindType + ", count=" + count + ", windowSize=" + windowSize + ", systemId=" + systemId + "}";
+        }
+    }
+
+    /**
+     * A kind of message, picked in proportion to its weight. The text is {@code length}
+     * characters of filler in the given encoding.
+     */
+    public static class Message {
+
+        private int weight = 1;
+        private MessageType type = MessageType.SUBMIT_SM;
+        private Encoding encoding = Encoding.GSM;
+        // characters
+        private int length = 160;
+        private Concatenation concatenation = Concatenation.UDH;
+        private String source = "40404";
+        private Destination destination = new Destination();
+        private boolean registeredDelivery;
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public MessageType getType() {
+            return type;
+        }
+
+        public void setType(MessageType type) {
+            this.type = type;
+        }
+
+        public Encoding getEncoding() {
+            return encoding;
+        }
+
+        public void setEncoding(Encoding encoding) {
+            this.encoding = encoding;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        public Concatenation getConcatenation() {
+            return concatenation;
+        }
+
+        public void setConcatenation(Concatenation concatenation) {
+            this.concatenation = concatenation;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public void setSource(String source) {
+            this.source = source;
+        }
+
+        public Destination getDestination() {
+            return destination;
+        }
+
+        public void setDestination(Destination destination) {
+            this.destination = destination;
+        }
+
+        public boolean isRegisteredDelivery() {
+            return registeredDelivery;
+        }
+
+        public void setRegisteredDelivery(boolean registeredDelivery) {
+            this.registeredDelivery = registeredDelivery;
+        }
+
+        @Override
+        public String toString() {
+            return "{weight=" + weight + ", type=" + type + ", encoding=" + encoding + ", length=" + length +
+                    ", concatenation=" + concatenation + ", source=" + source +
+                    ", destination=" + destination + "}";
+        }
+    }
+
+    /**
+     * Destination numbers {@code prefix} followed by {@code from} to
+     * {@code from + count - 1}, zero-padded to the width of the largest.
+     */
+    public static class Destination {
+
+        private String prefix = "4455551";
+        private long from;
+        private long count = 10000;
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public void setFrom(long from) {
+            this.from = from;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return "{prefix=" + prefix + ", from=" + from + ", count=" + count + "}";
+        }
+    }
+
+    /**
+     * {@code duration} seconds at {@code rate}, or a linear ramp to it from
+     * {@code startRate} if set.
+     */
+    public static class Phase {
+
+        private String name;
+        private Double startRate;
+        private double rate;
+        private int duration;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Double getStartRate() {
+            return startRate;
+        }
+
+        public void setStartRate(Double startRate) {
+            this.startRate = startRate;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getDuration() {
+            return duration;
+        }
+
+        public void setDuration(int duration) {
+            this.duration = duration;
+        }
+
+        @Override
+        public String toString() {
+            return "{name=" + name + ", startRate=" + startRate + ", rate=" + rate + ", duration=" + duration + "}";
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.util.windowing.DuplicateKeyException;
+import com.cloudhopper.commons.util.windowing.OfferTimeoutException;
+import com.cloudhopper.commons.util.windowing.WindowFuture;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.impl.DefaultSmppSession;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.type.SmppChannelException;
+import com.cloudhopper.smpp.type.SmppTimeoutException;
+import com.cloudhopper.smpp.type.UnrecoverablePduException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Sends {@link PduTemplate}s on one session, bypassing the session's transcoder, from a pool of
+ * buffers of the window size.
+ */
+public class TemplateSender {
+
+    private static final int COMMAND_ID_OFFSET = 4;
+    private static final int SEQUENCE_NUMBER_OFFSET = 12;
+
+    private final DefaultSmppSession session;
+    private final Channel channel;
+    private final int bufferSize;
+    private final long requestExpiryTimeout;
+    private final ArrayBlockingQueue<PooledBuffer> pool;
+
+    /**
+     * @param maxLength length of the longest template that will be sent
+     */
+    public TemplateSender(SmppSession session, int maxLength) {
+        this.session = (DefaultSmppSession) session;
+        this.channel = this.session.getChannel();
+        this.bufferSize = maxLength;
+        this.requestExpiryTimeout = session.getConfiguration().getRequestExpiryTimeout();
+        int poolSize = Math.max(session.getConfiguration().getWindowSize(), 1);
+        this.pool = new ArrayBlockingQueue<PooledBuffer>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.offer(new PooledBuffer(bufferSize));
+        }
+    }
+
+    /**
+     * @param sequenceNumber a sequence number not in use on the session, see
+     *                       {@link LatencyRecorder#requestSent(SmppSession, long)}
+     * @param variable destination digits, see {@link PduTemplate#writeTo}
+     * @param reference reference number if the template is part of a concatenated message
+     * @param timeoutMillis max time to wait for a free slot in the window
+     */
+    public WindowFuture<Integer, PduRequest, PduResponse> send(PduTemplate template, int sequenceNumber, long variable, int reference,
+                                                               long timeoutMillis)
+            throws UnrecoverablePduException, SmppTimeoutException, SmppChannelException, InterruptedException {
+        WindowFuture<Integer, PduRequest, PduResponse> future = offer(template.getPrototype(), sequenceNumber, timeoutMillis);
+        PooledBuffer pooled = buffer(template.getLength());
+        template.writeTo(pooled.buffer, sequenceNumber, variable, reference);
+        write(pooled, future, template.getCommandId());
+        return future;
+    }
+
+    /**
+     * Sends an already encoded PDU, e.g. one read from a capture, with its sequence number
+     * replaced.
+     *
+     * @param pdu the PDU from its command_length to its end; read from its position, which
+     *            isn't moved
+     * @param request what's put in the send window for the PDU, and so is the request of its
+     *                response; only its command id matters
+     * @param timeoutMillis max time to wait for a free slot in the window
+     */
+    public WindowFuture<Integer, PduRequest, PduResponse> send(ByteBuffer pdu, PduRequest request, int sequenceNumber, long timeoutMillis)
+            throws UnrecoverablePduException, SmppTimeoutException, SmppChannelException, InterruptedException {
+        WindowFuture<Integer, PduRequest, PduResponse> future = offer(request, sequenceNumber, timeoutMillis);
+        PooledBuffer pooled = buffer(pdu.remaining());
+        pooled.buffer.clear();
+        pooled.buffer.writeBytes(pdu.duplicate());
+        pooled.buffer.setInt(SEQUENCE_NUMBER_OFFSET, sequenceNumber);
+        write(pooled, future, pdu.getInt(pdu.position() + COMMAND_ID_OFFSET));
+        return future;
+    }
+
+    private WindowFuture<Integer, PduRequest, PduResponse> offer(PduRequest request, int sequenceNumber, long timeoutMillis)
+            throws UnrecoverablePduException, SmppTimeoutException, SmppChannelException, InterruptedException {
+        if (!channel.isConnected()) {
+            throw new SmppChannelException("Channel is closed");
+        }
+        try {
+            return session.getSendWindow().offer(sequenceNumber, request, timeoutMillis, requestExpiryTimeout, false);
+        } catch (DuplicateKeyException e) {
+            throw new UnrecoverablePduException(e.getMessage(), e);
+        } catch (OfferTimeoutException e) {
+            throw new SmppTimeoutException(e.getMessage(), e);
+        }
+    }
+
+    private PooledBuffer buffer(int length) {
+        if (length > bufferSize) {
+            // longer than any template, sized for this PDU
+            return new PooledBuffer(length);
+        }
+        PooledBuffer pooled = pool.poll();
+        if (pooled == null) {
+            // a previous write still in progress although its response arrived
+            pooled = new PooledBuffer(bufferSize);
+        }
+        return pooled;
+    }
+
+    private void write(PooledBuffer pooled, WindowFuture<Integer, PduRequest, PduResponse> future, int commandId) {
+        pooled.request = future;
+        channel.write(pooled.buffer).addListener(pooled);
+        if (session.hasCounters()) {
+            countRequest(commandId);
+        }
+    }
+
+    private void countRequest(int commandId) {
+        switch (commandId) {
+            case SmppConstants.CMD_ID_SUBMIT_SM:
+                session.getCounters().getTxSubmitSM().incrementRequestAndGet();
+                break;
+            case SmppConstants.CMD_ID_DATA_SM:
+                session.getCounters().getTxDataSM().incrementRequestAndGet();
+                break;
+            case SmppConstants.CMD_ID_ENQUIRE_LINK:
+                session.getCounters().getTxEnquireLink().incrementRequestAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private class PooledBuffer implements ChannelFutureListener {
+
+        final ChannelBuffer buffer;
+        WindowFuture<Integer, PduRequest, PduResponse> request;
+
+        PooledBuffer(int size) {
+            this.buffer = ChannelBuffers.buffer(size);
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (!future.isSuccess()) {
+                request.fail(future.getCause());
+            }
+            request = null;
+            // dropped if the pool is full
+            pool.offer(this);
+        }
+    }
+}
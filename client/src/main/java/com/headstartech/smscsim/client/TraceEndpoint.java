@@ -0,0 +1,61 @@
+package com.headstartech.smscsim.client;
+
+import com.headstartech.smscsim.trace.WireTracer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP endpoint dumping the client's {@link WireTracer} like the server's /trace, on the
+ * JDK's HTTP server since the client has no web server of its own.
+ */
+public class TraceEndpoint {
+
+    private final HttpServer server;
+
+    public TraceEndpoint(final WireTracer wireTracer, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/trace", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    long seconds = 10;
+                    boolean binary = false;
+                    String query = exchange.getRequestURI().getQuery();
+                    if (query != null) {
+                        for (String parameter : query.split("&")) {
+                            if (parameter.startsWith("seconds=")) {
+                                seconds = Long.parseLong(parameter.substring("seconds=".length()));
+                            } else if (parameter.equals("format=binary")) {
+                                binary = true;
+                            }
+                        }
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", binary ? "application/octet-stream" : "text/plain;charset=UTF-8");
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream body = exchange.getResponseBody();
+                    if (binary) {
+                        wireTracer.dump(seconds, body);
+                    } else {
+                        wireTracer.dump(seconds, new OutputStreamWriter(body, StandardCharsets.UTF_8));
+                    }
+                } catch (NumberFormatException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,97 @@
+package com.headstartech.smscsim.client;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveWindowTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void growsByIncreaseOverLimitPerResponse() throws Exception {
+        AdaptiveWindow window = new AdaptiveWindow(properties(2, 1, 2.0), 10);
+
+        respond(window, 1);
+        // 2 + 2/2
+        assertEquals(3, window.getLimit());
+        respond(window, 1);
+        // 3 + 2/3
+        assertEquals(3, window.getLimit());
+        respond(window, 1);
+        // 3.67 + 2/3.67
+        assertEquals(4, window.getLimit());
+    }
+
+    @Test
+    public void growsUpToMaxLimit() throws Exception {
+        AdaptiveWindow window = new AdaptiveWindow(properties(4, 1, 100.0), 5);
+
+        respond(window, 3);
+        assertEquals(5, window.getLimit());
+    }
+
+    @Test
+    public void shrinksDownToMinLimit() throws Exception {
+        AdaptiveWindow window = new AdaptiveWindow(properties(8, 3, 1.0), 10);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(window.acquire(0));
+            // zero round trip, so no hold between decreases
+            window.responseReceived(0, true);
+        }
+        assertEquals(3, window.getLimit());
+        assertEquals(4, window.getDecreases());
+    }
+
+    @Test
+    public void decreasesOncePerRoundTrip() throws Exception {
+        AdaptiveWindow window = new AdaptiveWindow(properties(16, 1, 1.0), 16);
+        long roundTrip = TimeUnit.SECONDS.toNanos(60);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(window.acquire(0));
+        }
+        window.responseReceived(roundTrip, true);
+        window.responseReceived(roundTrip, true);
+        window.requestExpired();
+
+        assertEquals(8, window.getLimit());
+        assertEquals(1, window.getDecreases());
+    }
+
+    @Test
+    public void acquireTimesOutWhenFull() throws Exception {
+        AdaptiveWindow window = new AdaptiveWindow(properties(2, 1, 1.0), 10);
+        assertTrue(window.acquire(0));
+        assertTrue(window.acquire(0));
+
+        long start = System.nanoTime();
+        assertFalse(window.acquire(20));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        window.cancel();
+        assertTrue(window.acquire(0));
+    }
+
+    private static void respond(AdaptiveWindow window, int responses) throws Exception {
+        for (int i = 0; i < responses; i++) {
+            assertTrue(window.acquire(0));
+            window.responseReceived(LATENCY, false);
+        }
+    }
+
+    private static ClientProperties.Adaptive properties(int initialWindow, int minWindow, double increase) {
+        ClientProperties.Adaptive properties = new ClientProperties.Adaptive();
+        properties.setInitialWindow(initialWindow);
+        properties.setMinWindow(minWindow);
+        properties.setIncrease(increase);
+        // go by the congested flag only
+        properties.setLatencyFactor(0);
+        return properties;
+    }
+}
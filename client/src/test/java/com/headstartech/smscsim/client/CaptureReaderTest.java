@@ -0,0 +1,78 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.smpp.pdu.BindTransceiver;
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.capture.TrafficCapture;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DefaultPduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+
+    @Test
+    public void readsWhatTrafficCaptureWrote() throws Exception {
+        // header, two records and the terminating zero length, so the third record rolls over
+        int recordLength = 4 + 8 + 4 + transcoder.encode(submit(0)).readableBytes();
+        SmppServerProperties.Capture properties = new SmppServerProperties.Capture();
+        properties.setDirectory(folder.getRoot().getAbsolutePath());
+        properties.setSegmentSize(16 + 2 * recordLength + 4);
+
+        long before = System.currentTimeMillis();
+        TrafficCapture capture = new TrafficCapture(properties);
+        int stream0 = capture.newStream();
+        int stream1 = capture.newStream();
+        long start = System.nanoTime();
+        assertFalse(capture.record(stream0, new BindTransceiver(), start));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(capture.record(i == 1 ? stream1 : stream0, submit(i), start + i * 1000000L));
+        }
+        capture.destroy();
+        assertEquals(3, capture.getWritten());
+        File directory = capture.getDirectory();
+        assertTrue(new File(directory, "capture-000001.cap").isFile());
+
+        CaptureReader reader = new CaptureReader(directory);
+        try {
+            long previousOffset = -1;
+            for (int i = 0; i < 3; i++) {
+                assertTrue(reader.next());
+                assertEquals(i == 1 ? stream1 : stream0, reader.getStream());
+                assertTrue(reader.getOffsetNanos() > previousOffset);
+                previousOffset = reader.getOffsetNanos();
+                Pdu pdu = transcoder.decode(ChannelBuffers.wrappedBuffer(reader.getPdu()));
+                SubmitSm submit = (SubmitSm) pdu;
+                assertEquals(i + 1, submit.getSequenceNumber());
+                assertEquals("467000" + i, submit.getDestAddress().getAddress());
+            }
+            assertFalse(reader.next());
+            assertTrue(reader.getStartMillis() >= before);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static SubmitSm submit(int i) {
+        SubmitSm submit = new SubmitSm();
+        submit.setSequenceNumber(i + 1);
+        submit.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "467000" + i));
+        return submit;
+    }
+}
@@ -0,0 +1,97 @@
+package com.headstartech.smscsim.client;
+
+import com.cloudhopper.commons.util.ByteArrayUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.DataSm;
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.type.Address;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PduTemplateTest {
+
+    private final DefaultPduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+
+    @Test
+    public void patchesSequenceNumberAndDestination() throws Exception {
+        SubmitSm submit = submit();
+        submit.setShortMessage("Hello".getBytes("ISO-8859-1"));
+
+        SubmitSm decoded = (SubmitSm) write(new PduTemplate(submit, 4), 42, 12345, 0);
+
+        assertEquals(42, decoded.getSequenceNumber());
+        assertEquals("46700002345", decoded.getDestAddress().getAddress());
+        assertEquals("1234", decoded.getSourceAddress().getAddress());
+        assertArrayEquals("Hello".getBytes("ISO-8859-1"), decoded.getShortMessage());
+    }
+
+    @Test
+    public void patchesUdhReference() throws Exception {
+        SubmitSm submit = submit();
+        submit.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+        submit.setScheduleDeliveryTime("000000000100000R");
+        submit.setShortMessage(new byte[] { 0x05, 0x00, 0x03, 0x00, 0x02, 0x01, 'H', 'i' });
+
+        SubmitSm decoded = (SubmitSm) write(new PduTemplate(submit, 2), 7, 99, 0x1ab);
+
+        assertEquals(7, decoded.getSequenceNumber());
+        assertEquals("46700000099", decoded.getDestAddress().getAddress());
+        assertArrayEquals(new byte[] { 0x05, 0x00, 0x03, (byte) 0xab, 0x02, 0x01, 'H', 'i' }, decoded.getShortMessage());
+    }
+
+    @Test
+    public void patchesSarReference() throws Exception {
+        SubmitSm submit = submit();
+        submit.setShortMessage("Hi".getBytes("ISO-8859-1"));
+        submit.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 2 }));
+        submit.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1 }));
+        submit.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, ByteArrayUtil.toByteArray((short) 0)));
+
+        SubmitSm decoded = (SubmitSm) write(new PduTemplate(submit, 3), 0x7fffffff, 1000, 0x1234);
+
+        assertEquals(0x7fffffff, decoded.getSequenceNumber());
+        assertEquals("46700000000", decoded.getDestAddress().getAddress());
+        assertEquals(0x1234, decoded.getOptionalParameter(SmppConstants.TAG_SAR_MSG_REF_NUM).getValueAsUnsignedShort());
+        assertEquals(2, decoded.getOptionalParameter(SmppConstants.TAG_SAR_TOTAL_SEGMENTS).getValueAsUnsignedByte());
+    }
+
+    @Test
+    public void patchesDataSm() throws Exception {
+        DataSm data = new DataSm();
+        data.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        data.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "46700000000"));
+        data.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, ByteArrayUtil.toByteArray((short) 0)));
+
+        DataSm decoded = (DataSm) write(new PduTemplate(data, 1), 3, 8, 0xbeef);
+
+        assertEquals(3, decoded.getSequenceNumber());
+        assertEquals("46700000008", decoded.getDestAddress().getAddress());
+        assertEquals(0xbeef, decoded.getOptionalParameter(SmppConstants.TAG_SAR_MSG_REF_NUM).getValueAsUnsignedShort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMoreVariableDigitsThanDestination() throws Exception {
+        new PduTemplate(submit(), 12);
+    }
+
+    private Pdu write(PduTemplate template, int sequenceNumber, long variable, int reference) throws Exception {
+        ChannelBuffer buffer = ChannelBuffers.buffer(template.getLength());
+        template.writeTo(buffer, sequenceNumber, variable, reference);
+        return transcoder.decode(buffer);
+    }
+
+    private static SubmitSm submit() {
+        SubmitSm submit = new SubmitSm();
+        submit.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "46700000000"));
+        return submit;
+    }
+}
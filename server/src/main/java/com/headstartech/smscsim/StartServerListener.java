@@ -1,11 +1,15 @@
 package com.headstartech.smscsim;
 
-import com.cloudhopper.smpp.SmppServer;
 import com.cloudhopper.smpp.type.SmppChannelException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.SmppListeners;
+import com.headstartech.smscsim.server.admin.Drainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.ContextRefreshedEvent;
 
 /**
@@ -18,12 +22,19 @@ public class StartServerListener implements ApplicationListener {
     @Override
     public void onApplicationEvent(ApplicationEvent event) {
         if(event instanceof ContextRefreshedEvent) {
-            SmppServer smppServer = ((ContextRefreshedEvent) event).getApplicationContext().getBean(SmppServer.class);
+            SmppListeners smppListeners = ((ContextRefreshedEvent) event).getApplicationContext().getBean(SmppListeners.class);
             try {
-                smppServer.start();
+                smppListeners.start();
             } catch (SmppChannelException e) {
                 logger.error("Failed to start server", e);
             }
+        } else if (event instanceof ContextClosedEvent) {
+            // before the beans are destroyed, so sessions are unbound rather than cut off
+            ApplicationContext context = ((ContextClosedEvent) event).getApplicationContext();
+            SmppServerProperties.Admin admin = context.getBean(SmppServerProperties.class).getAdmin();
+            if (admin.isDrainOnShutdown()) {
+                context.getBean(Drainer.class).drain(admin.getShutdownDrainTimeout());
+            }
         }
     }
 }
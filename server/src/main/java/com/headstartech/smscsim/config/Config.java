@@ -4,12 +4,39 @@ import com.cloudhopper.smpp.SmppServer;
 import com.cloudhopper.smpp.SmppServerConfiguration;
 import com.cloudhopper.smpp.impl.DefaultSmppServer;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.server.MessageIdGenerator;
+import com.headstartech.smscsim.server.ServerContext;
+import com.headstartech.smscsim.server.SessionRegistry;
+import com.headstartech.smscsim.server.SmppListeners;
 import com.headstartech.smscsim.server.SmppServerHandlerImpl;
+import com.headstartech.smscsim.server.admin.Drainer;
+import com.headstartech.smscsim.server.bind.BindAdmission;
+import com.headstartech.smscsim.server.capture.TrafficCapture;
+import com.headstartech.smscsim.server.concat.ReassemblyTracker;
+import com.headstartech.smscsim.server.dlr.DeliveryReceiptEngine;
+import com.headstartech.smscsim.server.executor.ExecutorMetrics;
+import com.headstartech.smscsim.server.executor.HandlerMode;
+import com.headstartech.smscsim.server.executor.InstrumentedExecutor;
+import com.headstartech.smscsim.server.metrics.SmppMetrics;
+import com.headstartech.smscsim.server.metrics.SmppServerMetrics;
+import com.headstartech.smscsim.server.mo.MoGenerator;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.routing.MessageRouter;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import com.headstartech.smscsim.server.store.MessageLog;
+import com.headstartech.smscsim.server.throttle.Throttles;
+import com.headstartech.smscsim.server.trace.WireTraceMetrics;
+import com.headstartech.smscsim.trace.WireTracer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.ExecutorService;
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -22,25 +49,206 @@ public class Config {
     @Autowired
     SmppServerProperties smppServerProperties;
 
+    @Bean
+    public MessageIdGenerator messageIdGenerator() {
+        return new MessageIdGenerator(smppServerProperties.getNodeId());
+    }
+
+    @Bean
+    public MessageStateIndex messageStateIndex() {
+        return new MessageStateIndex(smppServerProperties.getMessageState().getCapacity());
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "smppserver.deliveryReceipt", name = "enabled")
+    public DeliveryReceiptEngine deliveryReceiptEngine(MessageStateIndex messageStateIndex) {
+        return new DeliveryReceiptEngine(smppServerProperties.getDeliveryReceipt(), messageStateIndex);
+    }
+
+    @Bean
+    public ResponseProfiles responseProfiles() {
+        return new ResponseProfiles(smppServerProperties);
+    }
+
+    @Bean(destroyMethod = "destroy")
+    public AsyncResponder asyncResponder() {
+        SmppServerProperties.Responder responder = smppServerProperties.getResponder();
+        return new AsyncResponder(responder.getThreads(), responder.getTickDuration());
+    }
+
+    @Bean
+    public Throttles throttles() {
+        return new Throttles(smppServerProperties.getThrottle());
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "smppserver.messageStore", name = "enabled")
+    public MessageLog messageLog() throws IOException {
+        return new MessageLog(smppServerProperties.getMessageStore());
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "smppserver.capture", name = "enabled")
+    public TrafficCapture trafficCapture() throws IOException {
+        return new TrafficCapture(smppServerProperties.getCapture());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "smppserver.trace", name = "enabled")
+    public WireTracer wireTracer() throws IOException {
+        SmppServerProperties.Trace properties = smppServerProperties.getTrace();
+        WireTracer wireTracer = new WireTracer(properties.getCapacity(), properties.getBodyBytes(), properties.getSampleEvery(),
+                properties.getSystemIds());
+        if (properties.getFile() != null && !properties.getFile().isEmpty()) {
+            wireTracer.startWriter(new File(properties.getFile()), properties.getDrainInterval());
+        }
+        return wireTracer;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "smppserver.trace", name = "enabled")
+    public WireTraceMetrics wireTraceMetrics(WireTracer wireTracer) {
+        return new WireTraceMetrics(wireTracer);
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "smppserver.reassembly", name = "enabled")
+    public ReassemblyTracker reassemblyTracker() {
+        return new ReassemblyTracker(smppServerProperties.getReassembly());
+    }
+
     @Bean(destroyMethod = "destroy")
-    public SmppServer smppServer() {
+    @ConditionalOnProperty(prefix = "smppserver.mo", name = "enabled")
+    public MoGenerator moGenerator() {
+        return new MoGenerator(smppServerProperties.getMo());
+    }
+
+    @Bean
+    public SessionRegistry sessionRegistry() {
+        return new SessionRegistry();
+    }
+
+    @Bean(destroyMethod = "destroy")
+    @ConditionalOnProperty(prefix = "smppserver.routing", name = "enabled")
+    public MessageRouter messageRouter(SessionRegistry sessionRegistry) {
+        return new MessageRouter(smppServerProperties.getRouting(), sessionRegistry);
+    }
+
+    @Bean
+    public BindAdmission bindAdmission() {
+        return new BindAdmission(smppServerProperties.getBind());
+    }
+
+    @Bean
+    public Drainer drainer(SessionRegistry sessionRegistry, ObjectProvider<MoGenerator> moGenerator, AsyncResponder asyncResponder,
+                           ObjectProvider<DeliveryReceiptEngine> deliveryReceiptEngine) {
+        return new Drainer(sessionRegistry, moGenerator.getIfAvailable(), asyncResponder, deliveryReceiptEngine.getIfAvailable(),
+                smppServerProperties.getAdmin().getUnbindTimeout());
+    }
+
+    @Bean
+    public SmppMetrics smppMetrics(SessionRegistry sessionRegistry) {
+        return new SmppMetrics(sessionRegistry);
+    }
+
+    @Bean
+    public SmppServerMetrics smppServerMetrics(SmppListeners smppListeners) {
+        return new SmppServerMetrics(smppListeners);
+    }
 
+    @Bean
+    public ExecutorMetrics executorMetrics() {
+        return new ExecutorMetrics();
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    @ConditionalOnExpression("'${smppserver.executor.handlerMode:IO}' != 'IO'")
+    public InstrumentedExecutor handlerExecutor(ExecutorMetrics executorMetrics) {
+        SmppServerProperties.Executor properties = smppServerProperties.getExecutor();
+        InstrumentedExecutor executor;
+        if (properties.getHandlerMode() == HandlerMode.VIRTUAL) {
+            executor = InstrumentedExecutor.virtualThreads("handler");
+        } else {
+            int threads = properties.getHandlerThreads() > 0 ? properties.getHandlerThreads() : Runtime.getRuntime().availableProcessors();
+            executor = InstrumentedExecutor.bounded("handler", threads, properties.getHandlerQueueCapacity());
+        }
+        executorMetrics.register(executor);
+        return executor;
+    }
+
+    @Bean
+    public ServerContext serverContext(MessageIdGenerator messageIdGenerator, ObjectProvider<DeliveryReceiptEngine> deliveryReceiptEngine,
+                                       ResponseProfiles responseProfiles, AsyncResponder asyncResponder, Throttles throttles,
+                                       SessionRegistry sessionRegistry, SmppMetrics smppMetrics, ObjectProvider<MessageLog> messageLog,
+                                       MessageStateIndex messageStateIndex, ObjectProvider<InstrumentedExecutor> handlerExecutor,
+                                       ObjectProvider<ReassemblyTracker> reassemblyTracker, ObjectProvider<MoGenerator> moGenerator,
+                                       ObjectProvider<MessageRouter> messageRouter, Drainer drainer,
+                                       ObjectProvider<TrafficCapture> trafficCapture, BindAdmission bindAdmission,
+                                       ObjectProvider<WireTracer> wireTracer) {
+        ServerContext context = new ServerContext();
+        context.setProperties(smppServerProperties);
+        context.setMessageIdGenerator(messageIdGenerator);
+        context.setDeliveryReceiptEngine(deliveryReceiptEngine.getIfAvailable());
+        context.setResponseProfiles(responseProfiles);
+        context.setAsyncResponder(asyncResponder);
+        context.setThrottles(throttles);
+        context.setSessionRegistry(sessionRegistry);
+        context.setMetrics(smppMetrics);
+        context.setMessageLog(messageLog.getIfAvailable());
+        context.setMessageStateIndex(messageStateIndex);
+        context.setHandlerExecutor(handlerExecutor.getIfAvailable());
+        context.setReassemblyTracker(reassemblyTracker.getIfAvailable());
+        context.setMoGenerator(moGenerator.getIfAvailable());
+        context.setMessageRouter(messageRouter.getIfAvailable());
+        context.setDrainer(drainer);
+        context.setCapture(trafficCapture.getIfAvailable());
+        context.setBindAdmission(bindAdmission);
+        context.setWireTracer(wireTracer.getIfAvailable());
+        return context;
+    }
+
+    @Bean(destroyMethod = "destroy")
+    public SmppListeners smppListeners(ServerContext serverContext, ExecutorMetrics executorMetrics) {
+        int listeners = Math.max(smppServerProperties.getListeners(), 1);
+        // shared, it only expires requests
+        ScheduledExecutorService monitorExecutor = Executors.newScheduledThreadPool(1,
+                new ThreadFactoryBuilder().setNameFormat("SmppServerSessionWindowMonitorPool-%d").build());
+        SmppListeners smppListeners = new SmppListeners();
+        for (int i = 0; i < listeners; i++) {
+            int port = smppServerProperties.getPort() + i;
+            smppListeners.add(port, smppServer(i, port, listeners > 1 ? "io-" + port : "io", serverContext, executorMetrics, monitorExecutor));
+        }
+        return smppListeners;
+    }
+
+    private SmppServer smppServer(int listener, int port, String ioName, ServerContext serverContext, ExecutorMetrics executorMetrics,
+                                  ScheduledExecutorService monitorExecutor) {
         SmppServerConfiguration configuration = new SmppServerConfiguration();
-        configuration.setPort(smppServerProperties.getPort());
+        configuration.setPort(port);
         configuration.setMaxConnectionSize(smppServerProperties.getMaxConnections());
         configuration.setNonBlockingSocketsEnabled(true);
-        configuration.setDefaultRequestExpiryTimeout(30000);
-        configuration.setDefaultWindowMonitorInterval(15000);
-        configuration.setDefaultWindowSize(5);
-        configuration.setDefaultWindowWaitTimeout(configuration.getDefaultRequestExpiryTimeout());
+        // defaults only, the settings of the systemId are applied when it binds
+        SmppServerProperties.Session session = smppServerProperties.getSession();
+        configuration.setDefaultRequestExpiryTimeout(session.getRequestExpiryTimeout());
+        configuration.setDefaultWindowMonitorInterval(session.getWindowMonitorInterval());
+        configuration.setDefaultWindowSize(session.getWindowSize());
+        configuration.setDefaultWindowWaitTimeout(session.getWindowWaitTimeout() > 0 ?
+                session.getWindowWaitTimeout() : session.getRequestExpiryTimeout());
         configuration.setDefaultSessionCountersEnabled(true);
         configuration.setJmxEnabled(true);
         configuration.setJmxDomain("SMSC");
+        if (listener > 0) {
+            // the MBean name
+            configuration.setName("SmppServer-" + port);
+        }
 
-        ExecutorService es = Executors.newCachedThreadPool();
-        ScheduledExecutorService monitorExecutor = Executors.newScheduledThreadPool(1,
-                new ThreadFactoryBuilder().setNameFormat("SmppServerSessionWindowMonitorPool-%d").build());
+        // runs the Netty I/O workers, one per allowed connection; they never finish, so the pool
+        // must not be smaller than that
+        InstrumentedExecutor ioExecutor = InstrumentedExecutor.fixedThreads(ioName, configuration.getMaxConnectionSize());
+        executorMetrics.register(ioExecutor);
 
-        return new DefaultSmppServer(configuration, new SmppServerHandlerImpl(), es, monitorExecutor);
+        return new DefaultSmppServer(configuration,
+                new SmppServerHandlerImpl(serverContext, listener),
+                ioExecutor, monitorExecutor);
     }
 }
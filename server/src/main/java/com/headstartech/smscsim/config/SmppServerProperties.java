@@ -1,9 +1,17 @@
 package com.headstartech.smscsim.config;
 
+import com.headstartech.smscsim.server.DelayDistribution;
+import com.headstartech.smscsim.server.executor.HandlerMode;
+import com.headstartech.smscsim.server.mo.TextEncoding;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by per on 5/16/15.
@@ -15,9 +23,53 @@ public class SmppServerProperties {
     @NotNull
     private Integer port;
 
+    // per listener
     @NotNull
     private Integer maxConnections;
 
+    // listener i accepts on port + i, each with its own I/O threads
+    private int listeners = 1;
+
+    // 0-255, part of every message id so several simulators never hand out the same id
+    private int nodeId;
+
+    // session settings for systemIds not listed in sessions
+    private final Session session = new Session();
+
+    // concurrent: the admin API changes entries at runtime
+    private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    private final MessageState messageState = new MessageState();
+
+    private final Executor executor = new Executor();
+
+    private final DeliveryReceipt deliveryReceipt = new DeliveryReceipt();
+
+    // profile for systemIds not listed in responseProfiles
+    private ResponseProfile responseProfile = new ResponseProfile();
+
+    private final Map<String, ResponseProfile> responseProfiles = new ConcurrentHashMap<String, ResponseProfile>();
+
+    private final Responder responder = new Responder();
+
+    private final Throttle throttle = new Throttle();
+
+    private final MessageStore messageStore = new MessageStore();
+
+    private final Reassembly reassembly = new Reassembly();
+
+    private final Mo mo = new Mo();
+
+    private final Routing routing = new Routing();
+
+    private final Admin admin = new Admin();
+
+    private final Capture capture = new Capture();
+
+    private final Bind bind = new Bind();
+
+    private final Trace trace = new Trace();
+
     public Integer getPort() {
         return port;
     }
@@ -33,4 +85,1124 @@ public class SmppServerProperties {
     public void setMaxConnections(Integer maxConnections) {
         this.maxConnections = maxConnections;
     }
+
+    public int getListeners() {
+        return listeners;
+    }
+
+    public void setListeners(int listeners) {
+        this.listeners = listeners;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public Map<String, Session> getSessions() {
+        return sessions;
+    }
+
+    public MessageState getMessageState() {
+        return messageState;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public DeliveryReceipt getDeliveryReceipt() {
+        return deliveryReceipt;
+    }
+
+    public ResponseProfile getResponseProfile() {
+        return responseProfile;
+    }
+
+    public void setResponseProfile(ResponseProfile responseProfile) {
+        this.responseProfile = responseProfile;
+    }
+
+    public Map<String, ResponseProfile> getResponseProfiles() {
+        return responseProfiles;
+    }
+
+    public Responder getResponder() {
+        return responder;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+
+    public Reassembly getReassembly() {
+        return reassembly;
+    }
+
+    public Mo getMo() {
+        return mo;
+    }
+
+    public Routing getRouting() {
+        return routing;
+    }
+
+    public Admin getAdmin() {
+        return admin;
+    }
+
+    public Capture getCapture() {
+        return capture;
+    }
+
+    public Bind getBind() {
+        return bind;
+    }
+
+    public Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * A delay distribution, all values in milliseconds.
+     */
+    public static class Delay {
+
+        private DelayDistribution.Type type = DelayDistribution.Type.FIXED;
+
+        // FIXED
+        private long fixed;
+
+        // UNIFORM (min, max) and LOG_NORMAL (median, sigma, capped at max if > 0)
+        private long min;
+        private long max;
+        private long median;
+        private double sigma = 0.5;
+
+        public DelayDistribution.Type getType() {
+            return type;
+        }
+
+        public void setType(DelayDistribution.Type type) {
+            this.type = type;
+        }
+
+        public long getFixed() {
+            return fixed;
+        }
+
+        public void setFixed(long fixed) {
+            this.fixed = fixed;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public void setMin(long min) {
+            this.min = min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public void setMax(long max) {
+            this.max = max;
+        }
+
+        public long getMedian() {
+            return median;
+        }
+
+        public void setMedian(long median) {
+            this.median = median;
+        }
+
+        public double getSigma() {
+            return sigma;
+        }
+
+        public void setSigma(double sigma) {
+            this.sigma = sigma;
+        }
+    }
+
+    /**
+     * Settings applied to a session when it binds.
+     */
+    public static class Session {
+
+        // max requests the server has outstanding towards the client (deliver_sm); also the
+        // window advertised to the delivery receipt engine
+        private int windowSize = 5;
+
+        // time to wait for a free window slot before failing a send, 0 means requestExpiryTimeout
+        private long windowWaitTimeout;
+
+        private long requestExpiryTimeout = 30000;
+
+        // how often expired requests are cleared from the window
+        private long windowMonitorInterval = 15000;
+
+        // disable Nagle's algorithm, otherwise small PDUs can wait for the client's delayed ACK
+        private boolean tcpNoDelay = true;
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public long getWindowWaitTimeout() {
+            return windowWaitTimeout;
+        }
+
+        public void setWindowWaitTimeout(long windowWaitTimeout) {
+            this.windowWaitTimeout = windowWaitTimeout;
+        }
+
+        public long getRequestExpiryTimeout() {
+            return requestExpiryTimeout;
+        }
+
+        public void setRequestExpiryTimeout(long requestExpiryTimeout) {
+            this.requestExpiryTimeout = requestExpiryTimeout;
+        }
+
+        public long getWindowMonitorInterval() {
+            return windowMonitorInterval;
+        }
+
+        public void setWindowMonitorInterval(long windowMonitorInterval) {
+            this.windowMonitorInterval = windowMonitorInterval;
+        }
+
+        public boolean isTcpNoDelay() {
+            return tcpNoDelay;
+        }
+
+        public void setTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+        }
+    }
+
+    /**
+     * Threads handling PDUs. The Netty I/O workers always get one thread each, and ch-smpp
+     * creates one worker per allowed connection (maxConnections).
+     */
+    public static class Executor {
+
+        private HandlerMode handlerMode = HandlerMode.IO;
+
+        // POOL mode: 0 means one per available processor
+        private int handlerThreads;
+        private int handlerQueueCapacity = 10000;
+
+        public HandlerMode getHandlerMode() {
+            return handlerMode;
+        }
+
+        public void setHandlerMode(HandlerMode handlerMode) {
+            this.handlerMode = handlerMode;
+        }
+
+        public int getHandlerThreads() {
+            return handlerThreads;
+        }
+
+        public void setHandlerThreads(int handlerThreads) {
+            this.handlerThreads = handlerThreads;
+        }
+
+        public int getHandlerQueueCapacity() {
+            return handlerQueueCapacity;
+        }
+
+        public void setHandlerQueueCapacity(int handlerQueueCapacity) {
+            this.handlerQueueCapacity = handlerQueueCapacity;
+        }
+    }
+
+    /**
+     * Index of message id to state, for query_sm / cancel_sm.
+     */
+    public static class MessageState {
+
+        // table size (rounded up to a power of two), 16 bytes per entry; at least the last
+        // capacity / 2 messages are kept, older ones are evicted
+        private int capacity = 1 << 20;
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    public static class DeliveryReceipt {
+
+        private boolean enabled;
+
+        // time from submit_sm to deliver_sm
+        private final Delay delay = new Delay();
+
+        // percentage of receipts reporting UNDELIVERABLE instead of DELIVERED
+        private int undeliverablePercent;
+
+        // max unacknowledged receipts per session (capped by the session window size)
+        private int windowSize = 5;
+
+        // max receipts scheduled but not yet sent, across all sessions
+        private int maxPending = 1000000;
+
+        private int senderThreads = 2;
+
+        // max wait for a free slot in the session's send window, shared with MO and routed
+        // deliver_sm; on timeout the receipt is retried after retryDelay
+        private long windowWait = 10;
+
+        // delay before retrying a receipt whose session window is full
+        private long retryDelay = 20;
+
+        // timer wheel resolution
+        private long tickDuration = 10;
+        private int ticksPerWheel = 1024;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Delay getDelay() {
+            return delay;
+        }
+
+        public int getUndeliverablePercent() {
+            return undeliverablePercent;
+        }
+
+        public void setUndeliverablePercent(int undeliverablePercent) {
+            this.undeliverablePercent = undeliverablePercent;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public long getWindowWait() {
+            return windowWait;
+        }
+
+        public void setWindowWait(long windowWait) {
+            this.windowWait = windowWait;
+        }
+
+        public long getRetryDelay() {
+            return retryDelay;
+        }
+
+        public void setRetryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+        }
+
+        public long getTickDuration() {
+            return tickDuration;
+        }
+
+        public void setTickDuration(long tickDuration) {
+            this.tickDuration = tickDuration;
+        }
+
+        public int getTicksPerWheel() {
+            return ticksPerWheel;
+        }
+
+        public void setTicksPerWheel(int ticksPerWheel) {
+            this.ticksPerWheel = ticksPerWheel;
+        }
+    }
+
+    /**
+     * Latency and error injection for submit_sm_resp / data_sm_resp. Percentages are of all
+     * responses and may have fractions (e.g. 0.5).
+     */
+    public static class ResponseProfile {
+
+        private final Delay latency = new Delay();
+
+        private double throttledPercent;
+        private double queueFullPercent;
+        private double errorPercent;
+
+        // command status used for errorPercent
+        private int errorStatus = 0x00000008;
+
+        // tail latency: spikePercent of responses get spikeDelay added
+        private double spikePercent;
+        private final Delay spikeDelay = new Delay();
+
+        public Delay getLatency() {
+            return latency;
+        }
+
+        public double getThrottledPercent() {
+            return throttledPercent;
+        }
+
+        public void setThrottledPercent(double throttledPercent) {
+            this.throttledPercent = throttledPercent;
+        }
+
+        public double getQueueFullPercent() {
+            return queueFullPercent;
+        }
+
+        public void setQueueFullPercent(double queueFullPercent) {
+            this.queueFullPercent = queueFullPercent;
+        }
+
+        public double getErrorPercent() {
+            return errorPercent;
+        }
+
+        public void setErrorPercent(double errorPercent) {
+            this.errorPercent = errorPercent;
+        }
+
+        public int getErrorStatus() {
+            return errorStatus;
+        }
+
+        public void setErrorStatus(int errorStatus) {
+            this.errorStatus = errorStatus;
+        }
+
+        public double getSpikePercent() {
+            return spikePercent;
+        }
+
+        public void setSpikePercent(double spikePercent) {
+            this.spikePercent = spikePercent;
+        }
+
+        public Delay getSpikeDelay() {
+            return spikeDelay;
+        }
+    }
+
+    public static class Responder {
+
+        // threads writing delayed responses
+        private int threads = 4;
+
+        // timer wheel resolution
+        private long tickDuration = 1;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public long getTickDuration() {
+            return tickDuration;
+        }
+
+        public void setTickDuration(long tickDuration) {
+            this.tickDuration = tickDuration;
+        }
+    }
+
+    /**
+     * A rate limit; tps of zero means unlimited, burst of zero means one second worth of tps.
+     */
+    public static class Limit {
+
+        private int tps;
+        private int burst;
+
+        public int getTps() {
+            return tps;
+        }
+
+        public void setTps(int tps) {
+            this.tps = tps;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * TPS limits for submit_sm / data_sm, answered with ESME_RTHROTTLED when exceeded.
+     */
+    public static class Throttle {
+
+        // limit per systemId (shared by all its sessions) for systemIds not listed in accounts
+        private final Limit account = new Limit();
+
+        private final Map<String, Limit> accounts = new ConcurrentHashMap<String, Limit>();
+
+        // limit across all systemIds
+        private final Limit global = new Limit();
+
+        public Limit getAccount() {
+            return account;
+        }
+
+        public Map<String, Limit> getAccounts() {
+            return accounts;
+        }
+
+        public Limit getGlobal() {
+            return global;
+        }
+    }
+
+    /**
+     * Capture of accepted submit_sm / data_sm to an append-only log on disk.
+     */
+    public static class MessageStore {
+
+        private boolean enabled;
+
+        private String directory = "messages";
+
+        // bytes per segment file
+        private int segmentSize = 64 * 1024 * 1024;
+
+        // max messages waiting to be written, messages beyond that are dropped and counted
+        private int queueCapacity = 1000000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class Reassembly {
+
+        // track the parts of concatenated messages (UDH or SAR TLVs)
+        private boolean enabled;
+
+        // max incomplete messages, the oldest are dropped as orphaned beyond that
+        private int capacity = 65536;
+
+        // ms from the first part until an incomplete message is orphaned
+        private long timeout = 60000;
+
+        // independently locked parts of the table, 0 for 4 per processor
+        private int stripes;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getStripes() {
+            return stripes;
+        }
+
+        public void setStripes(int stripes) {
+            this.stripes = stripes;
+        }
+    }
+
+    /**
+     * Mobile-originated messages (deliver_sm) sent to bound RECEIVER and TRANSCEIVER sessions.
+     */
+    public static class Mo {
+
+        private boolean enabled;
+
+        // profile for systemIds not listed in profiles
+        private final MoProfile profile = new MoProfile();
+
+        private final Map<String, MoProfile> profiles = new HashMap<String, MoProfile>();
+
+        // max messages waiting for a sender thread, across all sessions; beyond that they are dropped
+        private int maxPending = 10000;
+
+        private int senderThreads = 2;
+
+        private long requestTimeout = 30000;
+
+        // ms between scheduling rounds
+        private long tickDuration = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public MoProfile getProfile() {
+            return profile;
+        }
+
+        public Map<String, MoProfile> getProfiles() {
+            return profiles;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public long getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRequestTimeout(long requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+
+        public long getTickDuration() {
+            return tickDuration;
+        }
+
+        public void setTickDuration(long tickDuration) {
+            this.tickDuration = tickDuration;
+        }
+    }
+
+    public static class MoProfile {
+
+        // messages per second per session, 0 for none
+        private double rate;
+
+        // every burstInterval ms, burstDuration ms at burstRate instead of rate; no bursts if 0
+        private double burstRate;
+        private long burstInterval;
+        private long burstDuration;
+
+        // max unacknowledged deliver_sm per session (capped by the session window size)
+        private int windowSize = 10;
+
+        // picked in proportion to their weight, a single 160 character GSM message if empty
+        private final List<MoMessage> messages = new ArrayList<MoMessage>();
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public double getBurstRate() {
+            return burstRate;
+        }
+
+        public void setBurstRate(double burstRate) {
+            this.burstRate = burstRate;
+        }
+
+        public long getBurstInterval() {
+            return burstInterval;
+        }
+
+        public void setBurstInterval(long burstInterval) {
+            this.burstInterval = burstInterval;
+        }
+
+        public long getBurstDuration() {
+            return burstDuration;
+        }
+
+        public void setBurstDuration(long burstDuration) {
+            this.burstDuration = burstDuration;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public List<MoMessage> getMessages() {
+            return messages;
+        }
+    }
+
+    public static class MoMessage {
+
+        private int weight = 1;
+
+        private TextEncoding encoding = TextEncoding.GSM;
+
+        // characters; longer than fits in one deliver_sm is sent as concatenated parts (UDH)
+        private int length = 160;
+
+        // originating MSISDNs: sourcePrefix followed by 0 to sourceCount - 1, zero-padded
+        private String sourcePrefix = "4670";
+        private long sourceCount = 1000000;
+
+        // short code or number of the ESME
+        private String destination = "40404";
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public TextEncoding getEncoding() {
+            return encoding;
+        }
+
+        public void setEncoding(TextEncoding encoding) {
+            this.encoding = encoding;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        public String getSourcePrefix() {
+            return sourcePrefix;
+        }
+
+        public void setSourcePrefix(String sourcePrefix) {
+            this.sourcePrefix = sourcePrefix;
+        }
+
+        public long getSourceCount() {
+            return sourceCount;
+        }
+
+        public void setSourceCount(long sourceCount) {
+            this.sourceCount = sourceCount;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public void setDestination(String destination) {
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * Delivery of accepted submits to another bound ESME (deliver_sm), by destination prefix.
+     */
+    public static class Routing {
+
+        private boolean enabled;
+
+        // destination address prefix (digits) to the systemId that receives the messages; the longest matching prefix wins
+        private final Map<String, String> routes = new HashMap<String, String>();
+
+        // max routed messages waiting for a sender thread; beyond that they are dropped
+        private int maxPending = 10000;
+
+        private int senderThreads = 2;
+
+        private long requestTimeout = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Map<String, String> getRoutes() {
+            return routes;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public long getRequestTimeout() {
+            return requestTimeout;
+        }
+
+        public void setRequestTimeout(long requestTimeout) {
+            this.requestTimeout = requestTimeout;
+        }
+    }
+
+    /**
+     * Runtime reconfiguration and draining over HTTP (/admin).
+     */
+    public static class Admin {
+
+        // the API has no authentication
+        private boolean enabled;
+
+        // ms to wait for the send windows to empty before unbinding anyway
+        private long drainTimeout = 30000;
+
+        // ms to wait for each unbind_resp
+        private long unbindTimeout = 5000;
+
+        // drain before the server is destroyed on shutdown, waiting at most shutdownDrainTimeout ms
+        private boolean drainOnShutdown = true;
+        private long shutdownDrainTimeout = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getDrainTimeout() {
+            return drainTimeout;
+        }
+
+        public void setDrainTimeout(long drainTimeout) {
+            this.drainTimeout = drainTimeout;
+        }
+
+        public long getUnbindTimeout() {
+            return unbindTimeout;
+        }
+
+        public void setUnbindTimeout(long unbindTimeout) {
+            this.unbindTimeout = unbindTimeout;
+        }
+
+        public boolean isDrainOnShutdown() {
+            return drainOnShutdown;
+        }
+
+        public void setDrainOnShutdown(boolean drainOnShutdown) {
+            this.drainOnShutdown = drainOnShutdown;
+        }
+
+        public long getShutdownDrainTimeout() {
+            return shutdownDrainTimeout;
+        }
+
+        public void setShutdownDrainTimeout(long shutdownDrainTimeout) {
+            this.shutdownDrainTimeout = shutdownDrainTimeout;
+        }
+    }
+
+    /**
+     * Capture of the requests received from clients, for replay by the client (REPLAY mode).
+     */
+    public static class Capture {
+
+        private boolean enabled;
+
+        // each run captures into a new subdirectory named after its start time
+        private String directory = "capture";
+
+        // bytes per segment file
+        private int segmentSize = 256 * 1024 * 1024;
+
+        // max PDUs waiting to be written, PDUs beyond that are dropped and counted
+        private int queueCapacity = 1000000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * Admission of binds, see {@code BindAdmission}.
+     */
+    public static class Bind {
+
+        // binds per second (tps) across all systemIds, ESME_RBINDFAIL above it; 0 for no limit
+        private final Limit rate = new Limit();
+
+        // sessions bound at once per systemId, ESME_RALYBND above it; 0 for no limit
+        private int maxBinds;
+
+        // only accept the systemIds in accounts with their password (ESME_RINVSYSID, ESME_RINVPASWD)
+        private boolean authenticate;
+
+        private final Map<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+
+        public Limit getRate() {
+            return rate;
+        }
+
+        public int getMaxBinds() {
+            return maxBinds;
+        }
+
+        public void setMaxBinds(int maxBinds) {
+            this.maxBinds = maxBinds;
+        }
+
+        public boolean isAuthenticate() {
+            return authenticate;
+        }
+
+        public void setAuthenticate(boolean authenticate) {
+            this.authenticate = authenticate;
+        }
+
+        public Map<String, Account> getAccounts() {
+            return accounts;
+        }
+    }
+
+    public static class Account {
+
+        private String password;
+
+        // overrides bind.maxBinds if > 0
+        private int maxBinds;
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaxBinds() {
+            return maxBinds;
+        }
+
+        public void setMaxBinds(int maxBinds) {
+            this.maxBinds = maxBinds;
+        }
+    }
+
+    /**
+     * Sampled tracing of the PDUs on the wire, see {@code WireTracer}.
+     */
+    public static class Trace {
+
+        private boolean enabled;
+
+        // trace the PDUs with a sequence number that is a multiple of this, so requests with their responses; 0 for none
+        private int sampleEvery = 1000;
+
+        // systemIds of which every PDU is traced
+        private List<String> systemIds = new ArrayList<String>();
+
+        // records kept in memory, for GET /trace
+        private int capacity = 65536;
+
+        // bytes of the body kept per PDU, after the header
+        private int bodyBytes = 48;
+
+        // file the records are written to, none if empty
+        private String file;
+
+        // ms between writes to the file
+        private long drainInterval = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSampleEvery() {
+            return sampleEvery;
+        }
+
+        public void setSampleEvery(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+        }
+
+        public List<String> getSystemIds() {
+            return systemIds;
+        }
+
+        public void setSystemIds(List<String> systemIds) {
+            this.systemIds = systemIds;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        public int getBodyBytes() {
+            return bodyBytes;
+        }
+
+        public void setBodyBytes(int bodyBytes) {
+            this.bodyBytes = bodyBytes;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        public long getDrainInterval() {
+            return drainInterval;
+        }
+
+        public void setDrainInterval(long drainInterval) {
+            this.drainInterval = drainInterval;
+        }
+    }
 }
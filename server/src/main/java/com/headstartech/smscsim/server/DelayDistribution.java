@@ -0,0 +1,86 @@
+package com.headstartech.smscsim.server;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of simulated delays (in milliseconds). Implementations are stateless and
+ * draw from {@link ThreadLocalRandom}, so they can be shared between Netty threads.
+ */
+public abstract class DelayDistribution {
+
+    public enum Type {
+        FIXED, UNIFORM, LOG_NORMAL
+    }
+
+    public static final DelayDistribution ZERO = fixed(0);
+
+    public abstract long nextDelayMillis();
+
+    /**
+     * @return true if every call to {@link #nextDelayMillis()} returns zero
+     */
+    public boolean isZero() {
+        return false;
+    }
+
+    public static DelayDistribution of(SmppServerProperties.Delay delay) {
+        switch (delay.getType()) {
+            case FIXED:
+                return fixed(delay.getFixed());
+            case UNIFORM:
+                return uniform(delay.getMin(), delay.getMax());
+            case LOG_NORMAL:
+                return logNormal(delay.getMedian(), delay.getSigma(), delay.getMax());
+            default:
+                throw new IllegalArgumentException("Unknown delay type: " + delay.getType());
+        }
+    }
+
+    public static DelayDistribution fixed(final long millis) {
+        return new DelayDistribution() {
+            @Override
+            public long nextDelayMillis() {
+                return millis;
+            }
+
+            @Override
+            public boolean isZero() {
+                return millis == 0;
+            }
+        };
+    }
+
+    public static DelayDistribution uniform(final long minMillis, final long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("max delay must be >= min delay");
+        }
+        return new DelayDistribution() {
+            @Override
+            public long nextDelayMillis() {
+                return minMillis == maxMillis ? minMillis : ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+            }
+
+            @Override
+            public boolean isZero() {
+                return maxMillis == 0;
+            }
+        };
+    }
+
+    /**
+     * Log-normal delay with the given median; {@code sigma} is the standard deviation of the
+     * underlying normal distribution. Samples are capped at {@code maxMillis} (if positive).
+     */
+    public static DelayDistribution logNormal(long medianMillis, final double sigma, final long maxMillis) {
+        final double mu = Math.log(Math.max(medianMillis, 1));
+        return new DelayDistribution() {
+            @Override
+            public long nextDelayMillis() {
+                long delay = Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+                return maxMillis > 0 ? Math.min(delay, maxMillis) : delay;
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.headstartech.smscsim.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the message ids returned in submit_sm_resp / data_sm_resp: milliseconds since
+ * 2015-01-01 (41 bits), a sequence within the millisecond (12 bits) and a node id (8 bits).
+ */
+public class MessageIdGenerator {
+
+    private static final long EPOCH = 1420070400000L; // 2015-01-01T00:00:00Z
+
+    static final int SEQUENCE_BITS = 12;
+    static final int NODE_BITS = 8;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final int nodeId;
+
+    // (millis since EPOCH << SEQUENCE_BITS) | sequence of the last generated id
+    private final AtomicLong last = new AtomicLong();
+
+    public MessageIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("nodeId must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        while (true) {
+            long prev = last.get();
+            long next = Math.max(prev + 1, now);
+            if (last.compareAndSet(prev, next)) {
+                return (next << NODE_BITS) | nodeId;
+            }
+        }
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return node id of the simulator that generated {@code id}
+     */
+    public static int nodeIdOf(long id) {
+        return (int) (id & MAX_NODE_ID);
+    }
+
+    public static String toMessageId(long id) {
+        return Long.toHexString(id);
+    }
+
+    /**
+     * @throws NumberFormatException if {@code messageId} wasn't created by {@link #toMessageId(long)}
+     */
+    public static long fromMessageId(String messageId) {
+        return Long.parseUnsignedLong(messageId, 16);
+    }
+}
@@ -0,0 +1,16 @@
+package com.headstartech.smscsim.server;
+
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.pdu.PduRequest;
+
+/**
+ * Callback for requests originated by the simulator (e.g. delivery receipts). Set as the
+ * reference object of the outgoing {@link PduRequest}; {@link SmppServerSessionImpl}
+ * dispatches the response (or expiry) back to it.
+ */
+public interface OutboundPduCallback {
+
+    void responseReceived(PduAsyncResponse pduAsyncResponse);
+
+    void requestExpired(PduRequest pduRequest);
+}
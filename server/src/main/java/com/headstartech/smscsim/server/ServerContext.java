@@ -0,0 +1,249 @@
+package com.headstartech.smscsim.server;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.admin.Drainer;
+import com.headstartech.smscsim.server.bind.BindAdmission;
+import com.headstartech.smscsim.server.capture.TrafficCapture;
+import com.headstartech.smscsim.server.concat.ReassemblyTracker;
+import com.headstartech.smscsim.server.dlr.DeliveryReceiptEngine;
+import com.headstartech.smscsim.server.metrics.SmppMetrics;
+import com.headstartech.smscsim.server.mo.MoGenerator;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.routing.MessageRouter;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import com.headstartech.smscsim.server.store.MessageLog;
+import com.headstartech.smscsim.server.throttle.Throttles;
+import com.headstartech.smscsim.trace.WireTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Collaborators shared by the server handler and all sessions.
+ */
+public class ServerContext {
+
+    private SmppServerProperties properties;
+    private MessageIdGenerator messageIdGenerator;
+    private DeliveryReceiptEngine deliveryReceiptEngine;
+    private ResponseProfiles responseProfiles;
+    private AsyncResponder asyncResponder;
+    private Throttles throttles;
+    private SessionRegistry sessionRegistry;
+    private SmppMetrics metrics;
+    private MessageLog messageLog;
+    private MessageStateIndex messageStateIndex;
+    private Executor handlerExecutor;
+    private ReassemblyTracker reassemblyTracker;
+    private MoGenerator moGenerator;
+    private MessageRouter messageRouter;
+    private Drainer drainer;
+    private TrafficCapture capture;
+    private WireTracer wireTracer;
+    private BindAdmission bindAdmission;
+
+    public SmppServerProperties getProperties() {
+        return properties;
+    }
+
+    public void setProperties(SmppServerProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return session settings for {@code systemId}
+     */
+    public SmppServerProperties.Session getSessionProperties(String systemId) {
+        SmppServerProperties.Session session = properties.getSessions().get(systemId);
+        return session != null ? session : properties.getSession();
+    }
+
+    public MessageIdGenerator getMessageIdGenerator() {
+        return messageIdGenerator;
+    }
+
+    public void setMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+        this.messageIdGenerator = messageIdGenerator;
+    }
+
+    /**
+     * @return engine for delivery receipts, or <code>null</code> if disabled
+     */
+    public DeliveryReceiptEngine getDeliveryReceiptEngine() {
+        return deliveryReceiptEngine;
+    }
+
+    public void setDeliveryReceiptEngine(DeliveryReceiptEngine deliveryReceiptEngine) {
+        this.deliveryReceiptEngine = deliveryReceiptEngine;
+    }
+
+    public ResponseProfiles getResponseProfiles() {
+        return responseProfiles;
+    }
+
+    public void setResponseProfiles(ResponseProfiles responseProfiles) {
+        this.responseProfiles = responseProfiles;
+    }
+
+    public AsyncResponder getAsyncResponder() {
+        return asyncResponder;
+    }
+
+    public void setAsyncResponder(AsyncResponder asyncResponder) {
+        this.asyncResponder = asyncResponder;
+    }
+
+    public Throttles getThrottles() {
+        return throttles;
+    }
+
+    public void setThrottles(Throttles throttles) {
+        this.throttles = throttles;
+    }
+
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+
+    public void setSessionRegistry(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    public SmppMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(SmppMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return log of accepted messages, or <code>null</code> if disabled
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    public void setMessageLog(MessageLog messageLog) {
+        this.messageLog = messageLog;
+    }
+
+    public MessageStateIndex getMessageStateIndex() {
+        return messageStateIndex;
+    }
+
+    public void setMessageStateIndex(MessageStateIndex messageStateIndex) {
+        this.messageStateIndex = messageStateIndex;
+    }
+
+    /**
+     * @return executor for handling submit_sm, data_sm, query_sm and cancel_sm, or
+     * <code>null</code> to handle them on the I/O thread
+     */
+    public Executor getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+    public void setHandlerExecutor(Executor handlerExecutor) {
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    /**
+     * @return tracker of concatenated message parts, or <code>null</code> if disabled
+     */
+    public ReassemblyTracker getReassemblyTracker() {
+        return reassemblyTracker;
+    }
+
+    public void setReassemblyTracker(ReassemblyTracker reassemblyTracker) {
+        this.reassemblyTracker = reassemblyTracker;
+    }
+
+    /**
+     * @return generator of mobile-originated messages, or <code>null</code> if disabled
+     */
+    public MoGenerator getMoGenerator() {
+        return moGenerator;
+    }
+
+    public void setMoGenerator(MoGenerator moGenerator) {
+        this.moGenerator = moGenerator;
+    }
+
+    /**
+     * @return router of submits to other bound ESMEs, or <code>null</code> if disabled
+     */
+    public MessageRouter getMessageRouter() {
+        return messageRouter;
+    }
+
+    public void setMessageRouter(MessageRouter messageRouter) {
+        this.messageRouter = messageRouter;
+    }
+
+    public Drainer getDrainer() {
+        return drainer;
+    }
+
+    public void setDrainer(Drainer drainer) {
+        this.drainer = drainer;
+    }
+
+    /**
+     * @return tap capturing received requests, or <code>null</code> if disabled
+     */
+    public TrafficCapture getCapture() {
+        return capture;
+    }
+
+    public void setCapture(TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * @return tracer of the PDUs on the wire, or <code>null</code> if disabled
+     */
+    public WireTracer getWireTracer() {
+        return wireTracer;
+    }
+
+    public void setWireTracer(WireTracer wireTracer) {
+        this.wireTracer = wireTracer;
+    }
+
+    public BindAdmission getBindAdmission() {
+        return bindAdmission;
+    }
+
+    public void setBindAdmission(BindAdmission bindAdmission) {
+        this.bindAdmission = bindAdmission;
+    }
+
+    /**
+     * @throws IllegalStateException if a collaborator that every session uses isn't set
+     */
+    public void checkRequired() {
+        List<String> missing = new ArrayList<String>();
+        require(properties, "properties", missing);
+        require(messageIdGenerator, "messageIdGenerator", missing);
+        require(responseProfiles, "responseProfiles", missing);
+        require(asyncResponder, "asyncResponder", missing);
+        require(throttles, "throttles", missing);
+        require(sessionRegistry, "sessionRegistry", missing);
+        require(metrics, "metrics", missing);
+        require(messageStateIndex, "messageStateIndex", missing);
+        require(drainer, "drainer", missing);
+        require(bindAdmission, "bindAdmission", missing);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("ServerContext has no " + missing);
+        }
+    }
+
+    private static void require(Object collaborator, String name, List<String> missing) {
+        if (collaborator == null) {
+            missing.add(name);
+        }
+    }
+}
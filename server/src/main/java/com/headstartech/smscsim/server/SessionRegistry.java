@@ -0,0 +1,138 @@
+package com.headstartech.smscsim.server;
+
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppServerSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sessions currently bound to the server, by session id, and their handlers by systemId.
+ */
+public class SessionRegistry {
+
+    private static final SmppServerSessionImpl[] NONE = new SmppServerSessionImpl[0];
+
+    private final ConcurrentHashMap<Long, SmppServerSession> sessions = new ConcurrentHashMap<Long, SmppServerSession>();
+    private final ConcurrentHashMap<String, SystemIdSessions> bySystemId = new ConcurrentHashMap<String, SystemIdSessions>();
+
+    public void register(Long sessionId, SmppServerSession session, SmppServerSessionImpl handler) {
+        sessions.put(sessionId, session);
+        String systemId = session.getConfiguration().getSystemId();
+        synchronized (bySystemId) {
+            SystemIdSessions current = bySystemId.get(systemId);
+            bySystemId.put(systemId, (current != null ? current : SystemIdSessions.EMPTY).with(sessionId, handler));
+        }
+    }
+
+    public void unregister(Long sessionId) {
+        SmppServerSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return;
+        }
+        String systemId = session.getConfiguration().getSystemId();
+        synchronized (bySystemId) {
+            SystemIdSessions current = bySystemId.get(systemId);
+            if (current == null) {
+                return;
+            }
+            SystemIdSessions updated = current.without(sessionId);
+            if (updated.handlers.length == 0) {
+                bySystemId.remove(systemId);
+            } else {
+                bySystemId.put(systemId, updated);
+            }
+        }
+    }
+
+    /**
+     * @return live view of the bound sessions; iteration is weakly consistent and never blocks
+     * binds or unbinds
+     */
+    public Map<Long, SmppServerSession> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @param bindType bind type to select, <code>null</code> for all
+     * @return handlers of the sessions of {@code systemId} bound as {@code bindType}, in bind order
+     */
+    public List<SmppServerSessionImpl> getSessions(String systemId, SmppBindType bindType) {
+        SystemIdSessions current = bySystemId.get(systemId);
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<SmppServerSessionImpl> result = new ArrayList<SmppServerSessionImpl>(current.handlers.length);
+        for (SmppServerSessionImpl handler : current.handlers) {
+            if (bindType == null || handler.getBindType() == bindType) {
+                result.add(handler);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return handler of the next RECEIVER or TRANSCEIVER session of {@code systemId},
+     * round-robin, or <code>null</code> if none is bound
+     */
+    public SmppServerSessionImpl nextReceiver(String systemId) {
+        SystemIdSessions current = bySystemId.get(systemId);
+        if (current == null || current.receivers.length == 0) {
+            return null;
+        }
+        SmppServerSessionImpl[] receivers = current.receivers;
+        return receivers[(current.cursor.getAndIncrement() & Integer.MAX_VALUE) % receivers.length];
+    }
+
+    /**
+     * Immutable snapshot of the sessions of one systemId; the round-robin cursor carries over
+     * to the next snapshot.
+     */
+    private static final class SystemIdSessions {
+
+        static final SystemIdSessions EMPTY = new SystemIdSessions(new Long[0], NONE, new AtomicInteger());
+
+        final Long[] sessionIds;
+        final SmppServerSessionImpl[] handlers;
+        final SmppServerSessionImpl[] receivers;
+        final AtomicInteger cursor;
+
+        SystemIdSessions(Long[] sessionIds, SmppServerSessionImpl[] handlers, AtomicInteger cursor) {
+            this.sessionIds = sessionIds;
+            this.handlers = handlers;
+            this.cursor = cursor;
+            List<SmppServerSessionImpl> receivers = new ArrayList<SmppServerSessionImpl>(handlers.length);
+            for (SmppServerSessionImpl handler : handlers) {
+                if (handler.getBindType() == SmppBindType.RECEIVER || handler.getBindType() == SmppBindType.TRANSCEIVER) {
+                    receivers.add(handler);
+                }
+            }
+            this.receivers = receivers.toArray(NONE);
+        }
+
+        SystemIdSessions with(Long sessionId, SmppServerSessionImpl handler) {
+            Long[] ids = Arrays.copyOf(sessionIds, sessionIds.length + 1);
+            SmppServerSessionImpl[] updated = Arrays.copyOf(handlers, handlers.length + 1);
+            ids[ids.length - 1] = sessionId;
+            updated[updated.length - 1] = handler;
+            return new SystemIdSessions(ids, updated, this == EMPTY ? new AtomicInteger() : cursor);
+        }
+
+        SystemIdSessions without(Long sessionId) {
+            List<Long> ids = new ArrayList<Long>(sessionIds.length);
+            List<SmppServerSessionImpl> updated = new ArrayList<SmppServerSessionImpl>(handlers.length);
+            for (int i = 0; i < sessionIds.length; i++) {
+                if (!sessionIds[i].equals(sessionId)) {
+                    ids.add(sessionIds[i]);
+                    updated.add(handlers[i]);
+                }
+            }
+            return new SystemIdSessions(ids.toArray(new Long[ids.size()]), updated.toArray(NONE), cursor);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.headstartech.smscsim.server;
+
+import com.cloudhopper.smpp.SmppServer;
+import com.cloudhopper.smpp.type.SmppChannelException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link SmppServer}s the simulator accepts connections with, one per port, each with its
+ * own Netty boss and I/O threads and all sharing the {@link ServerContext}.
+ */
+public class SmppListeners {
+
+    // ch-smpp numbers sessions per server, listener i hands out ids i << LISTENER_SHIFT | id
+    public static final int LISTENER_SHIFT = 48;
+
+    private final Map<Integer, SmppServer> servers = new LinkedHashMap<Integer, SmppServer>();
+
+    public void add(int port, SmppServer server) {
+        servers.put(port, server);
+    }
+
+    /**
+     * @return the servers by port, in listener order
+     */
+    public Map<Integer, SmppServer> getServers() {
+        return Collections.unmodifiableMap(servers);
+    }
+
+    /**
+     * Starts all listeners; a listener that fails to start doesn't keep the others from
+     * starting.
+     *
+     * @throws SmppChannelException the failure of the first listener that didn't start
+     */
+    public void start() throws SmppChannelException {
+        SmppChannelException failure = null;
+        for (SmppServer server : servers.values()) {
+            try {
+                server.start();
+            } catch (SmppChannelException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public void destroy() {
+        for (SmppServer server : servers.values()) {
+            server.destroy();
+        }
+    }
+
+    /**
+     * @return {@code sessionId} of listener {@code listener} made unique across listeners
+     */
+    public static Long sessionId(int listener, Long sessionId) {
+        return listener == 0 ? sessionId : Long.valueOf((long) listener << LISTENER_SHIFT | sessionId);
+    }
+}
@@ -1,11 +1,15 @@
 package com.headstartech.smscsim.server;
 
+import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.SmppServerHandler;
 import com.cloudhopper.smpp.SmppServerSession;
 import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.impl.DefaultSmppSession;
 import com.cloudhopper.smpp.pdu.BaseBind;
 import com.cloudhopper.smpp.pdu.BaseBindResp;
 import com.cloudhopper.smpp.type.SmppProcessingException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.bind.BindAdmission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,31 +20,83 @@ public class SmppServerHandlerImpl implements SmppServerHandler {
 
     private Logger logger = LoggerFactory.getLogger(SmppServerHandlerImpl.class);
 
+    private final ServerContext context;
+    private final int listener;
+
+    /**
+     * @param listener index of the listener the handler serves, see {@link SmppListeners}
+     */
+    public SmppServerHandlerImpl(ServerContext context, int listener) {
+        context.checkRequired();
+        this.context = context;
+        this.listener = listener;
+    }
+
     @Override
-    public void sessionBindRequested(Long sessionId, SmppSessionConfiguration sessionConfiguration, final BaseBind bindRequest) throws SmppProcessingException {
-        logger.info("Bind requested: sessionId={}, systemId={}", sessionId, sessionConfiguration.getSystemId());
+    public void sessionBindRequested(Long serverSessionId, SmppSessionConfiguration sessionConfiguration, final BaseBind bindRequest) throws SmppProcessingException {
+        Long sessionId = SmppListeners.sessionId(listener, serverSessionId);
+        // DEBUG only, per-bind INFO logging would dominate the CPU during a reconnect storm
+        logger.debug("Bind requested: sessionId={}, systemId={}", sessionId, sessionConfiguration.getSystemId());
+        if (context.getDrainer().isDraining()) {
+            context.getBindAdmission().refused(BindAdmission.Result.DRAINING);
+            throw new SmppProcessingException(SmppConstants.STATUS_BINDFAIL, "Server is draining");
+        }
+        context.getBindAdmission().admit(sessionId, sessionConfiguration.getSystemId(), bindRequest.getPassword());
         sessionConfiguration.setName("smpp." + sessionConfiguration.getSystemId());
+
+        SmppServerProperties.Session settings = context.getSessionProperties(sessionConfiguration.getSystemId());
+        sessionConfiguration.setWindowSize(settings.getWindowSize());
+        sessionConfiguration.setRequestExpiryTimeout(settings.getRequestExpiryTimeout());
+        sessionConfiguration.setWindowMonitorInterval(settings.getWindowMonitorInterval());
+        sessionConfiguration.setWindowWaitTimeout(settings.getWindowWaitTimeout() > 0 ?
+                settings.getWindowWaitTimeout() : settings.getRequestExpiryTimeout());
     }
 
     @Override
-    public void sessionCreated(Long sessionId, SmppServerSession session, BaseBindResp preparedBindResponse) throws SmppProcessingException {
-        logger.info("Session created: sessionId={}", sessionId);
-        session.serverReady(new SmppServerSessionImpl(session));
+    public void sessionCreated(Long serverSessionId, SmppServerSession session, BaseBindResp preparedBindResponse) throws SmppProcessingException {
+        Long sessionId = SmppListeners.sessionId(listener, serverSessionId);
+        logger.debug("Session created: sessionId={}", sessionId);
+        if (session instanceof DefaultSmppSession) {
+            // ch-smpp doesn't expose the accepted channel's options, set them per session
+            boolean tcpNoDelay = context.getSessionProperties(session.getConfiguration().getSystemId()).isTcpNoDelay();
+            ((DefaultSmppSession) session).getChannel().getConfig().setOption("tcpNoDelay", tcpNoDelay);
+            if (context.getWireTracer() != null) {
+                context.getWireTracer().attach(((DefaultSmppSession) session).getChannel().getPipeline(), sessionId,
+                        session.getConfiguration().getSystemId());
+            }
+        }
+        context.getMetrics().forSystemId(session.getConfiguration().getSystemId()).bound();
+        context.getBindAdmission().sessionCreated(sessionId);
+        SmppServerSessionImpl handler = new SmppServerSessionImpl(session, context);
+        context.getSessionRegistry().register(sessionId, session, handler);
+        session.serverReady(handler);
+        if (context.getMoGenerator() != null) {
+            context.getMoGenerator().sessionBound(sessionId, session, handler);
+        }
     }
 
     @Override
-    public void sessionDestroyed(Long sessionId, SmppServerSession session) {
-        logger.info("Session destroyed: sessionId={}", sessionId);
+    public void sessionDestroyed(Long serverSessionId, SmppServerSession session) {
+        Long sessionId = SmppListeners.sessionId(listener, serverSessionId);
+        logger.debug("Session destroyed: sessionId={}", sessionId);
 
         if (session.hasCounters()) {
-            logger.info("tx-enquireLink: {}", session.getCounters().getTxEnquireLink());
-            logger.info("tx-submitSM: {}", session.getCounters().getTxSubmitSM());
-            logger.info("tx-deliverSM: {}", session.getCounters().getTxDeliverSM());
-            logger.info("tx-dataSM: {}", session.getCounters().getTxDataSM());
-            logger.info("rx-enquireLink: {}", session.getCounters().getRxEnquireLink());
-            logger.info("rx-submitSM: {}", session.getCounters().getRxSubmitSM());
-            logger.info("rx-deliverSM: {}", session.getCounters().getRxDeliverSM());
-            logger.info("rx-dataSM: {}", session.getCounters().getRxDataSM());
+            if (logger.isDebugEnabled()) {
+                logger.debug("tx-enquireLink: {}", session.getCounters().getTxEnquireLink());
+                logger.debug("tx-submitSM: {}", session.getCounters().getTxSubmitSM());
+                logger.debug("tx-deliverSM: {}", session.getCounters().getTxDeliverSM());
+                logger.debug("tx-dataSM: {}", session.getCounters().getTxDataSM());
+                logger.debug("rx-enquireLink: {}", session.getCounters().getRxEnquireLink());
+                logger.debug("rx-submitSM: {}", session.getCounters().getRxSubmitSM());
+                logger.debug("rx-deliverSM: {}", session.getCounters().getRxDeliverSM());
+                logger.debug("rx-dataSM: {}", session.getCounters().getRxDataSM());
+            }
+            context.getMetrics().forSystemId(session.getConfiguration().getSystemId()).retire(session.getCounters());
+        }
+        context.getSessionRegistry().unregister(sessionId);
+        context.getBindAdmission().sessionDestroyed(sessionId);
+        if (context.getMoGenerator() != null) {
+            context.getMoGenerator().sessionUnbound(sessionId);
         }
 
         session.destroy();
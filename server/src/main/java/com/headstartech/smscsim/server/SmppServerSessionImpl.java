@@ -1,24 +1,300 @@
 package com.headstartech.smscsim.server;
 
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.SmppSession;
 import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
 import com.cloudhopper.smpp.pdu.*;
+import com.headstartech.smscsim.server.capture.TrafficCapture;
+import com.headstartech.smscsim.server.concat.ReassemblyTracker;
+import com.headstartech.smscsim.server.dlr.DeliveryReceiptEngine;
+import com.headstartech.smscsim.server.metrics.SystemIdMetrics;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import com.headstartech.smscsim.server.response.ResponseProfile;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.routing.MessageRouter;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import com.headstartech.smscsim.server.store.MessageLog;
+import com.headstartech.smscsim.server.throttle.Throttles;
+import com.headstartech.smscsim.server.throttle.TokenBucket;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by per on 5/16/15.
  */
 public class SmppServerSessionImpl extends DefaultSmppSessionHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(SmppServerSessionImpl.class);
+
+    // SMPP absolute time, completed with tenths, quarter hours from UTC and direction
+    private static final DateTimeFormatter FINAL_DATE_FORMAT = DateTimeFormat.forPattern("yyMMddHHmmss").withZoneUTC();
+
     private WeakReference<SmppSession> sessionRef;
+    private final String systemId;
+    private final SmppBindType bindType;
+    private final MessageIdGenerator messageIdGenerator;
+    private final DeliveryReceiptEngine deliveryReceiptEngine;
+    private final MessageLog messageLog;
+    private final ResponseProfiles responseProfiles;
+    private final AsyncResponder asyncResponder;
+    private final Throttles throttles;
+    private final TokenBucket throttle;
+    private final SystemIdMetrics metrics;
+    private final MessageStateIndex stateIndex;
+    private final Executor handlerExecutor;
+    private final Semaphore receiptWindow;
+    private final ReassemblyTracker reassemblyTracker;
+    private final MessageRouter messageRouter;
+    private final TrafficCapture capture;
+    private final int captureStream;
 
-    public SmppServerSessionImpl(SmppSession session) {
+    public SmppServerSessionImpl(SmppSession session, ServerContext context) {
         this.sessionRef = new WeakReference<SmppSession>(session);
+        this.systemId = session.getConfiguration().getSystemId();
+        this.bindType = session.getBindType();
+        this.messageIdGenerator = context.getMessageIdGenerator();
+        this.deliveryReceiptEngine = context.getDeliveryReceiptEngine();
+        this.messageLog = context.getMessageLog();
+        this.responseProfiles = context.getResponseProfiles();
+        this.asyncResponder = context.getAsyncResponder();
+        this.throttles = context.getThrottles();
+        this.throttle = throttles.forSystemId(systemId);
+        this.metrics = context.getMetrics().forSystemId(systemId);
+        this.stateIndex = context.getMessageStateIndex();
+        this.handlerExecutor = context.getHandlerExecutor();
+        this.reassemblyTracker = context.getReassemblyTracker();
+        this.messageRouter = context.getMessageRouter();
+        this.capture = context.getCapture();
+        this.captureStream = capture != null ? capture.newStream() : 0;
+        this.receiptWindow = deliveryReceiptEngine != null ?
+                new Semaphore(Math.min(deliveryReceiptEngine.getWindowSize(), session.getConfiguration().getWindowSize())) : null;
+    }
+
+    public SmppSession getSession() {
+        return sessionRef.get();
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public SmppBindType getBindType() {
+        return bindType;
+    }
+
+    public SystemIdMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return permits for unacknowledged delivery receipts on this session
+     */
+    public Semaphore getReceiptWindow() {
+        return receiptWindow;
     }
 
     @Override
     public PduResponse firePduRequestReceived(PduRequest pduRequest) {
-        return pduRequest.createResponse();
+        long receivedNanos = System.nanoTime();
+        if (capture != null) {
+            capture.record(captureStream, pduRequest, receivedNanos);
+        }
+        if (handlerExecutor == null || !(pduRequest instanceof BaseSm || pduRequest instanceof QuerySm || pduRequest instanceof CancelSm)) {
+            return handle(pduRequest, receivedNanos);
+        }
+        try {
+            handlerExecutor.execute(new HandlerTask(pduRequest, receivedNanos));
+            return null;
+        } catch (RejectedExecutionException e) {
+            PduResponse response = pduRequest.createResponse();
+            response.setCommandStatus(SmppConstants.STATUS_MSGQFUL);
+            return pduRequest instanceof BaseSm ? respondNow(response, receivedNanos) : response;
+        }
+    }
+
+    /**
+     * @return the response, or <code>null</code> if it will be sent later
+     */
+    private PduResponse handle(PduRequest pduRequest, long receivedNanos) {
+        PduResponse response = pduRequest.createResponse();
+        if (pduRequest instanceof SubmitSm || pduRequest instanceof DataSm) {
+            if (!throttles.tryAcquire(throttle)) {
+                response.setCommandStatus(SmppConstants.STATUS_THROTTLED);
+                return respondNow(response, receivedNanos);
+            }
+
+            ResponseProfile profile = responseProfiles.forSystemId(systemId);
+            if (profile.isPassThrough()) {
+                scheduleReceipt((BaseSm) pduRequest, accept((BaseSm) pduRequest, (BaseSmResp) response));
+                return respondNow(response, receivedNanos);
+            }
+
+            int commandStatus = profile.nextCommandStatus();
+            long delay = profile.nextDelayMillis();
+            SmppSession session = sessionRef.get();
+            boolean delayed = delay > 0 && session != null;
+            Runnable afterSent = null;
+            if (commandStatus == SmppConstants.STATUS_OK) {
+                long id = accept((BaseSm) pduRequest, (BaseSmResp) response);
+                if (!delayed) {
+                    scheduleReceipt((BaseSm) pduRequest, id);
+                } else if (deliveryReceiptEngine != null) {
+                    // the client mustn't get a receipt for a message id it hasn't been given yet
+                    afterSent = new ReceiptAfterResponse((BaseSm) pduRequest, id);
+                }
+            } else {
+                response.setCommandStatus(commandStatus);
+            }
+            if (delayed) {
+                asyncResponder.respond(session, response, delay, receivedNanos, metrics.getSubmitResponseTime(), afterSent);
+                return null;
+            }
+            return respondNow(response, receivedNanos);
+        }
+        if (pduRequest instanceof QuerySm) {
+            query((QuerySm) pduRequest, (QuerySmResp) response);
+        } else if (pduRequest instanceof CancelSm) {
+            cancel((CancelSm) pduRequest, response);
+        }
+        return response;
+    }
+
+    private class HandlerTask implements Runnable {
+
+        private final PduRequest request;
+        private final long receivedNanos;
+
+        HandlerTask(PduRequest request, long receivedNanos) {
+            this.request = request;
+            this.receivedNanos = receivedNanos;
+        }
+
+        @Override
+        public void run() {
+            PduResponse response = handle(request, receivedNanos);
+            SmppSession session = sessionRef.get();
+            if (response == null || session == null) {
+                return;
+            }
+            try {
+                session.sendResponsePdu(response);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.debug("Failed to send response: {}", response, e);
+            }
+        }
+    }
+
+    private PduResponse respondNow(PduResponse response, long receivedNanos) {
+        metrics.getSubmitResponseTime().recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - receivedNanos));
+        return response;
+    }
+
+    /**
+     * @return the message id
+     */
+    private long accept(BaseSm request, BaseSmResp response) {
+        long id = messageIdGenerator.nextId();
+        String messageId = MessageIdGenerator.toMessageId(id);
+        response.setMessageId(messageId);
+        if (messageLog != null) {
+            messageLog.append(id, systemId, request);
+        }
+        stateIndex.put(id, SmppConstants.STATE_ENROUTE);
+        if (reassemblyTracker != null) {
+            reassemblyTracker.partReceived(systemId, request);
+        }
+        if (messageRouter != null) {
+            messageRouter.route(request);
+        }
+        return id;
+    }
+
+    private void scheduleReceipt(BaseSm request, long id) {
+        if (deliveryReceiptEngine != null) {
+            deliveryReceiptEngine.schedule(this, request, id);
+        }
+    }
+
+    private class ReceiptAfterResponse implements Runnable {
+
+        private final BaseSm request;
+        private final long id;
+
+        ReceiptAfterResponse(BaseSm request, long id) {
+            this.request = request;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            scheduleReceipt(request, id);
+        }
+    }
+
+    private void query(QuerySm request, QuerySmResp response) {
+        response.setMessageId(request.getMessageId());
+        long state = lookup(request.getMessageId());
+        if (state == MessageStateIndex.NOT_FOUND) {
+            response.setCommandStatus(SmppConstants.STATUS_INVMSGID);
+            return;
+        }
+        byte messageState = MessageStateIndex.state(state);
+        response.setMessageState(messageState);
+        response.setErrorCode((byte) MessageStateIndex.errorCode(state));
+        if (messageState != SmppConstants.STATE_ENROUTE) {
+            response.setFinalDate(FINAL_DATE_FORMAT.print(MessageStateIndex.timestamp(state)) + "000+");
+        }
+    }
+
+    private void cancel(CancelSm request, PduResponse response) {
+        // cancelling by service_type / addresses without a message_id is not simulated
+        long id;
+        try {
+            id = MessageIdGenerator.fromMessageId(request.getMessageId());
+        } catch (RuntimeException e) {
+            response.setCommandStatus(SmppConstants.STATUS_CANCELFAIL);
+            return;
+        }
+        if (!stateIndex.update(id, SmppConstants.STATE_ENROUTE, SmppConstants.STATE_DELETED, 0)) {
+            response.setCommandStatus(stateIndex.get(id) == MessageStateIndex.NOT_FOUND ?
+                    SmppConstants.STATUS_INVMSGID : SmppConstants.STATUS_CANCELFAIL);
+        }
+    }
+
+    private long lookup(String messageId) {
+        try {
+            return stateIndex.get(MessageIdGenerator.fromMessageId(messageId));
+        } catch (RuntimeException e) {
+            return MessageStateIndex.NOT_FOUND;
+        }
+    }
+
+    @Override
+    public void fireExpectedPduResponseReceived(PduAsyncResponse pduAsyncResponse) {
+        metrics.getWindowWaitTime().recordMillis(pduAsyncResponse.getWindowWaitTime());
+        Object ref = pduAsyncResponse.getRequest().getReferenceObject();
+        if (ref instanceof OutboundPduCallback) {
+            ((OutboundPduCallback) ref).responseReceived(pduAsyncResponse);
+        }
+    }
+
+    @Override
+    public void firePduRequestExpired(PduRequest pduRequest) {
+        Object ref = pduRequest.getReferenceObject();
+        if (ref instanceof OutboundPduCallback) {
+            ((OutboundPduCallback) ref).requestExpired(pduRequest);
+        }
     }
 }
@@ -0,0 +1,249 @@
+package com.headstartech.smscsim.server.admin;
+
+import com.cloudhopper.smpp.SmppServerSession;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.SessionRegistry;
+import com.headstartech.smscsim.server.bind.BindAdmission;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.routing.MessageRouter;
+import com.headstartech.smscsim.server.throttle.Throttles;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.bind.RelaxedDataBinder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes settings of the running server and drains it. Only there with
+ * {@code smppserver.admin.enabled=true}, since it has no authentication. A PUT under
+ * /admin/config replaces the settings at that path with the {@code smppserver.*} properties in
+ * the body, e.g. {@code PUT /admin/config/throttle/global {"tps": 5000}}.
+ */
+@RestController
+@RequestMapping("/admin")
+@ConditionalOnProperty(prefix = "smppserver.admin", name = "enabled")
+public class AdminController {
+
+    private final SmppServerProperties properties;
+    private final SessionRegistry sessionRegistry;
+    private final ResponseProfiles responseProfiles;
+    private final Throttles throttles;
+    private final Drainer drainer;
+    private final ObjectProvider<MessageRouter> messageRouter;
+    private final BindAdmission bindAdmission;
+
+    public AdminController(SmppServerProperties properties, SessionRegistry sessionRegistry, ResponseProfiles responseProfiles,
+                           Throttles throttles, Drainer drainer, ObjectProvider<MessageRouter> messageRouter, BindAdmission bindAdmission) {
+        this.properties = properties;
+        this.sessionRegistry = sessionRegistry;
+        this.responseProfiles = responseProfiles;
+        this.throttles = throttles;
+        this.drainer = drainer;
+        this.messageRouter = messageRouter;
+        this.bindAdmission = bindAdmission;
+    }
+
+    @RequestMapping(value = "/sessions", method = RequestMethod.GET)
+    public List<Map<String, Object>> sessions() {
+        List<Map<String, Object>> sessions = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<Long, SmppServerSession> entry : sessionRegistry.getSessions().entrySet()) {
+            SmppServerSession session = entry.getValue();
+            Map<String, Object> info = new LinkedHashMap<String, Object>();
+            info.put("sessionId", entry.getKey());
+            info.put("systemId", session.getConfiguration().getSystemId());
+            info.put("bindType", session.getBindType());
+            info.put("windowSize", session.getSendWindow().getMaxSize());
+            info.put("windowPending", session.getSendWindow().getSize());
+            sessions.add(info);
+        }
+        return sessions;
+    }
+
+    @RequestMapping(value = "/drain", method = RequestMethod.GET)
+    public Map<String, Object> drainStatus() {
+        Map<String, Object> status = new LinkedHashMap<String, Object>();
+        status.put("state", drainer.getState());
+        status.put("sessions", sessionRegistry.getSessions().size());
+        status.put("pendingRequests", drainer.getPendingRequests());
+        return status;
+    }
+
+    /**
+     * Starts draining; poll {@code GET /admin/drain} until the state is DRAINED.
+     */
+    @RequestMapping(value = "/drain", method = RequestMethod.POST)
+    public ResponseEntity<Map<String, Object>> drain(@RequestParam(value = "timeout", required = false) Long timeout) {
+        boolean started = drainer.startDrain(timeout != null ? timeout : properties.getAdmin().getDrainTimeout());
+        return new ResponseEntity<Map<String, Object>>(drainStatus(), started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT);
+    }
+
+    @RequestMapping(value = "/drain", method = RequestMethod.DELETE)
+    public Map<String, Object> resume() {
+        drainer.resume();
+        return drainStatus();
+    }
+
+    @RequestMapping(value = "/config/responseProfile", method = RequestMethod.PUT)
+    public void setDefaultResponseProfile(@RequestBody Map<String, Object> body) {
+        responseProfiles.setProfile(null, bind(new SmppServerProperties.ResponseProfile(), body));
+    }
+
+    @RequestMapping(value = "/config/responseProfiles/{systemId:.+}", method = RequestMethod.PUT)
+    public void setResponseProfile(@PathVariable String systemId, @RequestBody Map<String, Object> body) {
+        responseProfiles.setProfile(systemId, bind(new SmppServerProperties.ResponseProfile(), body));
+    }
+
+    @RequestMapping(value = "/config/responseProfiles/{systemId:.+}", method = RequestMethod.DELETE)
+    public void removeResponseProfile(@PathVariable String systemId) {
+        responseProfiles.removeProfile(systemId);
+    }
+
+    @RequestMapping(value = "/config/throttle/account", method = RequestMethod.PUT)
+    public void setDefaultThrottle(@RequestBody Map<String, Object> body) {
+        throttles.setLimit(null, bind(new SmppServerProperties.Limit(), body));
+    }
+
+    @RequestMapping(value = "/config/throttle/accounts/{systemId:.+}", method = RequestMethod.PUT)
+    public void setThrottle(@PathVariable String systemId, @RequestBody Map<String, Object> body) {
+        throttles.setLimit(systemId, bind(new SmppServerProperties.Limit(), body));
+    }
+
+    @RequestMapping(value = "/config/throttle/accounts/{systemId:.+}", method = RequestMethod.DELETE)
+    public void removeThrottle(@PathVariable String systemId) {
+        throttles.removeLimit(systemId);
+    }
+
+    @RequestMapping(value = "/config/throttle/global", method = RequestMethod.PUT)
+    public void setGlobalThrottle(@RequestBody Map<String, Object> body) {
+        throttles.setGlobalLimit(bind(new SmppServerProperties.Limit(), body));
+    }
+
+    // session settings apply from the next bind, ch-smpp fixes the window of a session when it binds
+    @RequestMapping(value = "/config/session", method = RequestMethod.PUT)
+    public void setDefaultSession(@RequestBody Map<String, Object> body) {
+        SmppServerProperties.Session settings = validate(bind(new SmppServerProperties.Session(), body));
+        SmppServerProperties.Session session = properties.getSession();
+        synchronized (session) {
+            session.setWindowSize(settings.getWindowSize());
+            session.setWindowWaitTimeout(settings.getWindowWaitTimeout());
+            session.setRequestExpiryTimeout(settings.getRequestExpiryTimeout());
+            session.setWindowMonitorInterval(settings.getWindowMonitorInterval());
+            session.setTcpNoDelay(settings.isTcpNoDelay());
+        }
+    }
+
+    @RequestMapping(value = "/config/sessions/{systemId:.+}", method = RequestMethod.PUT)
+    public void setSession(@PathVariable String systemId, @RequestBody Map<String, Object> body) {
+        properties.getSessions().put(systemId, validate(bind(new SmppServerProperties.Session(), body)));
+    }
+
+    @RequestMapping(value = "/config/sessions/{systemId:.+}", method = RequestMethod.DELETE)
+    public void removeSession(@PathVariable String systemId) {
+        properties.getSessions().remove(systemId);
+    }
+
+    @RequestMapping(value = "/config/routing/routes/{prefix}", method = RequestMethod.PUT)
+    public void setRoute(@PathVariable String prefix, @RequestBody Map<String, Object> body) {
+        Object systemId = body.get("systemId");
+        if (systemId == null) {
+            throw new IllegalArgumentException("No systemId");
+        }
+        router().addRoute(prefix, systemId.toString());
+    }
+
+    @RequestMapping(value = "/config/routing/routes/{prefix}", method = RequestMethod.DELETE)
+    public void removeRoute(@PathVariable String prefix) {
+        router().removeRoute(prefix);
+    }
+
+    @RequestMapping(value = "/config/bind/accounts/{systemId:.+}", method = RequestMethod.PUT)
+    public void setBindAccount(@PathVariable String systemId, @RequestBody Map<String, Object> body) {
+        properties.getBind().getAccounts().put(systemId, bind(new SmppServerProperties.Account(), body));
+    }
+
+    @RequestMapping(value = "/config/bind/accounts/{systemId:.+}", method = RequestMethod.DELETE)
+    public void removeBindAccount(@PathVariable String systemId) {
+        properties.getBind().getAccounts().remove(systemId);
+    }
+
+    @RequestMapping(value = "/config/bind/rate", method = RequestMethod.PUT)
+    public void setBindRate(@RequestBody Map<String, Object> body) {
+        bindAdmission.setRate(bind(new SmppServerProperties.Limit(), body));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> invalid(IllegalArgumentException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> unavailable(IllegalStateException e) {
+        return new ResponseEntity<String>(e.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    private MessageRouter router() {
+        MessageRouter router = messageRouter.getIfAvailable();
+        if (router == null) {
+            throw new IllegalStateException("Routing is disabled (smppserver.routing.enabled)");
+        }
+        return router;
+    }
+
+    private static SmppServerProperties.Session validate(SmppServerProperties.Session session) {
+        if (session.getWindowSize() < 1 || session.getRequestExpiryTimeout() < 0 || session.getWindowWaitTimeout() < 0) {
+            throw new IllegalArgumentException("Invalid session settings");
+        }
+        return session;
+    }
+
+    /**
+     * Binds {@code body} onto {@code target} the way Spring Boot binds application.properties.
+     *
+     * @throws IllegalArgumentException if a property is unknown or has an invalid value
+     */
+    private static <T> T bind(T target, Map<String, Object> body) {
+        MutablePropertyValues values = new MutablePropertyValues();
+        flatten("", body, values);
+        RelaxedDataBinder binder = new RelaxedDataBinder(target);
+        binder.setIgnoreUnknownFields(false);
+        try {
+            binder.bind(values);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        if (binder.getBindingResult().hasErrors()) {
+            StringBuilder message = new StringBuilder("Invalid settings:");
+            for (ObjectError error : binder.getBindingResult().getAllErrors()) {
+                message.append(' ').append(error.getDefaultMessage());
+            }
+            throw new IllegalArgumentException(message.toString());
+        }
+        return target;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void flatten(String prefix, Map<String, Object> map, MutablePropertyValues values) {
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String name = prefix + entry.getKey();
+            if (entry.getValue() instanceof Map) {
+                flatten(name + ".", (Map<String, Object>) entry.getValue(), values);
+            } else {
+                values.add(name, entry.getValue() != null ? entry.getValue().toString() : null);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.headstartech.smscsim.server.admin;
+
+import com.cloudhopper.smpp.SmppServerSession;
+import com.headstartech.smscsim.server.SessionRegistry;
+import com.headstartech.smscsim.server.dlr.DeliveryReceiptEngine;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import com.headstartech.smscsim.server.mo.MoGenerator;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes the server out of service without dropping requests in flight: binds are refused and
+ * the sessions are unbound once nothing is left to send or the timeout has passed.
+ */
+public class Drainer implements MetricsContributor {
+
+    public enum State {
+        ACTIVE, DRAINING, DRAINED
+    }
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private Logger logger = LoggerFactory.getLogger(Drainer.class);
+
+    private final SessionRegistry sessionRegistry;
+    private final MoGenerator moGenerator;
+    private final AsyncResponder asyncResponder;
+    private final DeliveryReceiptEngine deliveryReceiptEngine;
+    private final long unbindTimeout;
+    private volatile State state = State.ACTIVE;
+
+    /**
+     * @param moGenerator <code>null</code> if MO messages are disabled
+     * @param deliveryReceiptEngine <code>null</code> if delivery receipts are disabled
+     */
+    public Drainer(SessionRegistry sessionRegistry, MoGenerator moGenerator, AsyncResponder asyncResponder,
+                   DeliveryReceiptEngine deliveryReceiptEngine, long unbindTimeout) {
+        this.sessionRegistry = sessionRegistry;
+        this.moGenerator = moGenerator;
+        this.asyncResponder = asyncResponder;
+        this.deliveryReceiptEngine = deliveryReceiptEngine;
+        this.unbindTimeout = unbindTimeout;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if binds are refused
+     */
+    public boolean isDraining() {
+        return state != State.ACTIVE;
+    }
+
+    /**
+     * Starts draining in the background.
+     *
+     * @return false if the server is already draining or drained
+     */
+    public synchronized boolean startDrain(final long timeoutMillis) {
+        if (state != State.ACTIVE) {
+            return false;
+        }
+        state = State.DRAINING;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainSessions(timeoutMillis);
+            }
+        }, "Drainer");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Drains and returns when all sessions are unbound, or {@code timeoutMillis} plus the unbind
+     * timeouts have passed.
+     */
+    public void drain(long timeoutMillis) {
+        synchronized (this) {
+            if (state == State.ACTIVE) {
+                state = State.DRAINING;
+            }
+        }
+        drainSessions(timeoutMillis);
+    }
+
+    /**
+     * Accepts binds again; a drain in progress stops before unbinding any more sessions.
+     */
+    public synchronized void resume() {
+        state = State.ACTIVE;
+    }
+
+    /**
+     * @return requests sent by the server that await a response across all bound sessions,
+     * plus delayed responses and delivery receipts not yet sent
+     */
+    public int getPendingRequests() {
+        int pending = asyncResponder.getPending();
+        if (deliveryReceiptEngine != null) {
+            pending += deliveryReceiptEngine.getPending();
+        }
+        for (SmppServerSession session : sessionRegistry.getSessions().values()) {
+            pending += session.getSendWindow().getSize();
+        }
+        return pending;
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_draining", "gauge", "1 while binds are refused because the server is draining or drained.")
+                .sample("smscsim_draining", isDraining() ? 1 : 0);
+    }
+
+    private void drainSessions(long timeoutMillis) {
+        List<Long> sessionIds = new ArrayList<Long>(sessionRegistry.getSessions().keySet());
+        logger.info("Draining {} sessions", sessionIds.size());
+        if (moGenerator != null) {
+            for (Long sessionId : sessionIds) {
+                moGenerator.sessionUnbound(sessionId);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int pending;
+        while ((pending = getPendingRequests()) > 0 && System.currentTimeMillis() < deadline && state == State.DRAINING) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (pending > 0) {
+            logger.warn("Drain timeout, unbinding with {} requests pending", pending);
+        }
+
+        for (Map.Entry<Long, SmppServerSession> entry : sessionRegistry.getSessions().entrySet()) {
+            if (state != State.DRAINING) {
+                logger.info("Drain cancelled");
+                return;
+            }
+            try {
+                entry.getValue().unbind(unbindTimeout);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to unbind session: sessionId={}", entry.getKey(), e);
+            }
+        }
+        synchronized (this) {
+            if (state == State.DRAINING) {
+                state = State.DRAINED;
+            }
+        }
+        logger.info("Drained");
+    }
+}
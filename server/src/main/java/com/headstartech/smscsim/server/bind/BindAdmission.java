@@ -0,0 +1,143 @@
+package com.headstartech.smscsim.server.bind;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.type.SmppProcessingException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.metrics.LatencyHistogram;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import com.headstartech.smscsim.server.throttle.TokenBucket;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a bind is accepted: credentials from the account table, a max number of
+ * sessions bound at once per systemId and a bind rate across all systemIds, checked in that
+ * order so a refused bind doesn't use up the rate.
+ */
+public class BindAdmission implements MetricsContributor {
+
+    public enum Result {
+        ACCEPTED, INVALID_SYSTEM_ID, INVALID_PASSWORD, RATE_LIMITED, MAX_BINDS, DRAINING
+    }
+
+    private static final Result[] RESULTS = Result.values();
+
+    private final SmppServerProperties.Bind properties;
+    private final TokenBucket rate;
+    private final ConcurrentHashMap<String, AtomicInteger> bound = new ConcurrentHashMap<String, AtomicInteger>();
+    // admitted binds by session id, until the session is destroyed
+    private final ConcurrentHashMap<Long, Admission> admissions = new ConcurrentHashMap<Long, Admission>();
+    private final LongAdder[] results = new LongAdder[RESULTS.length];
+    private final LatencyHistogram bindTime = new LatencyHistogram();
+
+    public BindAdmission(SmppServerProperties.Bind properties) {
+        this.properties = properties;
+        this.rate = new TokenBucket(properties.getRate().getTps(), properties.getRate().getBurst());
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Admits a bind, reserving a session of {@code systemId} until {@link #sessionDestroyed}.
+     *
+     * @throws SmppProcessingException with the status to answer the bind with if it is refused
+     */
+    public void admit(Long sessionId, String systemId, String password) throws SmppProcessingException {
+        SmppServerProperties.Account account = properties.getAccounts().get(systemId);
+        if (properties.isAuthenticate()) {
+            if (account == null) {
+                throw refuse(Result.INVALID_SYSTEM_ID, SmppConstants.STATUS_INVSYSID, "Unknown systemId");
+            }
+            if (account.getPassword() != null && !account.getPassword().equals(password)) {
+                throw refuse(Result.INVALID_PASSWORD, SmppConstants.STATUS_INVPASWD, "Invalid password");
+            }
+        }
+        int maxBinds = account != null && account.getMaxBinds() > 0 ? account.getMaxBinds() : properties.getMaxBinds();
+        AtomicInteger count = bound.get(systemId);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = bound.putIfAbsent(systemId, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        if (count.incrementAndGet() > maxBinds && maxBinds > 0) {
+            count.decrementAndGet();
+            throw refuse(Result.MAX_BINDS, SmppConstants.STATUS_ALYBND, "Max binds of systemId reached");
+        }
+        if (!rate.tryAcquire()) {
+            count.decrementAndGet();
+            throw refuse(Result.RATE_LIMITED, SmppConstants.STATUS_BINDFAIL, "Bind rate exceeded");
+        }
+        admissions.put(sessionId, new Admission(count, System.nanoTime()));
+        results[Result.ACCEPTED.ordinal()].increment();
+    }
+
+    /**
+     * Counts a bind refused elsewhere, e.g. while draining.
+     */
+    public void refused(Result result) {
+        results[result.ordinal()].increment();
+    }
+
+    public void sessionCreated(Long sessionId) {
+        Admission admission = admissions.get(sessionId);
+        if (admission != null) {
+            bindTime.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - admission.requestedNanos));
+        }
+    }
+
+    public void sessionDestroyed(Long sessionId) {
+        Admission admission = admissions.remove(sessionId);
+        if (admission != null) {
+            admission.count.decrementAndGet();
+        }
+    }
+
+    /**
+     * Changes the bind rate; binds already accepted stay accepted.
+     */
+    public void setRate(SmppServerProperties.Limit limit) {
+        properties.getRate().setTps(limit.getTps());
+        properties.getRate().setBurst(limit.getBurst());
+        rate.setRate(limit.getTps(), limit.getBurst());
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_bind_requests_total", "counter", "Bind requests by admission result.");
+        for (Result result : RESULTS) {
+            writer.sample("smscsim_bind_requests_total", results[result.ordinal()].sum(), "result", result.name().toLowerCase(Locale.ROOT));
+        }
+        writer.header("smscsim_bind_seconds", "histogram", "Time from bind request to bound session.");
+        bindTime.write(writer, "smscsim_bind_seconds");
+        writer.header("smscsim_bind_sessions", "gauge", "Sessions admitted and not yet destroyed, by systemId.");
+        for (Map.Entry<String, AtomicInteger> entry : new TreeMap<String, AtomicInteger>(bound).entrySet()) {
+            writer.sample("smscsim_bind_sessions", entry.getValue().get(), "system_id", entry.getKey());
+        }
+    }
+
+    private SmppProcessingException refuse(Result result, int status, String message) {
+        results[result.ordinal()].increment();
+        return new SmppProcessingException(status, message);
+    }
+
+    private static final class Admission {
+
+        final AtomicInteger count;
+        final long requestedNanos;
+
+        Admission(AtomicInteger count, long requestedNanos) {
+            this.count = count;
+            this.requestedNanos = requestedNanos;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.headstartech.smscsim.server.capture;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tap recording the requests clients send with their arrival times, so the client can replay
+ * the traffic: per run a directory of segment files {@code capture-NNNNNN.cap} of a 16 byte header
+ * (int magic, short version, short reserved, long start epoch millis) and big-endian records of
+ * int length of the rest (0 ends the segment), long arrival nanos since the start, int stream
+ * (session in bind order) and the PDU as received.
+ */
+public class TrafficCapture implements MetricsContributor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficCapture.class);
+
+    static final int MAGIC = 0x534D4350; // "SMCP"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File directory;
+    private final int segmentSize;
+    private final int queueCapacity;
+    private final long startMillis;
+    private final long startNanos;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger streams = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    // writer thread only
+    private final PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+    private int segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    public TrafficCapture(SmppServerProperties.Capture properties) throws IOException {
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.directory = new File(properties.getDirectory(), new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date(startMillis)));
+        this.segmentSize = properties.getSegmentSize();
+        this.queueCapacity = properties.getQueueCapacity();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create capture directory " + directory);
+        }
+        openSegment();
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "TrafficCaptureWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        logger.info("Capturing traffic to {}", directory.getAbsolutePath());
+    }
+
+    /**
+     * @return stream number for a new session
+     */
+    public int newStream() {
+        return streams.getAndIncrement();
+    }
+
+    /**
+     * Queues a received request for writing; binds, unbinds and generic_nack are not captured.
+     *
+     * @param receivedNanos {@link System#nanoTime()} when the request arrived
+     * @return false if the request isn't captured
+     */
+    public boolean record(int stream, PduRequest request, long receivedNanos) {
+        int commandId = request.getCommandId();
+        if (commandId == SmppConstants.CMD_ID_UNBIND || commandId == SmppConstants.CMD_ID_GENERIC_NACK ||
+                commandId == SmppConstants.CMD_ID_BIND_RECEIVER || commandId == SmppConstants.CMD_ID_BIND_TRANSMITTER ||
+                commandId == SmppConstants.CMD_ID_BIND_TRANSCEIVER) {
+            return false;
+        }
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(new Entry(receivedNanos - startNanos, stream, request));
+        captured.incrementAndGet();
+        return true;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_capture_written_total", "counter", "Requests written to the traffic capture.")
+                .sample("smscsim_capture_written_total", getWritten());
+        writer.header("smscsim_capture_dropped_total", "counter", "Requests not captured because the write queue was full or the record didn't fit.")
+                .sample("smscsim_capture_dropped_total", getDropped());
+        writer.header("smscsim_capture_queued", "gauge", "Requests waiting to be written to the capture.")
+                .sample("smscsim_capture_queued", getQueued());
+        writer.header("smscsim_capture_bytes_total", "counter", "Bytes of PDUs written to the capture.")
+                .sample("smscsim_capture_bytes_total", bytesWritten.get());
+    }
+
+    /**
+     * Writes the queued requests and closes the current segment.
+     */
+    public void destroy() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+        logger.info("Capture closed: {} requests written, {} dropped", written.get(), dropped.get());
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                write(entry);
+            } catch (Exception e) {
+                dropped.incrementAndGet();
+                logger.warn("Failed to capture {}", entry.request.getName(), e);
+            }
+        }
+    }
+
+    private void write(Entry entry) throws Exception {
+        ChannelBuffer pdu = transcoder.encode(entry.request);
+        int pduLength = pdu.readableBytes();
+        int length = 8 + 4 + pduLength;
+        if (4 + length > segmentSize - HEADER_SIZE - 4) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // keep room for the terminating zero length
+        if (buffer.remaining() < 4 + length + 4) {
+            closeSegment();
+            segment++;
+            openSegment();
+        }
+
+        int offset = buffer.position();
+        buffer.position(offset + 4);
+        buffer.putLong(entry.offsetNanos);
+        buffer.putInt(entry.stream);
+        pdu.getBytes(pdu.readerIndex(), buffer);
+        buffer.putInt(offset, length);
+        written.incrementAndGet();
+        bytesWritten.addAndGet(pduLength);
+    }
+
+    private void openSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "capture-%06d.cap", segment));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putLong(startMillis);
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close capture segment {}", segment, e);
+        }
+        channel = null;
+    }
+
+    private static class Entry {
+
+        final long offsetNanos;
+        final int stream;
+        final PduRequest request;
+
+        Entry(long offsetNanos, int stream, PduRequest request) {
+            this.offsetNanos = offsetNanos;
+            this.stream = stream;
+            this.request = request;
+        }
+    }
+}
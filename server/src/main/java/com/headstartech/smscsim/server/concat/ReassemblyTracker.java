@@ -0,0 +1,270 @@
+package com.headstartech.smscsim.server.concat;
+
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the parts of concatenated messages until all have arrived, keyed by systemId, source
+ * address and reference number, in lock-striped insertion-ordered maps.
+ */
+public class ReassemblyTracker implements MetricsContributor {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int stripeCapacity;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService sweeper;
+
+    private final LongAdder parts = new LongAdder();
+    private final LongAdder pending = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder replaced = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+
+    public ReassemblyTracker(SmppServerProperties.Reassembly properties) {
+        int stripeCount = properties.getStripes() > 0 ? properties.getStripes() : 4 * Runtime.getRuntime().availableProcessors();
+        stripeCount = Integer.highestOneBit(Math.max(stripeCount, 2) - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.mask = stripeCount - 1;
+        this.stripeCapacity = Math.max(1, properties.getCapacity() / stripeCount);
+        this.timeoutMillis = properties.getTimeout();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ReassemblySweeper-%d").setDaemon(true).build());
+        long sweepInterval = Math.max(100, Math.min(1000, timeoutMillis / 4));
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                expire();
+            }
+        }, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records {@code sm} if it is part of a concatenated message.
+     */
+    public void partReceived(String systemId, BaseSm sm) {
+        Segment segment = Segment.of(sm);
+        if (segment == null) {
+            return;
+        }
+        parts.increment();
+        if (segment.number < 1 || segment.number > segment.total) {
+            invalid.increment();
+            return;
+        }
+        if (segment.total == 1) {
+            completed.increment();
+            return;
+        }
+
+        Key key = new Key(systemId, sm.getSourceAddress() != null ? sm.getSourceAddress().getAddress() : null, segment.reference);
+        Stripe stripe = stripes[spread(key.hashCode()) & mask];
+        long now = System.currentTimeMillis();
+        synchronized (stripe) {
+            stripe.expire(now);
+            Partial partial = stripe.messages.get(key);
+            if (partial != null && partial.total != segment.total) {
+                // reference number reused for another message before the previous one completed
+                stripe.messages.remove(key);
+                pending.decrement();
+                replaced.increment();
+                partial = null;
+            }
+            if (partial == null) {
+                partial = new Partial(segment.total, now);
+                stripe.messages.put(key, partial);
+                pending.increment();
+                if (stripe.messages.size() > stripeCapacity) {
+                    Iterator<Partial> eldest = stripe.messages.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    pending.decrement();
+                    evicted.increment();
+                }
+            }
+            if (!partial.add(segment.number)) {
+                duplicates.increment();
+            } else if (partial.isComplete()) {
+                stripe.messages.remove(key);
+                pending.decrement();
+                completed.increment();
+            }
+        }
+    }
+
+    /**
+     * Orphans the incomplete messages whose first part arrived more than the timeout ago.
+     */
+    public void expire() {
+        long now = System.currentTimeMillis();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.expire(now);
+            }
+        }
+    }
+
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    public long getParts() {
+        return parts.sum();
+    }
+
+    public long getPending() {
+        return pending.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    public long getReplaced() {
+        return replaced.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getInvalid() {
+        return invalid.sum();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_reassembly_parts_total", "counter", "Accepted parts of concatenated messages.")
+                .sample("smscsim_reassembly_parts_total", getParts());
+        writer.header("smscsim_reassembly_pending", "gauge", "Concatenated messages with parts still missing.")
+                .sample("smscsim_reassembly_pending", getPending());
+        writer.header("smscsim_reassembly_completed_total", "counter", "Concatenated messages of which all parts arrived.")
+                .sample("smscsim_reassembly_completed_total", getCompleted());
+        writer.header("smscsim_reassembly_orphaned_total", "counter", "Concatenated messages given up with parts missing.")
+                .sample("smscsim_reassembly_orphaned_total", getTimedOut(), "reason", "timeout")
+                .sample("smscsim_reassembly_orphaned_total", getEvicted(), "reason", "evicted")
+                .sample("smscsim_reassembly_orphaned_total", getReplaced(), "reason", "replaced");
+        writer.header("smscsim_reassembly_duplicate_parts_total", "counter", "Parts received again for an incomplete message.")
+                .sample("smscsim_reassembly_duplicate_parts_total", getDuplicates());
+        writer.header("smscsim_reassembly_invalid_parts_total", "counter", "Parts with a sequence number outside 1 to the total.")
+                .sample("smscsim_reassembly_invalid_parts_total", getInvalid());
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private class Stripe {
+
+        final LinkedHashMap<Key, Partial> messages = new LinkedHashMap<Key, Partial>();
+
+        void expire(long now) {
+            Iterator<Map.Entry<Key, Partial>> it = messages.entrySet().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().getValue().firstMillis < timeoutMillis) {
+                    return;
+                }
+                it.remove();
+                pending.decrement();
+                timedOut.increment();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final String systemId;
+        private final String source;
+        private final int reference;
+        private final int hash;
+
+        Key(String systemId, String source, int reference) {
+            this.systemId = systemId;
+            this.source = source;
+            this.reference = reference;
+            int h = systemId != null ? systemId.hashCode() : 0;
+            h = 31 * h + (source != null ? source.hashCode() : 0);
+            this.hash = 31 * h + reference;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return reference == other.reference && equal(systemId, other.systemId) && equal(source, other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The part numbers received so far, as a bit set (at most 255 parts).
+     */
+    private static final class Partial {
+
+        final int total;
+        final long firstMillis;
+        final long[] received = new long[4];
+        int count;
+
+        Partial(int total, long firstMillis) {
+            this.total = total;
+            this.firstMillis = firstMillis;
+        }
+
+        /**
+         * @return false if the part was already received
+         */
+        boolean add(int number) {
+            long bit = 1L << (number & 63);
+            int word = number >>> 6;
+            if ((received[word] & bit) != 0) {
+                return false;
+            }
+            received[word] |= bit;
+            count++;
+            return true;
+        }
+
+        boolean isComplete() {
+            return count == total;
+        }
+    }
+}
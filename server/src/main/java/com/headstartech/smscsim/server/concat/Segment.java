@@ -0,0 +1,77 @@
+package com.headstartech.smscsim.server.concat;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.tlv.TlvConvertException;
+
+/**
+ * The concatenation fields of one part of a long message, from the user data header (8 or
+ * 16-bit reference number) or from the sar_* TLVs.
+ */
+final class Segment {
+
+    // information element identifiers of the concatenation headers
+    private static final int IEI_CONCAT_8BIT = 0x00;
+    private static final int IEI_CONCAT_16BIT = 0x08;
+
+    final int reference;
+    final int total;
+    final int number;
+
+    private Segment(int reference, int total, int number) {
+        this.reference = reference;
+        this.total = total;
+        this.number = number;
+    }
+
+    /**
+     * @return the part's concatenation fields, or <code>null</code> if {@code sm} isn't part of
+     * a concatenated message
+     */
+    static Segment of(BaseSm sm) {
+        Tlv sarReference = sm.getOptionalParameter(SmppConstants.TAG_SAR_MSG_REF_NUM);
+        if (sarReference != null) {
+            Tlv total = sm.getOptionalParameter(SmppConstants.TAG_SAR_TOTAL_SEGMENTS);
+            Tlv number = sm.getOptionalParameter(SmppConstants.TAG_SAR_SEGMENT_SEQNUM);
+            if (total == null || number == null) {
+                return null;
+            }
+            try {
+                return new Segment(sarReference.getValueAsUnsignedShort(), total.getValueAsUnsignedByte(), number.getValueAsUnsignedByte());
+            } catch (TlvConvertException e) {
+                return null;
+            }
+        }
+        if ((sm.getEsmClass() & SmppConstants.ESM_CLASS_UDHI_MASK) == 0) {
+            return null;
+        }
+        byte[] userData = sm.getShortMessage();
+        if (userData == null || userData.length == 0) {
+            Tlv payload = sm.getOptionalParameter(SmppConstants.TAG_MESSAGE_PAYLOAD);
+            userData = payload != null ? payload.getValue() : null;
+        }
+        if (userData == null || userData.length == 0) {
+            return null;
+        }
+        int end = Math.min(userData.length, 1 + (userData[0] & 0xFF));
+        int i = 1;
+        while (i + 2 <= end) {
+            int iei = userData[i] & 0xFF;
+            int length = userData[i + 1] & 0xFF;
+            int value = i + 2;
+            if (value + length > end) {
+                return null;
+            }
+            if (iei == IEI_CONCAT_8BIT && length == 3) {
+                return new Segment(userData[value] & 0xFF, userData[value + 1] & 0xFF, userData[value + 2] & 0xFF);
+            }
+            if (iei == IEI_CONCAT_16BIT && length == 4) {
+                return new Segment(((userData[value] & 0xFF) << 8) | (userData[value + 1] & 0xFF),
+                        userData[value + 2] & 0xFF, userData[value + 3] & 0xFF);
+            }
+            i = value + length;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,315 @@
+package com.headstartech.smscsim.server.dlr;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.SmppTimeoutException;
+import com.cloudhopper.smpp.util.DeliveryReceipt;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.DelayDistribution;
+import com.headstartech.smscsim.server.MessageIdGenerator;
+import com.headstartech.smscsim.server.OutboundPduCallback;
+import com.headstartech.smscsim.server.SmppServerSessionImpl;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import org.joda.time.DateTime;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes accepted messages DELIVERED or UNDELIVERABLE after the configured delay and sends
+ * the delivery receipts they asked for, scheduled on a {@link HashedWheelTimer}.
+ */
+public class DeliveryReceiptEngine implements MetricsContributor {
+
+    private Logger logger = LoggerFactory.getLogger(DeliveryReceiptEngine.class);
+
+    private static final int RECEIPT_TEXT_LENGTH = 20;
+
+    private final DelayDistribution delay;
+    private final int undeliverablePercent;
+    private final int windowSize;
+    private final int maxPending;
+    private final long windowWait;
+    private final long retryDelay;
+    private final Timer timer;
+    private final ThreadPoolExecutor sender;
+    private final MessageStateIndex stateIndex;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger deliveries = new AtomicInteger();
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong windowFull = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    public DeliveryReceiptEngine(SmppServerProperties.DeliveryReceipt properties, MessageStateIndex stateIndex) {
+        this.stateIndex = stateIndex;
+        this.delay = DelayDistribution.of(properties.getDelay());
+        this.undeliverablePercent = properties.getUndeliverablePercent();
+        this.windowSize = properties.getWindowSize();
+        this.maxPending = properties.getMaxPending();
+        this.windowWait = properties.getWindowWait();
+        this.retryDelay = properties.getRetryDelay();
+        this.timer = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("DeliveryReceiptTimer-%d").setDaemon(true).build(),
+                properties.getTickDuration(), TimeUnit.MILLISECONDS, properties.getTicksPerWheel());
+        this.sender = new ThreadPoolExecutor(properties.getSenderThreads(), properties.getSenderThreads(), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(maxPending),
+                new ThreadFactoryBuilder().setNameFormat("DeliveryReceiptSender-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @return max number of unacknowledged receipts per session
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Schedules delivery of {@code submit}, and a delivery receipt if it asked for one.
+     *
+     * @param sessionHandler handler of the session the message was received on
+     * @param submit the submit_sm / data_sm
+     * @param id message id returned to the client
+     */
+    public void schedule(SmppServerSessionImpl sessionHandler, BaseSm submit, long id) {
+        byte receiptRequested = (byte) (submit.getRegisteredDelivery() & SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_MASK);
+        boolean delivered = undeliverablePercent <= 0 || ThreadLocalRandom.current().nextInt(100) >= undeliverablePercent;
+        boolean sendReceipt = receiptRequested == SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED ||
+                (receiptRequested == SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_ON_FAILURE && !delivered);
+
+        if (!sendReceipt) {
+            deliveries.incrementAndGet();
+        } else if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        } else {
+            scheduled.incrementAndGet();
+        }
+        PendingReceipt receipt = new PendingReceipt(sessionHandler, submit, id, System.currentTimeMillis(), delivered, sendReceipt);
+        timer.newTimeout(receipt, delay.nextDelayMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return receipts scheduled but not yet sent
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return messages without a receipt not yet DELIVERED or UNDELIVERABLE
+     */
+    public int getDeliveries() {
+        return deliveries.get();
+    }
+
+    public long getScheduled() {
+        return scheduled.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWindowFull() {
+        return windowFull.get();
+    }
+
+    /**
+     * @return receipts not sent because the message was cancelled first
+     */
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_dlr_pending", "gauge", "Delivery receipts scheduled but not yet sent.")
+                .sample("smscsim_dlr_pending", getPending());
+        writer.header("smscsim_dlr_deliveries_pending", "gauge", "Messages without a delivery receipt not yet delivered.")
+                .sample("smscsim_dlr_deliveries_pending", getDeliveries());
+        writer.header("smscsim_dlr_scheduled_total", "counter", "Delivery receipts scheduled.")
+                .sample("smscsim_dlr_scheduled_total", getScheduled());
+        writer.header("smscsim_dlr_sent_total", "counter", "Delivery receipts sent.")
+                .sample("smscsim_dlr_sent_total", getSent());
+        writer.header("smscsim_dlr_acknowledged_total", "counter", "Delivery receipts acknowledged by the client.")
+                .sample("smscsim_dlr_acknowledged_total", getAcknowledged());
+        writer.header("smscsim_dlr_expired_total", "counter", "Delivery receipts not acknowledged in time.")
+                .sample("smscsim_dlr_expired_total", getExpired());
+        writer.header("smscsim_dlr_dropped_total", "counter", "Delivery receipts dropped (maxPending reached, session gone or send failed).")
+                .sample("smscsim_dlr_dropped_total", getDropped());
+        writer.header("smscsim_dlr_window_full_total", "counter", "Delivery receipts postponed because the session's window was full.")
+                .sample("smscsim_dlr_window_full_total", getWindowFull());
+        writer.header("smscsim_dlr_cancelled_total", "counter", "Delivery receipts not sent because the message was cancelled.")
+                .sample("smscsim_dlr_cancelled_total", getCancelled());
+    }
+
+    public void destroy() {
+        timer.stop();
+        sender.shutdownNow();
+    }
+
+    private void done(boolean success) {
+        pending.decrementAndGet();
+        if (!success) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private class PendingReceipt implements TimerTask, Runnable, OutboundPduCallback {
+
+        private final SmppServerSessionImpl sessionHandler;
+        private final BaseSm submit;
+        private final long id;
+        private final long submitTime;
+        private final boolean delivered;
+        private final boolean sendReceipt;
+        private boolean stateUpdated;
+
+        PendingReceipt(SmppServerSessionImpl sessionHandler, BaseSm submit, long id, long submitTime, boolean delivered, boolean sendReceipt) {
+            this.sessionHandler = sessionHandler;
+            this.submit = submit;
+            this.id = id;
+            this.submitTime = submitTime;
+            this.delivered = delivered;
+            this.sendReceipt = sendReceipt;
+        }
+
+        // timer thread: never do I/O here
+        @Override
+        public void run(Timeout timeout) {
+            if (!stateUpdated) {
+                stateUpdated = true;
+                byte state = delivered ? SmppConstants.STATE_DELIVERED : SmppConstants.STATE_UNDELIVERABLE;
+                boolean cancelledFirst = !stateIndex.update(id, SmppConstants.STATE_ENROUTE, state, delivered ? 0 : 1) &&
+                        stateIndex.get(id) != MessageStateIndex.NOT_FOUND;
+                if (!sendReceipt) {
+                    deliveries.decrementAndGet();
+                    return;
+                }
+                if (cancelledFirst) {
+                    // no longer ENROUTE, i.e. cancelled
+                    cancelled.incrementAndGet();
+                    done(true);
+                    return;
+                }
+            }
+            // take the permit here so a full window never occupies a sender thread
+            if (!sessionHandler.getReceiptWindow().tryAcquire()) {
+                windowFull.incrementAndGet();
+                timer.newTimeout(this, retryDelay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            try {
+                sender.execute(this);
+            } catch (RejectedExecutionException e) {
+                sessionHandler.getReceiptWindow().release();
+                done(false);
+            }
+        }
+
+        // sender thread
+        @Override
+        public void run() {
+            SmppSession session = sessionHandler.getSession();
+            if (session == null || !session.isBound()) {
+                sessionHandler.getReceiptWindow().release();
+                done(false);
+                return;
+            }
+            try {
+                session.sendRequestPdu(createDeliverSm(), windowWait, false);
+                sent.incrementAndGet();
+                done(true);
+            } catch (SmppTimeoutException e) {
+                // send window full of MO or routed deliver_sm
+                sessionHandler.getReceiptWindow().release();
+                windowFull.incrementAndGet();
+                timer.newTimeout(this, retryDelay, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                sessionHandler.getReceiptWindow().release();
+                done(false);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                sessionHandler.getReceiptWindow().release();
+                done(false);
+                logger.debug("Failed to send delivery receipt: messageId={}", MessageIdGenerator.toMessageId(id), e);
+            }
+        }
+
+        @Override
+        public void responseReceived(PduAsyncResponse pduAsyncResponse) {
+            sessionHandler.getReceiptWindow().release();
+            sessionHandler.getMetrics().getDeliverResponseTime().recordMillis(pduAsyncResponse.getResponseTime());
+            acknowledged.incrementAndGet();
+        }
+
+        @Override
+        public void requestExpired(PduRequest pduRequest) {
+            sessionHandler.getReceiptWindow().release();
+            expired.incrementAndGet();
+        }
+
+        private DeliverSm createDeliverSm() throws Exception {
+            String messageId = MessageIdGenerator.toMessageId(id);
+            byte state = delivered ? SmppConstants.STATE_DELIVERED : SmppConstants.STATE_UNDELIVERABLE;
+            DeliveryReceipt receipt = new DeliveryReceipt(messageId, 1, delivered ? 1 : 0,
+                    new DateTime(submitTime), new DateTime(), state, delivered ? 0 : 1, receiptText());
+
+            DeliverSm deliver = new DeliverSm();
+            deliver.setEsmClass(SmppConstants.ESM_CLASS_MT_SMSC_DELIVERY_RECEIPT);
+            deliver.setSourceAddress(submit.getDestAddress());
+            deliver.setDestAddress(submit.getSourceAddress());
+            deliver.setShortMessage(CharsetUtil.encode(receipt.toShortMessage(), CharsetUtil.CHARSET_GSM));
+            deliver.addOptionalParameter(new Tlv(SmppConstants.TAG_RECEIPTED_MSG_ID, CharsetUtil.encode(messageId + '\0', CharsetUtil.CHARSET_ISO_8859_1)));
+            deliver.addOptionalParameter(new Tlv(SmppConstants.TAG_MSG_STATE, new byte[] { state }));
+            deliver.setReferenceObject(this);
+            return deliver;
+        }
+
+        private String receiptText() {
+            byte[] shortMessage = submit.getShortMessage();
+            if (submit.getDataCoding() != SmppConstants.DATA_CODING_DEFAULT || shortMessage == null) {
+                return "";
+            }
+            return CharsetUtil.decode(Arrays.copyOf(shortMessage, Math.min(shortMessage.length, RECEIPT_TEXT_LENGTH)), CharsetUtil.CHARSET_GSM);
+        }
+    }
+}
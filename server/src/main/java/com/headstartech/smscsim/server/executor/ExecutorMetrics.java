@@ -0,0 +1,24 @@
+package com.headstartech.smscsim.server.executor;
+
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Metrics of the server's {@link InstrumentedExecutor}s, labelled with the executor name.
+ */
+public class ExecutorMetrics implements MetricsContributor {
+
+    private final List<InstrumentedExecutor> executors = new CopyOnWriteArrayList<InstrumentedExecutor>();
+
+    public void register(InstrumentedExecutor executor) {
+        executors.add(executor);
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        InstrumentedExecutor.writeMetrics(writer, executors);
+    }
+}
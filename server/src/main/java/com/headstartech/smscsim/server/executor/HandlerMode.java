@@ -0,0 +1,24 @@
+package com.headstartech.smscsim.server.executor;
+
+/**
+ * Where submit_sm, data_sm, query_sm and cancel_sm are handled.
+ */
+public enum HandlerMode {
+
+    /**
+     * On the Netty I/O worker thread that read the PDU; lowest overhead, but a slow handler
+     * delays every session served by that worker.
+     */
+    IO,
+
+    /**
+     * On a bounded thread pool; PDUs arriving when its queue is full are answered with
+     * ESME_RMSGQFUL.
+     */
+    POOL,
+
+    /**
+     * On a new virtual thread per PDU; needs Java 21 or later at runtime.
+     */
+    VIRTUAL
+}
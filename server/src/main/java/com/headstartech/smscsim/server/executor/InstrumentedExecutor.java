@@ -0,0 +1,181 @@
+package com.headstartech.smscsim.server.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor that counts submitted, running, completed and rejected tasks. They are exposed, with
+ * the queue depth and pool size, by {@link ExecutorMetrics}.
+ */
+public class InstrumentedExecutor extends AbstractExecutorService {
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private InstrumentedExecutor(String name, ExecutorService delegate) {
+        this.name = name;
+        this.delegate = delegate;
+        this.pool = delegate instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) delegate : null;
+    }
+
+    /**
+     * Pool of at most {@code threads} threads that never queues; for tasks that run for the
+     * lifetime of the pool, like Netty I/O workers.
+     */
+    public static InstrumentedExecutor fixedThreads(String name, int threads) {
+        return new InstrumentedExecutor(name, new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory(name, false)));
+    }
+
+    /**
+     * Pool of {@code threads} threads with a queue of {@code queueCapacity}; tasks beyond that
+     * are rejected.
+     */
+    public static InstrumentedExecutor bounded(String name, int threads, int queueCapacity) {
+        return new InstrumentedExecutor(name, new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory(name, true)));
+    }
+
+    /**
+     * A new virtual thread per task.
+     *
+     * @throws IllegalStateException if the JVM doesn't support virtual threads
+     */
+    public static InstrumentedExecutor virtualThreads(String name) {
+        try {
+            // looked up reflectively, the code is compiled for Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new InstrumentedExecutor(name, (ExecutorService) factory.invoke(null));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name, boolean daemon) {
+        return new ThreadFactoryBuilder().setNameFormat("SmppServer-" + name + "-%d").setDaemon(daemon).build();
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        submitted.increment();
+        try {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    active.incrementAndGet();
+                    try {
+                        command.run();
+                    } finally {
+                        active.decrementAndGet();
+                        completed.increment();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * @return tasks waiting for a thread
+     */
+    public long getQueueDepth() {
+        if (pool != null) {
+            return pool.getQueue().size();
+        }
+        // virtual threads start right away; whatever is submitted but not running is starting
+        return Math.max(0, submitted.sum() - rejected.sum() - completed.sum() - active.get());
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Writes the metrics of {@code executors}, one sample per executor for each metric.
+     */
+    static void writeMetrics(PrometheusWriter writer, List<InstrumentedExecutor> executors) {
+        writer.header("smscsim_executor_active", "gauge", "Tasks currently running.");
+        for (InstrumentedExecutor executor : executors) {
+            writer.sample("smscsim_executor_active", executor.getActive(), "executor", executor.name);
+        }
+        writer.header("smscsim_executor_queue_depth", "gauge", "Tasks waiting for a thread.");
+        for (InstrumentedExecutor executor : executors) {
+            writer.sample("smscsim_executor_queue_depth", executor.getQueueDepth(), "executor", executor.name);
+        }
+        writer.header("smscsim_executor_pool_threads", "gauge", "Threads in the pool, absent for virtual threads.");
+        for (InstrumentedExecutor executor : executors) {
+            if (executor.pool != null) {
+                writer.sample("smscsim_executor_pool_threads", executor.pool.getPoolSize(), "executor", executor.name);
+            }
+        }
+        writer.header("smscsim_executor_submitted_total", "counter", "Tasks submitted.");
+        for (InstrumentedExecutor executor : executors) {
+            writer.sample("smscsim_executor_submitted_total", executor.submitted.sum(), "executor", executor.name);
+        }
+        writer.header("smscsim_executor_completed_total", "counter", "Tasks completed.");
+        for (InstrumentedExecutor executor : executors) {
+            writer.sample("smscsim_executor_completed_total", executor.completed.sum(), "executor", executor.name);
+        }
+        writer.header("smscsim_executor_rejected_total", "counter", "Tasks rejected because the executor was saturated.");
+        for (InstrumentedExecutor executor : executors) {
+            writer.sample("smscsim_executor_rejected_total", executor.getRejected(), "executor", executor.name);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
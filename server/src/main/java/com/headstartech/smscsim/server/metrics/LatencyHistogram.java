@@ -0,0 +1,65 @@
+package com.headstartech.smscsim.server.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with fixed buckets, exported as a Prometheus histogram in seconds.
+ * Recording is a short linear scan plus two atomic adds; there is no allocation.
+ */
+public class LatencyHistogram {
+
+    // upper bounds in microseconds, 0.5 ms - 10 s; values above the last bound go to +Inf
+    private static final long[] BOUNDS = { 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 200000, 500000,
+            1000000, 2000000, 5000000, 10000000 };
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i], 6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordMicros(long micros) {
+        int i = 0;
+        while (i < BOUNDS.length && micros > BOUNDS[i]) {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+        sumMicros.add(micros);
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(millis * 1000);
+    }
+
+    /**
+     * Writes the bucket, sum and count samples; the header must have been written with type
+     * histogram.
+     *
+     * @param labels label names and values, alternating, identifying this histogram
+     */
+    public void write(PrometheusWriter writer, String name, String... labels) {
+        String[] bucketLabels = new String[labels.length + 2];
+        System.arraycopy(labels, 0, bucketLabels, 0, labels.length);
+        bucketLabels[labels.length] = "le";
+
+        // buckets are read one by one, so a concurrent record may show up in the count but
+        // not yet in its bucket; the next scrape is consistent again
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            cumulative += buckets.get(i);
+            bucketLabels[labels.length + 1] = BOUND_LABELS[i];
+            writer.sample(name + "_bucket", cumulative, bucketLabels);
+        }
+        cumulative += buckets.get(BOUNDS.length);
+        bucketLabels[labels.length + 1] = "+Inf";
+        writer.sample(name + "_bucket", cumulative, bucketLabels);
+        writer.sample(name + "_sum", sumMicros.sum() / 1e6, labels);
+        writer.sample(name + "_count", cumulative, labels);
+    }
+}
@@ -0,0 +1,10 @@
+package com.headstartech.smscsim.server.metrics;
+
+/**
+ * Component exposing metrics on the metrics endpoint. Implementations are called on every
+ * scrape and must only read lock-free state (atomics, adders, concurrent collections).
+ */
+public interface MetricsContributor {
+
+    void writeMetrics(PrometheusWriter writer);
+}
@@ -0,0 +1,27 @@
+package com.headstartech.smscsim.server.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Serves all {@link MetricsContributor}s in the Prometheus text format.
+ */
+@RestController
+public class MetricsController {
+
+    @Autowired
+    List<MetricsContributor> contributors;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = PrometheusWriter.CONTENT_TYPE)
+    public String metrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        for (MetricsContributor contributor : contributors) {
+            contributor.writeMetrics(writer);
+        }
+        return writer.toString();
+    }
+}
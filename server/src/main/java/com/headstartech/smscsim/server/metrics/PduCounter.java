@@ -0,0 +1,85 @@
+package com.headstartech.smscsim.server.metrics;
+
+import com.cloudhopper.smpp.SmppSessionCounters;
+import com.cloudhopper.smpp.util.ConcurrentCommandCounter;
+
+/**
+ * The per-PDU-type counters kept by ch-smpp for each session (see
+ * {@link SmppSessionCounters}).
+ */
+enum PduCounter {
+
+    RX_SUBMIT_SM("rx", "submit_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getRxSubmitSM();
+        }
+    },
+    RX_DATA_SM("rx", "data_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getRxDataSM();
+        }
+    },
+    RX_DELIVER_SM("rx", "deliver_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getRxDeliverSM();
+        }
+    },
+    RX_ENQUIRE_LINK("rx", "enquire_link") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getRxEnquireLink();
+        }
+    },
+    TX_SUBMIT_SM("tx", "submit_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getTxSubmitSM();
+        }
+    },
+    TX_DATA_SM("tx", "data_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getTxDataSM();
+        }
+    },
+    TX_DELIVER_SM("tx", "deliver_sm") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getTxDeliverSM();
+        }
+    },
+    TX_ENQUIRE_LINK("tx", "enquire_link") {
+        @Override
+        ConcurrentCommandCounter get(SmppSessionCounters counters) {
+            return counters.getTxEnquireLink();
+        }
+    };
+
+    // values per counter: requests, responses, expired requests, window wait millis
+    static final int VALUES = 4;
+
+    final String direction;
+    final String pdu;
+
+    PduCounter(String direction, String pdu) {
+        this.direction = direction;
+        this.pdu = pdu;
+    }
+
+    abstract ConcurrentCommandCounter get(SmppSessionCounters counters);
+
+    /**
+     * Adds this counter's values to {@code values}, at offset {@code ordinal() * VALUES}.
+     */
+    void addTo(SmppSessionCounters counters, long[] values) {
+        ConcurrentCommandCounter counter = get(counters);
+        int offset = ordinal() * VALUES;
+        values[offset] += counter.getRequest();
+        values[offset + 1] += counter.getResponse();
+        values[offset + 2] += counter.getRequestExpired();
+        values[offset + 3] += counter.getRequestWaitTime();
+    }
+}
@@ -0,0 +1,91 @@
+package com.headstartech.smscsim.server.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4).
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    /**
+     * Writes the HELP and TYPE lines; call once per metric name before its samples.
+     *
+     * @param type counter, gauge or histogram
+     */
+    public PrometheusWriter header(String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public PrometheusWriter sample(String name, long value, String... labels) {
+        appendName(name, labels);
+        sb.append(value).append('\n');
+        return this;
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public PrometheusWriter sample(String name, double value, String... labels) {
+        appendName(name, labels);
+        sb.append(format(value)).append('\n');
+        return this;
+    }
+
+    private void appendName(String name, String[] labels) {
+        sb.append(name);
+        if (labels.length > 0) {
+            sb.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(labels[i]).append("=\"");
+                appendEscaped(labels[i + 1]);
+                sb.append('"');
+            }
+            sb.append('}');
+        }
+        sb.append(' ');
+    }
+
+    private void appendEscaped(String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
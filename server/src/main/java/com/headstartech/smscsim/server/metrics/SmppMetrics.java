@@ -0,0 +1,132 @@
+package com.headstartech.smscsim.server.metrics;
+
+import com.cloudhopper.smpp.SmppServerSession;
+import com.headstartech.smscsim.server.SessionRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session level metrics: binds, PDU counters per systemId, window occupancy of the bound
+ * sessions and response time histograms.
+ */
+public class SmppMetrics implements MetricsContributor {
+
+    private final SessionRegistry sessionRegistry;
+    private final ConcurrentHashMap<String, SystemIdMetrics> systemIds = new ConcurrentHashMap<String, SystemIdMetrics>();
+
+    public SmppMetrics(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    public SystemIdMetrics forSystemId(String systemId) {
+        SystemIdMetrics metrics = systemIds.get(systemId);
+        if (metrics == null) {
+            metrics = new SystemIdMetrics(systemId);
+            SystemIdMetrics existing = systemIds.putIfAbsent(systemId, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        Map<String, SystemIdMetrics> metricsBySystemId = new TreeMap<String, SystemIdMetrics>(systemIds);
+        Map<String, long[]> counters = new HashMap<String, long[]>();
+        Map<String, int[]> sessionsByBindType = new TreeMap<String, int[]>();
+
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            long[] values = new long[PduCounter.values().length * PduCounter.VALUES];
+            metrics.addRetiredTo(values);
+            counters.put(metrics.getSystemId(), values);
+        }
+
+        writer.header("smscsim_session_window_pending", "gauge", "Requests sent by the server awaiting a response, per bound session.");
+        for (Map.Entry<Long, SmppServerSession> entry : sessionRegistry.getSessions().entrySet()) {
+            SmppServerSession session = entry.getValue();
+            String systemId = session.getConfiguration().getSystemId();
+            String bindType = String.valueOf(session.getBindType()).toLowerCase();
+            writer.sample("smscsim_session_window_pending", session.getSendWindow().getSize(),
+                    "system_id", systemId, "session_id", String.valueOf(entry.getKey()), "bind_type", bindType);
+
+            String key = systemId + '\0' + bindType;
+            int[] count = sessionsByBindType.get(key);
+            if (count == null) {
+                sessionsByBindType.put(key, count = new int[1]);
+            }
+            count[0]++;
+
+            long[] values = counters.get(systemId);
+            if (values != null && session.hasCounters()) {
+                for (PduCounter counter : PduCounter.values()) {
+                    counter.addTo(session.getCounters(), values);
+                }
+            }
+        }
+
+        writer.header("smscsim_session_window_size", "gauge", "Window size of the bound session.");
+        for (Map.Entry<Long, SmppServerSession> entry : sessionRegistry.getSessions().entrySet()) {
+            SmppServerSession session = entry.getValue();
+            writer.sample("smscsim_session_window_size", session.getSendWindow().getMaxSize(),
+                    "system_id", session.getConfiguration().getSystemId(), "session_id", String.valueOf(entry.getKey()),
+                    "bind_type", String.valueOf(session.getBindType()).toLowerCase());
+        }
+
+        writer.header("smscsim_sessions", "gauge", "Bound sessions.");
+        for (Map.Entry<String, int[]> entry : sessionsByBindType.entrySet()) {
+            int sep = entry.getKey().indexOf('\0');
+            writer.sample("smscsim_sessions", entry.getValue()[0],
+                    "system_id", entry.getKey().substring(0, sep), "bind_type", entry.getKey().substring(sep + 1));
+        }
+
+        writer.header("smscsim_binds_total", "counter", "Successful binds.");
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            writer.sample("smscsim_binds_total", metrics.getBinds(), "system_id", metrics.getSystemId());
+        }
+
+        writePduCounters(writer, counters, "smscsim_pdu_requests_total", "Requests.", 0);
+        writePduCounters(writer, counters, "smscsim_pdu_responses_total", "Responses. Delayed responses are not included, see smscsim_submit_response_seconds.", 1);
+        writePduCounters(writer, counters, "smscsim_pdu_requests_expired_total", "Requests that expired without a response.", 2);
+
+        writer.header("smscsim_pdu_window_wait_seconds_total", "counter", "Time requests waited for a free window slot before being sent.");
+        for (Map.Entry<String, long[]> entry : new TreeMap<String, long[]>(counters).entrySet()) {
+            for (PduCounter counter : PduCounter.values()) {
+                if ("tx".equals(counter.direction)) {
+                    writer.sample("smscsim_pdu_window_wait_seconds_total", entry.getValue()[counter.ordinal() * PduCounter.VALUES + 3] / 1000.0,
+                            "system_id", entry.getKey(), "pdu", counter.pdu);
+                }
+            }
+        }
+
+        writer.header("smscsim_submit_response_seconds", "histogram", "Time from receiving submit_sm/data_sm to sending the response.");
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            metrics.getSubmitResponseTime().write(writer, "smscsim_submit_response_seconds", "system_id", metrics.getSystemId());
+        }
+        writer.header("smscsim_deliver_response_seconds", "histogram", "Time from sending deliver_sm to receiving the response.");
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            metrics.getDeliverResponseTime().write(writer, "smscsim_deliver_response_seconds", "system_id", metrics.getSystemId());
+        }
+        writer.header("smscsim_mo_response_seconds", "histogram", "Time from sending a mobile-originated deliver_sm to receiving the response.");
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            metrics.getMoResponseTime().write(writer, "smscsim_mo_response_seconds", "system_id", metrics.getSystemId());
+        }
+        writer.header("smscsim_window_wait_seconds", "histogram", "Time requests sent by the server waited for a free window slot.");
+        for (SystemIdMetrics metrics : metricsBySystemId.values()) {
+            metrics.getWindowWaitTime().write(writer, "smscsim_window_wait_seconds", "system_id", metrics.getSystemId());
+        }
+    }
+
+    private static void writePduCounters(PrometheusWriter writer, Map<String, long[]> counters, String name, String help, int value) {
+        writer.header(name, "counter", help + " Direction rx is received by the server, tx is sent by the server.");
+        for (Map.Entry<String, long[]> entry : new TreeMap<String, long[]>(counters).entrySet()) {
+            for (PduCounter counter : PduCounter.values()) {
+                writer.sample(name, entry.getValue()[counter.ordinal() * PduCounter.VALUES + value],
+                        "system_id", entry.getKey(), "direction", counter.direction, "pdu", counter.pdu);
+            }
+        }
+    }
+}
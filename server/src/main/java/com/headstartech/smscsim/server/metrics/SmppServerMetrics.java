@@ -0,0 +1,57 @@
+package com.headstartech.smscsim.server.metrics;
+
+import com.cloudhopper.smpp.SmppServer;
+import com.cloudhopper.smpp.SmppServerCounters;
+import com.headstartech.smscsim.server.SmppListeners;
+
+import java.util.Map;
+
+/**
+ * Connection and bind counters of each {@link SmppServer}, labelled with the port it listens
+ * on; sum over the label for the totals.
+ */
+public class SmppServerMetrics implements MetricsContributor {
+
+    private final SmppListeners smppListeners;
+
+    public SmppServerMetrics(SmppListeners smppListeners) {
+        this.smppListeners = smppListeners;
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        Map<Integer, SmppServer> servers = smppListeners.getServers();
+        String[] ports = new String[servers.size()];
+        SmppServerCounters[] counters = new SmppServerCounters[servers.size()];
+        int i = 0;
+        for (Map.Entry<Integer, SmppServer> entry : servers.entrySet()) {
+            ports[i] = entry.getKey().toString();
+            counters[i++] = entry.getValue().getCounters();
+        }
+
+        writer.header("smscsim_server_channel_connects_total", "counter", "TCP connections accepted.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_channel_connects_total", counters[i].getChannelConnects(), "listener", ports[i]);
+        }
+        writer.header("smscsim_server_channel_disconnects_total", "counter", "TCP connections closed.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_channel_disconnects_total", counters[i].getChannelDisconnects(), "listener", ports[i]);
+        }
+        writer.header("smscsim_server_bind_requests_total", "counter", "Bind requests received.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_bind_requests_total", counters[i].getBindRequested(), "listener", ports[i]);
+        }
+        writer.header("smscsim_server_bind_timeouts_total", "counter", "Connections closed for not binding in time.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_bind_timeouts_total", counters[i].getBindTimeouts(), "listener", ports[i]);
+        }
+        writer.header("smscsim_server_sessions_created_total", "counter", "Sessions created.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_sessions_created_total", counters[i].getSessionCreated(), "listener", ports[i]);
+        }
+        writer.header("smscsim_server_sessions_destroyed_total", "counter", "Sessions destroyed.");
+        for (i = 0; i < counters.length; i++) {
+            writer.sample("smscsim_server_sessions_destroyed_total", counters[i].getSessionDestroyed(), "listener", ports[i]);
+        }
+    }
+}
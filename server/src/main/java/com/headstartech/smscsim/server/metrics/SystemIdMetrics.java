@@ -0,0 +1,84 @@
+package com.headstartech.smscsim.server.metrics;
+
+import com.cloudhopper.smpp.SmppSessionCounters;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one systemId that outlive its sessions.
+ */
+public class SystemIdMetrics {
+
+    private final String systemId;
+    private final LongAdder binds = new LongAdder();
+    private final LatencyHistogram submitResponseTime = new LatencyHistogram();
+    private final LatencyHistogram deliverResponseTime = new LatencyHistogram();
+    private final LatencyHistogram moResponseTime = new LatencyHistogram();
+    private final LatencyHistogram windowWaitTime = new LatencyHistogram();
+    // PDU counters of destroyed sessions, so the totals don't drop when a session goes away
+    private final AtomicLongArray retired = new AtomicLongArray(PduCounter.values().length * PduCounter.VALUES);
+
+    SystemIdMetrics(String systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public void bound() {
+        binds.increment();
+    }
+
+    public long getBinds() {
+        return binds.sum();
+    }
+
+    /**
+     * @return time from receiving a submit_sm / data_sm to handing over its response
+     */
+    public LatencyHistogram getSubmitResponseTime() {
+        return submitResponseTime;
+    }
+
+    /**
+     * @return time from sending a deliver_sm to receiving its deliver_sm_resp
+     */
+    public LatencyHistogram getDeliverResponseTime() {
+        return deliverResponseTime;
+    }
+
+    /**
+     * @return time from sending a mobile-originated deliver_sm to receiving its deliver_sm_resp
+     */
+    public LatencyHistogram getMoResponseTime() {
+        return moResponseTime;
+    }
+
+    /**
+     * @return time requests sent by the server waited for a free slot in the session window
+     */
+    public LatencyHistogram getWindowWaitTime() {
+        return windowWaitTime;
+    }
+
+    /**
+     * Folds the counters of a destroyed session into the totals.
+     */
+    public void retire(SmppSessionCounters counters) {
+        long[] values = new long[retired.length()];
+        for (PduCounter counter : PduCounter.values()) {
+            counter.addTo(counters, values);
+        }
+        for (int i = 0; i < values.length; i++) {
+            retired.addAndGet(i, values[i]);
+        }
+    }
+
+    void addRetiredTo(long[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] += retired.get(i);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.headstartech.smscsim.server.mo;
+
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppBindType;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppServerSession;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.OutboundPduCallback;
+import com.headstartech.smscsim.server.SmppServerSessionImpl;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates mobile-originated messages: deliver_sm to every bound RECEIVER and TRANSCEIVER
+ * session at the rate of the MO profile of its systemId, within a per-session MO window.
+ */
+public class MoGenerator implements MetricsContributor {
+
+    private Logger logger = LoggerFactory.getLogger(MoGenerator.class);
+
+    private final SmppServerProperties.Mo properties;
+    private final long requestTimeout;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor sender;
+    private final ConcurrentHashMap<Long, MoSession> sessions = new ConcurrentHashMap<Long, MoSession>();
+    private final ConcurrentHashMap<String, MoMix> mixes = new ConcurrentHashMap<String, MoMix>();
+
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong windowFull = new AtomicLong();
+
+    public MoGenerator(SmppServerProperties.Mo properties) {
+        this.properties = properties;
+        this.requestTimeout = properties.getRequestTimeout();
+        this.sender = new ThreadPoolExecutor(properties.getSenderThreads(), properties.getSenderThreads(), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(properties.getMaxPending()),
+                new ThreadFactoryBuilder().setNameFormat("MoSender-%d").setDaemon(true).build());
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("MoScheduler-%d").setDaemon(true).build());
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, properties.getTickDuration(), properties.getTickDuration(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return MO profile for {@code systemId}
+     */
+    public SmppServerProperties.MoProfile getProfile(String systemId) {
+        SmppServerProperties.MoProfile profile = properties.getProfiles().get(systemId);
+        return profile != null ? profile : properties.getProfile();
+    }
+
+    /**
+     * Starts sending MO messages to {@code session} if it can receive them and its profile has
+     * a rate.
+     */
+    public void sessionBound(Long sessionId, SmppServerSession session, SmppServerSessionImpl sessionHandler) {
+        if (session.getBindType() != SmppBindType.RECEIVER && session.getBindType() != SmppBindType.TRANSCEIVER) {
+            return;
+        }
+        String systemId = session.getConfiguration().getSystemId();
+        SmppServerProperties.MoProfile profile = getProfile(systemId);
+        if (profile.getRate() <= 0 && profile.getBurstRate() <= 0) {
+            return;
+        }
+        MoMix mix = mixes.get(systemId);
+        if (mix == null) {
+            try {
+                mix = MoMix.of(profile);
+            } catch (IllegalArgumentException e) {
+                logger.warn("No MO messages for systemId={}: {}", systemId, e.getMessage());
+                return;
+            }
+            mixes.putIfAbsent(systemId, mix);
+        }
+        int windowSize = Math.max(1, Math.min(profile.getWindowSize(), session.getConfiguration().getWindowSize()));
+        sessions.put(sessionId, new MoSession(sessionHandler, profile, mix, windowSize));
+    }
+
+    public void sessionUnbound(Long sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public int getSessions() {
+        return sessions.size();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWindowFull() {
+        return windowFull.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_mo_sessions", "gauge", "Bound sessions receiving MO messages.")
+                .sample("smscsim_mo_sessions", getSessions());
+        writer.header("smscsim_mo_messages_total", "counter", "MO messages scheduled for sending.")
+                .sample("smscsim_mo_messages_total", getMessages());
+        writer.header("smscsim_mo_sent_total", "counter", "MO deliver_sm sent, one per part of a concatenated message.")
+                .sample("smscsim_mo_sent_total", getSent());
+        writer.header("smscsim_mo_acknowledged_total", "counter", "MO deliver_sm acknowledged by the client with status 0.")
+                .sample("smscsim_mo_acknowledged_total", getAcknowledged());
+        writer.header("smscsim_mo_rejected_total", "counter", "MO deliver_sm answered with an error status.")
+                .sample("smscsim_mo_rejected_total", getRejected());
+        writer.header("smscsim_mo_expired_total", "counter", "MO deliver_sm not answered in time.")
+                .sample("smscsim_mo_expired_total", getExpired());
+        writer.header("smscsim_mo_dropped_total", "counter", "MO messages dropped (cap reached, session gone or send failed).")
+                .sample("smscsim_mo_dropped_total", getDropped());
+        writer.header("smscsim_mo_window_full_total", "counter", "Scheduling rounds in which a session's MO window was full.")
+                .sample("smscsim_mo_window_full_total", getWindowFull());
+    }
+
+    public void destroy() {
+        scheduler.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    // scheduler thread: never do I/O here
+    private void tick() {
+        long now = System.nanoTime();
+        for (MoSession session : sessions.values()) {
+            try {
+                session.tick(now);
+            } catch (RuntimeException e) {
+                logger.warn("MO scheduling failed", e);
+            }
+        }
+    }
+
+    /**
+     * MO state of one session. Credit and message numbers are only touched by the scheduler
+     * thread.
+     */
+    private class MoSession {
+
+        private final SmppServerSessionImpl sessionHandler;
+        private final SmppServerProperties.MoProfile profile;
+        private final MoMix mix;
+        private final Semaphore window;
+        private final int windowSize;
+        private final long startNanos;
+        private long lastNanos;
+        private double credit;
+        private long messageNumber;
+
+        MoSession(SmppServerSessionImpl sessionHandler, SmppServerProperties.MoProfile profile, MoMix mix, int windowSize) {
+            this.sessionHandler = sessionHandler;
+            this.profile = profile;
+            this.mix = mix;
+            this.window = new Semaphore(windowSize);
+            this.windowSize = windowSize;
+            this.startNanos = System.nanoTime();
+            this.lastNanos = startNanos;
+        }
+
+        void tick(long now) {
+            credit = Math.min(credit + rate(now) * (now - lastNanos) / 1e9, Math.max(windowSize, 1.0));
+            lastNanos = now;
+            while (credit >= 1) {
+                MoMix.Kind kind = mix.kind(messageNumber);
+                if (!window.tryAcquire(Math.min(kind.getParts(), windowSize))) {
+                    windowFull.incrementAndGet();
+                    return;
+                }
+                credit -= 1;
+                messages.incrementAndGet();
+                try {
+                    sender.execute(new MoMessage(this, kind, messageNumber));
+                } catch (RejectedExecutionException e) {
+                    window.release(Math.min(kind.getParts(), windowSize));
+                    dropped.incrementAndGet();
+                }
+                messageNumber++;
+            }
+        }
+
+        /**
+         * @return messages per second at {@code now}: the burst rate for the first
+         * burstDuration ms of every burstInterval, the base rate otherwise
+         */
+        private double rate(long now) {
+            long interval = profile.getBurstInterval();
+            if (interval > 0 && profile.getBurstDuration() > 0 &&
+                    TimeUnit.NANOSECONDS.toMillis(now - startNanos) % interval < profile.getBurstDuration()) {
+                return profile.getBurstRate();
+            }
+            return profile.getRate();
+        }
+    }
+
+    /**
+     * One MO message, sent part by part; each part's response or expiry gives back its permit.
+     */
+    private class MoMessage implements Runnable, OutboundPduCallback {
+
+        private final MoSession moSession;
+        private final MoMix.Kind kind;
+        private final long messageNumber;
+        private final int permits;
+
+        MoMessage(MoSession moSession, MoMix.Kind kind, long messageNumber) {
+            this.moSession = moSession;
+            this.kind = kind;
+            this.messageNumber = messageNumber;
+            this.permits = Math.min(kind.getParts(), moSession.windowSize);
+        }
+
+        // sender thread
+        @Override
+        public void run() {
+            SmppSession session = moSession.sessionHandler.getSession();
+            if (session == null || !session.isBound()) {
+                moSession.window.release(permits);
+                dropped.incrementAndGet();
+                return;
+            }
+            int parts = kind.getParts();
+            for (int part = 0; part < parts; part++) {
+                // permits held for this and the remaining parts
+                int held = part < permits ? permits - part : 0;
+                try {
+                    // a message with more parts than the window holds takes the extra permits as it goes
+                    if (part >= permits) {
+                        if (!moSession.window.tryAcquire(requestTimeout, TimeUnit.MILLISECONDS)) {
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                        held = 1;
+                    }
+                    DeliverSm deliver = kind.createPart(part, messageNumber, (int) messageNumber);
+                    deliver.setReferenceObject(this);
+                    session.sendRequestPdu(deliver, requestTimeout, false);
+                    sent.incrementAndGet();
+                } catch (InterruptedException e) {
+                    moSession.window.release(held);
+                    dropped.incrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    moSession.window.release(held);
+                    dropped.incrementAndGet();
+                    logger.debug("Failed to send MO message: systemId={}", session.getConfiguration().getSystemId(), e);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void responseReceived(PduAsyncResponse pduAsyncResponse) {
+            moSession.window.release();
+            moSession.sessionHandler.getMetrics().getMoResponseTime().recordMillis(pduAsyncResponse.getResponseTime());
+            if (pduAsyncResponse.getResponse().getCommandStatus() == SmppConstants.STATUS_OK) {
+                acknowledged.incrementAndGet();
+            } else {
+                rejected.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void requestExpired(PduRequest pduRequest) {
+            moSession.window.release();
+            expired.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.headstartech.smscsim.server.mo;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.type.Address;
+import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages of an MO profile with their text encoded up front, so that building a
+ * deliver_sm is a few field assignments.
+ */
+final class MoMix {
+
+    private static final String FILLER = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Proin feugiat, leo id commodo tincidunt, " +
+            "nibh diam ornare est, vitae accumsan risus lacus sed sem metus. ";
+
+    static final class Kind {
+
+        // short messages of the parts, with the UDH if there is more than one
+        private final byte[][] parts;
+        private final byte dataCoding;
+        private final String sourcePrefix;
+        private final int sourceDigits;
+        private final long sourceCount;
+        private final Address destination;
+
+        Kind(SmppServerProperties.MoMessage message) {
+            TextEncoding encoding = message.getEncoding();
+            String text = text(message.getLength());
+            List<byte[]> texts = new ArrayList<byte[]>();
+            if (text.length() <= encoding.getSingleLength()) {
+                texts.add(CharsetUtil.encode(text, encoding.getCharset()));
+            } else {
+                for (int i = 0; i < text.length(); i += encoding.getPartLength()) {
+                    String part = text.substring(i, Math.min(text.length(), i + encoding.getPartLength()));
+                    texts.add(CharsetUtil.encode(part, encoding.getCharset()));
+                }
+                if (texts.size() > 255) {
+                    throw new IllegalArgumentException("MO message too long to concatenate: " + message.getLength() + " characters");
+                }
+            }
+            this.parts = new byte[texts.size()][];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = parts.length > 1 ? withConcatenationHeader(texts.get(i), parts.length, i + 1) : texts.get(i);
+            }
+            this.dataCoding = encoding.getDataCoding();
+            this.sourcePrefix = message.getSourcePrefix() != null ? message.getSourcePrefix() : "";
+            this.sourceCount = Math.max(1, message.getSourceCount());
+            this.sourceDigits = Long.toString(sourceCount - 1).length();
+            this.destination = new Address((byte) 0x03, (byte) 0x00, message.getDestination());
+        }
+
+        int getParts() {
+            return parts.length;
+        }
+
+        /**
+         * @param reference reference number of a concatenated message, the low 8 bits are used
+         */
+        DeliverSm createPart(int part, long messageNumber, int reference) throws SmppInvalidArgumentException {
+            DeliverSm deliver = new DeliverSm();
+            deliver.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, source(messageNumber)));
+            deliver.setDestAddress(destination);
+            deliver.setDataCoding(dataCoding);
+            if (parts.length > 1) {
+                byte[] shortMessage = parts[part].clone();
+                shortMessage[3] = (byte) reference;
+                deliver.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+                deliver.setShortMessage(shortMessage);
+            } else {
+                deliver.setShortMessage(parts[part]);
+            }
+            return deliver;
+        }
+
+        private String source(long messageNumber) {
+            String number = Long.toString(messageNumber % sourceCount);
+            StringBuilder source = new StringBuilder(sourcePrefix.length() + sourceDigits).append(sourcePrefix);
+            for (int i = number.length(); i < sourceDigits; i++) {
+                source.append('0');
+            }
+            return source.append(number).toString();
+        }
+    }
+
+    private final Kind[] schedule;
+
+    private MoMix(Kind[] schedule) {
+        this.schedule = schedule;
+    }
+
+    static MoMix of(SmppServerProperties.MoProfile profile) {
+        List<SmppServerProperties.MoMessage> messages = profile.getMessages();
+        if (messages.isEmpty()) {
+            return new MoMix(new Kind[]{new Kind(new SmppServerProperties.MoMessage())});
+        }
+        Kind[] kinds = new Kind[messages.size()];
+        int[] weights = new int[messages.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            if (messages.get(i).getWeight() < 1 || messages.get(i).getEncoding() == null || messages.get(i).getLength() < 0) {
+                throw new IllegalArgumentException("Invalid MO message at index " + i);
+            }
+            kinds[i] = new Kind(messages.get(i));
+            weights[i] = messages.get(i).getWeight();
+        }
+        return new MoMix(schedule(kinds, weights));
+    }
+
+    Kind kind(long messageNumber) {
+        return schedule[(int) (messageNumber % schedule.length)];
+    }
+
+    /**
+     * Smooth weighted round-robin: each kind appears {@code weight / gcd} times, as evenly
+     * spread as possible.
+     */
+    private static Kind[] schedule(Kind[] kinds, int[] weights) {
+        int gcd = 0;
+        for (int weight : weights) {
+            gcd = gcd(gcd, weight);
+        }
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= gcd;
+            total += weights[i];
+        }
+        Kind[] schedule = new Kind[total];
+        int[] current = new int[weights.length];
+        for (int slot = 0; slot < total; slot++) {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[slot] = kinds[best];
+        }
+        return schedule;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static String text(int length) {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = FILLER.charAt(i % FILLER.length());
+        }
+        return new String(text);
+    }
+
+    /**
+     * @return {@code text} after a concatenated short message header with an 8-bit reference
+     * number, which is set per message
+     */
+    private static byte[] withConcatenationHeader(byte[] text, int total, int number) {
+        byte[] shortMessage = new byte[6 + text.length];
+        shortMessage[0] = 0x05;
+        shortMessage[1] = 0x00;
+        shortMessage[2] = 0x03;
+        shortMessage[4] = (byte) total;
+        shortMessage[5] = (byte) number;
+        System.arraycopy(text, 0, shortMessage, 6, text.length);
+        return shortMessage;
+    }
+}
@@ -0,0 +1,44 @@
+package com.headstartech.smscsim.server.mo;
+
+import com.cloudhopper.commons.charset.Charset;
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+
+/**
+ * Encodings of generated message text, with the number of characters that fit in one short
+ * message and in one part of a concatenated message (after the 6-octet UDH).
+ */
+public enum TextEncoding {
+
+    GSM(CharsetUtil.CHARSET_GSM, SmppConstants.DATA_CODING_DEFAULT, 160, 153),
+    LATIN1(CharsetUtil.CHARSET_ISO_8859_1, SmppConstants.DATA_CODING_LATIN1, 140, 134),
+    UCS2(CharsetUtil.CHARSET_UCS_2, SmppConstants.DATA_CODING_UCS2, 70, 67);
+
+    private final Charset charset;
+    private final byte dataCoding;
+    private final int singleLength;
+    private final int partLength;
+
+    TextEncoding(Charset charset, byte dataCoding, int singleLength, int partLength) {
+        this.charset = charset;
+        this.dataCoding = dataCoding;
+        this.singleLength = singleLength;
+        this.partLength = partLength;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public byte getDataCoding() {
+        return dataCoding;
+    }
+
+    public int getSingleLength() {
+        return singleLength;
+    }
+
+    public int getPartLength() {
+        return partLength;
+    }
+}
@@ -0,0 +1,146 @@
+package com.headstartech.smscsim.server.response;
+
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.server.metrics.LatencyHistogram;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends delayed responses. Responses wait on a {@link HashedWheelTimer} and are written from
+ * a separate pool ({@link SmppSession#sendResponsePdu(PduResponse)} waits for the write to
+ * complete), so neither the Netty I/O threads nor the timer thread block.
+ */
+public class AsyncResponder implements MetricsContributor {
+
+    private Logger logger = LoggerFactory.getLogger(AsyncResponder.class);
+
+    private final Timer timer;
+    private final ExecutorService executor;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AsyncResponder(int threads, long tickDuration) {
+        this.timer = new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("AsyncResponderTimer-%d").setDaemon(true).build(),
+                tickDuration, TimeUnit.MILLISECONDS);
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("AsyncResponder-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Sends {@code response} on {@code session} after {@code delayMillis}.
+     *
+     * @param receivedNanos {@link System#nanoTime()} when the request was received
+     * @param responseTime histogram to record the time from receiving the request to sending
+     *                     the response in
+     * @param afterSent run once the response is written, or <code>null</code>
+     */
+    public void respond(SmppSession session, PduResponse response, long delayMillis, long receivedNanos, LatencyHistogram responseTime,
+                        Runnable afterSent) {
+        pending.incrementAndGet();
+        timer.newTimeout(new DelayedResponse(session, response, receivedNanos, responseTime, afterSent), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return responses scheduled but not yet sent or failed
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_delayed_responses_pending", "gauge", "Delayed responses waiting to be sent.")
+                .sample("smscsim_delayed_responses_pending", getPending());
+        writer.header("smscsim_delayed_responses_sent_total", "counter", "Delayed responses sent.")
+                .sample("smscsim_delayed_responses_sent_total", getSent());
+        writer.header("smscsim_delayed_responses_failed_total", "counter", "Delayed responses that could not be sent.")
+                .sample("smscsim_delayed_responses_failed_total", getFailed());
+    }
+
+    public void destroy() {
+        timer.stop();
+        executor.shutdownNow();
+    }
+
+    private class DelayedResponse implements TimerTask, Runnable {
+
+        private final SmppSession session;
+        private final PduResponse response;
+        private final long receivedNanos;
+        private final LatencyHistogram responseTime;
+        private final Runnable afterSent;
+
+        DelayedResponse(SmppSession session, PduResponse response, long receivedNanos, LatencyHistogram responseTime, Runnable afterSent) {
+            this.session = session;
+            this.response = response;
+            this.receivedNanos = receivedNanos;
+            this.responseTime = responseTime;
+            this.afterSent = afterSent;
+        }
+
+        @Override
+        public void run(Timeout timeout) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                failed.incrementAndGet();
+                pending.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                send();
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+
+        private void send() {
+            if (!session.isBound()) {
+                failed.incrementAndGet();
+                return;
+            }
+            try {
+                session.sendResponsePdu(response);
+                sent.incrementAndGet();
+                responseTime.recordMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - receivedNanos));
+                if (afterSent != null) {
+                    afterSent.run();
+                }
+            } catch (InterruptedException e) {
+                failed.incrementAndGet();
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                logger.debug("Failed to send delayed response: {}", response, e);
+            }
+        }
+    }
+}
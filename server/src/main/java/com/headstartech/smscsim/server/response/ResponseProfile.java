@@ -0,0 +1,77 @@
+package com.headstartech.smscsim.server.response;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.DelayDistribution;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the simulator answers submit_sm / data_sm for a systemId: how long it takes and which
+ * command status it returns.
+ */
+public class ResponseProfile {
+
+    private static final int PERCENT_SCALE = 10000;
+
+    private final DelayDistribution latency;
+    private final int throttledThreshold;
+    private final int queueFullThreshold;
+    private final int errorThreshold;
+    private final int errorStatus;
+    private final int spikeThreshold;
+    private final DelayDistribution spikeDelay;
+
+    public ResponseProfile(SmppServerProperties.ResponseProfile properties) {
+        this.latency = DelayDistribution.of(properties.getLatency());
+        this.throttledThreshold = scale(properties.getThrottledPercent());
+        this.queueFullThreshold = throttledThreshold + scale(properties.getQueueFullPercent());
+        this.errorThreshold = queueFullThreshold + scale(properties.getErrorPercent());
+        this.errorStatus = properties.getErrorStatus();
+        this.spikeThreshold = scale(properties.getSpikePercent());
+        this.spikeDelay = DelayDistribution.of(properties.getSpikeDelay());
+        if (errorThreshold > 100 * PERCENT_SCALE) {
+            throw new IllegalArgumentException("Sum of error percentages exceeds 100");
+        }
+    }
+
+    /**
+     * @return true if responses are always sent immediately with status OK
+     */
+    public boolean isPassThrough() {
+        return latency.isZero() && errorThreshold == 0 && spikeThreshold == 0;
+    }
+
+    /**
+     * @return command status for the next response
+     */
+    public int nextCommandStatus() {
+        if (errorThreshold == 0) {
+            return SmppConstants.STATUS_OK;
+        }
+        int r = ThreadLocalRandom.current().nextInt(100 * PERCENT_SCALE);
+        if (r < throttledThreshold) {
+            return SmppConstants.STATUS_THROTTLED;
+        } else if (r < queueFullThreshold) {
+            return SmppConstants.STATUS_MSGQFUL;
+        } else if (r < errorThreshold) {
+            return errorStatus;
+        }
+        return SmppConstants.STATUS_OK;
+    }
+
+    /**
+     * @return delay in milliseconds before the next response is sent
+     */
+    public long nextDelayMillis() {
+        long delay = latency.nextDelayMillis();
+        if (spikeThreshold > 0 && ThreadLocalRandom.current().nextInt(100 * PERCENT_SCALE) < spikeThreshold) {
+            delay += spikeDelay.nextDelayMillis();
+        }
+        return delay;
+    }
+
+    private static int scale(double percent) {
+        return (int) Math.round(percent * PERCENT_SCALE);
+    }
+}
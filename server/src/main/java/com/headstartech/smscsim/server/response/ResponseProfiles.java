@@ -0,0 +1,73 @@
+package com.headstartech.smscsim.server.response;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Response profiles by systemId, with a default for systemIds without their own profile.
+ * Changes replace an immutable snapshot, so lookups take no lock.
+ */
+public class ResponseProfiles {
+
+    private final SmppServerProperties properties;
+    private volatile Snapshot snapshot;
+
+    public ResponseProfiles(SmppServerProperties properties) {
+        this.properties = properties;
+        Map<String, ResponseProfile> profiles = new HashMap<String, ResponseProfile>();
+        for (Map.Entry<String, SmppServerProperties.ResponseProfile> entry : properties.getResponseProfiles().entrySet()) {
+            profiles.put(entry.getKey(), new ResponseProfile(entry.getValue()));
+        }
+        this.snapshot = new Snapshot(new ResponseProfile(properties.getResponseProfile()), profiles);
+    }
+
+    public ResponseProfile forSystemId(String systemId) {
+        Snapshot current = snapshot;
+        ResponseProfile profile = current.profiles.get(systemId);
+        return profile != null ? profile : current.defaultProfile;
+    }
+
+    /**
+     * Sets the profile of {@code systemId}, or the default profile if {@code systemId} is
+     * <code>null</code>.
+     *
+     * @throws IllegalArgumentException if the profile is invalid; nothing is changed then
+     */
+    public synchronized void setProfile(String systemId, SmppServerProperties.ResponseProfile settings) {
+        ResponseProfile profile = new ResponseProfile(settings);
+        Snapshot current = snapshot;
+        if (systemId == null) {
+            snapshot = new Snapshot(profile, current.profiles);
+            properties.setResponseProfile(settings);
+            return;
+        }
+        Map<String, ResponseProfile> profiles = new HashMap<String, ResponseProfile>(current.profiles);
+        profiles.put(systemId, profile);
+        snapshot = new Snapshot(current.defaultProfile, profiles);
+        properties.getResponseProfiles().put(systemId, settings);
+    }
+
+    /**
+     * Removes the profile of {@code systemId}, so that the default profile applies.
+     */
+    public synchronized void removeProfile(String systemId) {
+        Snapshot current = snapshot;
+        Map<String, ResponseProfile> profiles = new HashMap<String, ResponseProfile>(current.profiles);
+        profiles.remove(systemId);
+        snapshot = new Snapshot(current.defaultProfile, profiles);
+        properties.getResponseProfiles().remove(systemId);
+    }
+
+    private static final class Snapshot {
+
+        final ResponseProfile defaultProfile;
+        final Map<String, ResponseProfile> profiles;
+
+        Snapshot(ResponseProfile defaultProfile, Map<String, ResponseProfile> profiles) {
+            this.defaultProfile = defaultProfile;
+            this.profiles = profiles;
+        }
+    }
+}
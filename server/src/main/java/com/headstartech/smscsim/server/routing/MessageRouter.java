@@ -0,0 +1,231 @@
+package com.headstartech.smscsim.server.routing;
+
+import com.cloudhopper.smpp.PduAsyncResponse;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.OutboundPduCallback;
+import com.headstartech.smscsim.server.SessionRegistry;
+import com.headstartech.smscsim.server.SmppServerSessionImpl;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers accepted submit_sm / data_sm whose destination matches a route prefix as deliver_sm
+ * to the RECEIVER and TRANSCEIVER sessions of the route's systemId, round-robin.
+ */
+public class MessageRouter implements MetricsContributor {
+
+    private Logger logger = LoggerFactory.getLogger(MessageRouter.class);
+
+    private static final short[] FORWARDED_TLVS = { SmppConstants.TAG_MESSAGE_PAYLOAD, SmppConstants.TAG_SAR_MSG_REF_NUM,
+            SmppConstants.TAG_SAR_TOTAL_SEGMENTS, SmppConstants.TAG_SAR_SEGMENT_SEQNUM, SmppConstants.TAG_SOURCE_PORT,
+            SmppConstants.TAG_DESTINATION_PORT };
+
+    private final SessionRegistry sessionRegistry;
+    private final long requestTimeout;
+    private final ThreadPoolExecutor sender;
+    private volatile PrefixTrie<String> routes;
+
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong noReceiver = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public MessageRouter(SmppServerProperties.Routing properties, SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+        this.requestTimeout = properties.getRequestTimeout();
+        this.routes = PrefixTrie.of(properties.getRoutes());
+        this.sender = new ThreadPoolExecutor(properties.getSenderThreads(), properties.getSenderThreads(), 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(properties.getMaxPending()),
+                new ThreadFactoryBuilder().setNameFormat("RouterSender-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Replaces all routes.
+     *
+     * @param routes destination prefix (digits) to systemId
+     * @throws IllegalArgumentException if a prefix isn't digits
+     */
+    public synchronized void setRoutes(Map<String, String> routes) {
+        this.routes = PrefixTrie.of(routes);
+    }
+
+    public synchronized void addRoute(String prefix, String systemId) {
+        routes = routes.with(prefix, systemId);
+    }
+
+    public synchronized void removeRoute(String prefix) {
+        routes = routes.without(prefix);
+    }
+
+    /**
+     * @return systemId that messages to {@code address} are routed to, or <code>null</code>
+     */
+    public String lookup(String address) {
+        return routes.lookup(address);
+    }
+
+    /**
+     * Schedules delivery of {@code submit} to the ESME its destination is routed to.
+     *
+     * @return false if no route matches the destination
+     */
+    public boolean route(BaseSm submit) {
+        String systemId = lookup(submit.getDestAddress() != null ? submit.getDestAddress().getAddress() : null);
+        if (systemId == null) {
+            return false;
+        }
+        routed.incrementAndGet();
+        SmppServerSessionImpl receiver = sessionRegistry.nextReceiver(systemId);
+        if (receiver == null) {
+            noReceiver.incrementAndGet();
+            return true;
+        }
+        try {
+            sender.execute(new RoutedMessage(receiver, submit));
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+        return true;
+    }
+
+    public long getRouted() {
+        return routed.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getAcknowledged() {
+        return acknowledged.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * @return routed messages whose target systemId had no receiving session bound
+     */
+    public long getNoReceiver() {
+        return noReceiver.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_route_routes", "gauge", "Configured destination prefixes.")
+                .sample("smscsim_route_routes", routes.size());
+        writer.header("smscsim_route_routed_total", "counter", "Accepted messages whose destination matched a route.")
+                .sample("smscsim_route_routed_total", getRouted());
+        writer.header("smscsim_route_sent_total", "counter", "Routed messages sent as deliver_sm.")
+                .sample("smscsim_route_sent_total", getSent());
+        writer.header("smscsim_route_acknowledged_total", "counter", "Routed deliver_sm acknowledged by the receiving ESME with status 0.")
+                .sample("smscsim_route_acknowledged_total", getAcknowledged());
+        writer.header("smscsim_route_rejected_total", "counter", "Routed deliver_sm answered with an error status.")
+                .sample("smscsim_route_rejected_total", getRejected());
+        writer.header("smscsim_route_expired_total", "counter", "Routed deliver_sm not answered in time.")
+                .sample("smscsim_route_expired_total", getExpired());
+        writer.header("smscsim_route_no_receiver_total", "counter", "Routed messages not sent because no session of the target systemId could receive.")
+                .sample("smscsim_route_no_receiver_total", getNoReceiver());
+        writer.header("smscsim_route_dropped_total", "counter", "Routed messages dropped (cap reached, session gone or send failed).")
+                .sample("smscsim_route_dropped_total", getDropped());
+    }
+
+    public void destroy() {
+        sender.shutdownNow();
+    }
+
+    private class RoutedMessage implements Runnable, OutboundPduCallback {
+
+        private final SmppServerSessionImpl receiver;
+        private final BaseSm submit;
+
+        RoutedMessage(SmppServerSessionImpl receiver, BaseSm submit) {
+            this.receiver = receiver;
+            this.submit = submit;
+        }
+
+        // sender thread
+        @Override
+        public void run() {
+            SmppSession session = receiver.getSession();
+            if (session == null || !session.isBound()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            try {
+                session.sendRequestPdu(createDeliverSm(), requestTimeout, false);
+                sent.incrementAndGet();
+            } catch (InterruptedException e) {
+                dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                dropped.incrementAndGet();
+                logger.debug("Failed to send routed message: systemId={}", session.getConfiguration().getSystemId(), e);
+            }
+        }
+
+        @Override
+        public void responseReceived(PduAsyncResponse pduAsyncResponse) {
+            receiver.getMetrics().getDeliverResponseTime().recordMillis(pduAsyncResponse.getResponseTime());
+            if (pduAsyncResponse.getResponse().getCommandStatus() == SmppConstants.STATUS_OK) {
+                acknowledged.incrementAndGet();
+            } else {
+                rejected.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void requestExpired(PduRequest pduRequest) {
+            expired.incrementAndGet();
+        }
+
+        private DeliverSm createDeliverSm() throws Exception {
+            DeliverSm deliver = new DeliverSm();
+            deliver.setServiceType(submit.getServiceType());
+            deliver.setSourceAddress(submit.getSourceAddress());
+            deliver.setDestAddress(submit.getDestAddress());
+            deliver.setEsmClass((byte) (submit.getEsmClass() & SmppConstants.ESM_CLASS_UDHI_MASK));
+            deliver.setProtocolId(submit.getProtocolId());
+            deliver.setDataCoding(submit.getDataCoding());
+            if (submit.getShortMessage() != null) {
+                deliver.setShortMessage(submit.getShortMessage());
+            }
+            for (short tag : FORWARDED_TLVS) {
+                Tlv tlv = submit.getOptionalParameter(tag);
+                if (tlv != null) {
+                    deliver.addOptionalParameter(tlv);
+                }
+            }
+            deliver.setReferenceObject(this);
+            return deliver;
+        }
+    }
+}
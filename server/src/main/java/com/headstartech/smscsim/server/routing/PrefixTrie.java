@@ -0,0 +1,144 @@
+package com.headstartech.smscsim.server.routing;
+
+import java.util.Map;
+
+/**
+ * Immutable trie of digit-string prefixes, for longest-prefix lookups of addresses; non-digits
+ * in an address are skipped.
+ */
+public final class PrefixTrie<V> {
+
+    private static final PrefixTrie<?> EMPTY = new PrefixTrie<Object>(new Node<Object>(null, null), 0);
+
+    private final Node<V> root;
+    private final int size;
+
+    private PrefixTrie(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PrefixTrie<V> empty() {
+        return (PrefixTrie<V>) EMPTY;
+    }
+
+    public static <V> PrefixTrie<V> of(Map<String, V> prefixes) {
+        PrefixTrie<V> trie = empty();
+        for (Map.Entry<String, V> entry : prefixes.entrySet()) {
+            trie = trie.with(entry.getKey(), entry.getValue());
+        }
+        return trie;
+    }
+
+    /**
+     * @return value of the longest prefix of {@code address}, or <code>null</code> if none matches
+     */
+    public V lookup(String address) {
+        if (address == null) {
+            return null;
+        }
+        Node<V> node = root;
+        V match = node.value;
+        for (int i = 0; i < address.length(); i++) {
+            int digit = address.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                continue;
+            }
+            if (node.children == null || (node = node.children[digit]) == null) {
+                break;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @param prefix digits; the empty prefix matches every address
+     * @return a trie with {@code prefix} mapped to {@code value}
+     * @throws IllegalArgumentException if {@code prefix} has characters other than digits
+     */
+    public PrefixTrie<V> with(String prefix, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("No value for prefix " + prefix);
+        }
+        boolean added = lookupExact(prefix) == null;
+        return new PrefixTrie<V>(put(root, digits(prefix), 0, value), added ? size + 1 : size);
+    }
+
+    /**
+     * @return a trie without {@code prefix}, this one if it isn't mapped
+     */
+    public PrefixTrie<V> without(String prefix) {
+        if (lookupExact(prefix) == null) {
+            return this;
+        }
+        Node<V> updated = put(root, digits(prefix), 0, null);
+        return new PrefixTrie<V>(updated != null ? updated : new Node<V>(null, null), size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private V lookupExact(String prefix) {
+        int[] digits = digits(prefix);
+        Node<V> node = root;
+        for (int digit : digits) {
+            if (node.children == null || (node = node.children[digit]) == null) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * @return copy of {@code node} with the value at {@code digits[depth..]} set, or
+     * <code>null</code> if the copy would be an empty leaf
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V> put(Node<V> node, int[] digits, int depth, V value) {
+        if (depth == digits.length) {
+            if (value == null && (node == null || node.children == null)) {
+                return null;
+            }
+            return new Node<V>(value, node != null ? node.children : null);
+        }
+        Node<V>[] children = node != null && node.children != null ? node.children.clone() : (Node<V>[]) new Node[10];
+        Node<V> child = put(children[digits[depth]], digits, depth + 1, value);
+        children[digits[depth]] = child;
+        V ownValue = node != null ? node.value : null;
+        for (Node<V> c : children) {
+            if (c != null) {
+                return new Node<V>(ownValue, children);
+            }
+        }
+        return ownValue != null || depth == 0 ? new Node<V>(ownValue, null) : null;
+    }
+
+    private static int[] digits(String prefix) {
+        int[] digits = new int[prefix.length()];
+        for (int i = 0; i < digits.length; i++) {
+            int digit = prefix.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Prefix must be digits: " + prefix);
+            }
+            digits[i] = digit;
+        }
+        return digits;
+    }
+
+    private static final class Node<V> {
+
+        final V value;
+        // indexed by digit, null for a leaf
+        final Node<V>[] children;
+
+        Node(V value, Node<V>[] children) {
+            this.value = value;
+            this.children = children;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.headstartech.smscsim.server.state;
+
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free index of message id to message state, error code and time of the last
+ * change, for query_sm and cancel_sm. When a probe window is full its oldest (smallest) id is
+ * evicted.
+ */
+public class MessageStateIndex implements MetricsContributor {
+
+    public static final long NOT_FOUND = -1;
+
+    private static final long EMPTY = 0;
+    // key of a slot being written; readers check the key again after reading the value
+    private static final long CLAIMED = -1;
+    private static final int MAX_PROBE = 16;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values;
+    private final int mask;
+
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param capacity max number of messages, rounded up to a power of two
+     */
+    public MessageStateIndex(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBE) - 1) << 1;
+        this.keys = new AtomicLongArray(size);
+        this.values = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a message.
+     *
+     * @param id message id, must be positive
+     */
+    public void put(long id, byte state) {
+        long value = encode(System.currentTimeMillis(), 0, state);
+        int start = slot(id);
+        while (true) {
+            int target = -1;
+            long targetKey = Long.MAX_VALUE;
+            for (int p = 0; p < MAX_PROBE; p++) {
+                int i = (start + p) & mask;
+                long k = keys.get(i);
+                if (k == EMPTY) {
+                    target = i;
+                    targetKey = EMPTY;
+                    break;
+                }
+                if (k != CLAIMED && k < targetKey) {
+                    target = i;
+                    targetKey = k;
+                }
+            }
+            if (target >= 0 && keys.compareAndSet(target, targetKey, CLAIMED)) {
+                values.set(target, value);
+                keys.set(target, id);
+                inserted.incrementAndGet();
+                if (targetKey != EMPTY) {
+                    evicted.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the encoded state of message {@code id} (see {@link #state(long)},
+     * {@link #errorCode(long)}, {@link #timestamp(long)}), or {@link #NOT_FOUND}
+     */
+    public long get(long id) {
+        int start = slot(id);
+        for (int p = 0; p < MAX_PROBE; p++) {
+            int i = (start + p) & mask;
+            long k = keys.get(i);
+            if (k == id) {
+                long value = values.get(i);
+                return keys.get(i) == id ? value : NOT_FOUND;
+            }
+            if (k == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Changes the state of message {@code id} if it currently is {@code expectedState}.
+     *
+     * @return false if the message isn't in the index or is in another state
+     */
+    public boolean update(long id, byte expectedState, byte newState, int errorCode) {
+        int start = slot(id);
+        for (int p = 0; p < MAX_PROBE; p++) {
+            int i = (start + p) & mask;
+            long k = keys.get(i);
+            if (k == id) {
+                long newValue = encode(System.currentTimeMillis(), errorCode, newState);
+                while (true) {
+                    long value = values.get(i);
+                    if (keys.get(i) != id || state(value) != expectedState) {
+                        return false;
+                    }
+                    if (values.compareAndSet(i, value, newValue)) {
+                        return true;
+                    }
+                }
+            }
+            if (k == EMPTY) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public int getCapacity() {
+        return keys.length();
+    }
+
+    public long getInserted() {
+        return inserted.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_message_state_inserted_total", "counter", "Messages added to the message state index.")
+                .sample("smscsim_message_state_inserted_total", getInserted());
+        writer.header("smscsim_message_state_evicted_total", "counter", "Messages evicted from the message state index to make room.")
+                .sample("smscsim_message_state_evicted_total", getEvicted());
+    }
+
+    public static byte state(long value) {
+        return (byte) value;
+    }
+
+    public static int errorCode(long value) {
+        return (int) (value >>> 8) & 0xFF;
+    }
+
+    /**
+     * @return time of the last state change, epoch millis
+     */
+    public static long timestamp(long value) {
+        return value >>> 16;
+    }
+
+    private static long encode(long timestamp, int errorCode, byte state) {
+        return (timestamp << 16) | ((errorCode & 0xFF) << 8) | (state & 0xFF);
+    }
+
+    private int slot(long id) {
+        // the low bits of an id are the node id, so mix before masking
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
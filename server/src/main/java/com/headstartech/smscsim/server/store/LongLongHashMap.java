@@ -0,0 +1,93 @@
+package com.headstartech.smscsim.server.store;
+
+/**
+ * Open-addressing (linear probing) map from long to long, without boxing. Not thread-safe.
+ */
+class LongLongHashMap {
+
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private boolean hasEmptyKey;
+    private long emptyKeyValue;
+
+    LongLongHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new long[capacity];
+    }
+
+    void put(long key, long value) {
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        insert(keys, values, key, value);
+    }
+
+    /**
+     * @return the value of {@code key}, or {@code defaultValue} if there is none
+     */
+    long get(long key, long defaultValue) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : defaultValue;
+        }
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == EMPTY) {
+                return defaultValue;
+            }
+        }
+    }
+
+    int size() {
+        return size + (hasEmptyKey ? 1 : 0);
+    }
+
+    private void insert(long[] keys, long[] values, long key, long value) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new long[oldKeys.length << 1];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                insert(keys, values, oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
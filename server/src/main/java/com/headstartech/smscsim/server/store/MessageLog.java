@@ -0,0 +1,311 @@
+package com.headstartech.smscsim.server.store;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BaseSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only log of accepted messages in memory-mapped segment files (see
+ * {@link MessageLogFormat}), encoded by a single writer thread.
+ */
+public class MessageLog implements MetricsContributor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageLog.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final File directory;
+    private final int segmentSize;
+    private final int queueCapacity;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger segments = new AtomicInteger();
+
+    // writer thread only
+    private int segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long[] indexIds = new long[1024];
+    private int[] indexOffsets = new int[1024];
+    private int indexSize;
+
+    public MessageLog(SmppServerProperties.MessageStore properties) throws IOException {
+        this.directory = new File(properties.getDirectory());
+        this.segmentSize = properties.getSegmentSize();
+        this.queueCapacity = properties.getQueueCapacity();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create message store directory " + directory);
+        }
+        // continue after the segments of earlier runs
+        this.segment = lastSegment(directory) + 1;
+        openSegment();
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "MessageLogWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        logger.info("Message store: {}, segment size {} bytes", directory.getAbsolutePath(), segmentSize);
+    }
+
+    /**
+     * Queues an accepted message for writing.
+     *
+     * @return false if the queue was full and the message was dropped
+     */
+    public boolean append(long messageId, String systemId, BaseSm sm) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.incrementAndGet();
+            return false;
+        }
+        queue.offer(new Entry(messageId, System.currentTimeMillis(), systemId, sm));
+        appended.incrementAndGet();
+        return true;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getAppended() {
+        return appended.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_message_store_written_total", "counter", "Messages written to the message store.")
+                .sample("smscsim_message_store_written_total", getWritten());
+        writer.header("smscsim_message_store_dropped_total", "counter", "Messages not stored because the write queue was full or the record didn't fit.")
+                .sample("smscsim_message_store_dropped_total", getDropped());
+        writer.header("smscsim_message_store_queued", "gauge", "Messages waiting to be written.")
+                .sample("smscsim_message_store_queued", getQueued());
+        writer.header("smscsim_message_store_segments_total", "counter", "Segment files created.")
+                .sample("smscsim_message_store_segments_total", segments.get());
+    }
+
+    /**
+     * Writes the queued messages and closes the current segment.
+     */
+    public void destroy() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+        logger.info("Message store closed: {} messages written, {} dropped", written.get(), dropped.get());
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                write(entry);
+            } catch (Exception e) {
+                dropped.incrementAndGet();
+                logger.warn("Failed to store message {}", Long.toHexString(entry.messageId), e);
+            }
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        BaseSm sm = entry.sm;
+        byte[] systemId = bytes(entry.systemId);
+        byte[] source = bytes(sm.getSourceAddress() != null ? sm.getSourceAddress().getAddress() : null);
+        byte[] dest = bytes(sm.getDestAddress() != null ? sm.getDestAddress().getAddress() : null);
+        byte[] payload = payload(sm);
+
+        int length = 8 + 8 + 2 + systemId.length + 4 + source.length + 4 + dest.length + 3 + 4 + payload.length;
+        if (4 + length > segmentSize - MessageLogFormat.HEADER_SIZE) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // keep room for the terminating zero length
+        if (buffer.remaining() < 4 + length + 4) {
+            closeSegment();
+            segment++;
+            openSegment();
+        }
+
+        int offset = buffer.position();
+        buffer.position(offset + 4);
+        buffer.putLong(entry.messageId);
+        buffer.putLong(entry.timestamp);
+        putBytes(systemId);
+        putAddress(sm.getSourceAddress(), source);
+        putAddress(sm.getDestAddress(), dest);
+        buffer.put(sm.getEsmClass());
+        buffer.put(sm.getDataCoding());
+        buffer.put(sm.getRegisteredDelivery());
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        buffer.putInt(offset, length);
+
+        addToIndex(entry.messageId, offset);
+        written.incrementAndGet();
+    }
+
+    private void putAddress(Address address, byte[] bytes) {
+        buffer.put(address != null ? address.getTon() : 0);
+        buffer.put(address != null ? address.getNpi() : 0);
+        putBytes(bytes);
+    }
+
+    private void putBytes(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] bytes(String s) {
+        if (s == null) {
+            return new byte[0];
+        }
+        byte[] bytes = s.getBytes(MessageLogFormat.CHARSET);
+        return bytes.length <= Short.MAX_VALUE ? bytes : Arrays.copyOf(bytes, Short.MAX_VALUE);
+    }
+
+    private static byte[] payload(BaseSm sm) {
+        byte[] shortMessage = sm.getShortMessage();
+        if (shortMessage != null && shortMessage.length > 0) {
+            return shortMessage;
+        }
+        Tlv messagePayload = sm.getOptionalParameter(SmppConstants.TAG_MESSAGE_PAYLOAD);
+        if (messagePayload != null && messagePayload.getValue() != null) {
+            return messagePayload.getValue();
+        }
+        return new byte[0];
+    }
+
+    private void addToIndex(long messageId, int offset) {
+        if (indexSize == indexIds.length) {
+            indexIds = Arrays.copyOf(indexIds, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexIds[indexSize] = messageId;
+        indexOffsets[indexSize] = offset;
+        indexSize++;
+    }
+
+    private void openSegment() throws IOException {
+        File file = MessageLogFormat.segmentFile(directory, segment);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(MessageLogFormat.MAGIC);
+        buffer.putShort(MessageLogFormat.VERSION);
+        buffer.putShort((short) 0);
+        indexSize = 0;
+        segments.incrementAndGet();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            writeIndex();
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close segment {}", segment, e);
+        }
+        channel = null;
+    }
+
+    private void writeIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(4 + indexSize * MessageLogFormat.INDEX_ENTRY_SIZE);
+        index.putInt(indexSize);
+        for (int i = 0; i < indexSize; i++) {
+            index.putLong(indexIds[i]);
+            index.putInt(indexOffsets[i]);
+        }
+        index.flip();
+        RandomAccessFile raf = new RandomAccessFile(MessageLogFormat.indexFile(directory, segment), "rw");
+        try {
+            raf.setLength(0);
+            FileChannel indexChannel = raf.getChannel();
+            while (index.hasRemaining()) {
+                indexChannel.write(index);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int lastSegment(File directory) {
+        int last = -1;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                last = Math.max(last, MessageLogFormat.segmentNumber(file));
+            }
+        }
+        return last;
+    }
+
+    private static class Entry {
+
+        final long messageId;
+        final long timestamp;
+        final String systemId;
+        final BaseSm sm;
+
+        Entry(long messageId, long timestamp, String systemId, BaseSm sm) {
+            this.messageId = messageId;
+            this.timestamp = timestamp;
+            this.systemId = systemId;
+            this.sm = sm;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.headstartech.smscsim.server.store;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * On-disk format of the message log: segment files {@code messages-NNNNNN.log} of an 8 byte
+ * header and big-endian records, and an index {@code .idx} per closed segment. A record is:
+ * <pre>
+ * int length of the rest (0 ends the segment), long id, long accepted millis, str systemId,
+ * byte ton, byte npi, str source, byte ton, byte npi, str destination,
+ * byte esm_class, byte data_coding, byte registered_delivery, int length, payload
+ * </pre>
+ * where {@code str} is a short length and ISO-8859-1 bytes.
+ */
+final class MessageLogFormat {
+
+    static final int MAGIC = 0x534D4C47; // "SMLG"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    // int entry count, then per entry long message id, int record offset
+    static final int INDEX_ENTRY_SIZE = 12;
+
+    static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    private static final String PREFIX = "messages-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+
+    private MessageLogFormat() {
+    }
+
+    static File segmentFile(File directory, int segment) {
+        return new File(directory, String.format(Locale.ROOT, "%s%06d%s", PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    static File indexFile(File directory, int segment) {
+        return new File(directory, String.format(Locale.ROOT, "%s%06d%s", PREFIX, segment, INDEX_SUFFIX));
+    }
+
+    /**
+     * @return segment number of {@code file}, -1 if it isn't a segment file
+     */
+    static int segmentNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.headstartech.smscsim.server.store;
+
+import com.cloudhopper.smpp.type.Address;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a message log written by {@link MessageLog}, e.g. to check in a test what the
+ * simulator received. If several messages have the same id the last one written is returned.
+ */
+public class MessageLogReader implements Iterable<StoredMessage> {
+
+    private static final long NOT_FOUND = -1;
+
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private LongLongHashMap index;
+
+    public MessageLogReader(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (File file : files) {
+            int number = MessageLogFormat.segmentNumber(file);
+            if (number >= 0) {
+                numbers.add(number);
+            }
+        }
+        Collections.sort(numbers);
+        for (int number : numbers) {
+            segments.add(new Segment(directory, number));
+        }
+    }
+
+    /**
+     * @param messageId message id as returned in submit_sm_resp
+     * @return the message, or <code>null</code> if it isn't in the log
+     */
+    public StoredMessage find(long messageId) throws IOException {
+        if (index == null) {
+            index = buildIndex();
+        }
+        long location = index.get(messageId, NOT_FOUND);
+        if (location == NOT_FOUND) {
+            return null;
+        }
+        return segments.get((int) (location >>> 32)).read((int) location);
+    }
+
+    @Override
+    public Iterator<StoredMessage> iterator() {
+        return new Iterator<StoredMessage>() {
+
+            private int segment;
+            private int offset = MessageLogFormat.HEADER_SIZE;
+
+            @Override
+            public boolean hasNext() {
+                while (segment < segments.size()) {
+                    if (segments.get(segment).hasRecord(offset)) {
+                        return true;
+                    }
+                    segment++;
+                    offset = MessageLogFormat.HEADER_SIZE;
+                }
+                return false;
+            }
+
+            @Override
+            public StoredMessage next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Segment s = segments.get(segment);
+                StoredMessage message = s.read(offset);
+                offset = s.next(offset);
+                return message;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private LongLongHashMap buildIndex() throws IOException {
+        LongLongHashMap map = new LongLongHashMap(1024);
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            long segmentBits = (long) i << 32;
+            File indexFile = MessageLogFormat.indexFile(segment.directory, segment.number);
+            if (indexFile.isFile()) {
+                ByteBuffer buffer = map(indexFile);
+                int count = buffer.getInt();
+                for (int j = 0; j < count; j++) {
+                    long messageId = buffer.getLong();
+                    map.put(messageId, segmentBits | buffer.getInt());
+                }
+            } else {
+                for (int offset = MessageLogFormat.HEADER_SIZE; segment.hasRecord(offset); offset = segment.next(offset)) {
+                    map.put(segment.buffer.getLong(offset + 4), segmentBits | offset);
+                }
+            }
+        }
+        return map;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static class Segment {
+
+        final File directory;
+        final int number;
+        final ByteBuffer buffer;
+
+        Segment(File directory, int number) throws IOException {
+            this.directory = directory;
+            this.number = number;
+            this.buffer = map(MessageLogFormat.segmentFile(directory, number));
+            if (buffer.limit() < MessageLogFormat.HEADER_SIZE || buffer.getInt(0) != MessageLogFormat.MAGIC) {
+                throw new IOException("Not a message log segment: " + MessageLogFormat.segmentFile(directory, number));
+            }
+        }
+
+        boolean hasRecord(int offset) {
+            return offset + 4 <= buffer.limit() && buffer.getInt(offset) > 0;
+        }
+
+        int next(int offset) {
+            return offset + 4 + buffer.getInt(offset);
+        }
+
+        StoredMessage read(int offset) {
+            ByteBuffer b = buffer.duplicate();
+            b.position(offset + 4);
+            long messageId = b.getLong();
+            long timestamp = b.getLong();
+            String systemId = getString(b);
+            Address source = getAddress(b);
+            Address dest = getAddress(b);
+            byte esmClass = b.get();
+            byte dataCoding = b.get();
+            byte registeredDelivery = b.get();
+            byte[] payload = new byte[b.getInt()];
+            b.get(payload);
+            return new StoredMessage(messageId, timestamp, systemId, source, dest, esmClass, dataCoding, registeredDelivery, payload);
+        }
+
+        private static Address getAddress(ByteBuffer b) {
+            byte ton = b.get();
+            byte npi = b.get();
+            return new Address(ton, npi, getString(b));
+        }
+
+        private static String getString(ByteBuffer b) {
+            byte[] bytes = new byte[b.getShort()];
+            b.get(bytes);
+            return new String(bytes, MessageLogFormat.CHARSET);
+        }
+    }
+}
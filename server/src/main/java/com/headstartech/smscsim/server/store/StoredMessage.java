@@ -0,0 +1,81 @@
+package com.headstartech.smscsim.server.store;
+
+import com.cloudhopper.smpp.type.Address;
+
+/**
+ * A message read back from the message log.
+ */
+public class StoredMessage {
+
+    private final long messageId;
+    private final long timestamp;
+    private final String systemId;
+    private final Address sourceAddress;
+    private final Address destAddress;
+    private final byte esmClass;
+    private final byte dataCoding;
+    private final byte registeredDelivery;
+    private final byte[] payload;
+
+    public StoredMessage(long messageId, long timestamp, String systemId, Address sourceAddress, Address destAddress,
+                         byte esmClass, byte dataCoding, byte registeredDelivery, byte[] payload) {
+        this.messageId = messageId;
+        this.timestamp = timestamp;
+        this.systemId = systemId;
+        this.sourceAddress = sourceAddress;
+        this.destAddress = destAddress;
+        this.esmClass = esmClass;
+        this.dataCoding = dataCoding;
+        this.registeredDelivery = registeredDelivery;
+        this.payload = payload;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return time the message was accepted, epoch millis
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+    public Address getSourceAddress() {
+        return sourceAddress;
+    }
+
+    public Address getDestAddress() {
+        return destAddress;
+    }
+
+    public byte getEsmClass() {
+        return esmClass;
+    }
+
+    public byte getDataCoding() {
+        return dataCoding;
+    }
+
+    public byte getRegisteredDelivery() {
+        return registeredDelivery;
+    }
+
+    /**
+     * @return the encoded message text
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredMessage{messageId=" + Long.toHexString(messageId) + ", timestamp=" + timestamp + ", systemId=" + systemId +
+                ", source=" + sourceAddress + ", dest=" + destAddress + ", dataCoding=" + dataCoding +
+                ", payload=" + payload.length + " bytes}";
+    }
+}
@@ -0,0 +1,129 @@
+package com.headstartech.smscsim.server.throttle;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * TPS limits: one {@link TokenBucket} per systemId, shared by its sessions, and a global one
+ * across all systemIds.
+ */
+public class Throttles implements MetricsContributor {
+
+    private final SmppServerProperties.Throttle properties;
+    private final TokenBucket global;
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+    public Throttles(SmppServerProperties.Throttle properties) {
+        this.properties = properties;
+        this.global = create(properties.getGlobal());
+    }
+
+    /**
+     * @return the bucket shared by all sessions of {@code systemId}
+     */
+    public TokenBucket forSystemId(String systemId) {
+        TokenBucket bucket = buckets.get(systemId);
+        return bucket != null ? bucket : createBucket(systemId);
+    }
+
+    // locked with the setters, so a bucket can't be created with a limit that is being replaced
+    private synchronized TokenBucket createBucket(String systemId) {
+        TokenBucket bucket = buckets.get(systemId);
+        if (bucket == null) {
+            SmppServerProperties.Limit limit = properties.getAccounts().get(systemId);
+            bucket = create(limit != null ? limit : properties.getAccount());
+            buckets.put(systemId, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * Sets the limit of {@code systemId}, or the default limit of systemIds without their
+     * own if {@code systemId} is <code>null</code>.
+     */
+    public synchronized void setLimit(String systemId, SmppServerProperties.Limit limit) {
+        if (systemId == null) {
+            properties.getAccount().setTps(limit.getTps());
+            properties.getAccount().setBurst(limit.getBurst());
+            for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+                if (!properties.getAccounts().containsKey(entry.getKey())) {
+                    entry.getValue().setRate(limit.getTps(), limit.getBurst());
+                }
+            }
+            return;
+        }
+        properties.getAccounts().put(systemId, limit);
+        forSystemId(systemId).setRate(limit.getTps(), limit.getBurst());
+    }
+
+    /**
+     * Removes the limit of {@code systemId}, so that the default limit applies.
+     */
+    public synchronized void removeLimit(String systemId) {
+        properties.getAccounts().remove(systemId);
+        TokenBucket bucket = buckets.get(systemId);
+        if (bucket != null) {
+            bucket.setRate(properties.getAccount().getTps(), properties.getAccount().getBurst());
+        }
+    }
+
+    public synchronized void setGlobalLimit(SmppServerProperties.Limit limit) {
+        properties.getGlobal().setTps(limit.getTps());
+        properties.getGlobal().setBurst(limit.getBurst());
+        global.setRate(limit.getTps(), limit.getBurst());
+    }
+
+    public TokenBucket getGlobal() {
+        return global;
+    }
+
+    public Map<String, TokenBucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @param bucket bucket of the sending systemId
+     * @return true if both the systemId and the global limit allow one more message
+     */
+    public boolean tryAcquire(TokenBucket bucket) {
+        if (!bucket.tryAcquire()) {
+            return false;
+        }
+        if (global.tryAcquire()) {
+            return true;
+        }
+        // throttled by the global limit, so the message doesn't count against the systemId's
+        bucket.refund();
+        return false;
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        Map<String, TokenBucket> sorted = new TreeMap<String, TokenBucket>(buckets);
+        writer.header("smscsim_throttle_accepted_total", "counter", "Messages within the systemId's TPS limit.");
+        for (Map.Entry<String, TokenBucket> entry : sorted.entrySet()) {
+            if (!entry.getValue().isUnlimited()) {
+                writer.sample("smscsim_throttle_accepted_total", entry.getValue().getAccepted(), "system_id", entry.getKey());
+            }
+        }
+        writer.header("smscsim_throttle_rejected_total", "counter", "Messages throttled by the systemId's TPS limit.");
+        for (Map.Entry<String, TokenBucket> entry : sorted.entrySet()) {
+            if (!entry.getValue().isUnlimited()) {
+                writer.sample("smscsim_throttle_rejected_total", entry.getValue().getRejected(), "system_id", entry.getKey());
+            }
+        }
+        writer.header("smscsim_throttle_global_accepted_total", "counter", "Messages within the global TPS limit.")
+                .sample("smscsim_throttle_global_accepted_total", global.getAccepted());
+        writer.header("smscsim_throttle_global_rejected_total", "counter", "Messages throttled by the global TPS limit.")
+                .sample("smscsim_throttle_global_rejected_total", global.getRejected());
+    }
+
+    private static TokenBucket create(SmppServerProperties.Limit limit) {
+        return new TokenBucket(limit.getTps(), limit.getBurst());
+    }
+}
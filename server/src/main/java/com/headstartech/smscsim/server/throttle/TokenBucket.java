@@ -0,0 +1,100 @@
+package com.headstartech.smscsim.server.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free token bucket (GCRA): the only state is the theoretical arrival time of the next
+ * token, updated with a CAS.
+ */
+public class TokenBucket {
+
+    private volatile Rate rate;
+    private final AtomicLong theoreticalArrivalTime;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param ratePerSecond tokens per second, zero or negative for unlimited
+     * @param burst max tokens that can be taken at once after an idle period, zero or
+     *              negative for one second worth of tokens
+     */
+    public TokenBucket(int ratePerSecond, int burst) {
+        this.rate = new Rate(ratePerSecond, burst);
+        this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Changes the rate; tokens already taken stay taken.
+     *
+     * @see #TokenBucket(int, int)
+     */
+    public void setRate(int ratePerSecond, int burst) {
+        this.rate = new Rate(ratePerSecond, burst);
+    }
+
+    public boolean isUnlimited() {
+        return rate.intervalNanos == 0;
+    }
+
+    /**
+     * @return true if a token was taken, false if the caller should be throttled
+     */
+    public boolean tryAcquire() {
+        Rate rate = this.rate;
+        long intervalNanos = rate.intervalNanos;
+        if (intervalNanos == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            long next = Math.max(tat - now, 0) + now + intervalNanos;
+            if (next - now > rate.burstToleranceNanos) {
+                rejected.increment();
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                accepted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken with {@link #tryAcquire()} that wasn't used.
+     */
+    public void refund() {
+        long intervalNanos = rate.intervalNanos;
+        if (intervalNanos == 0) {
+            return;
+        }
+        theoreticalArrivalTime.addAndGet(-intervalNanos);
+        accepted.decrement();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private static final class Rate {
+
+        final long intervalNanos;
+        final long burstToleranceNanos;
+
+        Rate(int ratePerSecond, int burst) {
+            if (ratePerSecond <= 0) {
+                this.intervalNanos = 0;
+                this.burstToleranceNanos = 0;
+            } else {
+                this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+                this.burstToleranceNanos = intervalNanos * (burst > 0 ? burst : ratePerSecond);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.headstartech.smscsim.server.trace;
+
+import com.headstartech.smscsim.trace.WireTracer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Dumps the traced PDUs of the last {@code seconds} still in the {@link WireTracer}'s ring, as
+ * text or, with {@code format=binary}, in the format of the trace file.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "smppserver.trace", name = "enabled")
+public class TraceController {
+
+    private final WireTracer wireTracer;
+
+    public TraceController(WireTracer wireTracer) {
+        this.wireTracer = wireTracer;
+    }
+
+    @RequestMapping(value = "/trace", method = RequestMethod.GET)
+    public void trace(@RequestParam(defaultValue = "10") long seconds, @RequestParam(defaultValue = "text") String format,
+                      HttpServletResponse response) throws IOException {
+        if ("binary".equals(format)) {
+            response.setContentType("application/octet-stream");
+            wireTracer.dump(seconds, response.getOutputStream());
+        } else {
+            response.setContentType("text/plain;charset=UTF-8");
+            wireTracer.dump(seconds, response.getWriter());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.headstartech.smscsim.server.trace;
+
+import com.headstartech.smscsim.server.metrics.MetricsContributor;
+import com.headstartech.smscsim.server.metrics.PrometheusWriter;
+import com.headstartech.smscsim.trace.WireTracer;
+
+/**
+ * Counters of the {@link WireTracer}.
+ */
+public class WireTraceMetrics implements MetricsContributor {
+
+    private final WireTracer wireTracer;
+
+    public WireTraceMetrics(WireTracer wireTracer) {
+        this.wireTracer = wireTracer;
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.header("smscsim_trace_recorded_total", "counter", "PDUs traced.")
+                .sample("smscsim_trace_recorded_total", wireTracer.getRecorded());
+        writer.header("smscsim_trace_written_total", "counter", "Traced PDUs written to the trace file.")
+                .sample("smscsim_trace_written_total", wireTracer.getWritten());
+        writer.header("smscsim_trace_lost_total", "counter", "Traced PDUs overwritten in the ring before they were written to the file.")
+                .sample("smscsim_trace_lost_total", wireTracer.getLost());
+    }
+}
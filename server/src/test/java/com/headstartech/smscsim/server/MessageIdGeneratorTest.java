@@ -0,0 +1,87 @@
+package com.headstartech.smscsim.server;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageIdGeneratorTest {
+
+    private static final long EPOCH = 1420070400000L;
+
+    @Test
+    public void layout() {
+        long before = System.currentTimeMillis();
+        long id = new MessageIdGenerator(7).nextId();
+        long after = System.currentTimeMillis();
+
+        assertEquals(7, MessageIdGenerator.nodeIdOf(id));
+        long millis = (id >>> (MessageIdGenerator.NODE_BITS + MessageIdGenerator.SEQUENCE_BITS)) + EPOCH;
+        assertTrue(millis >= before && millis <= after);
+        assertTrue(id > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeIdTooLarge() {
+        new MessageIdGenerator(MessageIdGenerator.MAX_NODE_ID + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeNodeId() {
+        new MessageIdGenerator(-1);
+    }
+
+    @Test
+    public void increasingAndBorrowsBeyondSequence() {
+        MessageIdGenerator generator = new MessageIdGenerator(MessageIdGenerator.MAX_NODE_ID);
+        int count = 50000;
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertEquals(MessageIdGenerator.MAX_NODE_ID, MessageIdGenerator.nodeIdOf(id));
+            previous = id;
+        }
+        long end = System.currentTimeMillis();
+        // ids beyond the sequence of a millisecond borrow from the following ones, at most one per 4096 ids
+        long millis = (previous >>> (MessageIdGenerator.NODE_BITS + MessageIdGenerator.SEQUENCE_BITS)) + EPOCH;
+        assertTrue(millis <= end + (count >> MessageIdGenerator.SEQUENCE_BITS) + 1);
+    }
+
+    @Test
+    public void uniqueAcrossThreads() throws Exception {
+        final MessageIdGenerator generator = new MessageIdGenerator(1);
+        final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        ids.add(generator.nextId());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, ids.size());
+    }
+
+    @Test
+    public void messageIdRoundTrip() {
+        long id = new MessageIdGenerator(3).nextId();
+        assertEquals(id, MessageIdGenerator.fromMessageId(MessageIdGenerator.toMessageId(id)));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void foreignMessageId() {
+        MessageIdGenerator.fromMessageId("not-an-id");
+    }
+}
@@ -0,0 +1,24 @@
+package com.headstartech.smscsim.server;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ServerContextTest {
+
+    @Test
+    public void reportsMissingCollaborators() {
+        ServerContext context = new ServerContext();
+        context.setProperties(new SmppServerProperties());
+        context.setMessageIdGenerator(new MessageIdGenerator(0));
+        try {
+            context.checkRequired();
+            fail("Incomplete context accepted");
+        } catch (IllegalStateException e) {
+            assertEquals("ServerContext has no [responseProfiles, asyncResponder, throttles, sessionRegistry, metrics, " +
+                    "messageStateIndex, drainer, bindAdmission]", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.headstartech.smscsim.server;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.SmppSessionConfiguration;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.dlr.DeliveryReceiptEngine;
+import com.headstartech.smscsim.server.metrics.SmppMetrics;
+import com.headstartech.smscsim.server.response.AsyncResponder;
+import com.headstartech.smscsim.server.response.ResponseProfiles;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import com.headstartech.smscsim.server.throttle.Throttles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SmppServerSessionImplTest {
+
+    private SmppServerProperties properties;
+    private DeliveryReceiptEngine deliveryReceiptEngine;
+    private AsyncResponder asyncResponder;
+    private SmppSession session;
+
+    @Before
+    public void setUp() {
+        properties = new SmppServerProperties();
+        SmppSessionConfiguration configuration = new SmppSessionConfiguration();
+        configuration.setSystemId("esme1");
+        configuration.setWindowSize(10);
+        session = mock(SmppSession.class);
+        when(session.getConfiguration()).thenReturn(configuration);
+        when(session.isBound()).thenReturn(true);
+    }
+
+    @After
+    public void tearDown() {
+        if (deliveryReceiptEngine != null) {
+            deliveryReceiptEngine.destroy();
+        }
+        if (asyncResponder != null) {
+            asyncResponder.destroy();
+        }
+    }
+
+    @Test
+    public void receiptFollowsDelayedResponse() throws Exception {
+        properties.getResponseProfile().getLatency().setFixed(300);
+        SmppServerSessionImpl handler = new SmppServerSessionImpl(session, context());
+
+        assertNull(handler.firePduRequestReceived(submit()));
+
+        verify(session, timeout(2000)).sendRequestPdu(any(DeliverSm.class), anyLong(), eq(false));
+        InOrder order = inOrder(session);
+        order.verify(session).sendResponsePdu(any(SubmitSmResp.class));
+        order.verify(session).sendRequestPdu(any(DeliverSm.class), anyLong(), eq(false));
+        assertEquals(1, deliveryReceiptEngine.getScheduled());
+    }
+
+    @Test
+    public void receiptOfImmediateResponse() throws Exception {
+        SmppServerSessionImpl handler = new SmppServerSessionImpl(session, context());
+
+        PduResponse response = handler.firePduRequestReceived(submit());
+
+        assertEquals(SmppConstants.STATUS_OK, response.getCommandStatus());
+        verify(session, timeout(2000)).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+    }
+
+    private ServerContext context() {
+        MessageStateIndex stateIndex = new MessageStateIndex(1024);
+        SessionRegistry sessionRegistry = new SessionRegistry();
+        deliveryReceiptEngine = new DeliveryReceiptEngine(properties.getDeliveryReceipt(), stateIndex);
+        asyncResponder = new AsyncResponder(1, 10);
+
+        ServerContext context = new ServerContext();
+        context.setProperties(properties);
+        context.setMessageIdGenerator(new MessageIdGenerator(0));
+        context.setDeliveryReceiptEngine(deliveryReceiptEngine);
+        context.setResponseProfiles(new ResponseProfiles(properties));
+        context.setAsyncResponder(asyncResponder);
+        context.setThrottles(new Throttles(properties.getThrottle()));
+        context.setSessionRegistry(sessionRegistry);
+        context.setMetrics(new SmppMetrics(sessionRegistry));
+        context.setMessageStateIndex(stateIndex);
+        return context;
+    }
+
+    private static SubmitSm submit() throws Exception {
+        SubmitSm submit = new SubmitSm();
+        submit.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
+        submit.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "5678"));
+        submit.setShortMessage("Hello".getBytes("ISO-8859-1"));
+        return submit;
+    }
+}
@@ -0,0 +1,79 @@
+package com.headstartech.smscsim.server.bind;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.type.SmppProcessingException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class BindAdmissionTest {
+
+    @Test
+    public void authenticatesAgainstAccounts() throws Exception {
+        SmppServerProperties.Bind properties = new SmppServerProperties.Bind();
+        properties.setAuthenticate(true);
+        SmppServerProperties.Account account = new SmppServerProperties.Account();
+        account.setPassword("secret");
+        properties.getAccounts().put("esme1", account);
+        BindAdmission admission = new BindAdmission(properties);
+
+        assertRefused(admission, 1L, "esme2", "secret", SmppConstants.STATUS_INVSYSID);
+        assertRefused(admission, 2L, "esme1", "wrong", SmppConstants.STATUS_INVPASWD);
+        admission.admit(3L, "esme1", "secret");
+    }
+
+    @Test
+    public void destroyedSessionFreesItsBind() throws Exception {
+        SmppServerProperties.Bind properties = new SmppServerProperties.Bind();
+        properties.setMaxBinds(1);
+        BindAdmission admission = new BindAdmission(properties);
+
+        admission.admit(1L, "esme1", null);
+        assertRefused(admission, 2L, "esme1", null, SmppConstants.STATUS_ALYBND);
+        admission.sessionDestroyed(1L);
+        admission.admit(3L, "esme1", null);
+    }
+
+    @Test
+    public void maxBindsRefusedWithoutTakingRateToken() throws Exception {
+        SmppServerProperties.Bind properties = new SmppServerProperties.Bind();
+        properties.setMaxBinds(1);
+        properties.getRate().setTps(1);
+        properties.getRate().setBurst(2);
+        BindAdmission admission = new BindAdmission(properties);
+
+        admission.admit(1L, "esme1", null);
+        assertRefused(admission, 2L, "esme1", null, SmppConstants.STATUS_ALYBND);
+        // the second token is still there
+        admission.admit(3L, "esme2", null);
+        assertRefused(admission, 4L, "esme3", null, SmppConstants.STATUS_BINDFAIL);
+    }
+
+    @Test
+    public void rateLimitedBindReleasesItsSession() throws Exception {
+        SmppServerProperties.Bind properties = new SmppServerProperties.Bind();
+        properties.setMaxBinds(1);
+        properties.getRate().setTps(1);
+        properties.getRate().setBurst(1);
+        BindAdmission admission = new BindAdmission(properties);
+
+        admission.admit(1L, "esme1", null);
+        admission.sessionDestroyed(1L);
+        assertRefused(admission, 2L, "esme1", null, SmppConstants.STATUS_BINDFAIL);
+
+        SmppServerProperties.Limit unlimited = new SmppServerProperties.Limit();
+        admission.setRate(unlimited);
+        admission.admit(3L, "esme1", null);
+    }
+
+    private static void assertRefused(BindAdmission admission, Long sessionId, String systemId, String password, int status) {
+        try {
+            admission.admit(sessionId, systemId, password);
+            fail("Bind of " + systemId + " accepted");
+        } catch (SmppProcessingException e) {
+            assertEquals(status, e.getErrorCode());
+        }
+    }
+}
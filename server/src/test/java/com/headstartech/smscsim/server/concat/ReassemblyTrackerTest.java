@@ -0,0 +1,149 @@
+package com.headstartech.smscsim.server.concat;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.DataSm;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReassemblyTrackerTest {
+
+    private SmppServerProperties.Reassembly properties;
+    private ReassemblyTracker tracker;
+
+    @Before
+    public void setUp() {
+        properties = new SmppServerProperties.Reassembly();
+    }
+
+    @After
+    public void tearDown() {
+        if (tracker != null) {
+            tracker.destroy();
+        }
+    }
+
+    @Test
+    public void completesUdhMessageInAnyOrder() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        tracker.partReceived("esme1", udh8(7, 3, 2));
+        tracker.partReceived("esme1", udh8(7, 3, 3));
+        assertEquals(1, tracker.getPending());
+        tracker.partReceived("esme1", udh8(7, 3, 1));
+
+        assertEquals(3, tracker.getParts());
+        assertEquals(0, tracker.getPending());
+        assertEquals(1, tracker.getCompleted());
+    }
+
+    @Test
+    public void completesSarMessage() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        tracker.partReceived("esme1", sar(0x1234, 2, 1));
+        tracker.partReceived("esme1", sar(0x1234, 2, 2));
+
+        assertEquals(1, tracker.getCompleted());
+        assertEquals(0, tracker.getPending());
+    }
+
+    @Test
+    public void readsSixteenBitReferenceFromPayload() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        for (int number = 1; number <= 2; number++) {
+            DataSm part = new DataSm();
+            part.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+            part.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+            part.addOptionalParameter(new Tlv(SmppConstants.TAG_MESSAGE_PAYLOAD,
+                    new byte[] { 0x06, 0x08, 0x04, 0x01, 0x02, 0x02, (byte) number, 'h', 'i' }));
+            tracker.partReceived("esme1", part);
+        }
+        assertEquals(1, tracker.getCompleted());
+    }
+
+    @Test
+    public void ignoresPlainMessages() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        SubmitSm plain = new SubmitSm();
+        plain.setShortMessage(new byte[] { 0x05, 0x00, 0x03, 0x01, 0x02, 0x01 });
+        tracker.partReceived("esme1", plain);
+
+        assertEquals(0, tracker.getParts());
+    }
+
+    @Test
+    public void keepsMessagesOfSystemIdsApart() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        tracker.partReceived("esme1", udh8(7, 2, 1));
+        tracker.partReceived("esme2", udh8(7, 2, 2));
+
+        assertEquals(2, tracker.getPending());
+        assertEquals(0, tracker.getCompleted());
+    }
+
+    @Test
+    public void countsDuplicateInvalidAndReplacedParts() throws Exception {
+        tracker = new ReassemblyTracker(properties);
+        tracker.partReceived("esme1", udh8(7, 3, 1));
+        tracker.partReceived("esme1", udh8(7, 3, 1));
+        assertEquals(1, tracker.getDuplicates());
+
+        tracker.partReceived("esme1", udh8(8, 3, 0));
+        tracker.partReceived("esme1", udh8(8, 3, 4));
+        assertEquals(2, tracker.getInvalid());
+
+        tracker.partReceived("esme1", udh8(7, 2, 1));
+        assertEquals(1, tracker.getReplaced());
+        assertEquals(1, tracker.getPending());
+    }
+
+    @Test
+    public void orphansAfterTimeout() throws Exception {
+        properties.setTimeout(20);
+        tracker = new ReassemblyTracker(properties);
+        tracker.partReceived("esme1", udh8(7, 2, 1));
+        Thread.sleep(50);
+        tracker.expire();
+
+        assertEquals(0, tracker.getPending());
+        assertEquals(1, tracker.getTimedOut());
+    }
+
+    @Test
+    public void evictsOldestBeyondCapacity() throws Exception {
+        properties.setStripes(2);
+        properties.setCapacity(2);
+        tracker = new ReassemblyTracker(properties);
+        for (int reference = 1; reference <= 3; reference++) {
+            tracker.partReceived("esme1", udh8(reference, 2, 1));
+        }
+
+        // one message per stripe, so at least two of the three share a stripe
+        assertTrue(tracker.getEvicted() >= 1);
+        assertEquals(3, tracker.getPending() + tracker.getEvicted());
+    }
+
+    private static SubmitSm udh8(int reference, int total, int number) throws Exception {
+        SubmitSm part = new SubmitSm();
+        part.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        part.setEsmClass(SmppConstants.ESM_CLASS_UDHI_MASK);
+        part.setShortMessage(new byte[] { 0x05, 0x00, 0x03, (byte) reference, (byte) total, (byte) number, 'h', 'i' });
+        return part;
+    }
+
+    private static SubmitSm sar(int reference, int total, int number) throws Exception {
+        SubmitSm part = new SubmitSm();
+        part.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        part.setShortMessage(new byte[] { 'h', 'i' });
+        part.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, new byte[] { (byte) (reference >> 8), (byte) reference }));
+        part.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] { (byte) total }));
+        part.addOptionalParameter(new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { (byte) number }));
+        return part;
+    }
+}
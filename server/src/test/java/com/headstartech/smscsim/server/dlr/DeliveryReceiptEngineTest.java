@@ -0,0 +1,219 @@
+package com.headstartech.smscsim.server.dlr;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.SmppSession;
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.cloudhopper.smpp.type.SmppTimeoutException;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import com.headstartech.smscsim.server.SmppServerSessionImpl;
+import com.headstartech.smscsim.server.state.MessageStateIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeliveryReceiptEngineTest {
+
+    private SmppServerProperties.DeliveryReceipt properties;
+    private MessageStateIndex stateIndex;
+    private DeliveryReceiptEngine engine;
+    private SmppSession session;
+    private SmppServerSessionImpl sessionHandler;
+    private Semaphore receiptWindow;
+
+    @Before
+    public void setUp() {
+        properties = new SmppServerProperties.DeliveryReceipt();
+        properties.setRetryDelay(10);
+        stateIndex = new MessageStateIndex(1024);
+        stateIndex.put(0x1a, SmppConstants.STATE_ENROUTE);
+        session = mock(SmppSession.class);
+        when(session.isBound()).thenReturn(true);
+        receiptWindow = new Semaphore(1);
+        sessionHandler = mock(SmppServerSessionImpl.class);
+        when(sessionHandler.getSession()).thenReturn(session);
+        when(sessionHandler.getReceiptWindow()).thenReturn(receiptWindow);
+    }
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.destroy();
+        }
+    }
+
+    @Test
+    public void receiptNotRequested() throws Exception {
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_NOT_REQUESTED), 0x1a);
+
+        assertEquals(0, engine.getScheduled());
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return MessageStateIndex.state(stateIndex.get(0x1a)) == SmppConstants.STATE_DELIVERED;
+            }
+        });
+        assertEquals(0, engine.getPending());
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getDeliveries() == 0;
+            }
+        });
+        verify(session, never()).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+    }
+
+    @Test
+    public void cancelledMessageGetsNoReceipt() throws Exception {
+        properties.getDelay().setFixed(50);
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+        assertTrue(stateIndex.update(0x1a, SmppConstants.STATE_ENROUTE, SmppConstants.STATE_DELETED, 0));
+
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getCancelled() == 1 && engine.getPending() == 0;
+            }
+        });
+        assertEquals(SmppConstants.STATE_DELETED, MessageStateIndex.state(stateIndex.get(0x1a)));
+        verify(session, never()).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+    }
+
+    @Test
+    public void sendsReceiptOverSession() throws Exception {
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+
+        ArgumentCaptor<PduRequest> request = ArgumentCaptor.forClass(PduRequest.class);
+        verify(session, timeout(2000)).sendRequestPdu(request.capture(), anyLong(), eq(false));
+        DeliverSm deliver = (DeliverSm) request.getValue();
+        assertEquals(SmppConstants.ESM_CLASS_MT_SMSC_DELIVERY_RECEIPT, deliver.getEsmClass());
+        assertEquals("1a\0", new String(deliver.getOptionalParameter(SmppConstants.TAG_RECEIPTED_MSG_ID).getValue(), "ISO-8859-1"));
+        assertEquals("1234", deliver.getDestAddress().getAddress());
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getSent() == 1 && engine.getPending() == 0;
+            }
+        });
+        assertEquals(0, receiptWindow.availablePermits());
+        assertEquals(SmppConstants.STATE_DELIVERED, MessageStateIndex.state(stateIndex.get(0x1a)));
+    }
+
+    @Test
+    public void fullWindowRetriesUntilReleased() throws Exception {
+        receiptWindow.drainPermits();
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getWindowFull() >= 2;
+            }
+        });
+        verify(session, never()).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+        assertEquals(1, engine.getPending());
+
+        receiptWindow.release();
+        verify(session, timeout(2000)).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+    }
+
+    @Test
+    public void fullSendWindowReleasesPermitAndRetries() throws Exception {
+        when(session.sendRequestPdu(any(PduRequest.class), anyLong(), eq(false)))
+                .thenThrow(new SmppTimeoutException("window full"))
+                .thenReturn(null);
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getSent() == 1 && engine.getPending() == 0;
+            }
+        });
+        verify(session, times(2)).sendRequestPdu(any(PduRequest.class), eq(properties.getWindowWait()), eq(false));
+        assertEquals(1, engine.getWindowFull());
+        assertEquals(0, engine.getDropped());
+    }
+
+    @Test
+    public void dropsBeyondMaxPending() throws Exception {
+        properties.setMaxPending(1);
+        properties.getDelay().setFixed(60000);
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1b);
+
+        assertEquals(1, engine.getPending());
+        assertEquals(1, engine.getDropped());
+    }
+
+    @Test
+    public void maxPendingCountsReceiptsOnly() throws Exception {
+        properties.setMaxPending(1);
+        properties.getDelay().setFixed(60000);
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_NOT_REQUESTED), 0x1a);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_NOT_REQUESTED), 0x1b);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1c);
+
+        assertEquals(2, engine.getDeliveries());
+        assertEquals(1, engine.getPending());
+        assertEquals(1, engine.getScheduled());
+        assertEquals(0, engine.getDropped());
+    }
+
+    @Test
+    public void dropsReceiptOfUnboundSession() throws Exception {
+        when(session.isBound()).thenReturn(false);
+        engine = new DeliveryReceiptEngine(properties, stateIndex);
+        engine.schedule(sessionHandler, submit(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED), 0x1a);
+
+        awaitTrue(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return engine.getDropped() == 1 && engine.getPending() == 0;
+            }
+        });
+        verify(session, never()).sendRequestPdu(any(PduRequest.class), anyLong(), eq(false));
+    }
+
+    private static SubmitSm submit(byte registeredDelivery) throws Exception {
+        SubmitSm submit = new SubmitSm();
+        submit.setRegisteredDelivery(registeredDelivery);
+        submit.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "5678"));
+        submit.setShortMessage("Hello".getBytes("ISO-8859-1"));
+        return submit;
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.call()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
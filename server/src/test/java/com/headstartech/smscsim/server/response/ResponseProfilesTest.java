@@ -0,0 +1,66 @@
+package com.headstartech.smscsim.server.response;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseProfilesTest {
+
+    @Test
+    public void setDefaultProfile() {
+        SmppServerProperties properties = new SmppServerProperties();
+        ResponseProfiles profiles = new ResponseProfiles(properties);
+        assertTrue(profiles.forSystemId("esme1").isPassThrough());
+
+        SmppServerProperties.ResponseProfile settings = throttling();
+        profiles.setProfile(null, settings);
+
+        assertEquals(SmppConstants.STATUS_THROTTLED, profiles.forSystemId("esme1").nextCommandStatus());
+        assertSame(settings, properties.getResponseProfile());
+    }
+
+    @Test
+    public void setAndRemoveProfileOfSystemId() {
+        SmppServerProperties properties = new SmppServerProperties();
+        ResponseProfiles profiles = new ResponseProfiles(properties);
+
+        SmppServerProperties.ResponseProfile settings = throttling();
+        profiles.setProfile("esme1", settings);
+        assertEquals(SmppConstants.STATUS_THROTTLED, profiles.forSystemId("esme1").nextCommandStatus());
+        assertTrue(profiles.forSystemId("esme2").isPassThrough());
+        assertSame(settings, properties.getResponseProfiles().get("esme1"));
+
+        profiles.removeProfile("esme1");
+        assertTrue(profiles.forSystemId("esme1").isPassThrough());
+        assertFalse(properties.getResponseProfiles().containsKey("esme1"));
+    }
+
+    @Test
+    public void invalidProfileChangesNothing() {
+        SmppServerProperties properties = new SmppServerProperties();
+        ResponseProfiles profiles = new ResponseProfiles(properties);
+        SmppServerProperties.ResponseProfile defaults = properties.getResponseProfile();
+
+        SmppServerProperties.ResponseProfile settings = throttling();
+        settings.setErrorPercent(50);
+        try {
+            profiles.setProfile(null, settings);
+            fail("Accepted error percentages above 100");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertTrue(profiles.forSystemId("esme1").isPassThrough());
+        assertSame(defaults, properties.getResponseProfile());
+    }
+
+    private static SmppServerProperties.ResponseProfile throttling() {
+        SmppServerProperties.ResponseProfile settings = new SmppServerProperties.ResponseProfile();
+        settings.setThrottledPercent(100);
+        return settings;
+    }
+}
@@ -0,0 +1,81 @@
+package com.headstartech.smscsim.server.routing;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PrefixTrieTest {
+
+    @Test
+    public void longestPrefixWins() {
+        Map<String, String> prefixes = new LinkedHashMap<String, String>();
+        prefixes.put("46", "se");
+        prefixes.put("467", "se-mobile");
+        prefixes.put("4670", "operator");
+        PrefixTrie<String> trie = PrefixTrie.of(prefixes);
+
+        assertEquals("operator", trie.lookup("46701234567"));
+        assertEquals("se-mobile", trie.lookup("46731234567"));
+        assertEquals("se", trie.lookup("4681234567"));
+        assertEquals("se-mobile", trie.lookup("467"));
+        assertNull(trie.lookup("4"));
+        assertNull(trie.lookup("1234"));
+        assertNull(trie.lookup(null));
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void emptyPrefixMatchesEverything() {
+        PrefixTrie<String> trie = PrefixTrie.<String>empty().with("", "default").with("44", "uk");
+
+        assertEquals("uk", trie.lookup("447700900123"));
+        assertEquals("default", trie.lookup("33612345678"));
+        assertEquals("default", trie.lookup(""));
+    }
+
+    @Test
+    public void skipsNonDigits() {
+        PrefixTrie<String> trie = PrefixTrie.<String>empty().with("4670", "operator");
+
+        assertEquals("operator", trie.lookup("+46 70-123"));
+    }
+
+    @Test
+    public void withoutKeepsOtherPrefixes() {
+        PrefixTrie<String> trie = PrefixTrie.<String>empty().with("46", "se").with("4670", "operator");
+        PrefixTrie<String> removed = trie.without("4670");
+
+        assertEquals("se", removed.lookup("46701234567"));
+        assertEquals(1, removed.size());
+        assertNull(removed.without("46").lookup("46701234567"));
+        assertEquals(0, removed.without("46").size());
+        assertSame(removed, removed.without("99"));
+    }
+
+    @Test
+    public void updatesLeaveOldTrieUnchanged() {
+        PrefixTrie<String> first = PrefixTrie.<String>empty().with("46", "se");
+        PrefixTrie<String> second = first.with("46", "sweden").with("4670", "operator");
+
+        assertEquals("se", first.lookup("46701234567"));
+        assertEquals(1, first.size());
+        assertEquals("operator", second.lookup("46701234567"));
+        assertEquals("sweden", second.lookup("4681234567"));
+        assertEquals(2, second.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonDigitPrefix() {
+        PrefixTrie.<String>empty().with("+46", "se");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullValue() {
+        PrefixTrie.<String>empty().with("46", null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.headstartech.smscsim.server.state;
+
+import com.cloudhopper.smpp.SmppConstants;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageStateIndexTest {
+
+    @Test
+    public void putAndGet() {
+        MessageStateIndex index = new MessageStateIndex(1024);
+        long before = System.currentTimeMillis();
+        index.put(42, SmppConstants.STATE_ENROUTE);
+
+        long value = index.get(42);
+        assertEquals(SmppConstants.STATE_ENROUTE, MessageStateIndex.state(value));
+        assertEquals(0, MessageStateIndex.errorCode(value));
+        assertTrue(MessageStateIndex.timestamp(value) >= before);
+        assertEquals(MessageStateIndex.NOT_FOUND, index.get(43));
+    }
+
+    @Test
+    public void updateOnlyFromExpectedState() {
+        MessageStateIndex index = new MessageStateIndex(1024);
+        index.put(42, SmppConstants.STATE_ENROUTE);
+
+        assertFalse(index.update(42, SmppConstants.STATE_DELIVERED, SmppConstants.STATE_DELETED, 0));
+        assertTrue(index.update(42, SmppConstants.STATE_ENROUTE, SmppConstants.STATE_UNDELIVERABLE, 0x45));
+        long value = index.get(42);
+        assertEquals(SmppConstants.STATE_UNDELIVERABLE, MessageStateIndex.state(value));
+        assertEquals(0x45, MessageStateIndex.errorCode(value));
+        assertFalse(index.update(43, SmppConstants.STATE_ENROUTE, SmppConstants.STATE_DELETED, 0));
+    }
+
+    @Test
+    public void capacityRoundedUp() {
+        assertEquals(1024, new MessageStateIndex(1000).getCapacity());
+        assertEquals(16, new MessageStateIndex(1).getCapacity());
+    }
+
+    @Test
+    public void evictsOldest() {
+        // the probe window covers the whole table, so it keeps exactly the newest ids
+        MessageStateIndex index = new MessageStateIndex(16);
+        for (long id = 1; id <= 1000; id++) {
+            index.put(id, SmppConstants.STATE_ENROUTE);
+        }
+        for (long id = 985; id <= 1000; id++) {
+            assertEquals(SmppConstants.STATE_ENROUTE, MessageStateIndex.state(index.get(id)));
+        }
+        assertEquals(MessageStateIndex.NOT_FOUND, index.get(984));
+        assertEquals(1000, index.getInserted());
+        assertEquals(1000 - 16, index.getEvicted());
+    }
+}
@@ -0,0 +1,59 @@
+package com.headstartech.smscsim.server.store;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongLongHashMapTest {
+
+    @Test
+    public void putAndGet() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(1, 10);
+        map.put(-5, 50);
+        map.put(Long.MAX_VALUE, 70);
+        assertEquals(10, map.get(1, -1));
+        assertEquals(50, map.get(-5, -1));
+        assertEquals(70, map.get(Long.MAX_VALUE, -1));
+        assertEquals(-1, map.get(2, -1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void putReplaces() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(7, 1);
+        map.put(7, 2);
+        assertEquals(2, map.get(7, -1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void zeroKey() {
+        LongLongHashMap map = new LongLongHashMap(4);
+        assertEquals(-1, map.get(0, -1));
+        map.put(0, 42);
+        assertEquals(42, map.get(0, -1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void growsBeyondExpectedSize() {
+        LongLongHashMap map = new LongLongHashMap(1);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long key = random.nextLong();
+            map.put(key, i);
+            expected.put(key, (long) i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), map.get(entry.getKey(), -1));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.headstartech.smscsim.server.store;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageLogTest {
+
+    // header + two records of 4 + 51 bytes + terminating zero length
+    private static final int SEGMENT_SIZE = 8 + 2 * 55 + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        File directory = folder.getRoot();
+        MessageLog log = new MessageLog(properties(directory));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(log.append(0x100 + i, "esme1", submit("Hell" + i)));
+        }
+        log.destroy();
+        assertEquals(5, log.getWritten());
+        assertEquals(0, log.getDropped());
+
+        MessageLogReader reader = new MessageLogReader(directory);
+        List<StoredMessage> messages = new ArrayList<StoredMessage>();
+        for (StoredMessage message : reader) {
+            messages.add(message);
+        }
+        assertEquals(5, messages.size());
+        for (int i = 0; i < 5; i++) {
+            StoredMessage message = messages.get(i);
+            assertEquals(0x100 + i, message.getMessageId());
+            assertEquals("esme1", message.getSystemId());
+            assertEquals("1234", message.getSourceAddress().getAddress());
+            assertEquals("5678", message.getDestAddress().getAddress());
+            assertEquals(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED, message.getRegisteredDelivery());
+            assertEquals("Hell" + i, new String(message.getPayload(), "ISO-8859-1"));
+        }
+        assertEquals("Hell3", new String(reader.find(0x103).getPayload(), "ISO-8859-1"));
+        assertNull(reader.find(0x200));
+    }
+
+    @Test
+    public void rollsOverWhenRecordAndEndMarkerDontFit() throws Exception {
+        File directory = folder.getRoot();
+        MessageLog log = new MessageLog(properties(directory));
+        for (int i = 0; i < 5; i++) {
+            log.append(0x100 + i, "esme1", submit("Hell" + i));
+        }
+        log.destroy();
+
+        for (int segment = 0; segment < 3; segment++) {
+            File file = MessageLogFormat.segmentFile(directory, segment);
+            assertTrue(file.getName(), file.isFile());
+            assertEquals(SEGMENT_SIZE, file.length());
+        }
+        assertFalse(MessageLogFormat.segmentFile(directory, 3).exists());
+    }
+
+    @Test
+    public void rollsOverWithoutRoomForEndMarker() throws Exception {
+        File directory = folder.getRoot();
+        SmppServerProperties.MessageStore properties = properties(directory);
+        properties.setSegmentSize(SEGMENT_SIZE - 1);
+        MessageLog log = new MessageLog(properties);
+        log.append(0x100, "esme1", submit("Hell0"));
+        log.append(0x101, "esme1", submit("Hell1"));
+        log.destroy();
+
+        assertTrue(MessageLogFormat.segmentFile(directory, 1).isFile());
+        assertIndex(MessageLogFormat.indexFile(directory, 0), new long[] { 0x100 }, new int[] { 8 });
+    }
+
+    @Test
+    public void closeSegmentWritesIndex() throws Exception {
+        File directory = folder.getRoot();
+        MessageLog log = new MessageLog(properties(directory));
+        for (int i = 0; i < 3; i++) {
+            log.append(0x100 + i, "esme1", submit("Hell" + i));
+        }
+        log.destroy();
+
+        assertIndex(MessageLogFormat.indexFile(directory, 0), new long[] { 0x100, 0x101 }, new int[] { 8, 8 + 55 });
+        // the last segment is closed by destroy()
+        assertIndex(MessageLogFormat.indexFile(directory, 1), new long[] { 0x102 }, new int[] { 8 });
+    }
+
+    @Test
+    public void continuesAfterSegmentsOfEarlierRun() throws Exception {
+        File directory = folder.getRoot();
+        MessageLog log = new MessageLog(properties(directory));
+        log.append(0x100, "esme1", submit("Hell0"));
+        log.destroy();
+        log = new MessageLog(properties(directory));
+        log.append(0x101, "esme1", submit("Hell1"));
+        log.destroy();
+
+        assertTrue(MessageLogFormat.segmentFile(directory, 1).isFile());
+        assertEquals("Hell0", new String(new MessageLogReader(directory).find(0x100).getPayload(), "ISO-8859-1"));
+    }
+
+    private static void assertIndex(File file, long[] ids, int[] offsets) throws Exception {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            assertEquals(ids.length, in.readInt());
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], in.readLong());
+                assertEquals(offsets[i], in.readInt());
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static SmppServerProperties.MessageStore properties(File directory) {
+        SmppServerProperties.MessageStore properties = new SmppServerProperties.MessageStore();
+        properties.setDirectory(directory.getAbsolutePath());
+        properties.setSegmentSize(SEGMENT_SIZE);
+        return properties;
+    }
+
+    private static SubmitSm submit(String text) throws Exception {
+        SubmitSm submit = new SubmitSm();
+        submit.setRegisteredDelivery(SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED);
+        submit.setSourceAddress(new Address((byte) 0x01, (byte) 0x01, "1234"));
+        submit.setDestAddress(new Address((byte) 0x01, (byte) 0x01, "5678"));
+        submit.setShortMessage(text.getBytes("ISO-8859-1"));
+        return submit;
+    }
+}
@@ -0,0 +1,51 @@
+package com.headstartech.smscsim.server.throttle;
+
+import com.headstartech.smscsim.config.SmppServerProperties;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThrottlesTest {
+
+    @Test
+    public void globalRejectionDoesNotChargeAccount() {
+        SmppServerProperties.Throttle properties = new SmppServerProperties.Throttle();
+        properties.getAccount().setTps(1);
+        properties.getAccount().setBurst(2);
+        properties.getGlobal().setTps(1);
+        properties.getGlobal().setBurst(1);
+        Throttles throttles = new Throttles(properties);
+        TokenBucket esme1 = throttles.forSystemId("esme1");
+        TokenBucket esme2 = throttles.forSystemId("esme2");
+
+        assertTrue(throttles.tryAcquire(esme1));
+        assertFalse(throttles.tryAcquire(esme1));
+        assertFalse(throttles.tryAcquire(esme2));
+
+        // esme1 still has the second token of its burst, esme2 both
+        assertEquals(1, esme1.getAccepted());
+        assertEquals(0, esme2.getAccepted());
+        assertTrue(esme1.tryAcquire());
+        assertTrue(esme2.tryAcquire());
+        assertTrue(esme2.tryAcquire());
+        assertEquals(2, throttles.getGlobal().getRejected());
+    }
+
+    @Test
+    public void accountRejectionDoesNotReachGlobal() {
+        SmppServerProperties.Throttle properties = new SmppServerProperties.Throttle();
+        properties.getAccount().setTps(1);
+        properties.getAccount().setBurst(1);
+        properties.getGlobal().setTps(1);
+        properties.getGlobal().setBurst(2);
+        Throttles throttles = new Throttles(properties);
+        TokenBucket esme1 = throttles.forSystemId("esme1");
+
+        assertTrue(throttles.tryAcquire(esme1));
+        assertFalse(throttles.tryAcquire(esme1));
+        assertEquals(1, throttles.getGlobal().getAccepted());
+        assertTrue(throttles.tryAcquire(throttles.forSystemId("esme2")));
+    }
+}
@@ -0,0 +1,83 @@
+package com.headstartech.smscsim.server.throttle;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void unlimited() {
+        TokenBucket bucket = new TokenBucket(0, 0);
+        assertTrue(bucket.isUnlimited());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+    }
+
+    @Test
+    public void burstThenThrottled() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        assertFalse(bucket.isUnlimited());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(3, bucket.getAccepted());
+        assertEquals(1, bucket.getRejected());
+    }
+
+    @Test
+    public void burstDefaultsToOneSecond() {
+        TokenBucket bucket = new TokenBucket(5, 0);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillsOverTime() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(150);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refundGivesTokenBack() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        bucket.refund();
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(2, bucket.getAccepted());
+    }
+
+    @Test
+    public void concurrentAcquiresNeverExceedBurst() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1, 100);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        bucket.tryAcquire();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // at 1 per second at most one more token can become available while the threads run
+        assertTrue(bucket.getAccepted() >= 100 && bucket.getAccepted() <= 101);
+        assertEquals(4000, bucket.getAccepted() + bucket.getRejected());
+    }
+}
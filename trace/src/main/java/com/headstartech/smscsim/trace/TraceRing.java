@@ -0,0 +1,101 @@
+package com.headstartech.smscsim.trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated ring of fixed-size records of longs, written by any number of threads without
+ * locks and read concurrently; a reader that falls behind loses records.
+ */
+public class TraceRing {
+
+    public static final int PUBLISHED = 1;
+    public static final int PENDING = 0;
+    public static final int OVERWRITTEN = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final int recordLongs;
+    private final AtomicLongArray records;
+    // sequence of the record in each slot, -1 while it is written; readers check it again after copying
+    private final AtomicLongArray sequences;
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * @param capacity number of records, rounded up to a power of two
+     */
+    public TraceRing(int capacity, int recordLongs) {
+        if (capacity < 1 || capacity > 1 << 30 || recordLongs < 1) {
+            throw new IllegalArgumentException("Invalid trace ring size");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        if ((long) size * recordLongs > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid trace ring size");
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.recordLongs = recordLongs;
+        this.records = new AtomicLongArray(this.capacity * recordLongs);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRecordLongs() {
+        return recordLongs;
+    }
+
+    /**
+     * @return sequence the next record will get, i.e. the number of records claimed so far
+     */
+    public long getNext() {
+        return next.get();
+    }
+
+    /**
+     * Claims the slot of a new record; write its words with {@link #put} and then call
+     * {@link #publish}.
+     *
+     * @return sequence of the record
+     */
+    public long claim() {
+        long sequence = next.getAndIncrement();
+        sequences.set((int) sequence & mask, -1);
+        return sequence;
+    }
+
+    public void put(long sequence, int word, long value) {
+        records.lazySet(((int) sequence & mask) * recordLongs + word, value);
+    }
+
+    public void publish(long sequence) {
+        sequences.lazySet((int) sequence & mask, sequence);
+    }
+
+    /**
+     * Copies record {@code sequence} to {@code record}.
+     *
+     * @return {@link #PUBLISHED}, {@link #PENDING} if it isn't completely written yet, or
+     * {@link #OVERWRITTEN} if it was overwritten by a newer record
+     */
+    public int read(long sequence, long[] record) {
+        int slot = (int) sequence & mask;
+        long before = sequences.get(slot);
+        if (before != sequence) {
+            return before > sequence || before == -1 && next.get() > sequence + capacity ? OVERWRITTEN : PENDING;
+        }
+        int offset = slot * recordLongs;
+        for (int i = 0; i < recordLongs; i++) {
+            record[i] = records.get(offset + i);
+        }
+        return sequences.get(slot) == sequence ? PUBLISHED : OVERWRITTEN;
+    }
+}
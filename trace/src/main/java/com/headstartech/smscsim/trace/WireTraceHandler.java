@@ -0,0 +1,130 @@
+package com.headstartech.smscsim.trace;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+/**
+ * Handler at the head of a session's pipeline, seeing the bytes as read from and written to
+ * the socket, that passes the sampled PDUs to the {@link WireTracer}.
+ */
+class WireTraceHandler extends SimpleChannelHandler {
+
+    private static final int HEADER = 0;
+    private static final int BODY = 1;
+    private static final int SKIP = 2;
+    private static final int DISABLED = 3;
+
+    private final WireTracer tracer;
+    private final long session;
+    private final boolean allPdus;
+
+    // read side, I/O thread only
+    private final byte[] pending;
+    private final ChannelBuffer pendingBuffer;
+    private int state = HEADER;
+    private int filled;
+    private int keep;
+    private int remaining;
+
+    WireTraceHandler(WireTracer tracer, long session, boolean allPdus) {
+        this.tracer = tracer;
+        this.session = session;
+        this.allPdus = allPdus;
+        this.pending = new byte[WireTracer.HEADER_LENGTH + tracer.getBodyBytes()];
+        this.pendingBuffer = ChannelBuffers.wrappedBuffer(pending);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer && state != DISABLED) {
+            ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+            read(buffer, buffer.readerIndex(), buffer.writerIndex());
+        }
+        super.messageReceived(ctx, e);
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (e.getMessage() instanceof ChannelBuffer) {
+            ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
+            int index = buffer.readerIndex();
+            int end = buffer.writerIndex();
+            while (end - index >= WireTracer.HEADER_LENGTH) {
+                int length = buffer.getInt(index);
+                if (length < WireTracer.HEADER_LENGTH) {
+                    break;
+                }
+                if (tracer.isSampled(buffer.getInt(index + 12), allPdus)) {
+                    tracer.record(session, WireTracer.SENT, buffer, index, Math.min(length, end - index));
+                }
+                index += length;
+            }
+        }
+        super.writeRequested(ctx, e);
+    }
+
+    private void read(ChannelBuffer buffer, int index, int end) {
+        while (index < end) {
+            switch (state) {
+                case HEADER: {
+                    int n = Math.min(WireTracer.HEADER_LENGTH - filled, end - index);
+                    buffer.getBytes(index, pending, filled, n);
+                    filled += n;
+                    index += n;
+                    if (filled == WireTracer.HEADER_LENGTH) {
+                        int length = pendingBuffer.getInt(0);
+                        if (length < WireTracer.HEADER_LENGTH) {
+                            state = DISABLED;
+                            return;
+                        }
+                        remaining = length - WireTracer.HEADER_LENGTH;
+                        keep = 0;
+                        if (tracer.isSampled(pendingBuffer.getInt(12), allPdus)) {
+                            keep = Math.min(remaining, tracer.getBodyBytes());
+                            if (keep == 0) {
+                                tracer.record(session, WireTracer.RECEIVED, pendingBuffer, 0, filled);
+                            }
+                        }
+                        state = keep > 0 ? BODY : SKIP;
+                        if (remaining == 0) {
+                            filled = 0;
+                            state = HEADER;
+                        }
+                    }
+                    break;
+                }
+                case BODY: {
+                    int n = Math.min(WireTracer.HEADER_LENGTH + keep - filled, end - index);
+                    buffer.getBytes(index, pending, filled, n);
+                    filled += n;
+                    index += n;
+                    remaining -= n;
+                    if (filled == WireTracer.HEADER_LENGTH + keep) {
+                        tracer.record(session, WireTracer.RECEIVED, pendingBuffer, 0, filled);
+                        state = SKIP;
+                    }
+                    if (remaining == 0) {
+                        filled = 0;
+                        state = HEADER;
+                    }
+                    break;
+                }
+                case SKIP: {
+                    int n = Math.min(remaining, end - index);
+                    index += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        filled = 0;
+                        state = HEADER;
+                    }
+                    break;
+                }
+                default:
+                    return;
+            }
+        }
+    }
+}
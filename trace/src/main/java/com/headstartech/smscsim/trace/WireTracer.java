@@ -0,0 +1,364 @@
+package com.headstartech.smscsim.trace;
+
+import com.cloudhopper.smpp.SmppConstants;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the PDUs sessions send and receive into a {@link TraceRing}, as they are on the
+ * wire, without locks or allocation on the I/O threads, so it can stay on in a load test.
+ */
+public class WireTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WireTracer.class);
+
+    // file header: int magic, short version, short longs per record, long start epoch millis,
+    // long System.nanoTime() at the start; then the records, big-endian
+    public static final int MAGIC = 0x534D5452; // "SMTR"
+    public static final short VERSION = 1;
+
+    public static final int RECEIVED = 0;
+    public static final int SENT = 1;
+
+    static final int HEADER_LENGTH = 16;
+
+    // words of a record
+    private static final int TIME = 0;
+    private static final int SESSION = 1;
+    // direction << 32 | number of body bytes kept
+    private static final int FLAGS = 2;
+    // command_length << 32 | command_id
+    private static final int LENGTH_ID = 3;
+    // command_status << 32 | sequence_number
+    private static final int STATUS_SEQUENCE = 4;
+    // the body bytes kept, big-endian, zero padded
+    private static final int BODY = 5;
+
+    // names of the sessions recently attached, for the text dump
+    private static final int MAX_SESSION_NAMES = 10000;
+
+    private static final Map<Integer, String> COMMANDS = new HashMap<Integer, String>();
+
+    static {
+        COMMANDS.put(SmppConstants.CMD_ID_BIND_RECEIVER, "bind_receiver");
+        COMMANDS.put(SmppConstants.CMD_ID_BIND_TRANSMITTER, "bind_transmitter");
+        COMMANDS.put(SmppConstants.CMD_ID_BIND_TRANSCEIVER, "bind_transceiver");
+        COMMANDS.put(SmppConstants.CMD_ID_UNBIND, "unbind");
+        COMMANDS.put(SmppConstants.CMD_ID_GENERIC_NACK, "generic_nack");
+        COMMANDS.put(SmppConstants.CMD_ID_SUBMIT_SM, "submit_sm");
+        COMMANDS.put(SmppConstants.CMD_ID_DELIVER_SM, "deliver_sm");
+        COMMANDS.put(SmppConstants.CMD_ID_DATA_SM, "data_sm");
+        COMMANDS.put(SmppConstants.CMD_ID_QUERY_SM, "query_sm");
+        COMMANDS.put(SmppConstants.CMD_ID_CANCEL_SM, "cancel_sm");
+        COMMANDS.put(SmppConstants.CMD_ID_ENQUIRE_LINK, "enquire_link");
+    }
+
+    private final TraceRing ring;
+    private final int bodyBytes;
+    private final int bodyLongs;
+    private final int sampleEvery;
+    private final Set<String> systemIds;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<Long, String> sessionNames = Collections.synchronizedMap(new LinkedHashMap<Long, String>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_SESSION_NAMES;
+        }
+    });
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private Thread writer;
+    private volatile boolean running;
+
+    /**
+     * @param capacity records kept in memory
+     * @param bodyBytes bytes of the body after the header kept per PDU
+     * @param sampleEvery trace 1 in this many PDUs of other sessions, 0 for none
+     * @param systemIds systemIds of which all PDUs are traced
+     */
+    public WireTracer(int capacity, int bodyBytes, int sampleEvery, Collection<String> systemIds) {
+        if (bodyBytes < 0 || sampleEvery < 0) {
+            throw new IllegalArgumentException("Invalid trace settings");
+        }
+        this.bodyBytes = bodyBytes;
+        this.bodyLongs = (bodyBytes + 7) / 8;
+        this.ring = new TraceRing(capacity, BODY + bodyLongs);
+        this.sampleEvery = sampleEvery;
+        this.systemIds = new HashSet<String>(systemIds);
+    }
+
+    /**
+     * Drains the ring to {@code file} every {@code intervalMillis} until {@link #close()}.
+     */
+    public void startWriter(File file, final long intervalMillis) throws IOException {
+        if (file.getParentFile() != null && !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create trace directory " + file.getParentFile());
+        }
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        writeHeader(out);
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop(out, intervalMillis);
+            }
+        }, "WireTraceWriter");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Tracing PDUs to {}", file.getAbsolutePath());
+    }
+
+    /**
+     * @return number for a new session, for callers that don't number sessions themselves
+     */
+    public long newSession() {
+        return sessions.getAndIncrement();
+    }
+
+    /**
+     * Traces the PDUs of a session from now on.
+     */
+    public void attach(ChannelPipeline pipeline, long session, String systemId) {
+        sessionNames.put(session, systemId != null ? systemId : "");
+        pipeline.addFirst("smscsimWireTrace", new WireTraceHandler(this, session, systemId != null && systemIds.contains(systemId)));
+    }
+
+    int getBodyBytes() {
+        return bodyBytes;
+    }
+
+    boolean isSampled(int sequenceNumber, boolean allPdus) {
+        return allPdus || sampleEvery > 0 && sequenceNumber % sampleEvery == 0;
+    }
+
+    /**
+     * Records the PDU starting at {@code index} of {@code pdu}, of which {@code available}
+     * bytes (at least the header) are readable.
+     */
+    void record(long session, int direction, ChannelBuffer pdu, int index, int available) {
+        long sequence = ring.claim();
+        int body = Math.max(Math.min(available - HEADER_LENGTH, bodyBytes), 0);
+        ring.put(sequence, TIME, System.nanoTime());
+        ring.put(sequence, SESSION, session);
+        ring.put(sequence, FLAGS, (long) direction << 32 | body);
+        ring.put(sequence, LENGTH_ID, (long) pdu.getInt(index) << 32 | pdu.getInt(index + 4) & 0xFFFFFFFFL);
+        ring.put(sequence, STATUS_SEQUENCE, (long) pdu.getInt(index + 8) << 32 | pdu.getInt(index + 12) & 0xFFFFFFFFL);
+        int from = index + HEADER_LENGTH;
+        for (int i = 0; i < bodyLongs; i++, from += 8) {
+            int n = body - i * 8;
+            long word = 0;
+            if (n >= 8) {
+                word = pdu.getLong(from);
+            } else {
+                for (int j = 0; j < n; j++) {
+                    word |= (pdu.getByte(from + j) & 0xFFL) << (56 - 8 * j);
+                }
+            }
+            ring.put(sequence, BODY + i, word);
+        }
+        ring.publish(sequence);
+    }
+
+    /**
+     * @return PDUs traced since the start
+     */
+    public long getRecorded() {
+        return ring.getNext();
+    }
+
+    /**
+     * @return records written to the file
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return records overwritten before the writer got to them
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    /**
+     * Writes the records of the last {@code seconds} still in the ring as text, one PDU per
+     * line.
+     */
+    public void dump(long seconds, Writer out) throws IOException {
+        long[] record = new long[ring.getRecordLongs()];
+        long since = System.nanoTime() - TimeUnit.SECONDS.toNanos(seconds);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder line = new StringBuilder(128);
+        long end = ring.getNext();
+        for (long sequence = Math.max(end - ring.getCapacity(), 0); sequence < end; sequence++) {
+            if (ring.read(sequence, record) != TraceRing.PUBLISHED || record[TIME] - since < 0) {
+                continue;
+            }
+            line.setLength(0);
+            format(record, format, line);
+            out.write(line.toString());
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the records of the last {@code seconds} still in the ring in the binary format of
+     * the trace file.
+     */
+    public void dump(long seconds, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        writeHeader(out);
+        long[] record = new long[ring.getRecordLongs()];
+        long since = System.nanoTime() - TimeUnit.SECONDS.toNanos(seconds);
+        long end = ring.getNext();
+        for (long sequence = Math.max(end - ring.getCapacity(), 0); sequence < end; sequence++) {
+            if (ring.read(sequence, record) == TraceRing.PUBLISHED && record[TIME] - since >= 0) {
+                writeRecord(out, record);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Stops the writer after it drained the ring.
+     */
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Trace closed: {} PDUs written, {} lost", written.get(), lost.get());
+    }
+
+    private void writeLoop(DataOutputStream out, long intervalMillis) {
+        long[] record = new long[ring.getRecordLongs()];
+        long next = 0;
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long end = ring.getNext();
+                if (end - next > ring.getCapacity()) {
+                    lost.addAndGet(end - ring.getCapacity() - next);
+                    next = end - ring.getCapacity();
+                }
+                while (next < end) {
+                    int state = ring.read(next, record);
+                    if (state == TraceRing.PENDING && !stopping) {
+                        // still being written, continue from it next time
+                        break;
+                    }
+                    if (state == TraceRing.PUBLISHED) {
+                        writeRecord(out, record);
+                        written.incrementAndGet();
+                    } else {
+                        lost.incrementAndGet();
+                    }
+                    next++;
+                }
+                out.flush();
+                if (stopping) {
+                    break;
+                }
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    // closing, drain once more
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write trace, stopped writing", e);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close trace file", e);
+            }
+        }
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(ring.getRecordLongs());
+        out.writeLong(startMillis);
+        out.writeLong(startNanos);
+    }
+
+    private static void writeRecord(DataOutputStream out, long[] record) throws IOException {
+        for (long word : record) {
+            out.writeLong(word);
+        }
+    }
+
+    private void format(long[] record, SimpleDateFormat format, StringBuilder line) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(record[TIME] - startNanos);
+        long epochMicros = TimeUnit.MILLISECONDS.toMicros(startMillis) + micros;
+        line.append(format.format(new Date(epochMicros / 1000)));
+        appendPadded(line, epochMicros % 1000, 3).append("Z ");
+        String name = sessionNames.get(record[SESSION]);
+        line.append('#').append(record[SESSION]).append(' ').append(name != null ? name : "?");
+        line.append((record[FLAGS] >>> 32) == SENT ? " > " : " < ");
+        int commandId = (int) record[LENGTH_ID];
+        String command = COMMANDS.get(commandId & ~SmppConstants.PDU_CMD_ID_RESP_MASK);
+        if (command == null) {
+            line.append("0x").append(String.format(Locale.ROOT, "%08x", commandId));
+        } else {
+            line.append(command).append((commandId & SmppConstants.PDU_CMD_ID_RESP_MASK) != 0 ? "_resp" : "");
+        }
+        line.append(" len=").append(record[LENGTH_ID] >>> 32);
+        line.append(" status=").append(record[STATUS_SEQUENCE] >>> 32);
+        line.append(" seq=").append((int) record[STATUS_SEQUENCE]);
+        int body = (int) record[FLAGS];
+        if (body > 0) {
+            line.append(" body=");
+            for (int i = 0; i < body; i++) {
+                int b = (int) (record[BODY + i / 8] >>> (56 - 8 * (i % 8))) & 0xFF;
+                line.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        }
+        line.append('\n');
+    }
+
+    private static StringBuilder appendPadded(StringBuilder line, long value, int digits) {
+        String s = Long.toString(value);
+        for (int i = s.length(); i < digits; i++) {
+            line.append('0');
+        }
+        return line.append(s);
+    }
+}
@@ -0,0 +1,81 @@
+package com.headstartech.smscsim.trace;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TraceRingTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(1, new TraceRing(1, 1).getCapacity());
+        assertEquals(8, new TraceRing(5, 2).getCapacity());
+        assertEquals(8, new TraceRing(8, 2).getCapacity());
+        assertEquals(1024, new TraceRing(1000, 2).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroCapacity() {
+        new TraceRing(0, 1);
+    }
+
+    @Test
+    public void readsPublishedRecord() {
+        TraceRing ring = new TraceRing(4, 2);
+        long sequence = ring.claim();
+        assertEquals(0, sequence);
+        ring.put(sequence, 0, 11);
+        ring.put(sequence, 1, 12);
+
+        long[] record = new long[2];
+        assertEquals(TraceRing.PENDING, ring.read(sequence, record));
+        ring.publish(sequence);
+        assertEquals(TraceRing.PUBLISHED, ring.read(sequence, record));
+        assertArrayEquals(new long[] { 11, 12 }, record);
+        assertEquals(1, ring.getNext());
+    }
+
+    @Test
+    public void notYetClaimedIsPending() {
+        TraceRing ring = new TraceRing(4, 1);
+        write(ring, 2);
+
+        assertEquals(TraceRing.PENDING, ring.read(2, new long[1]));
+    }
+
+    @Test
+    public void overwrittenAfterWrap() {
+        TraceRing ring = new TraceRing(4, 1);
+        write(ring, 6);
+
+        long[] record = new long[1];
+        assertEquals(TraceRing.OVERWRITTEN, ring.read(0, record));
+        assertEquals(TraceRing.OVERWRITTEN, ring.read(1, record));
+        for (long sequence = 2; sequence < 6; sequence++) {
+            assertEquals(TraceRing.PUBLISHED, ring.read(sequence, record));
+            assertEquals(100 + sequence, record[0]);
+        }
+    }
+
+    @Test
+    public void overwrittenWhileSlotIsRewritten() {
+        TraceRing ring = new TraceRing(4, 1);
+        write(ring, 4);
+        // claimed for sequence 4 but not published yet
+        long sequence = ring.claim();
+
+        long[] record = new long[1];
+        assertEquals(TraceRing.OVERWRITTEN, ring.read(0, record));
+        assertEquals(TraceRing.PENDING, ring.read(sequence, record));
+        assertEquals(TraceRing.PUBLISHED, ring.read(1, record));
+    }
+
+    private static void write(TraceRing ring, int records) {
+        for (int i = 0; i < records; i++) {
+            long sequence = ring.claim();
+            ring.put(sequence, 0, 100 + sequence);
+            ring.publish(sequence);
+        }
+    }
+}